@@ -0,0 +1,135 @@
+package backend;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jade.core.AID;
+
+/**
+ * Clasa AgentDictionary atribuie fiecarui agent un identificator numeric, unic
+ * in JVM, pe baza numelui sau local. Istoricul foloseste aceste identificatoare
+ * in locul numelor: un mesaj retine doar doua numere, iar cheia unei conversatii
+ * este un singur numar de tip long, calculat fara a construi siruri de
+ * caractere.
+ */
+public final class AgentDictionary {
+
+	/**
+	 * Prefixul numelor de camere de chat. O camera primeste un identificator ca
+	 * un agent, iar istoricul ei este o singura conversatie a camerei cu ea
+	 * insasi, indiferent cati membri are.
+	 */
+	public static final String ROOM_PREFIX = "#";
+
+	private static final ConcurrentHashMap<String, Integer> IDS_BY_NAME = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<String, Integer> IDS_BY_GUID = new ConcurrentHashMap<>();
+	private static volatile String[] names = new String[64];
+	private static int nextId = 1;
+
+	private AgentDictionary() {
+	}
+
+	/**
+	 * Obtine identificatorul unui agent. Cautarea dupa numele complet al AID-ului
+	 * nu aloca memorie; numele local este calculat doar la prima intalnire a
+	 * agentului.
+	 *
+	 * @param agent agentul cautat.
+	 * @return identificatorul agentului.
+	 */
+	public static int idOf(AID agent) {
+		Integer id = IDS_BY_GUID.get(agent.getName());
+		if (id == null) {
+			id = idOf(agent.getLocalName());
+			IDS_BY_GUID.put(agent.getName(), id);
+		}
+		return id;
+	}
+
+	/**
+	 * Obtine identificatorul unui agent dupa numele sau local, atribuindu-i unul
+	 * nou daca nu a mai fost intalnit.
+	 *
+	 * @param localName numele local al agentului.
+	 * @return identificatorul agentului.
+	 */
+	public static int idOf(String localName) {
+		Integer id = IDS_BY_NAME.get(localName);
+		return id != null ? id : register(localName);
+	}
+
+	/**
+	 * Obtine numele local al unui agent dupa identificator.
+	 *
+	 * @param id identificatorul agentului.
+	 * @return numele local al agentului.
+	 */
+	public static String nameOf(int id) {
+		return names[id];
+	}
+
+	/**
+	 * Obtine identificatorul unei camere de chat.
+	 *
+	 * @param room numele camerei, fara prefix.
+	 * @return identificatorul camerei.
+	 */
+	public static int roomId(String room) {
+		return idOf(ROOM_PREFIX + room);
+	}
+
+	/**
+	 * @param id un identificator atribuit de dictionar.
+	 * @return true daca identificatorul apartine unei camere de chat.
+	 */
+	public static boolean isRoom(int id) {
+		return names[id].startsWith(ROOM_PREFIX);
+	}
+
+	/**
+	 * Calculeaza cheia conversatiei dintre doi agenti, independent de ordinea in
+	 * care sunt dati. Identificatorul mai mic ocupa jumatatea superioara a cheii.
+	 *
+	 * @param first  identificatorul primului agent.
+	 * @param second identificatorul celui de-al doilea agent.
+	 * @return cheia conversatiei.
+	 */
+	public static long conversationKey(int first, int second) {
+		int low = Math.min(first, second);
+		int high = Math.max(first, second);
+		return ((long) low << 32) | (high & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param conversationKey cheia unei conversatii.
+	 * @return identificatorul mai mic dintre cei doi participanti.
+	 */
+	public static int lowId(long conversationKey) {
+		return (int) (conversationKey >>> 32);
+	}
+
+	/**
+	 * @param conversationKey cheia unei conversatii.
+	 * @return identificatorul mai mare dintre cei doi participanti.
+	 */
+	public static int highId(long conversationKey) {
+		return (int) conversationKey;
+	}
+
+	private static synchronized int register(String localName) {
+		Integer existing = IDS_BY_NAME.get(localName);
+		if (existing != null) {
+			return existing;
+		}
+
+		int id = nextId++;
+		String[] current = names;
+		if (id >= current.length) {
+			current = Arrays.copyOf(current, current.length * 2);
+		}
+		current[id] = localName;
+		names = current;
+		IDS_BY_NAME.put(localName, id);
+		return id;
+	}
+}
@@ -0,0 +1,144 @@
+package backend;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import jade.core.AID;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.util.leap.Iterator;
+
+/**
+ * Clasa AgentDirectory pastreaza in memorie lista agentilor de chat inregistrati
+ * in directory facilitator (DF). Lista este actualizata din notificarile
+ * abonamentului la DF (agenti inregistrati sau deregistrati), astfel incat
+ * cererile interfetei sunt servite din memorie, fara o cautare in DF.
+ * <p>
+ * Din aceleasi notificari sunt retinuti si membrii camerelor de chat: un agent
+ * intrat intr-o camera isi adauga in DF un serviciu de tipul
+ * {@link ChatAgent#ROOM_SERVICE_TYPE}, cu numele camerei.
+ * <p>
+ * Lista este serializabila, pentru ca un agent mutat in alt container sa o
+ * pastreze; abonamentul la DF ramane valabil dupa mutare.
+ */
+public class AgentDirectory implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Map<String, AID> agents = new LinkedHashMap<>();
+	private final Map<String, Map<String, AID>> roomMembers = new HashMap<>();
+	private final Map<String, List<String>> roomsByAgent = new HashMap<>();
+	private boolean synchronizedWithDF;
+
+	/**
+	 * Adauga sau actualizeaza un agent inregistrat in DF.
+	 *
+	 * @param description descrierea agentului din notificare.
+	 */
+	public synchronized void register(DFAgentDescription description) {
+		AID agent = description.getName();
+		agents.put(agent.getName(), agent);
+
+		leaveRooms(agent.getName());
+		List<String> rooms = new ArrayList<>();
+		Iterator services = description.getAllServices();
+		while (services.hasNext()) {
+			ServiceDescription service = (ServiceDescription) services.next();
+			if (ChatAgent.ROOM_SERVICE_TYPE.equals(service.getType()) && service.getName() != null) {
+				rooms.add(service.getName());
+				roomMembers.computeIfAbsent(service.getName(), room -> new LinkedHashMap<>()).put(agent.getName(),
+						agent);
+			}
+		}
+		if (!rooms.isEmpty()) {
+			roomsByAgent.put(agent.getName(), rooms);
+		}
+	}
+
+	/**
+	 * Elimina un agent deregistrat din DF.
+	 *
+	 * @param description descrierea agentului din notificare.
+	 */
+	public synchronized void deregister(DFAgentDescription description) {
+		agents.remove(description.getName().getName());
+		leaveRooms(description.getName().getName());
+	}
+
+	/**
+	 * Inlocuieste continutul listei cu agentii din prima notificare a unui
+	 * abonament nou, care contine toti agentii inregistrati la acel moment.
+	 * Agentii ramasi dintr-un abonament anterior sunt eliminati.
+	 *
+	 * @param descriptions descrierile agentilor inregistrati.
+	 */
+	public synchronized void reset(DFAgentDescription[] descriptions) {
+		agents.clear();
+		roomMembers.clear();
+		roomsByAgent.clear();
+		for (DFAgentDescription description : descriptions) {
+			if (description.getAllServices().hasNext()) {
+				register(description);
+			}
+		}
+		synchronizedWithDF = true;
+	}
+
+	/**
+	 * Obtine agentii cunoscuti.
+	 *
+	 * @return o copie a listei de agenti, in ordinea inregistrarii.
+	 */
+	public synchronized List<AID> getAgents() {
+		return new ArrayList<>(agents.values());
+	}
+
+	/**
+	 * Obtine membrii unei camere de chat.
+	 *
+	 * @param room numele camerei.
+	 * @return o copie a listei de membri ai camerei.
+	 */
+	public synchronized List<AID> getRoomMembers(String room) {
+		Map<String, AID> members = roomMembers.get(room);
+		return members == null ? new ArrayList<>() : new ArrayList<>(members.values());
+	}
+
+	/**
+	 * Obtine camerele de chat care au cel putin un membru.
+	 *
+	 * @return numele camerelor, in ordine alfabetica.
+	 */
+	public synchronized Set<String> getRooms() {
+		return new TreeSet<>(roomMembers.keySet());
+	}
+
+	/**
+	 * Verifica daca lista a fost primita de la DF cel putin o data.
+	 *
+	 * @return true daca a sosit prima notificare a abonamentului.
+	 */
+	public synchronized boolean isSynchronizedWithDF() {
+		return synchronizedWithDF;
+	}
+
+	private void leaveRooms(String agentName) {
+		List<String> rooms = roomsByAgent.remove(agentName);
+		if (rooms == null) {
+			return;
+		}
+		for (String room : rooms) {
+			Map<String, AID> members = roomMembers.get(room);
+			members.remove(agentName);
+			if (members.isEmpty()) {
+				roomMembers.remove(room);
+			}
+		}
+	}
+}
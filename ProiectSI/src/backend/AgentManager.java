@@ -1,14 +1,34 @@
 package backend;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
 
-import frontend.AgentManagerUI;
 import jade.core.AID;
 import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.core.behaviours.WakerBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAException;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
 import jade.wrapper.AgentContainer;
 import jade.wrapper.StaleProxyException;
 
@@ -17,23 +37,394 @@ import jade.wrapper.StaleProxyException;
  * precum si obtinerea informatiilor despre agentii inregistrati in sistemul
  * JADE. Acesta ofera o interfata pentru administrarea agentilor si controlul
  * containerului JADE.
+ * <p>
+ * Pornit cu argumentul {@value ChatAgent#HEADLESS_ARG} (sau intr-o masina
+ * virtuala fara ecran, ori fara clasa interfetei grafice), managerul nu
+ * deschide nicio fereastra, iar agentii de chat creati de el sunt porniti tot
+ * fara interfata. Altfel, interfata este aleasa prin argumentul
+ * {@value ChatAgent#UI_ARG} (vezi {@link AgentManagerListener.Factory}) si este
+ * transmisa si agentilor creati.
+ * <p>
+ * Managerul poate porni containere periferice, ca masini virtuale separate pe
+ * aceeasi masina (vezi {@link ContainerPool}), de exemplu cu argumentul
+ * "containers=3". Dupa ce containerele raporteaza incarcarea lor, fiecare agent
+ * nou este creat in containerul cel mai putin incarcat (vezi
+ * {@link ContainerLoad}), sarind peste containerele cu heap-ul aproape plin. Cu
+ * argumentul {@value #REBALANCE_ARG}, managerul muta periodic agentul cel mai
+ * ocupat din containerul cel mai incarcat in cel mai liber, daca diferenta
+ * dintre ele este suficient de mare.
  */
 public class AgentManager extends Agent {
 
-	private AgentManagerUI agentManagerUI;
+	/**
+	 * Numarul maxim de agenti creati in paralel de
+	 * {@link #createAgents(String, int, int, String, ProvisioningListener)}; poate
+	 * fi schimbat prin proprietatea de sistem provisioning.threads.
+	 */
+	private static final int PROVISIONING_THREADS = Integer.getInteger("provisioning.threads", 8);
 
 	/**
-	 * Initializeaza interfata utilizatorului si afiseaza un mesaj in consola cand
-	 * agentul este pornit.
+	 * Argumentul care porneste containere periferice, de forma "containers=N".
+	 */
+	public static final String CONTAINERS_ARG = "containers";
+
+	/**
+	 * Argumentul care porneste mutarea periodica a agentilor ocupati.
+	 */
+	public static final String REBALANCE_ARG = "rebalance";
+
+	private static final double HEAP_LIMIT = 0.85;
+	private static final long CONTROL_TIMEOUT_MS = 30000;
+	private static final long REBALANCE_INTERVAL_MS = 5000;
+
+	private boolean headless;
+	private String userInterface;
+	private AgentManagerListener listener;
+	private final AgentManagerMetrics metrics = new AgentManagerMetrics();
+	private ObjectName metricsName;
+	private final Map<String, ContainerLoad> containerLoads = new LinkedHashMap<>();
+	private final Map<String, CompletableFuture<ACLMessage>> pendingRequests = new ConcurrentHashMap<>();
+	private final AtomicLong requestIds = new AtomicLong();
+	private ContainerPool containerPool;
+	private TickerBehaviour rebalancer;
+
+	/**
+	 * Initializeaza interfata utilizatorului, daca managerul nu este pornit fara
+	 * interfata, si afiseaza un mesaj in consola cand agentul este pornit.
 	 */
 	@Override
 	protected void setup() {
-		agentManagerUI = new AgentManagerUI(this);
-		agentManagerUI.setVisible(true);
+		headless = ChatAgent.isHeadless(getArguments());
+		metricsName = Metrics.register("AgentManager", getName(), metrics);
+		userInterface = ChatAgent.userInterface(getArguments());
+		AgentManagerListener.Factory factory = headless ? null
+				: ChatAgent.loadListenerFactory(userInterface, AgentManagerListener.Factory.class);
+		// Fara interfata grafica, managerul si agentii creati de el ruleaza fara
+		// ferestre.
+		headless = factory == null;
+		listener = headless ? AgentManagerListener.HEADLESS : factory.create(this);
+
+		MessageTemplate containerMessages = MessageTemplate.or(
+				MessageTemplate.MatchConversationId(ContainerAgent.LOAD_CONVERSATION),
+				MessageTemplate.MatchConversationId(ContainerAgent.CONTROL_CONVERSATION));
+		addBehaviour(new CyclicBehaviour(this) {
+			@Override
+			public void action() {
+				ACLMessage msg = receive(containerMessages);
+				if (msg == null) {
+					block();
+					return;
+				}
+				handleContainerMessage(msg);
+			}
+		});
+
+		Object[] arguments = getArguments();
+		if (arguments != null) {
+			for (Object argument : arguments) {
+				String value = String.valueOf(argument).trim();
+				if (value.startsWith(CONTAINERS_ARG + "=")) {
+					int count = parseContainerCount(value.substring(CONTAINERS_ARG.length() + 1));
+					if (count >= 0) {
+						startContainers(count);
+					}
+				} else if (REBALANCE_ARG.equalsIgnoreCase(value)) {
+					setRebalancing(true);
+				}
+			}
+		}
 
 		System.out.println(getLocalName() + " has started.");
 	}
 
+	/**
+	 * Elimina MBean-ul managerului la oprirea agentului si opreste containerele
+	 * periferice pornite de el.
+	 */
+	@Override
+	protected void takeDown() {
+		Metrics.unregister(metricsName);
+		synchronized (containerLoads) {
+			if (containerPool != null) {
+				containerPool.close();
+			}
+		}
+	}
+
+	/**
+	 * Citeste numarul de containere din argumentul "containers=N". Un numar
+	 * invalid sau negativ nu opreste managerul: este afisat modul de folosire,
+	 * iar managerul ramane fara containere periferice.
+	 *
+	 * @param value textul de dupa "containers=".
+	 * @return numarul de containere, sau -1 daca valoarea nu este valida.
+	 */
+	private int parseContainerCount(String value) {
+		int count;
+		try {
+			count = Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			count = -1;
+		}
+		if (count < 0) {
+			System.out.println("Invalid argument " + CONTAINERS_ARG + "=" + value + "; usage: " + CONTAINERS_ARG
+					+ "=N, with N >= 0. Starting without peripheral containers.");
+		}
+		return count;
+	}
+
+	/**
+	 * Porneste containere periferice, ca masini virtuale separate pe aceeasi
+	 * masina, si un {@link ContainerAgent} in containerul managerului. Dupa
+	 * primul lor raport de incarcare, agentii noi sunt plasati si in aceste
+	 * containere.
+	 * 
+	 * @param count numarul containerelor pornite.
+	 * @return numele containerelor pornite.
+	 */
+	public List<String> startContainers(int count) {
+		List<String> started = new ArrayList<>();
+		synchronized (containerLoads) {
+			if (containerPool == null) {
+				String host = getProperty(Profile.MAIN_HOST, "localhost");
+				int port = Integer.parseInt(getProperty(Profile.LOCAL_PORT, getProperty(Profile.MAIN_PORT, "1099")));
+				containerPool = new ContainerPool(host, port, getLocalName());
+				try {
+					getContainerController().createNewAgent(ContainerPool.controlAgentName(here().getName()),
+							ContainerAgent.class.getName(), new Object[] { getLocalName() }).start();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+			for (int i = 0; i < count; i++) {
+				String containerName = "Container-" + (containerPool.getContainerNames().size() + 1);
+				try {
+					containerPool.start(containerName);
+					started.add(containerName);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return started;
+	}
+
+	/**
+	 * Obtine ultima incarcare raportata de fiecare container.
+	 * 
+	 * @return incarcarea containerelor, in ordinea in care au raportat prima
+	 *         data; lista este goala daca managerul nu foloseste containere
+	 *         periferice.
+	 */
+	public List<ContainerLoad> getContainerLoads() {
+		synchronized (containerLoads) {
+			return new ArrayList<>(containerLoads.values());
+		}
+	}
+
+	/**
+	 * Porneste sau opreste mutarea periodica a agentilor ocupati intre
+	 * containere.
+	 * 
+	 * @param enabled true pentru a muta agentii ocupati.
+	 */
+	public void setRebalancing(boolean enabled) {
+		addBehaviour(new OneShotBehaviour(this) {
+			@Override
+			public void action() {
+				if (enabled && rebalancer == null) {
+					rebalancer = new TickerBehaviour(AgentManager.this, REBALANCE_INTERVAL_MS) {
+						@Override
+						protected void onTick() {
+							rebalance();
+						}
+					};
+					addBehaviour(rebalancer);
+				} else if (!enabled && rebalancer != null) {
+					removeBehaviour(rebalancer);
+					rebalancer = null;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Trateaza un raport de incarcare sau raspunsul unui container la o cerere.
+	 */
+	private void handleContainerMessage(ACLMessage msg) {
+		if (ContainerAgent.LOAD_CONVERSATION.equals(msg.getConversationId())) {
+			String busiestRate = msg.getUserDefinedParameter(ContainerAgent.BUSIEST_RATE_PARAM);
+			ContainerLoad load = new ContainerLoad(msg.getUserDefinedParameter(ContainerAgent.CONTAINER_PARAM),
+					Integer.parseInt(msg.getUserDefinedParameter(ContainerAgent.AGENTS_PARAM)),
+					Double.parseDouble(msg.getUserDefinedParameter(ContainerAgent.RATE_PARAM)),
+					Double.parseDouble(msg.getUserDefinedParameter(ContainerAgent.HEAP_PARAM)),
+					msg.getUserDefinedParameter(ContainerAgent.BUSIEST_PARAM),
+					busiestRate == null ? 0 : Double.parseDouble(busiestRate));
+			ContainerLoad previous;
+			synchronized (containerLoads) {
+				previous = containerLoads.put(load.getContainer(), load);
+			}
+			if (previous == null) {
+				System.out.println("Container " + load.getContainer() + " is ready.");
+			}
+			return;
+		}
+		CompletableFuture<ACLMessage> reply = pendingRequests.remove(msg.getInReplyTo());
+		if (reply != null) {
+			reply.complete(msg);
+		}
+	}
+
+	/**
+	 * Alege containerul in care este creat un agent nou: containerul cu cea mai
+	 * mica incarcare, dintre cele cu heap-ul sub {@value #HEAP_LIMIT}, daca exista.
+	 * 
+	 * @return incarcarea containerului ales, sau null daca managerul nu foloseste
+	 *         containere periferice.
+	 */
+	private ContainerLoad placeAgent() {
+		synchronized (containerLoads) {
+			ContainerLoad best = null;
+			for (ContainerLoad load : containerLoads.values()) {
+				if (best == null || isBetterPlacement(load, best)) {
+					best = load;
+				}
+			}
+			if (best != null) {
+				best.placeAgent();
+			}
+			return best;
+		}
+	}
+
+	private static boolean isBetterPlacement(ContainerLoad candidate, ContainerLoad best) {
+		boolean candidateFits = candidate.getHeapUsage() < HEAP_LIMIT;
+		boolean bestFits = best.getHeapUsage() < HEAP_LIMIT;
+		if (candidateFits != bestFits) {
+			return candidateFits;
+		}
+		return candidate.getScore() < best.getScore();
+	}
+
+	/**
+	 * Muta agentul cel mai ocupat din containerul cel mai incarcat in containerul
+	 * cel mai liber. Un agent cu traficul r incarca un container cu c = 1 +
+	 * r / {@value ContainerLoad#RATE_PER_AGENT}; mutarea este facuta doar daca
+	 * diferenta de incarcare dintre cele doua containere este mai mare decat c,
+	 * deci dupa mutare diferenta scade, iar agentul nu poate fi mutat inapoi.
+	 */
+	private void rebalance() {
+		ContainerLoad busiest = null;
+		ContainerLoad idlest = null;
+		synchronized (containerLoads) {
+			for (ContainerLoad load : containerLoads.values()) {
+				if (busiest == null || load.getScore() > busiest.getScore()) {
+					busiest = load;
+				}
+				if (idlest == null || isBetterPlacement(load, idlest)) {
+					idlest = load;
+				}
+			}
+		}
+		if (busiest == null || busiest == idlest || busiest.getBusiestAgent() == null) {
+			return;
+		}
+		double cost = 1 + busiest.getBusiestRate() / ContainerLoad.RATE_PER_AGENT;
+		if (busiest.getScore() - idlest.getScore() <= cost) {
+			return;
+		}
+
+		String agentName = new AID(busiest.getBusiestAgent(), AID.ISGUID).getLocalName();
+		String source = busiest.getContainer();
+		String destination = idlest.getContainer();
+		ACLMessage request = controlRequest(source, ContainerAgent.MOVE_ACTION, agentName);
+		request.addUserDefinedParameter(ContainerAgent.DESTINATION_PARAM, destination);
+		sendControlRequest(request).whenComplete((reply, error) -> {
+			if (reply != null && reply.getPerformative() == ACLMessage.INFORM) {
+				metrics.recordAgentMoved();
+				System.out.println("Moved " + agentName + " from " + source + " to " + destination + ".");
+			} else {
+				System.out.println("Could not move " + agentName + " from " + source + " to " + destination + ": "
+						+ (reply != null ? reply.getContent() : error));
+			}
+		});
+	}
+
+	/**
+	 * Construieste o cerere catre agentul de control al unui container.
+	 */
+	private ACLMessage controlRequest(String containerName, String action, String agentName) {
+		ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+		request.addReceiver(new AID(ContainerPool.controlAgentName(containerName), AID.ISLOCALNAME));
+		request.setConversationId(ContainerAgent.CONTROL_CONVERSATION);
+		request.addUserDefinedParameter(ContainerAgent.ACTION_PARAM, action);
+		request.addUserDefinedParameter(ContainerAgent.AGENT_PARAM, agentName);
+		return request;
+	}
+
+	/**
+	 * Trimite o cerere unui agent de control; raspunsul este asteptat cel mult
+	 * {@value #CONTROL_TIMEOUT_MS} ms.
+	 * 
+	 * @return raspunsul containerului.
+	 */
+	private CompletableFuture<ACLMessage> sendControlRequest(ACLMessage request) {
+		String id = getLocalName() + "-" + requestIds.incrementAndGet();
+		CompletableFuture<ACLMessage> reply = new CompletableFuture<>();
+		pendingRequests.put(id, reply);
+		request.setReplyWith(id);
+		send(request);
+		addBehaviour(new WakerBehaviour(this, CONTROL_TIMEOUT_MS) {
+			@Override
+			protected void onWake() {
+				if (pendingRequests.remove(id) != null) {
+					reply.completeExceptionally(new TimeoutException("No reply from " + request.getAllReceiver().next()));
+				}
+			}
+		});
+		return reply;
+	}
+
+	/**
+	 * Creeaza si porneste un agent in containerul ales de {@link #placeAgent()}:
+	 * direct, daca este containerul managerului, altfel prin agentul de control
+	 * al containerului. Raspunsul containerului nu este asteptat pe firul
+	 * apelant, pentru ca este primit chiar de firul managerului.
+	 *
+	 * @return rezultatul crearii, disponibil dupa ce agentul a fost pornit.
+	 */
+	private CompletableFuture<Void> startAgent(String agentName, String agentClass, Object[] arguments) {
+		ContainerLoad target = placeAgent();
+		if (target == null || target.getContainer().equals(here().getName())) {
+			CompletableFuture<Void> started = new CompletableFuture<>();
+			try {
+				getContainerController().createNewAgent(agentName, agentClass, arguments).start();
+				started.complete(null);
+			} catch (StaleProxyException e) {
+				started.completeExceptionally(e);
+			}
+			return started;
+		}
+		ACLMessage request = controlRequest(target.getContainer(), ContainerAgent.CREATE_ACTION, agentName);
+		request.addUserDefinedParameter(ContainerAgent.CLASS_PARAM, agentClass);
+		if (arguments != null && arguments.length > 0) {
+			StringBuilder joined = new StringBuilder();
+			for (Object argument : arguments) {
+				if (joined.length() > 0) {
+					joined.append(',');
+				}
+				joined.append(argument);
+			}
+			request.addUserDefinedParameter(ContainerAgent.ARGUMENTS_PARAM, joined.toString());
+		}
+		return sendControlRequest(request).thenAccept(reply -> {
+			if (reply.getPerformative() != ACLMessage.INFORM) {
+				throw new IllegalStateException(
+						"Could not create " + agentName + " in " + target.getContainer() + ": " + reply.getContent());
+			}
+		});
+	}
+
 	/**
 	 * Obtine lista tuturor agentilor inregistrati in sistemul JADE.
 	 * 
@@ -41,31 +432,167 @@ public class AgentManager extends Agent {
 	 */
 	public List<AID> getAllAgents() {
 		List<AID> agents = new ArrayList<>();
+		long start = System.nanoTime();
 		try {
 			DFAgentDescription template = new DFAgentDescription();
 			DFAgentDescription[] result = DFService.search(this, template);
+			metrics.recordDFSearch(start);
 			for (DFAgentDescription dfAgentDescription : result) {
 				agents.add(dfAgentDescription.getName());
 			}
 		} catch (FIPAException e) {
+			metrics.recordDFSearchFailure();
 			e.printStackTrace();
 		}
 		return agents;
 	}
 
 	/**
-	 * Creeaza un nou agent si il adauga in containerul JADE.
+	 * Creeaza un nou agent si il adauga in containerul JADE. Daca managerul
+	 * ruleaza fara interfata, agentul primeste argumentul
+	 * {@value ChatAgent#HEADLESS_ARG}, altfel interfata managerului.
 	 * 
 	 * @param agentName  numele noului agent.
 	 * @param agentClass clasa agentului care va fi creat.
+	 * @return rezultatul crearii (vezi
+	 *         {@link #createAgent(String, String, Object[])}).
 	 */
-	public void createAgent(String agentName, String agentClass) {
-		try {
-			AgentContainer container = getContainerController();
-			container.createNewAgent(agentName, agentClass, null).start();
-		} catch (Exception e) {
-			e.printStackTrace();
+	public CompletableFuture<Void> createAgent(String agentName, String agentClass) {
+		return createAgent(agentName, agentClass, defaultArguments());
+	}
+
+	/**
+	 * Creeaza un nou agent cu argumentele date si il adauga in containerul JADE
+	 * ales dupa incarcare (vezi {@link #startContainers(int)}), fara a bloca
+	 * firul apelant cat timp asteapta raspunsul unui container periferic. Lista
+	 * agentilor este actualizata dupa ce agentul a fost pornit sau crearea a
+	 * esuat.
+	 * 
+	 * @param agentName  numele noului agent.
+	 * @param agentClass clasa agentului care va fi creat.
+	 * @param arguments  argumentele agentului; pot lipsi.
+	 * @return rezultatul crearii, terminat cu exceptie daca agentul nu a putut
+	 *         fi pornit.
+	 */
+	public CompletableFuture<Void> createAgent(String agentName, String agentClass, Object[] arguments) {
+		return startAgent(agentName, agentClass, arguments).whenComplete((ignored, error) -> {
+			if (error == null) {
+				metrics.recordAgentCreated();
+			} else {
+				metrics.recordAgentCreateFailure();
+				error.printStackTrace();
+			}
+			listener.agentListChanged();
+		});
+	}
+
+	/**
+	 * Creeaza mai multi agenti deodata, in paralel, fara a bloca firul apelant.
+	 * Fiecare agent este creat si pornit in containerul ales dupa incarcare, de
+	 * pe unul dintre cel mult {@value #PROVISIONING_THREADS} fire; lista agentilor
+	 * este actualizata o singura data, dupa ce toti agentii au fost tratati.
+	 * Agentii primesc aceleasi argumente ca in {@link #createAgent(String, String)}.
+	 * <p>
+	 * Numele agentilor sunt obtinute din sablon: un sablon care contine '%' este
+	 * formatat cu {@link String#format(String, Object...)} si numarul agentului
+	 * (de exemplu "Agent%03d"); altfel, numarul este adaugat la sfarsitul
+	 * sablonului, in afara de cazul in care este creat un singur agent, care
+	 * primeste chiar numele din sablon.
+	 * 
+	 * @param namePattern sablonul numelor.
+	 * @param first       numarul primului agent.
+	 * @param count       numarul agentilor creati.
+	 * @param agentClass  clasa agentilor.
+	 * @param progress    primeste progresul si rezultatul crearii.
+	 * @return rezultatul crearii, disponibil dupa ce toti agentii au fost tratati.
+	 */
+	public CompletableFuture<ProvisioningReport> createAgents(String namePattern, int first, int count,
+			String agentClass, ProvisioningListener progress) {
+		Object[] arguments = defaultArguments();
+		ProvisioningReport report = new ProvisioningReport(count);
+		CompletableFuture<ProvisioningReport> result = new CompletableFuture<>();
+		long start = System.nanoTime();
+		if (count <= 0) {
+			report.finish(0);
+			progress.provisioningFinished(report);
+			result.complete(report);
+			return result;
 		}
+
+		AtomicInteger threadNumber = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(PROVISIONING_THREADS, count), task -> {
+			Thread thread = new Thread(task, "agent-provisioning-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		AtomicInteger completed = new AtomicInteger();
+		for (int i = 0; i < count; i++) {
+			String agentName = agentName(namePattern, first + i, count);
+			pool.execute(() -> {
+				long agentStart = System.nanoTime();
+				boolean started = false;
+				try {
+					startAgent(agentName, agentClass, arguments == null ? null : arguments.clone())
+							.get(CONTROL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+					report.recordStarted(agentStart);
+					metrics.recordAgentCreated();
+					started = true;
+				} catch (Exception e) {
+					report.recordFailed(agentName);
+					metrics.recordAgentCreateFailure();
+					e.printStackTrace();
+				}
+				int done = completed.incrementAndGet();
+				progress.agentProvisioned(agentName, started, done, count);
+				if (done == count) {
+					pool.shutdown();
+					report.finish(System.nanoTime() - start);
+					System.out.println(report);
+					listener.agentListChanged();
+					progress.provisioningFinished(report);
+					result.complete(report);
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * Obtine numele unui agent creat de
+	 * {@link #createAgents(String, int, int, String, ProvisioningListener)}.
+	 */
+	private static String agentName(String namePattern, int number, int count) {
+		if (namePattern.indexOf('%') >= 0) {
+			return String.format(Locale.ROOT, namePattern, number);
+		}
+		return count == 1 ? namePattern : namePattern + number;
+	}
+
+	/**
+	 * @return argumentele agentilor creati de manager: argumentul
+	 *         {@value ChatAgent#HEADLESS_ARG} daca managerul ruleaza fara
+	 *         interfata, altfel argumentul {@value ChatAgent#UI_ARG} cu
+	 *         interfata managerului.
+	 */
+	private Object[] defaultArguments() {
+		return headless ? new Object[] { ChatAgent.HEADLESS_ARG }
+				: new Object[] { ChatAgent.UI_ARG + "=" + userInterface };
+	}
+
+	/**
+	 * @return metricile managerului, expuse si prin JMX.
+	 */
+	public AgentManagerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Verifica daca managerul ruleaza fara interfata grafica.
+	 * 
+	 * @return true daca managerul nu are fereastra.
+	 */
+	public boolean isHeadless() {
+		return headless;
 	}
 
 	/**
@@ -0,0 +1,41 @@
+package backend;
+
+/**
+ * Interfata AgentManagerListener este partea de afisare a unui
+ * {@link AgentManager}. Managerul nu depinde de Swing: interfata grafica este o
+ * implementare a acestei interfete, creata de un {@link Factory} ales ca
+ * pentru agentii de chat (vezi {@link ChatListener.Factory}), iar un manager
+ * pornit fara interfata nu afiseaza nimic.
+ * <p>
+ * Metodele sunt apelate de pe firul care foloseste managerul; o implementare
+ * care foloseste Swing trebuie sa treaca singura pe firul interfetei (EDT).
+ */
+public interface AgentManagerListener {
+
+	/**
+	 * Creeaza afisarea managerului. O implementare are un constructor public
+	 * fara argumente, pentru ca este incarcata dupa numele clasei.
+	 */
+	interface Factory {
+
+		/**
+		 * Creeaza afisarea unui manager, la pornirea lui.
+		 *
+		 * @param agentManager managerul afisat.
+		 * @return afisarea managerului.
+		 */
+		AgentManagerListener create(AgentManager agentManager);
+	}
+
+	/**
+	 * Listener-ul unui manager pornit fara interfata grafica.
+	 */
+	AgentManagerListener HEADLESS = () -> {
+	};
+
+	/**
+	 * Anunta ca lista agentilor s-a schimbat, de exemplu dupa crearea unui agent;
+	 * lista curenta poate fi obtinuta cu {@link AgentManager#getAllAgents()}.
+	 */
+	void agentListChanged();
+}
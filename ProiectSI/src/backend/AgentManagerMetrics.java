@@ -0,0 +1,81 @@
+package backend;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clasa AgentManagerMetrics este MBean-ul unui {@link AgentManager}. Duratele
+ * cautarilor in DF sunt pastrate in microsecunde.
+ */
+public class AgentManagerMetrics implements AgentManagerMetricsMBean {
+
+	private final LatencyHistogram dfSearchLatency = new LatencyHistogram();
+	private final AtomicLong dfSearchFailures = new AtomicLong();
+	private final AtomicLong agentsCreated = new AtomicLong();
+	private final AtomicLong agentCreateFailures = new AtomicLong();
+	private final AtomicLong agentsMoved = new AtomicLong();
+
+	/**
+	 * Inregistreaza durata unei cautari reusite in DF.
+	 *
+	 * @param startNanos momentul inceperii cautarii, din {@link System#nanoTime()}.
+	 */
+	void recordDFSearch(long startNanos) {
+		dfSearchLatency.record((System.nanoTime() - startNanos) / 1000);
+	}
+
+	void recordDFSearchFailure() {
+		dfSearchFailures.incrementAndGet();
+	}
+
+	void recordAgentCreated() {
+		agentsCreated.incrementAndGet();
+	}
+
+	void recordAgentCreateFailure() {
+		agentCreateFailures.incrementAndGet();
+	}
+
+	void recordAgentMoved() {
+		agentsMoved.incrementAndGet();
+	}
+
+	@Override
+	public long getDFSearches() {
+		return dfSearchLatency.getCount();
+	}
+
+	@Override
+	public long getDFSearchFailures() {
+		return dfSearchFailures.get();
+	}
+
+	@Override
+	public double getDFSearchLatencyMeanMs() {
+		return dfSearchLatency.getMean() / 1000;
+	}
+
+	@Override
+	public double getDFSearchLatencyP99Ms() {
+		return dfSearchLatency.getPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getDFSearchLatencyMaxMs() {
+		return dfSearchLatency.getMax() / 1000.0;
+	}
+
+	@Override
+	public long getAgentsCreated() {
+		return agentsCreated.get();
+	}
+
+	@Override
+	public long getAgentCreateFailures() {
+		return agentCreateFailures.get();
+	}
+
+	@Override
+	public long getAgentsMoved() {
+		return agentsMoved.get();
+	}
+}
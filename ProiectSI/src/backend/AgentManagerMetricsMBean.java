@@ -0,0 +1,25 @@
+package backend;
+
+/**
+ * Metricile managerului de agenti, expuse prin JMX (vezi {@link Metrics}):
+ * cautarile in DF facute pentru lista de agenti si agentii creati sau mutati
+ * intre containere.
+ */
+public interface AgentManagerMetricsMBean {
+
+	long getDFSearches();
+
+	long getDFSearchFailures();
+
+	double getDFSearchLatencyMeanMs();
+
+	double getDFSearchLatencyP99Ms();
+
+	double getDFSearchLatencyMaxMs();
+
+	long getAgentsCreated();
+
+	long getAgentCreateFailures();
+
+	long getAgentsMoved();
+}
@@ -0,0 +1,62 @@
+package backend;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jade.core.Agent;
+import jade.wrapper.AgentController;
+
+/**
+ * Clasa AgentWakeup trezeste comportamentele blocate ale unui agent de pe alt
+ * fir decat al agentului, de exemplu de pe firul interfetei, dupa ce a pus
+ * ceva intr-o coada citita de un comportament.
+ * <p>
+ * Behaviour.restart() nu poate fi apelat sigur de pe alt fir: modifica starea
+ * comportamentului in acelasi timp cu firul agentului, iar trezirea se poate
+ * pierde daca soseste chiar cand comportamentul se blocheaza. Trezirea trece
+ * de aceea prin coada O2A a agentului ({@link Agent#putO2AObject(Object,
+ * boolean)}), pe care JADE o trateaza ca pe sosirea unui mesaj: toate
+ * comportamentele agentului sunt repornite sub lock-ul planificatorului. Coada
+ * O2A pastreaza un singur obiect, deoarece obiectele nu sunt citite, iar o
+ * cerere de trezire este trimisa o singura data pana cand comportamentul o
+ * observa.
+ */
+final class AgentWakeup {
+
+	private final Agent agent;
+	private final AtomicBoolean requested = new AtomicBoolean();
+
+	/**
+	 * Activeaza coada O2A a agentului. Trebuie apelat de pe firul agentului, de
+	 * exemplu din setup() sau dupa mutarea agentului, pentru ca JADE nu muta
+	 * coada O2A impreuna cu agentul.
+	 *
+	 * @param agent agentul ale carui comportamente sunt trezite.
+	 */
+	AgentWakeup(Agent agent) {
+		this.agent = agent;
+		agent.setEnabledO2ACommunication(true, 1);
+	}
+
+	/**
+	 * Cere trezirea agentului. Poate fi apelat de pe orice fir.
+	 */
+	void request() {
+		if (!requested.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			agent.putO2AObject(this, AgentController.ASYNC);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Marcheaza cererea curenta ca observata. Comportamentul trebuie sa apeleze
+	 * metoda inainte de a-si verifica coada, pentru ca un element adaugat dupa
+	 * verificare sa ceara o noua trezire.
+	 */
+	void clear() {
+		requested.set(false);
+	}
+}
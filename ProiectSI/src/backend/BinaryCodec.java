@@ -0,0 +1,86 @@
+package backend;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Clasa BinaryCodec scrie si citeste numerele si sirurile din fisierele de
+ * index ale istoricului. Numerele sunt scrise pe un numar variabil de octeti,
+ * cate 7 biti pe octet, deci valorile mici (diferente intre pozitii sau
+ * momente consecutive) ocupa unul sau doi octeti. Citirea se face dintr-un
+ * buffer cu tot fisierul, nu dintr-un flux, deoarece fisierele contin milioane
+ * de numere scurte.
+ */
+final class BinaryCodec {
+
+	private BinaryCodec() {
+	}
+
+	static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * Scrie un numar care poate fi si negativ, de exemplu diferenta dintre doua
+	 * momente, astfel incat valorile mici in modul sa ocupe putini octeti.
+	 */
+	static void writeSignedVarLong(DataOutputStream out, long value) throws IOException {
+		writeVarLong(out, (value << 1) ^ (value >> 63));
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	static int readVarInt(ByteBuffer in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.get() & 0xFF;
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid index number");
+	}
+
+	static long readVarLong(ByteBuffer in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			int b = in.get() & 0xFF;
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid index number");
+	}
+
+	static long readSignedVarLong(ByteBuffer in) throws IOException {
+		long value = readVarLong(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static String readString(ByteBuffer in) throws IOException {
+		int length = readVarInt(in);
+		String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return value;
+	}
+}
@@ -0,0 +1,157 @@
+package backend;
+
+import java.util.Locale;
+
+/**
+ * Clasa BlobReference este continutul salvat in istoric pentru un mesaj mare,
+ * trimis in bucati (vezi {@link ChunkedTransfer}). Textul mesajului este pastrat
+ * intr-un {@link BlobStore}, iar istoricul retine doar identificatorul lui
+ * (rezumatul SHA-256 al octetilor), dimensiunea si inceputul textului, pentru
+ * afisare si cautare. Referinta incepe cu un caracter de control, pe care un
+ * mesaj scris de utilizator nu il contine, deci nu poate fi confundata cu un
+ * mesaj obisnuit.
+ */
+public final class BlobReference {
+
+	/**
+	 * Numarul maxim de caractere de la inceputul textului pastrate in referinta.
+	 */
+	public static final int PREVIEW_LENGTH = 120;
+
+	private static final String PREFIX = "\u0001blob:";
+
+	private final String id;
+	private final long size;
+	private final String preview;
+
+	/**
+	 * @param id      identificatorul textului in {@link BlobStore}.
+	 * @param size    dimensiunea textului, in octeti UTF-8.
+	 * @param preview inceputul textului (vezi {@link #preview(String)}).
+	 */
+	public BlobReference(String id, long size, String preview) {
+		this.id = id;
+		this.size = size;
+		this.preview = preview;
+	}
+
+	/**
+	 * Citeste referinta din continutul unui mesaj din istoric.
+	 *
+	 * @param content continutul mesajului.
+	 * @return referinta sau null daca mesajul este unul obisnuit.
+	 */
+	public static BlobReference parse(String content) {
+		if (content == null || !content.startsWith(PREFIX)) {
+			return null;
+		}
+		int idEnd = content.indexOf(':', PREFIX.length());
+		int sizeEnd = idEnd < 0 ? -1 : content.indexOf(':', idEnd + 1);
+		if (sizeEnd < 0) {
+			return null;
+		}
+		try {
+			return new BlobReference(content.substring(PREFIX.length(), idEnd),
+					Long.parseLong(content.substring(idEnd + 1, sizeEnd)), content.substring(sizeEnd + 1));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Obtine textul afisat pentru continutul unui mesaj: continutul insusi sau,
+	 * pentru un mesaj mare, dimensiunea si inceputul lui.
+	 *
+	 * @param content continutul mesajului din istoric.
+	 * @return textul de afisat.
+	 */
+	public static String display(String content) {
+		BlobReference reference = parse(content);
+		return reference == null ? content : reference.toDisplayString();
+	}
+
+	/**
+	 * Descrie un text mare inainte de a fi salvat, in aceeasi forma in care va
+	 * fi afisata referinta lui.
+	 *
+	 * @param text textul mesajului.
+	 * @return dimensiunea si inceputul textului.
+	 */
+	public static String describe(String text) {
+		return new BlobReference("", utf8Length(text), preview(text)).toDisplayString();
+	}
+
+	/**
+	 * Obtine inceputul unui text, pe un singur rand, fara a desparti o pereche
+	 * de surogate.
+	 *
+	 * @param text textul mesajului.
+	 * @return cel mult {@value #PREVIEW_LENGTH} caractere de la inceputul lui.
+	 */
+	public static String preview(String text) {
+		int end = Math.min(text.length(), PREVIEW_LENGTH);
+		if (end > 0 && end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+			end--;
+		}
+		return text.substring(0, end).replace('\r', ' ').replace('\n', ' ');
+	}
+
+	private static long utf8Length(String text) {
+		long length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				// Un surogat fara pereche este scris ca '?'.
+				length++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @return referinta, in forma salvata in istoric.
+	 */
+	public String encode() {
+		return PREFIX + id + ':' + size + ':' + preview;
+	}
+
+	/**
+	 * @return dimensiunea si inceputul textului, de exemplu "[1.5 MB] text...".
+	 */
+	public String toDisplayString() {
+		String formatted = size < 1024 * 1024 ? String.format(Locale.ROOT, "%.1f KB", size / 1024.0)
+				: String.format(Locale.ROOT, "%.1f MB", size / (1024.0 * 1024));
+		return "[" + formatted + "] " + preview + "...";
+	}
+
+	/**
+	 * @return identificatorul textului in {@link BlobStore}.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return dimensiunea textului, in octeti UTF-8.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return inceputul textului.
+	 */
+	public String getPreview() {
+		return preview;
+	}
+}
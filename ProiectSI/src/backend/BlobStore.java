@@ -0,0 +1,245 @@
+package backend;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Clasa BlobStore pastreaza textele mesajelor mari, cate un fisier pentru
+ * fiecare text, intr-un director aflat langa istoric. Numele fisierului este
+ * rezumatul SHA-256 al continutului, deci acelasi text primit de mai multe ori
+ * (de exemplu de doi agenti din acelasi container) este pastrat o singura data,
+ * iar un text primit poate fi verificat fata de identificatorul anuntat de
+ * expeditor.
+ * <p>
+ * Un text este scris intai intr-un fisier temporar, pe masura ce soseste, si
+ * este mutat atomic sub numele lui doar dupa ce a fost scris complet pe disc;
+ * un fisier cu numele unui identificator este deci intotdeauna complet.
+ */
+public class BlobStore {
+
+	private static final String TEMPORARY_SUFFIX = ".part";
+	private static final int WRITE_STEP = 8192;
+
+	/**
+	 * Un text care este scris in magazie. Octetii sunt trecuti direct in fisier,
+	 * deci nu sunt pastrati in memorie.
+	 */
+	public final class PendingBlob {
+		private final File temporary;
+		private final FileOutputStream file;
+		private final MessageDigest digest;
+		private long size;
+		private boolean finished;
+
+		private PendingBlob() throws IOException {
+			directory.mkdirs();
+			temporary = File.createTempFile("blob", TEMPORARY_SUFFIX, directory);
+			file = new FileOutputStream(temporary);
+			digest = newDigest();
+		}
+
+		/**
+		 * Adauga octeti la sfarsitul textului.
+		 *
+		 * @param bytes  octetii adaugati.
+		 * @param offset pozitia primului octet.
+		 * @param length numarul de octeti.
+		 * @throws IOException daca scrierea esueaza.
+		 */
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			file.write(bytes, offset, length);
+			digest.update(bytes, offset, length);
+			size += length;
+		}
+
+		/**
+		 * @return numarul de octeti scrisi pana acum.
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Incheie scrierea: fisierul este scris pe disc si primeste numele
+		 * identificatorului. Daca textul exista deja, fisierul temporar este
+		 * sters.
+		 *
+		 * @param expectedId identificatorul anuntat pentru text sau null daca nu
+		 *                   este verificat.
+		 * @return identificatorul textului.
+		 * @throws IOException daca scrierea esueaza sau textul nu corespunde
+		 *                     identificatorului asteptat.
+		 */
+		public String commit(String expectedId) throws IOException {
+			finished = true;
+			try {
+				file.getChannel().force(true);
+			} finally {
+				file.close();
+			}
+			String id = toHex(digest.digest());
+			if (expectedId != null && !expectedId.equals(id)) {
+				temporary.delete();
+				throw new IOException("Blob content does not match " + expectedId);
+			}
+			File target = fileFor(id);
+			if (target.exists()) {
+				temporary.delete();
+			} else {
+				Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			return id;
+		}
+
+		/**
+		 * Renunta la text si sterge fisierul temporar.
+		 */
+		public void abort() {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			try {
+				file.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			temporary.delete();
+		}
+	}
+
+	private final File directory;
+
+	/**
+	 * Construieste magazia pentru un director, creat la prima scriere. Fisierele
+	 * temporare ramase de la o oprire in timpul unei scrieri sunt sterse.
+	 *
+	 * @param directory directorul in care sunt pastrate textele.
+	 */
+	public BlobStore(File directory) {
+		this.directory = directory;
+		File[] leftovers = directory.listFiles((parent, name) -> name.endsWith(TEMPORARY_SUFFIX));
+		if (leftovers != null) {
+			for (File leftover : leftovers) {
+				leftover.delete();
+			}
+		}
+	}
+
+	/**
+	 * Incepe scrierea unui text primit pe bucati.
+	 *
+	 * @return textul in curs de scriere.
+	 * @throws IOException daca fisierul temporar nu poate fi creat.
+	 */
+	public PendingBlob create() throws IOException {
+		return new PendingBlob();
+	}
+
+	/**
+	 * Salveaza un text, codificat UTF-8. Textul este codificat pe masura ce este
+	 * scris, fara a construi un tablou cu toti octetii lui.
+	 *
+	 * @param text textul salvat.
+	 * @return referinta la text.
+	 * @throws IOException daca scrierea esueaza.
+	 */
+	public BlobReference store(String text) throws IOException {
+		PendingBlob blob = create();
+		try {
+			OutputStream out = new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					blob.write(new byte[] { (byte) b }, 0, 1);
+				}
+
+				@Override
+				public void write(byte[] bytes, int offset, int length) throws IOException {
+					blob.write(bytes, offset, length);
+				}
+			};
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_STEP);
+			for (int from = 0; from < text.length(); from += WRITE_STEP) {
+				writer.write(text, from, Math.min(WRITE_STEP, text.length() - from));
+			}
+			writer.flush();
+			return new BlobReference(blob.commit(null), blob.getSize(), BlobReference.preview(text));
+		} finally {
+			blob.abort();
+		}
+	}
+
+	/**
+	 * Deschide un text pentru citire.
+	 *
+	 * @param id identificatorul textului.
+	 * @return fluxul octetilor textului, codificat UTF-8.
+	 * @throws IOException daca textul nu exista.
+	 */
+	public InputStream open(String id) throws IOException {
+		return new FileInputStream(fileFor(id));
+	}
+
+	/**
+	 * @param id identificatorul textului.
+	 * @return true daca textul este pastrat in magazie.
+	 */
+	public boolean contains(String id) {
+		return fileFor(id).isFile();
+	}
+
+	/**
+	 * @return directorul in care sunt pastrate textele.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Verifica un identificator primit de la alt agent: un identificator valid
+	 * este un rezumat SHA-256 scris hexazecimal, deci nu poate desemna un alt
+	 * fisier decat cele din magazie.
+	 *
+	 * @param id identificatorul verificat; poate lipsi.
+	 * @return true daca identificatorul este valid.
+	 */
+	public static boolean isValidId(String id) {
+		return id != null && id.length() == 64
+				&& id.chars().allMatch(c -> c >= '0' && c <= '9' || c >= 'a' && c <= 'f');
+	}
+
+	private File fileFor(String id) {
+		if (!isValidId(id)) {
+			throw new IllegalArgumentException("Invalid blob id " + id);
+		}
+		return new File(directory, id);
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder out = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			out.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return out.toString();
+	}
+}
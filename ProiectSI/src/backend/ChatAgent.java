@@ -1,18 +1,35 @@
 package backend;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
 
-import javax.swing.SwingUtilities;
+import java.awt.GraphicsEnvironment;
+
+import javax.management.ObjectName;
 
-import frontend.ChatUI;
 import jade.core.AID;
 import jade.core.Agent;
+import jade.core.MessageQueue;
 import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.WakerBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAException;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.proto.SubscriptionInitiator;
 
 /**
  * Agentul de chat care gestioneaza interactiunea cu alti agenti. Extinde clasa
@@ -20,132 +37,693 @@ import jade.lang.acl.ACLMessage;
  */
 public class ChatAgent extends Agent {
 
-	private ChatUI chatUI;
-	private List<AID> allAgents = new ArrayList<>();
-	private boolean canSendMessage = true;
-	private MessageHistory messageHistory;
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Parametrul ACL in care expeditorul transmite momentul trimiterii mesajului,
+	 * pentru ca expeditorul si destinatarul sa salveze acelasi mesaj identic.
+	 */
+	public static final String TIMESTAMP_PARAM = "timestamp";
+
+	/**
+	 * Tipul serviciului cu care agentii de chat se inregistreaza in DF. Un agent
+	 * deregistrat apare in notificarile DF fara servicii, deci inregistrarea
+	 * trebuie sa contina cel putin unul.
+	 */
+	public static final String SERVICE_TYPE = "chat";
+
+	/**
+	 * Tipul serviciului prin care un agent anunta in DF ca este membru al unei
+	 * camere de chat; numele serviciului este numele camerei.
+	 */
+	public static final String ROOM_SERVICE_TYPE = "chat-room";
+
+	/**
+	 * Parametrul ACL care contine numele camerei in care a fost trimis un mesaj.
+	 */
+	public static final String ROOM_PARAM = "room";
+
+	/**
+	 * Argumentul cu care un agent este pornit fara interfata grafica, de exemplu
+	 * "alice:backend.ChatAgent(headless)".
+	 */
+	public static final String HEADLESS_ARG = "headless";
+
+	/**
+	 * Argumentul care alege interfata grafica, de forma "ui=clasa", unde clasa
+	 * implementeaza {@link ChatListener.Factory} si, pentru manager,
+	 * {@link AgentManagerListener.Factory}.
+	 */
+	public static final String UI_ARG = "ui";
+
+	/**
+	 * Interfata grafica folosita cand agentul nu primeste argumentul
+	 * {@value #UI_ARG}; poate fi schimbata prin proprietatea de sistem
+	 * ui.factory. Clasa este cautata doar la pornirea agentului, deci pachetul
+	 * backend poate fi compilat si folosit fara ea, cu agenti fara interfata.
+	 */
+	public static final String DEFAULT_USER_INTERFACE = System.getProperty("ui.factory",
+			"frontend.SwingListenerFactory");
+
+	/**
+	 * Numarul maxim de mesaje preluate din coada agentului la o activare a
+	 * comportamentului de receptie; poate fi schimbat prin proprietatea de sistem
+	 * inbound.maxBatch.
+	 */
+	private static final int INBOUND_BATCH = Integer.getInteger("inbound.maxBatch", 256);
+
+	private static final long DF_RETRY_DELAY = 1000;
+	private static final long DF_MAX_RETRY_DELAY = 30000;
+	private static final long DF_REPLY_TIMEOUT = 10000;
+
+	/**
+	 * O operatie cu DF reluata dupa un esec. Este serializabila, pentru ca
+	 * reluarea programata sa se mute impreuna cu agentul.
+	 */
+	private interface DFOperation extends LongConsumer, Serializable {
+	}
+
+	// Campurile tranzitorii leaga agentul de containerul in care ruleaza; ele
+	// sunt refacute dupa mutarea agentului (vezi afterMove()).
+	private boolean headless;
+	private String userInterface;
+	private transient ChatListener listener;
+	private final AtomicBoolean directoryRequested = new AtomicBoolean();
+	private final LatencyHistogram receiveLatency = new LatencyHistogram();
+	private final ChatAgentMetrics metrics = new ChatAgentMetrics(this);
+	private transient ObjectName metricsName;
+	private final AgentDirectory agentDirectory = new AgentDirectory();
+	private final Set<String> joinedRooms = Collections.synchronizedSet(new TreeSet<>());
+	private final ReliableDelivery delivery = new ReliableDelivery(this);
+	private transient OutboundPipeline outbound;
+	private transient ChunkedTransfer transfers;
+	private transient PriorityInbox inbox;
+	private transient HistoryService historyService;
+	private transient MessageHistory messageHistory;
+	// Conversatiile agentului, copiate la mutare in istoricul noului container.
+	private MovedHistory movedHistory;
+
+	/**
+	 * Construieste agentul cu coada de mesaje primite limitata la
+	 * {@link PriorityInbox#MAX_SIZE} mesaje, pentru ca un agent care ramane in urma
+	 * sa nu ocupe toata memoria containerului.
+	 */
+	public ChatAgent() {
+		setQueueSize(PriorityInbox.MAX_SIZE);
+	}
+
+	/**
+	 * Inlocuieste coada de mesaje primite a agentului cu o coada cu prioritati,
+	 * care elimina mesaje cand este plina (vezi {@link PriorityInbox}). JADE o
+	 * creeaza la pornirea agentului si din nou dupa fiecare mutare.
+	 */
+	@Override
+	protected MessageQueue createMessageQueue() {
+		inbox = new PriorityInbox(this);
+		return inbox;
+	}
 
 	/**
 	 * Metoda care este apelata la pornirea agentului. Initializeaza interfata
-	 * utilizatorului, incarca istoricul mesajelor si inregistreaza agentul in
-	 * directory facilitator (DF) si afiseaza un mesaj in consola cand agentul este
-	 * pornit.
+	 * utilizatorului, se ataseaza la istoricul comun al containerului si
+	 * inregistreaza agentul in directory facilitator (DF) si afiseaza un mesaj in
+	 * consola cand agentul este pornit.
 	 */
 	@Override
 	protected void setup() {
 		System.out.println(getLocalName() + " has started.");
 
-		SwingUtilities.invokeLater(() -> {
-			chatUI = new ChatUI(getLocalName(), ChatAgent.this);
-			chatUI.setVisible(true);
-		});
-
-		messageHistory = new MessageHistory();
-		messageHistory.loadHistoryFromFile();
-		registerAgentInDF();
-		getAllAgents();
+		headless = isHeadless(getArguments());
+		userInterface = userInterface(getArguments());
+		attachToContainer();
+		registerAgentInDF(DF_RETRY_DELAY);
+		// Un agent fara interfata se aboneaza la DF abia cand are nevoie de lista
+		// de agenti, pentru ca mii de agenti abonati ar primi fiecare cate o
+		// notificare pentru fiecare agent nou.
+		if (!headless) {
+			requireDirectory();
+		}
 
+		// Notificarile DF sunt primite de abonament, nu de comportamentul de chat.
+		MessageTemplate chatTemplate = MessageTemplate.not(MessageTemplate.MatchSender(getDefaultDF()));
 		addBehaviour(new CyclicBehaviour() {
+			private final List<ACLMessage> batch = new ArrayList<>();
+
 			@Override
 			public void action() {
-				ACLMessage msg = receive();
-				if (msg != null) {
-					String message = msg.getContent();
-					String sender = msg.getSender().getLocalName();
-					displayMessageToRecipient(sender + ": " + message);
-					messageHistory.addMessage(msg.getSender(), getAID(), message);
-				} else {
+				inbox.sendRejections();
+				ACLMessage msg;
+				while (batch.size() < INBOUND_BATCH && (msg = receive(chatTemplate)) != null) {
+					batch.add(msg);
+				}
+				if (batch.isEmpty()) {
 					block();
+					return;
 				}
+				receiveChatMessages(batch);
+				batch.clear();
 			}
 		});
 	}
 
+	/**
+	 * Afiseaza si salveaza in istoric mesajele de chat din mesajele ACL preluate
+	 * la o activare; fiecare mesaj ACL poate contine un singur mesaj sau un lot
+	 * (vezi {@link MessageBatch}). Mesajele sunt livrate in ordinea trimiterii,
+	 * fara duplicate, iar expeditorii primesc cate o confirmare cumulativa (vezi
+	 * {@link ReliableDelivery}). Refuzurile destinatarilor cu coada plina sunt
+	 * ignorate, pentru ca mesajele refuzate sunt retrimise (vezi
+	 * {@link PriorityInbox}), iar notificarile de esec ale AMS opresc
+	 * retrimiterea catre destinatarul care nu mai exista; niciunele nu sunt
+	 * afisate ca mesaje de chat. Mesajele sunt salvate in istoric impreuna, iar
+	 * interfata primeste o singura actualizare pentru tot lotul.
+	 * 
+	 * @param messages mesajele ACL primite.
+	 */
+	private void receiveChatMessages(List<ACLMessage> messages) {
+		List<ACLMessage> delivered = new ArrayList<>(messages.size());
+		for (ACLMessage msg : messages) {
+			if (!transfers.handle(msg) && !delivery.handle(msg) && !delivery.handleFailure(msg)
+					&& !PriorityInbox.isRejection(msg)) {
+				delivery.accept(msg, delivered);
+			}
+		}
+		delivery.sendAcknowledgements();
+
+		StringBuilder display = new StringBuilder();
+		List<MessageRecord> records = new ArrayList<>();
+		int receiverId = AgentDictionary.idOf(getAID());
+		long now = System.currentTimeMillis();
+		for (ACLMessage msg : delivered) {
+			MessageBatch batch;
+			try {
+				batch = MessageBatch.decode(msg);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				continue;
+			}
+
+			String sender = msg.getSender().getLocalName();
+			String room = msg.getUserDefinedParameter(ROOM_PARAM);
+			int senderId = AgentDictionary.idOf(msg.getSender());
+			int conversationId = room != null ? AgentDictionary.roomId(room) : receiverId;
+			// Un expeditor din acelasi container a inregistrat deja mesajul.
+			boolean recorded = historyService.isAttached(msg.getSender());
+			for (int i = 0; i < batch.size(); i++) {
+				receiveLatency.record(now - batch.getTimestamp(i));
+				if (display.length() > 0) {
+					display.append('\n');
+				}
+				if (room != null) {
+					display.append(AgentDictionary.ROOM_PREFIX).append(room).append(' ');
+				}
+				display.append(sender).append(": ").append(batch.getContent(i));
+				if (!recorded) {
+					records.add(new MessageRecord(senderId, conversationId, batch.getTimestamp(i), batch.getContent(i)));
+				}
+			}
+		}
+
+		if (!records.isEmpty()) {
+			messageHistory.addMessages(records);
+		}
+		if (display.length() > 0) {
+			displayMessageToRecipient(display.toString());
+		}
+	}
+
+	/**
+	 * Salveaza in istoric si afiseaza un mesaj mare, dupa ce toate bucatile lui
+	 * au fost primite si verificate (vezi {@link ChunkedTransfer}). Istoricul
+	 * retine doar referinta la text.
+	 *
+	 * @param sender    agentul care a trimis mesajul.
+	 * @param room      camera in care a fost trimis mesajul sau null.
+	 * @param timestamp momentul trimiterii, in milisecunde.
+	 * @param reference referinta la textul mesajului.
+	 */
+	void receiveLargeMessage(AID sender, String room, long timestamp, BlobReference reference) {
+		receiveLatency.record(System.currentTimeMillis() - timestamp);
+		if (!historyService.isAttached(sender)) {
+			int conversationId = room != null ? AgentDictionary.roomId(room) : AgentDictionary.idOf(getAID());
+			messageHistory.addMessages(Collections.singletonList(
+					new MessageRecord(AgentDictionary.idOf(sender), conversationId, timestamp, reference.encode())));
+		}
+		displayMessageToRecipient((room != null ? AgentDictionary.ROOM_PREFIX + room + " " : "")
+				+ sender.getLocalName() + ": " + reference.toDisplayString());
+	}
+
+	/**
+	 * Metoda care este apelata la oprirea agentului. Trimite mesajele ramase in
+	 * coada de trimitere, deregistreaza agentul din DF, pentru ca ceilalti agenti
+	 * sa fie notificati, si il detaseaza de istoricul comun al containerului.
+	 */
+	@Override
+	protected void takeDown() {
+		if (outbound != null) {
+			outbound.flush();
+		}
+		if (transfers != null) {
+			transfers.close();
+		}
+		long start = System.nanoTime();
+		try {
+			DFService.deregister(this);
+			metrics.recordDFRequest(start);
+		} catch (FIPAException e) {
+			metrics.recordDFFailure();
+			e.printStackTrace();
+		}
+		Metrics.unregister(metricsName);
+		if (historyService != null) {
+			historyService.detach(this);
+		}
+		if (listener != null) {
+			listener.close();
+		}
+		System.out.println(getLocalName() + " has stopped.");
+	}
+
+	/**
+	 * Pregateste mutarea agentului in alt container: trimite mesajele din coada de
+	 * trimitere, abandoneaza transferurile mesajelor mari, copiaza conversatiile
+	 * agentului din istoricul containerului curent (vezi {@link MovedHistory}) si
+	 * elibereaza istoricul, MBean-ul si interfata acestuia. Inregistrarea in DF si
+	 * abonamentul la DF raman valabile, pentru ca agentul isi pastreaza numele.
+	 */
+	@Override
+	protected void beforeMove() {
+		outbound.close();
+		transfers.close();
+		movedHistory = MovedHistory.export(messageHistory, getAID(), new ArrayList<>(joinedRooms));
+		Metrics.unregister(metricsName);
+		historyService.detach(this);
+		listener.close();
+	}
+
+	/**
+	 * Ataseaza agentul mutat la istoricul, MBean-ul si interfata containerului in
+	 * care a ajuns, dupa ce adauga in istoric conversatiile aduse din containerul
+	 * vechi.
+	 */
+	@Override
+	protected void afterMove() {
+		attachToContainer();
+		System.out.println(getLocalName() + " moved to " + here().getName() + ".");
+	}
+
+	/**
+	 * Ataseaza agentul la istoricul comun al containerului in care ruleaza, creeaza
+	 * coada de trimitere si transferurile mesajelor mari, inregistreaza MBean-ul
+	 * agentului si deschide interfata. Dupa o mutare, conversatiile aduse din
+	 * containerul vechi sunt adaugate in istoric inainte ca interfata sa il
+	 * citeasca.
+	 */
+	private void attachToContainer() {
+		historyService = HistoryService.attach(this);
+		messageHistory = historyService.getHistory();
+		if (movedHistory != null) {
+			movedHistory.importInto(messageHistory);
+			movedHistory = null;
+		}
+		outbound = new OutboundPipeline(this, messageHistory, delivery);
+		transfers = new ChunkedTransfer(this, messageHistory);
+		metricsName = Metrics.register("ChatAgent", getName(), metrics);
+		// Interfata este creata dupa istoric, pe care il citeste la deschidere.
+		ChatListener.Factory factory = headless || GraphicsEnvironment.isHeadless() ? null
+				: loadListenerFactory(userInterface, ChatListener.Factory.class);
+		listener = factory != null ? factory.create(this) : new HeadlessChatListener();
+	}
+
 	/**
 	 * Inregistreaza agentul in directory facilitator (DF) pentru a-l face
-	 * disponibil pentru alti agenti.
+	 * disponibil pentru alti agenti. Daca inregistrarea esueaza, este reluata
+	 * mai tarziu de un comportament programat, fara a bloca firul agentului.
+	 * 
+	 * @param retryDelay intervalul dupa care este reluata o inregistrare esuata.
 	 */
-	private void registerAgentInDF() {
+	private void registerAgentInDF(long retryDelay) {
+		long start = System.nanoTime();
 		try {
-			DFAgentDescription dfAgentDescription = new DFAgentDescription();
-			dfAgentDescription.setName(getAID());
-			DFService.register(this, dfAgentDescription);
+			DFService.register(this, createDescription());
+			metrics.recordDFRequest(start);
 			System.out.println(getLocalName() + " registered in DF.");
 		} catch (FIPAException e) {
+			metrics.recordDFFailure();
 			e.printStackTrace();
+			retryLater(retryDelay, this::registerAgentInDF);
+		}
+	}
+
+	/**
+	 * @return metricile agentului, expuse si prin JMX.
+	 */
+	public ChatAgentMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Porneste abonamentul la DF care tine la zi lista de agenti, daca nu a fost
+	 * deja pornit. Pana la prima notificare, lista este goala.
+	 */
+	private void requireDirectory() {
+		if (directoryRequested.compareAndSet(false, true)) {
+			addBehaviour(new OneShotBehaviour(this) {
+				@Override
+				public void action() {
+					subscribeToDF(DF_RETRY_DELAY);
+				}
+			});
 		}
 	}
 
 	/**
-	 * Obtine toti agentii inregistrati in directory facilitator (DF). Impreuna cu o
-	 * logica de retry in cazul in care cautarea nu reuseste din prima.
+	 * Construieste descrierea cu care agentul este inregistrat in DF: serviciul
+	 * de chat si cate un serviciu pentru fiecare camera in care a intrat.
 	 * 
-	 * @return o lista cu agentii gasiti in DF.
+	 * @return descrierea agentului.
 	 */
-	public List<AID> getAllAgents() {
-		List<AID> agents = new ArrayList<>();
-		int retries = 3;
-		int delay = 2000;
+	private DFAgentDescription createDescription() {
+		DFAgentDescription dfAgentDescription = new DFAgentDescription();
+		dfAgentDescription.setName(getAID());
+		ServiceDescription service = new ServiceDescription();
+		service.setType(SERVICE_TYPE);
+		service.setName(getLocalName());
+		dfAgentDescription.addServices(service);
+		synchronized (joinedRooms) {
+			for (String room : joinedRooms) {
+				ServiceDescription roomService = new ServiceDescription();
+				roomService.setType(ROOM_SERVICE_TYPE);
+				roomService.setName(room);
+				dfAgentDescription.addServices(roomService);
+			}
+		}
+		return dfAgentDescription;
+	}
 
-		while (retries > 0) {
-			try {
-				DFAgentDescription template = new DFAgentDescription();
-				DFAgentDescription[] result = DFService.search(this, template);
+	/**
+	 * Se aboneaza la notificarile DF despre agentii de chat. Prima notificare
+	 * contine toti agentii inregistrati, iar urmatoarele doar agentii
+	 * inregistrati sau deregistrati intre timp. Daca DF nu raspunde sau
+	 * abonamentul se incheie, abonarea este reluata mai tarziu.
+	 * 
+	 * @param retryDelay intervalul dupa care este reluat un abonament esuat.
+	 */
+	private void subscribeToDF(long retryDelay) {
+		DFAgentDescription template = new DFAgentDescription();
+		ServiceDescription service = new ServiceDescription();
+		service.setType(SERVICE_TYPE);
+		template.addServices(service);
+		ACLMessage subscription = DFService.createSubscriptionMessage(this, getDefaultDF(), template, null);
+		subscription.setReplyByDate(new Date(System.currentTimeMillis() + DF_REPLY_TIMEOUT));
+		long start = System.nanoTime();
 
-				allAgents.clear();
-				for (DFAgentDescription agentDesc : result) {
-					allAgents.add(agentDesc.getName());
-				}
+		addBehaviour(new SubscriptionInitiator(this, subscription) {
+			private boolean notified;
 
-				agents.addAll(allAgents);
-				break;
-			} catch (FIPAException e) {
-				e.printStackTrace();
-				retries--;
-				if (retries > 0) {
-					try {
-						Thread.sleep(delay);
-					} catch (InterruptedException ex) {
-						ex.printStackTrace();
+			@Override
+			protected void handleInform(ACLMessage inform) {
+				try {
+					DFAgentDescription[] descriptions = DFService.decodeNotification(inform.getContent());
+					if (!notified) {
+						notified = true;
+						// Prima notificare este raspunsul la cautarea tuturor agentilor.
+						metrics.recordDFRequest(start);
+						agentDirectory.reset(descriptions);
+						// Interfata a fost construita inainte de sosirea listei de agenti.
+						listener.agentListChanged();
+						return;
+					}
+					for (DFAgentDescription description : descriptions) {
+						if (description.getAllServices().hasNext()) {
+							agentDirectory.register(description);
+						} else {
+							agentDirectory.deregister(description);
+						}
 					}
+				} catch (FIPAException e) {
+					e.printStackTrace();
 				}
 			}
+
+			@Override
+			public int onEnd() {
+				System.out.println(getLocalName() + " lost its DF subscription, retrying.");
+				metrics.recordDFFailure();
+				retryLater(notified ? DF_RETRY_DELAY : retryDelay, ChatAgent.this::subscribeToDF);
+				return super.onEnd();
+			}
+		});
+	}
+
+	/**
+	 * Programeaza reluarea unei operatii esuate cu DF. Intervalul se dubleaza la
+	 * fiecare esec, pana la {@value #DF_MAX_RETRY_DELAY} ms.
+	 * 
+	 * @param delay  intervalul dupa care este reluata operatia, in milisecunde.
+	 * @param action operatia reluata, care primeste intervalul pentru un nou esec.
+	 */
+	private void retryLater(long delay, DFOperation action) {
+		addBehaviour(new WakerBehaviour(this, delay) {
+			@Override
+			protected void onWake() {
+				action.accept(Math.min(delay * 2, DF_MAX_RETRY_DELAY));
+			}
+		});
+	}
+
+	/**
+	 * Obtine agentii de chat inregistrati in directory facilitator (DF). Lista
+	 * este servita din memoria agentului, actualizata de abonamentul la DF, deci
+	 * apelul nu blocheaza si poate fi facut de pe firul interfetei. Un agent fara
+	 * interfata se aboneaza la DF la primul apel.
+	 * 
+	 * @return o lista cu agentii cunoscuti din DF.
+	 */
+	public List<AID> getAllAgents() {
+		requireDirectory();
+		return agentDirectory.getAgents();
+	}
+
+	/**
+	 * Intra intr-o camera de chat. Apartenenta este anuntata in DF, deci ceilalti
+	 * agenti afla de noul membru din notificarile abonamentului. Actualizarea DF
+	 * se face pe firul agentului.
+	 * 
+	 * @param room numele camerei.
+	 */
+	public void joinRoom(String room) {
+		requireDirectory();
+		if (joinedRooms.add(room)) {
+			addBehaviour(new OneShotBehaviour(this) {
+				@Override
+				public void action() {
+					updateDescriptionInDF();
+				}
+			});
 		}
-		return agents;
 	}
 
 	/**
-	 * Trimite un mesaj unui agent specificat. Mesajul este afisat in interfata
-	 * utilizatorului si adaugat in istoricul mesajelor.
+	 * Paraseste o camera de chat.
+	 * 
+	 * @param room numele camerei.
+	 */
+	public void leaveRoom(String room) {
+		if (joinedRooms.remove(room)) {
+			addBehaviour(new OneShotBehaviour(this) {
+				@Override
+				public void action() {
+					updateDescriptionInDF();
+				}
+			});
+		}
+	}
+
+	private void updateDescriptionInDF() {
+		long start = System.nanoTime();
+		try {
+			DFService.modify(this, createDescription());
+			metrics.recordDFRequest(start);
+		} catch (FIPAException e) {
+			metrics.recordDFFailure();
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Obtine camerele de chat cunoscute din DF.
+	 * 
+	 * @return numele camerelor care au cel putin un membru.
+	 */
+	public Set<String> getRooms() {
+		requireDirectory();
+		return agentDirectory.getRooms();
+	}
+
+	/**
+	 * Obtine membrii unei camere de chat.
+	 * 
+	 * @param room numele camerei.
+	 * @return agentii care au intrat in camera.
+	 */
+	public List<AID> getRoomMembers(String room) {
+		requireDirectory();
+		return agentDirectory.getRoomMembers(room);
+	}
+
+	/**
+	 * Trimite un mesaj tuturor membrilor unei camere de chat, printr-un singur
+	 * mesaj ACL cu mai multi destinatari. Mesajul este salvat o singura data, in
+	 * istoricul camerei. Trimiterea are loc pe firul agentului (vezi
+	 * {@link OutboundPipeline}), deci metoda poate fi apelata de pe orice fir. Un
+	 * mesaj mai lung de {@link ChunkedTransfer#THRESHOLD} caractere este trimis
+	 * in bucati.
 	 * 
 	 * @param messageContent continutul mesajului de trimis.
-	 * @param recipient      agentul destinatar al mesajului.
+	 * @param room           numele camerei.
+	 * @return true daca mesajul a fost acceptat, false daca coada de trimitere
+	 *         este plina.
 	 */
-	public void sendMessage(String messageContent, AID recipient) {
-		if (canSendMessage && recipient != null) {
-			canSendMessage = false;
+	public boolean sendRoomMessage(String messageContent, String room) {
+		List<AID> members = getRoomMembers(room);
+		members.remove(getAID());
+		long timestamp = System.currentTimeMillis();
+		boolean large = messageContent.length() > ChunkedTransfer.THRESHOLD;
+		if (large ? !transfers.offer(room, members, messageContent, timestamp)
+				: !outbound.offerRoom(room, members, messageContent, timestamp)) {
+			return false;
+		}
 
-			ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-			msg.addReceiver(recipient);
-			msg.setContent(messageContent);
-			send(msg);
+		displayMessageToRecipient(AgentDictionary.ROOM_PREFIX + room + " You: "
+				+ (large ? BlobReference.describe(messageContent) : messageContent));
+		return true;
+	}
 
-			chatUI.displayMessage("You: " + messageContent);
-			messageHistory.addMessage(getAID(), recipient, messageContent);
+	/**
+	 * Construieste mesajul trimis intr-o camera de chat: un singur mesaj ACL,
+	 * adresat tuturor membrilor, pe care platforma il livreaza fiecaruia. Mesajul
+	 * are prioritate mica, deci un membru supraincarcat renunta intai la mesajele
+	 * camerelor (vezi {@link PriorityInbox}).
+	 * 
+	 * @param room      numele camerei.
+	 * @param members   destinatarii mesajului.
+	 * @param content   continutul mesajului.
+	 * @param timestamp momentul trimiterii, in milisecunde.
+	 * @return mesajul ACL.
+	 */
+	public static ACLMessage createRoomMessage(String room, Collection<AID> members, String content, long timestamp) {
+		ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+		for (AID member : members) {
+			msg.addReceiver(member);
 		}
+		msg.setContent(content);
+		msg.addUserDefinedParameter(TIMESTAMP_PARAM, Long.toString(timestamp));
+		msg.addUserDefinedParameter(ROOM_PARAM, room);
+		msg.addUserDefinedParameter(PriorityInbox.PRIORITY_PARAM, "low");
+		return msg;
 	}
 
 	/**
-	 * Trimite un mesaj utilizand datele din interfata utilizatorului. Dupa
-	 * trimiterea mesajului, agentul este setat ca fiind capabil sa trimita un alt
-	 * mesaj.
+	 * Obtine istoricul unei camere de chat.
+	 * 
+	 * @param room numele camerei.
+	 * @return istoricul camerei sub forma unui sir de caractere.
+	 */
+	public String getRoomHistory(String room) {
+		return messageHistory.getRoomHistory(room);
+	}
+
+	/**
+	 * Trimite un mesaj unui agent specificat. Mesajul este pus in coada de
+	 * trimitere a agentului (vezi {@link OutboundPipeline}), care il salveaza in
+	 * istoric si il trimite de pe firul agentului; metoda poate fi apelata de pe
+	 * orice fir si nu asteapta trimiterea. Un mesaj mai lung de
+	 * {@link ChunkedTransfer#THRESHOLD} caractere este trimis in bucati, iar
+	 * istoricul retine doar referinta la textul lui. Mesajul este afisat in
+	 * interfata utilizatorului daca a fost acceptat.
 	 * 
 	 * @param messageContent continutul mesajului de trimis.
 	 * @param recipient      agentul destinatar al mesajului.
+	 * @return true daca mesajul a fost acceptat, false daca destinatarul lipseste
+	 *         sau coada de trimitere este plina.
+	 */
+	public boolean sendMessage(String messageContent, AID recipient) {
+		if (recipient == null) {
+			return false;
+		}
+		long timestamp = System.currentTimeMillis();
+		boolean large = messageContent.length() > ChunkedTransfer.THRESHOLD;
+		if (large ? !transfers.offer(null, Collections.singletonList(recipient), messageContent, timestamp)
+				: !outbound.offer(recipient, messageContent, timestamp)) {
+			return false;
+		}
+
+		displayMessageToRecipient("You: " + (large ? BlobReference.describe(messageContent) : messageContent));
+		return true;
+	}
+
+	/**
+	 * Trimite un mesaj utilizand datele din interfata utilizatorului.
+	 * 
+	 * @param messageContent continutul mesajului de trimis.
+	 * @param recipient      agentul destinatar al mesajului.
+	 * @return true daca mesajul a fost acceptat, false daca coada de trimitere
+	 *         este plina.
+	 */
+	public boolean sendMessageFromUI(String messageContent, AID recipient) {
+		return sendMessage(messageContent, recipient);
+	}
+
+	/**
+	 * Obtine coada de trimitere a agentului, pentru metricile ei (rata de
+	 * trimitere, numarul de mesaje care asteapta, mesajele refuzate).
+	 * 
+	 * @return coada de trimitere.
+	 */
+	public OutboundPipeline getOutboundPipeline() {
+		return outbound;
+	}
+
+	/**
+	 * Obtine numerotarea si confirmarea mesajelor agentului, pentru metricile
+	 * ei (mesaje neconfirmate, retrimise, duplicate, nelivrate).
+	 * 
+	 * @return livrarea confirmata a mesajelor agentului.
 	 */
-	public void sendMessageFromUI(String messageContent, AID recipient) {
-		sendMessage(messageContent, recipient);
-		canSendMessage = true;
+	public ReliableDelivery getReliableDelivery() {
+		return delivery;
+	}
+
+	/**
+	 * Obtine coada de mesaje primite a agentului, pentru metricile ei (mesaje
+	 * eliminate si refuzate cand coada era plina).
+	 * 
+	 * @return coada de mesaje primite.
+	 */
+	public PriorityInbox getInbox() {
+		return inbox;
+	}
+
+	/**
+	 * Obtine transferurile mesajelor mari ale agentului, pentru metricile lor.
+	 * 
+	 * @return transferurile agentului.
+	 */
+	public ChunkedTransfer getChunkedTransfer() {
+		return transfers;
+	}
+
+	/**
+	 * Deschide textul complet al unui mesaj mare din istoric.
+	 * 
+	 * @param reference referinta din continutul mesajului (vezi
+	 *                  {@link BlobReference#parse(String)}).
+	 * @return fluxul octetilor textului, codificat UTF-8.
+	 * @throws IOException daca textul nu exista in istoricul containerului.
+	 */
+	public InputStream openAttachment(BlobReference reference) throws IOException {
+		return messageHistory.getBlobStore().open(reference.getId());
 	}
 
 	/**
@@ -154,7 +732,7 @@ public class ChatAgent extends Agent {
 	 * @param message mesajul care va fi afisat.
 	 */
 	public void displayMessageToRecipient(String message) {
-		SwingUtilities.invokeLater(() -> chatUI.displayMessage(message));
+		listener.displayMessage(message);
 	}
 
 	/**
@@ -167,6 +745,56 @@ public class ChatAgent extends Agent {
 		return messageHistory.getConversationHistory(getAID(), recipient);
 	}
 
+	/**
+	 * Obtine ultimele mesaje din conversatia cu un agent destinat.
+	 * 
+	 * @param recipient agentul destinat al conversatiei.
+	 * @param count     numarul maxim de mesaje.
+	 * @return pagina cu ultimele mesaje ale conversatiei.
+	 */
+	public HistoryPage getLastMessages(AID recipient, int count) {
+		return messageHistory.getLastMessages(getAID(), recipient, count);
+	}
+
+	/**
+	 * Obtine mesajele de dinaintea unui cursor din conversatia cu un agent
+	 * destinat.
+	 * 
+	 * @param recipient agentul destinat al conversatiei.
+	 * @param cursor    pozitia primului mesaj deja afisat.
+	 * @param count     numarul maxim de mesaje.
+	 * @return pagina cu mesajele de dinaintea cursorului.
+	 */
+	public HistoryPage getMessagesBefore(AID recipient, int cursor, int count) {
+		return messageHistory.getMessagesBefore(getAID(), recipient, cursor, count);
+	}
+
+	/**
+	 * Cauta in conversatiile agentului curent: mesajele trimise sau primite de el
+	 * si mesajele din camerele in care a intrat.
+	 *
+	 * @param text textul cautarii (vezi {@link SearchQuery}).
+	 * @return mesajele gasite, de la cel mai nou.
+	 * @throws IllegalArgumentException daca textul contine o data invalida.
+	 */
+	public List<MessageRecord> search(String text) {
+		return search(new SearchQuery(text));
+	}
+
+	/**
+	 * Cauta in conversatiile agentului curent: mesajele trimise sau primite de el
+	 * si mesajele din camerele in care a intrat.
+	 *
+	 * @param query cautarea.
+	 * @return mesajele gasite, de la cel mai nou.
+	 */
+	public List<MessageRecord> search(SearchQuery query) {
+		int self = AgentDictionary.idOf(getAID());
+		return messageHistory.search(query, (senderId, receiverId) -> senderId == self || receiverId == self
+				|| AgentDictionary.isRoom(receiverId) && joinedRooms.contains(
+						AgentDictionary.nameOf(receiverId).substring(AgentDictionary.ROOM_PREFIX.length())));
+	}
+
 	/**
 	 * Actualizeaza istoricul conversatiei in interfata utilizatorului pentru un
 	 * agent destinat.
@@ -174,7 +802,83 @@ public class ChatAgent extends Agent {
 	 * @param recipient agentul destinat al conversatiei.
 	 */
 	public void updateConversationHistory(AID recipient) {
-		String history = messageHistory.getConversationHistory(getAID(), recipient);
-		chatUI.updateConversationHistory(history);
+		listener.showConversation(recipient);
+	}
+
+	/**
+	 * Obtine latentele mesajelor de chat primite: timpul dintre momentul
+	 * trimiterii, transmis de expeditor, si preluarea mesajului de catre agent,
+	 * in milisecunde. Numarul de valori este numarul de mesaje primite.
+	 * 
+	 * @return histograma latentelor de receptie.
+	 */
+	public LatencyHistogram getReceiveLatency() {
+		return receiveLatency;
+	}
+
+	/**
+	 * Obtine partea de afisare a agentului: interfata grafica sau, pentru un
+	 * agent pornit fara interfata, un {@link HeadlessChatListener}.
+	 * 
+	 * @return afisarea agentului.
+	 */
+	public ChatListener getChatListener() {
+		return listener;
+	}
+
+	/**
+	 * Verifica daca un agent trebuie pornit fara interfata grafica: daca printre
+	 * argumente se afla {@value #HEADLESS_ARG} sau daca masina virtuala nu are
+	 * ecran.
+	 * 
+	 * @param arguments argumentele agentului; pot lipsi.
+	 * @return true daca agentul nu trebuie sa deschida ferestre.
+	 */
+	public static boolean isHeadless(Object[] arguments) {
+		if (arguments != null) {
+			for (Object argument : arguments) {
+				if (HEADLESS_ARG.equalsIgnoreCase(String.valueOf(argument))) {
+					return true;
+				}
+			}
+		}
+		return GraphicsEnvironment.isHeadless();
+	}
+
+	/**
+	 * Obtine interfata grafica aleasa prin argumentul {@value #UI_ARG}.
+	 *
+	 * @param arguments argumentele agentului; pot lipsi.
+	 * @return numele clasei interfetei sau {@link #DEFAULT_USER_INTERFACE} daca
+	 *         argumentul lipseste.
+	 */
+	static String userInterface(Object[] arguments) {
+		if (arguments != null) {
+			for (Object argument : arguments) {
+				String value = String.valueOf(argument).trim();
+				if (value.startsWith(UI_ARG + "=")) {
+					return value.substring(UI_ARG.length() + 1);
+				}
+			}
+		}
+		return DEFAULT_USER_INTERFACE;
+	}
+
+	/**
+	 * Incarca interfata grafica dupa numele clasei. Daca clasa lipseste sau nu
+	 * este potrivita, agentul porneste fara interfata.
+	 *
+	 * @param className numele clasei interfetei.
+	 * @param type      tipul cerut al interfetei.
+	 * @return interfata sau null daca nu poate fi incarcata.
+	 */
+	static <T> T loadListenerFactory(String className, Class<T> type) {
+		try {
+			return type.cast(Class.forName(className).getConstructor().newInstance());
+		} catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+			System.out.println("Cannot load user interface " + className + " (" + e
+					+ "); starting without a window.");
+			return null;
+		}
 	}
 }
@@ -0,0 +1,182 @@
+package backend;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clasa ChatAgentMetrics este MBean-ul unui {@link ChatAgent}. Contoarele de
+ * mesaje sunt citite din coada de trimitere si din histograma latentelor de
+ * receptie ale agentului; aici sunt pastrate doar masuratorile cererilor catre
+ * DF, in microsecunde. Metricile sunt serializabile si se muta impreuna cu
+ * agentul; in containerul nou, agentul inregistreaza din nou MBean-ul.
+ */
+public class ChatAgentMetrics implements ChatAgentMetricsMBean, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ChatAgent agent;
+	private final LatencyHistogram dfLatency = new LatencyHistogram();
+	private final AtomicLong dfFailures = new AtomicLong();
+
+	public ChatAgentMetrics(ChatAgent agent) {
+		this.agent = agent;
+	}
+
+	/**
+	 * Inregistreaza durata unei cereri reusite catre DF.
+	 *
+	 * @param startNanos momentul inceperii cererii, din {@link System#nanoTime()}.
+	 */
+	void recordDFRequest(long startNanos) {
+		dfLatency.record((System.nanoTime() - startNanos) / 1000);
+	}
+
+	/**
+	 * Numara o cerere catre DF care a esuat sau un abonament pierdut.
+	 */
+	void recordDFFailure() {
+		dfFailures.incrementAndGet();
+	}
+
+	@Override
+	public long getSentMessages() {
+		OutboundPipeline outbound = agent.getOutboundPipeline();
+		return outbound == null ? 0 : outbound.getSentMessages();
+	}
+
+	@Override
+	public long getSentEnvelopes() {
+		OutboundPipeline outbound = agent.getOutboundPipeline();
+		return outbound == null ? 0 : outbound.getSentEnvelopes();
+	}
+
+	@Override
+	public long getRejectedMessages() {
+		OutboundPipeline outbound = agent.getOutboundPipeline();
+		return outbound == null ? 0 : outbound.getRejectedMessages();
+	}
+
+	@Override
+	public double getSendRate() {
+		OutboundPipeline outbound = agent.getOutboundPipeline();
+		return outbound == null ? 0 : outbound.getSendRate();
+	}
+
+	@Override
+	public int getOutboundQueueDepth() {
+		OutboundPipeline outbound = agent.getOutboundPipeline();
+		return outbound == null ? 0 : outbound.getQueueDepth();
+	}
+
+	@Override
+	public int getInboxQueueLength() {
+		return agent.getCurQueueSize();
+	}
+
+	@Override
+	public int getInboxPeakLength() {
+		PriorityInbox inbox = agent.getInbox();
+		return inbox == null ? 0 : inbox.getPeakSize();
+	}
+
+	@Override
+	public long getInboxDroppedMessages() {
+		PriorityInbox inbox = agent.getInbox();
+		return inbox == null ? 0 : inbox.getDroppedMessages();
+	}
+
+	@Override
+	public long getInboxRejectedMessages() {
+		PriorityInbox inbox = agent.getInbox();
+		return inbox == null ? 0 : inbox.getRejectedMessages();
+	}
+
+	@Override
+	public long getReceivedMessages() {
+		return agent.getReceiveLatency().getCount();
+	}
+
+	@Override
+	public int getActiveTransfers() {
+		ChunkedTransfer transfers = agent.getChunkedTransfer();
+		return transfers == null ? 0 : transfers.getActiveTransfers();
+	}
+
+	@Override
+	public long getCompletedTransfers() {
+		ChunkedTransfer transfers = agent.getChunkedTransfer();
+		return transfers == null ? 0 : transfers.getCompletedTransfers();
+	}
+
+	@Override
+	public long getFailedTransfers() {
+		ChunkedTransfer transfers = agent.getChunkedTransfer();
+		return transfers == null ? 0 : transfers.getFailedTransfers();
+	}
+
+	@Override
+	public long getTransferredBytes() {
+		ChunkedTransfer transfers = agent.getChunkedTransfer();
+		return transfers == null ? 0 : transfers.getTransferredBytes();
+	}
+
+	@Override
+	public int getUnacknowledgedEnvelopes() {
+		return agent.getReliableDelivery().getInFlightEnvelopes();
+	}
+
+	@Override
+	public long getRetransmissions() {
+		return agent.getReliableDelivery().getRetransmissions();
+	}
+
+	@Override
+	public long getDuplicateMessages() {
+		return agent.getReliableDelivery().getDuplicates();
+	}
+
+	@Override
+	public long getUndeliveredMessages() {
+		return agent.getReliableDelivery().getUndeliveredMessages();
+	}
+
+	@Override
+	public double getReceiveLatencyMeanMs() {
+		return agent.getReceiveLatency().getMean();
+	}
+
+	@Override
+	public long getReceiveLatencyP50Ms() {
+		return agent.getReceiveLatency().getPercentile(50);
+	}
+
+	@Override
+	public long getReceiveLatencyP99Ms() {
+		return agent.getReceiveLatency().getPercentile(99);
+	}
+
+	@Override
+	public long getReceiveLatencyMaxMs() {
+		return agent.getReceiveLatency().getMax();
+	}
+
+	@Override
+	public long getDFRequests() {
+		return dfLatency.getCount();
+	}
+
+	@Override
+	public long getDFFailures() {
+		return dfFailures.get();
+	}
+
+	@Override
+	public double getDFLatencyMeanMs() {
+		return dfLatency.getMean() / 1000;
+	}
+
+	@Override
+	public double getDFLatencyP99Ms() {
+		return dfLatency.getPercentile(99) / 1000.0;
+	}
+}
@@ -0,0 +1,67 @@
+package backend;
+
+/**
+ * Metricile unui agent de chat, expuse prin JMX (vezi {@link Metrics}).
+ * Latentele de receptie sunt masurate din momentul trimiterii, transmis de
+ * expeditor in parametrul {@link ChatAgent#TIMESTAMP_PARAM}, pana la preluarea
+ * mesajului de catre agent. Cererile catre DF sunt inregistrarea, modificarea,
+ * deregistrarea si primirea listei initiale a abonamentului. Transferurile
+ * sunt mesajele mari trimise sau primite in bucati (vezi
+ * {@link ChunkedTransfer}). Mesajele neconfirmate, retrimise, duplicate si
+ * nelivrate sunt numarate de {@link ReliableDelivery}, iar mesajele eliminate
+ * sau refuzate de coada plina de mesaje primite de {@link PriorityInbox}.
+ */
+public interface ChatAgentMetricsMBean {
+
+	long getSentMessages();
+
+	long getSentEnvelopes();
+
+	long getRejectedMessages();
+
+	double getSendRate();
+
+	int getOutboundQueueDepth();
+
+	int getInboxQueueLength();
+
+	int getInboxPeakLength();
+
+	long getInboxDroppedMessages();
+
+	long getInboxRejectedMessages();
+
+	long getReceivedMessages();
+
+	int getActiveTransfers();
+
+	long getCompletedTransfers();
+
+	long getFailedTransfers();
+
+	long getTransferredBytes();
+
+	int getUnacknowledgedEnvelopes();
+
+	long getRetransmissions();
+
+	long getDuplicateMessages();
+
+	long getUndeliveredMessages();
+
+	double getReceiveLatencyMeanMs();
+
+	long getReceiveLatencyP50Ms();
+
+	long getReceiveLatencyP99Ms();
+
+	long getReceiveLatencyMaxMs();
+
+	long getDFRequests();
+
+	long getDFFailures();
+
+	double getDFLatencyMeanMs();
+
+	double getDFLatencyP99Ms();
+}
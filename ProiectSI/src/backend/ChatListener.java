@@ -0,0 +1,59 @@
+package backend;
+
+import jade.core.AID;
+
+/**
+ * Interfata ChatListener este partea de afisare a unui {@link ChatAgent}.
+ * Agentul nu depinde de Swing: interfata grafica este o implementare a acestei
+ * interfete, creata de un {@link Factory} ales prin argumentul
+ * {@value ChatAgent#UI_ARG} al agentului (vezi
+ * {@link ChatAgent#DEFAULT_USER_INTERFACE}), iar un agent pornit fara interfata
+ * foloseste {@link HeadlessChatListener}.
+ * <p>
+ * Metodele sunt apelate de pe firul agentului sau de pe firul care trimite un
+ * mesaj; o implementare care foloseste Swing trebuie sa treaca singura pe firul
+ * interfetei (EDT).
+ */
+public interface ChatListener {
+
+	/**
+	 * Creeaza afisarea agentilor de chat. O implementare are un constructor
+	 * public fara argumente, pentru ca este incarcata dupa numele clasei.
+	 */
+	interface Factory {
+
+		/**
+		 * Creeaza afisarea unui agent; este apelata de pe firul agentului, la
+		 * pornirea lui si dupa fiecare mutare.
+		 *
+		 * @param agent agentul afisat.
+		 * @return afisarea agentului.
+		 */
+		ChatListener create(ChatAgent agent);
+	}
+
+	/**
+	 * Afiseaza unul sau mai multe mesaje, cate unul pe linie.
+	 *
+	 * @param message mesajul de afisat.
+	 */
+	void displayMessage(String message);
+
+	/**
+	 * Anunta ca lista agentilor de chat cunoscuti s-a schimbat; lista curenta
+	 * poate fi obtinuta cu {@link ChatAgent#getAllAgents()}.
+	 */
+	void agentListChanged();
+
+	/**
+	 * Cere afisarea conversatiei cu un agent.
+	 *
+	 * @param recipient agentul conversatiei.
+	 */
+	void showConversation(AID recipient);
+
+	/**
+	 * Elibereaza resursele de afisare la oprirea agentului.
+	 */
+	void close();
+}
@@ -0,0 +1,542 @@
+package backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jade.core.AID;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.lang.acl.ACLMessage;
+
+/**
+ * Clasa ChunkedTransfer trimite si primeste mesajele mari ale unui agent de
+ * chat. Un mesaj mai lung de {@link #THRESHOLD} caractere nu este pus intr-un
+ * singur mesaj ACL: expeditorul il salveaza intr-un {@link BlobStore}, retine
+ * in istoric doar referinta la el ({@link BlobReference}) si il trimite in
+ * bucati de octeti (continut ACL de tip secventa de octeti), citite pe rand din
+ * fisier. Destinatarul scrie fiecare bucata in propriul {@link BlobStore} pe
+ * masura ce o primeste, deci nici un capat nu tine tot mesajul in memorie.
+ * <p>
+ * Protocolul foloseste identificatorul conversatiei ACL pentru a deosebi
+ * transferurile. Bucatile sunt mesaje INFORM cu parametrul
+ * {@value #TRANSFER_PARAM} egal cu numarul bucatii; prima contine si
+ * identificatorul, dimensiunea si inceputul textului. Destinatarul confirma
+ * bucatile scrise pe disc cu mesaje CONFIRM, al caror parametru
+ * {@value #TRANSFER_PARAM} este numarul de bucati primite, iar expeditorul nu
+ * are niciodata mai mult de {@value #DEFAULT_WINDOW} bucati neconfirmate
+ * (controlul fluxului). O bucata lipsa sau un text care nu corespunde
+ * identificatorului anuntat opreste transferul, cu un mesaj FAILURE catre
+ * expeditor. Transferurile fara activitate mai mult de
+ * {@value #DEFAULT_TIMEOUT_MS} ms sunt abandonate.
+ * <p>
+ * Toate metodele, in afara de {@link #offer}, trebuie apelate de pe firul
+ * agentului.
+ */
+public class ChunkedTransfer {
+
+	/**
+	 * Parametrul ACL care marcheaza mesajele unui transfer: numarul bucatii intr-un
+	 * mesaj INFORM, numarul de bucati primite intr-un mesaj CONFIRM.
+	 */
+	public static final String TRANSFER_PARAM = "transfer";
+
+	/**
+	 * Numarul minim de caractere al unui mesaj trimis in bucati; poate fi
+	 * schimbat prin proprietatea de sistem transfer.thresholdKB.
+	 */
+	public static final int THRESHOLD = Integer.getInteger("transfer.thresholdKB", 64) * 1024;
+
+	private static final String BLOB_PARAM = "blob";
+	private static final String SIZE_PARAM = "blob-size";
+	private static final String PREVIEW_PARAM = "blob-preview";
+	private static final String CHUNKS_PARAM = "chunks";
+	private static final String WINDOW_PARAM = "window";
+
+	private static final int DEFAULT_WINDOW = 8;
+	private static final long DEFAULT_TIMEOUT_MS = 30000;
+	private static final int CHUNK_SIZE = Integer.getInteger("transfer.chunkKB", 32) * 1024;
+	private static final int WINDOW = Math.max(Integer.getInteger("transfer.window", DEFAULT_WINDOW), 1);
+	private static final int MAX_OUTGOING = Integer.getInteger("transfer.maxOutgoing", 4);
+	private static final long TIMEOUT_MS = Long.getLong("transfer.timeoutMs", DEFAULT_TIMEOUT_MS);
+	private static final long CHECK_PERIOD_MS = 5000;
+
+	/**
+	 * Un mesaj mare trimis de agent.
+	 */
+	private static final class Outgoing {
+		final String id;
+		final String room;
+		final long timestamp;
+		final Map<AID, Integer> acknowledged = new LinkedHashMap<>();
+		String content;
+		BlobReference reference;
+		InputStream stream;
+		int chunks;
+		int sent;
+		long lastActivity;
+
+		Outgoing(String id, String room, List<AID> recipients, String content, long timestamp) {
+			this.id = id;
+			this.room = room;
+			this.content = content;
+			this.timestamp = timestamp;
+			for (AID recipient : recipients) {
+				acknowledged.put(recipient, 0);
+			}
+		}
+
+		int confirmed() {
+			int confirmed = chunks;
+			for (int count : acknowledged.values()) {
+				confirmed = Math.min(confirmed, count);
+			}
+			return confirmed;
+		}
+	}
+
+	/**
+	 * Un mesaj mare primit de agent.
+	 */
+	private static final class Incoming {
+		final String id;
+		final AID sender;
+		final String room;
+		final long timestamp;
+		final BlobReference reference;
+		final int chunks;
+		final int acknowledgeEvery;
+		final BlobStore.PendingBlob blob;
+		int received;
+		int acknowledged;
+		long lastActivity;
+
+		Incoming(String id, AID sender, String room, long timestamp, BlobReference reference, int chunks, int window,
+				BlobStore.PendingBlob blob) {
+			this.id = id;
+			this.sender = sender;
+			this.room = room;
+			this.timestamp = timestamp;
+			this.reference = reference;
+			this.chunks = chunks;
+			this.acknowledgeEvery = Math.max(window / 2, 1);
+			this.blob = blob;
+		}
+	}
+
+	private final ChatAgent agent;
+	private final MessageHistory history;
+	private final ConcurrentLinkedQueue<Outgoing> requested = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger outgoingCount = new AtomicInteger();
+	// Tabelele sunt modificate doar pe firul agentului, dar dimensiunile lor sunt
+	// citite si de metrici.
+	private final Map<String, Outgoing> outgoing = new ConcurrentHashMap<>();
+	private final Map<String, Incoming> incoming = new ConcurrentHashMap<>();
+	private final CyclicBehaviour starter;
+	private final AgentWakeup wakeup;
+	private TickerBehaviour watchdog;
+	private final AtomicLong transferredBytes = new AtomicLong();
+	private final AtomicLong completedTransfers = new AtomicLong();
+	private final AtomicLong failedTransfers = new AtomicLong();
+	private long nextId;
+	private volatile boolean closed;
+
+	/**
+	 * Construieste transferurile unui agent si adauga agentului comportamentul
+	 * care incepe trimiterile cerute. Trebuie apelat de pe firul agentului.
+	 *
+	 * @param agent   agentul care trimite si primeste mesajele.
+	 * @param history istoricul agentului, in care sunt salvate textele mari.
+	 */
+	public ChunkedTransfer(ChatAgent agent, MessageHistory history) {
+		this.agent = agent;
+		this.history = history;
+		this.wakeup = new AgentWakeup(agent);
+		this.starter = new CyclicBehaviour(agent) {
+			@Override
+			public void action() {
+				wakeup.clear();
+				Outgoing transfer = requested.poll();
+				if (transfer == null) {
+					block();
+					return;
+				}
+				start(transfer);
+			}
+		};
+		agent.addBehaviour(starter);
+	}
+
+	/**
+	 * Cere trimiterea unui mesaj mare. Salvarea textului si trimiterea au loc pe
+	 * firul agentului, deci metoda poate fi apelata de pe orice fir.
+	 *
+	 * @param room       numele camerei sau null pentru un mesaj catre un agent.
+	 * @param recipients destinatarii mesajului.
+	 * @param content    textul mesajului.
+	 * @param timestamp  momentul trimiterii, in milisecunde.
+	 * @return true daca mesajul a fost acceptat, false daca agentul are deja prea
+	 *         multe transferuri in curs.
+	 */
+	public boolean offer(String room, List<AID> recipients, String content, long timestamp) {
+		if (closed || outgoingCount.incrementAndGet() > MAX_OUTGOING) {
+			outgoingCount.decrementAndGet();
+			return false;
+		}
+		String id;
+		synchronized (this) {
+			id = agent.getName() + "#" + timestamp + "#" + nextId++;
+		}
+		requested.add(new Outgoing(id, room, new ArrayList<>(recipients), content, timestamp));
+		wakeup.request();
+		return true;
+	}
+
+	/**
+	 * Trateaza un mesaj primit, daca face parte dintr-un transfer.
+	 *
+	 * @param msg mesajul ACL primit.
+	 * @return true daca mesajul a fost tratat, false daca este un mesaj de chat
+	 *         obisnuit.
+	 */
+	public boolean handle(ACLMessage msg) {
+		String value = msg.getUserDefinedParameter(TRANSFER_PARAM);
+		if (value == null) {
+			return false;
+		}
+		try {
+			int number = Integer.parseInt(value);
+			switch (msg.getPerformative()) {
+			case ACLMessage.INFORM:
+				receiveChunk(msg, number);
+				break;
+			case ACLMessage.CONFIRM:
+				acknowledge(msg.getConversationId(), msg.getSender(), number);
+				break;
+			case ACLMessage.FAILURE:
+				reject(msg.getConversationId(), msg.getSender());
+				break;
+			default:
+				break;
+			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+		return true;
+	}
+
+	/**
+	 * Abandoneaza toate transferurile, de exemplu la oprirea sau mutarea
+	 * agentului, si scoate comportamentele transferurilor din agent. Expeditorii
+	 * transferurilor primite sunt anuntati printr-un mesaj FAILURE, ca sa nu
+	 * astepte expirarea transferului. Dupa inchidere, mesajele mari noi sunt
+	 * refuzate.
+	 */
+	public void close() {
+		closed = true;
+		Outgoing transfer;
+		while ((transfer = requested.poll()) != null) {
+			outgoingCount.decrementAndGet();
+		}
+		for (Outgoing sending : new ArrayList<>(outgoing.values())) {
+			finish(sending, false);
+		}
+		for (Incoming receiving : new ArrayList<>(incoming.values())) {
+			abort(receiving, true);
+		}
+		agent.removeBehaviour(starter);
+		if (watchdog != null) {
+			agent.removeBehaviour(watchdog);
+			watchdog = null;
+		}
+	}
+
+	/**
+	 * Salveaza textul in magazie si in istoric, apoi trimite primele bucati.
+	 */
+	private void start(Outgoing transfer) {
+		try {
+			transfer.reference = history.getBlobStore().store(transfer.content);
+			transfer.content = null;
+			String content = transfer.reference.encode();
+			if (transfer.room != null) {
+				history.addRoomMessage(agent.getAID(), transfer.room, content, transfer.timestamp);
+			} else {
+				history.addMessage(agent.getAID(), transfer.acknowledged.keySet().iterator().next(), content,
+						transfer.timestamp);
+			}
+			transfer.stream = history.getBlobStore().open(transfer.reference.getId());
+		} catch (IOException e) {
+			e.printStackTrace();
+			outgoingCount.decrementAndGet();
+			failedTransfers.incrementAndGet();
+			return;
+		}
+		transfer.chunks = (int) Math.max((transfer.reference.getSize() + CHUNK_SIZE - 1) / CHUNK_SIZE, 1);
+		transfer.lastActivity = System.currentTimeMillis();
+		outgoing.put(transfer.id, transfer);
+		startWatchdog();
+		sendWindow(transfer);
+	}
+
+	/**
+	 * Trimite bucatile urmatoare, cat timp numarul bucatilor neconfirmate de cel
+	 * mai incet destinatar este sub fereastra.
+	 */
+	private void sendWindow(Outgoing transfer) {
+		if (transfer.acknowledged.isEmpty() || transfer.confirmed() == transfer.chunks) {
+			finish(transfer, true);
+			return;
+		}
+		try {
+			while (transfer.sent < transfer.chunks && transfer.sent < transfer.confirmed() + WINDOW) {
+				byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE,
+						transfer.reference.getSize() - (long) transfer.sent * CHUNK_SIZE)];
+				int read = 0;
+				while (read < chunk.length) {
+					int count = transfer.stream.read(chunk, read, chunk.length - read);
+					if (count < 0) {
+						throw new IOException("Blob " + transfer.reference.getId() + " is shorter than expected");
+					}
+					read += count;
+				}
+
+				ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+				for (AID recipient : transfer.acknowledged.keySet()) {
+					msg.addReceiver(recipient);
+				}
+				msg.setConversationId(transfer.id);
+				msg.addUserDefinedParameter(TRANSFER_PARAM, Integer.toString(transfer.sent));
+				if (transfer.sent == 0) {
+					msg.addUserDefinedParameter(BLOB_PARAM, transfer.reference.getId());
+					msg.addUserDefinedParameter(SIZE_PARAM, Long.toString(transfer.reference.getSize()));
+					msg.addUserDefinedParameter(PREVIEW_PARAM, transfer.reference.getPreview());
+					msg.addUserDefinedParameter(CHUNKS_PARAM, Integer.toString(transfer.chunks));
+					msg.addUserDefinedParameter(WINDOW_PARAM, Integer.toString(WINDOW));
+					msg.addUserDefinedParameter(ChatAgent.TIMESTAMP_PARAM, Long.toString(transfer.timestamp));
+					if (transfer.room != null) {
+						msg.addUserDefinedParameter(ChatAgent.ROOM_PARAM, transfer.room);
+					}
+				}
+				msg.setByteSequenceContent(chunk);
+				agent.send(msg);
+				transfer.sent++;
+				transferredBytes.addAndGet(chunk.length);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			finish(transfer, false);
+		}
+	}
+
+	private void acknowledge(String id, AID sender, int received) {
+		Outgoing transfer = id == null ? null : outgoing.get(id);
+		if (transfer == null || !transfer.acknowledged.containsKey(sender)) {
+			return;
+		}
+		transfer.acknowledged.put(sender, Math.max(transfer.acknowledged.get(sender), Math.min(received,
+				transfer.sent)));
+		transfer.lastActivity = System.currentTimeMillis();
+		sendWindow(transfer);
+	}
+
+	/**
+	 * Scoate din transfer un destinatar care l-a abandonat; ceilalti destinatari
+	 * ai unei camere primesc in continuare bucatile.
+	 */
+	private void reject(String id, AID sender) {
+		Outgoing transfer = id == null ? null : outgoing.get(id);
+		if (transfer == null || transfer.acknowledged.remove(sender) == null) {
+			return;
+		}
+		System.out.println(agent.getLocalName() + ": " + sender.getLocalName() + " rejected transfer " + id + ".");
+		if (transfer.acknowledged.isEmpty()) {
+			finish(transfer, false);
+		} else {
+			sendWindow(transfer);
+		}
+	}
+
+	private void finish(Outgoing transfer, boolean completed) {
+		outgoing.remove(transfer.id);
+		outgoingCount.decrementAndGet();
+		(completed ? completedTransfers : failedTransfers).incrementAndGet();
+		try {
+			if (transfer.stream != null) {
+				transfer.stream.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Scrie o bucata primita in magazie. Dupa ultima bucata, textul este
+	 * verificat fata de identificatorul anuntat, iar referinta la el este salvata
+	 * in istoric si afisata.
+	 */
+	private void receiveChunk(ACLMessage msg, int number) {
+		String id = msg.getConversationId();
+		Incoming transfer = id == null ? null : incoming.get(id);
+		try {
+			if (number == 0 && transfer == null && id != null) {
+				if (!BlobStore.isValidId(msg.getUserDefinedParameter(BLOB_PARAM))) {
+					throw new IllegalArgumentException("Invalid blob id in transfer " + id);
+				}
+				transfer = new Incoming(id, msg.getSender(), msg.getUserDefinedParameter(ChatAgent.ROOM_PARAM),
+						Long.parseLong(msg.getUserDefinedParameter(ChatAgent.TIMESTAMP_PARAM)),
+						new BlobReference(msg.getUserDefinedParameter(BLOB_PARAM),
+								Long.parseLong(msg.getUserDefinedParameter(SIZE_PARAM)),
+								msg.getUserDefinedParameter(PREVIEW_PARAM)),
+						Integer.parseInt(msg.getUserDefinedParameter(CHUNKS_PARAM)),
+						Integer.parseInt(msg.getUserDefinedParameter(WINDOW_PARAM)),
+						history.getBlobStore().create());
+				incoming.put(id, transfer);
+				startWatchdog();
+			}
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			reply(msg, ACLMessage.FAILURE, number);
+			return;
+		}
+		if (transfer == null || !transfer.sender.equals(msg.getSender())) {
+			reply(msg, ACLMessage.FAILURE, number);
+			return;
+		}
+		if (number != transfer.received) {
+			abort(transfer, true);
+			return;
+		}
+
+		byte[] chunk = msg.getByteSequenceContent();
+		try {
+			if (chunk == null || transfer.blob.getSize() + chunk.length > transfer.reference.getSize()) {
+				throw new IOException("Transfer " + id + " chunk " + number + " does not match the announced size");
+			}
+			transfer.blob.write(chunk, 0, chunk.length);
+		} catch (IOException e) {
+			e.printStackTrace();
+			abort(transfer, true);
+			return;
+		}
+		transferredBytes.addAndGet(chunk.length);
+		transfer.received++;
+		transfer.lastActivity = System.currentTimeMillis();
+		if (transfer.received < transfer.chunks) {
+			if (transfer.received - transfer.acknowledged >= transfer.acknowledgeEvery) {
+				transfer.acknowledged = transfer.received;
+				reply(msg, ACLMessage.CONFIRM, transfer.received);
+			}
+			return;
+		}
+
+		incoming.remove(id);
+		try {
+			if (transfer.blob.getSize() != transfer.reference.getSize()) {
+				throw new IOException("Transfer " + id + " has " + transfer.blob.getSize() + " bytes, expected "
+						+ transfer.reference.getSize());
+			}
+			transfer.blob.commit(transfer.reference.getId());
+		} catch (IOException e) {
+			e.printStackTrace();
+			transfer.blob.abort();
+			failedTransfers.incrementAndGet();
+			reply(msg, ACLMessage.FAILURE, transfer.received);
+			return;
+		}
+		reply(msg, ACLMessage.CONFIRM, transfer.received);
+		completedTransfers.incrementAndGet();
+		agent.receiveLargeMessage(transfer.sender, transfer.room, transfer.timestamp, transfer.reference);
+	}
+
+	private void abort(Incoming transfer, boolean notify) {
+		incoming.remove(transfer.id);
+		transfer.blob.abort();
+		failedTransfers.incrementAndGet();
+		if (notify) {
+			ACLMessage msg = new ACLMessage(ACLMessage.FAILURE);
+			msg.addReceiver(transfer.sender);
+			msg.setConversationId(transfer.id);
+			msg.addUserDefinedParameter(TRANSFER_PARAM, Integer.toString(transfer.received));
+			agent.send(msg);
+		}
+	}
+
+	private void reply(ACLMessage msg, int performative, int received) {
+		ACLMessage reply = new ACLMessage(performative);
+		reply.addReceiver(msg.getSender());
+		reply.setConversationId(msg.getConversationId());
+		reply.addUserDefinedParameter(TRANSFER_PARAM, Integer.toString(received));
+		agent.send(reply);
+	}
+
+	/**
+	 * Porneste, daca nu ruleaza deja, verificarea periodica a transferurilor
+	 * fara activitate. Verificarea se opreste singura cand nu mai exista
+	 * transferuri.
+	 */
+	private void startWatchdog() {
+		if (watchdog != null) {
+			return;
+		}
+		watchdog = new TickerBehaviour(agent, CHECK_PERIOD_MS) {
+			@Override
+			protected void onTick() {
+				long deadline = System.currentTimeMillis() - TIMEOUT_MS;
+				for (Outgoing transfer : new ArrayList<>(outgoing.values())) {
+					if (transfer.lastActivity < deadline) {
+						System.out.println(agent.getLocalName() + ": transfer " + transfer.id + " timed out.");
+						finish(transfer, false);
+					}
+				}
+				for (Incoming transfer : new ArrayList<>(incoming.values())) {
+					if (transfer.lastActivity < deadline) {
+						System.out.println(agent.getLocalName() + ": transfer from "
+								+ transfer.sender.getLocalName() + " timed out.");
+						abort(transfer, true);
+					}
+				}
+				if (outgoing.isEmpty() && incoming.isEmpty()) {
+					stop();
+					watchdog = null;
+				}
+			}
+		};
+		agent.addBehaviour(watchdog);
+	}
+
+	/**
+	 * @return numarul de transferuri in curs, trimise sau primite.
+	 */
+	public int getActiveTransfers() {
+		return outgoingCount.get() + incoming.size();
+	}
+
+	/**
+	 * @return numarul de octeti trimisi si primiti in bucati.
+	 */
+	public long getTransferredBytes() {
+		return transferredBytes.get();
+	}
+
+	/**
+	 * @return numarul de transferuri incheiate cu succes.
+	 */
+	public long getCompletedTransfers() {
+		return completedTransfers.get();
+	}
+
+	/**
+	 * @return numarul de transferuri abandonate.
+	 */
+	public long getFailedTransfers() {
+		return failedTransfers.get();
+	}
+}
@@ -0,0 +1,217 @@
+package backend;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.ContainerID;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.TickerBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.wrapper.AgentContainer;
+
+/**
+ * ContainerAgent este agentul de control al unui container, pornit de
+ * {@link AgentManager} in fiecare container pe care il foloseste. Agentul:
+ * <ul>
+ * <li>raporteaza managerului, o data la {@value #REPORT_INTERVAL_MS} ms,
+ * incarcarea containerului: numarul agentilor de chat, mesajele trimise si
+ * primite pe secunda (din MBean-urile agentilor, vezi {@link Metrics}), memoria
+ * heap folosita si agentul cel mai ocupat;</li>
+ * <li>creeaza agenti in containerul sau, la cererea managerului;</li>
+ * <li>muta un agent din containerul sau in alt container, la cererea
+ * managerului, folosind mobilitatea JADE.</li>
+ * </ul>
+ * Cererile si rapoartele sunt mesaje ACL cu parametrii definiti de utilizator
+ * descrisi de constantele clasei. Agentul primeste ca argument numele local al
+ * managerului.
+ */
+public class ContainerAgent extends Agent {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Conversatia rapoartelor de incarcare (INFORM, de la container la manager).
+	 */
+	public static final String LOAD_CONVERSATION = "container-load";
+
+	/**
+	 * Conversatia cererilor managerului (REQUEST) si a raspunsurilor (INFORM sau
+	 * FAILURE).
+	 */
+	public static final String CONTROL_CONVERSATION = "container-control";
+
+	static final String CONTAINER_PARAM = "container";
+	static final String AGENTS_PARAM = "agents";
+	static final String RATE_PARAM = "rate";
+	static final String HEAP_PARAM = "heap";
+	static final String BUSIEST_PARAM = "busiest";
+	static final String BUSIEST_RATE_PARAM = "busiest-rate";
+	static final String ACTION_PARAM = "action";
+	static final String AGENT_PARAM = "agent";
+	static final String CLASS_PARAM = "class";
+	static final String ARGUMENTS_PARAM = "arguments";
+	static final String DESTINATION_PARAM = "destination";
+	static final String CREATE_ACTION = "create";
+	static final String MOVE_ACTION = "move";
+
+	private static final long REPORT_INTERVAL_MS = 1000;
+
+	private AID manager;
+	private final Map<ObjectName, Long> previousTotals = new HashMap<>();
+	private long previousReport;
+
+	/**
+	 * Porneste raportarea incarcarii si tratarea cererilor managerului. Primul
+	 * raport este trimis imediat, pentru ca managerul sa poata folosi containerul.
+	 */
+	@Override
+	protected void setup() {
+		Object[] arguments = getArguments();
+		if (arguments == null || arguments.length == 0) {
+			System.out.println(getLocalName() + " needs the name of its manager.");
+			doDelete();
+			return;
+		}
+		manager = new AID(String.valueOf(arguments[0]), AID.ISLOCALNAME);
+		previousReport = System.nanoTime();
+		reportLoad();
+
+		addBehaviour(new TickerBehaviour(this, REPORT_INTERVAL_MS) {
+			@Override
+			protected void onTick() {
+				reportLoad();
+			}
+		});
+
+		MessageTemplate requests = MessageTemplate.and(MessageTemplate.MatchConversationId(CONTROL_CONVERSATION),
+				MessageTemplate.MatchPerformative(ACLMessage.REQUEST));
+		addBehaviour(new CyclicBehaviour(this) {
+			@Override
+			public void action() {
+				ACLMessage request = receive(requests);
+				if (request == null) {
+					block();
+					return;
+				}
+				handleRequest(request);
+			}
+		});
+		System.out.println(getLocalName() + " is reporting the load of " + here().getName() + ".");
+	}
+
+	/**
+	 * Executa o cerere a managerului si raspunde cu INFORM daca a reusit, sau
+	 * FAILURE cu mesajul erorii.
+	 */
+	private void handleRequest(ACLMessage request) {
+		ACLMessage reply = request.createReply();
+		try {
+			AgentContainer container = getContainerController();
+			String action = request.getUserDefinedParameter(ACTION_PARAM);
+			String agentName = request.getUserDefinedParameter(AGENT_PARAM);
+			if (CREATE_ACTION.equals(action)) {
+				String agentArguments = request.getUserDefinedParameter(ARGUMENTS_PARAM);
+				container.createNewAgent(agentName, request.getUserDefinedParameter(CLASS_PARAM),
+						agentArguments == null ? null : agentArguments.split(",")).start();
+			} else if (MOVE_ACTION.equals(action)) {
+				container.getAgent(agentName)
+						.move(new ContainerID(request.getUserDefinedParameter(DESTINATION_PARAM), null));
+			} else {
+				throw new IllegalArgumentException("Unknown action " + action);
+			}
+			reply.setPerformative(ACLMessage.INFORM);
+		} catch (Exception e) {
+			reply.setPerformative(ACLMessage.FAILURE);
+			reply.setContent(String.valueOf(e.getMessage()));
+		}
+		send(reply);
+	}
+
+	/**
+	 * Trimite managerului incarcarea containerului. Traficul fiecarui agent este
+	 * diferenta contoarelor lui fata de raportul precedent.
+	 */
+	private void reportLoad() {
+		long now = System.nanoTime();
+		double seconds = Math.max(now - previousReport, 1) / 1e9;
+		previousReport = now;
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		int agents = 0;
+		long messages = 0;
+		String busiestAgent = null;
+		long busiestMessages = 0;
+		Map<ObjectName, Long> totals = new HashMap<>();
+		try {
+			for (ObjectName name : server.queryNames(Metrics.objectName("ChatAgent", "*"), null)) {
+				long total = readMessageCount(server, name);
+				if (total < 0) {
+					continue;
+				}
+				agents++;
+				totals.put(name, total);
+				long delta = total - previousTotals.getOrDefault(name, total);
+				messages += delta;
+				if (delta > busiestMessages) {
+					busiestMessages = delta;
+					busiestAgent = ObjectName.unquote(name.getKeyProperty("name"));
+				}
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		previousTotals.clear();
+		previousTotals.putAll(totals);
+
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		long heapLimit = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+
+		ACLMessage report = new ACLMessage(ACLMessage.INFORM);
+		report.addReceiver(manager);
+		report.setConversationId(LOAD_CONVERSATION);
+		report.addUserDefinedParameter(CONTAINER_PARAM, here().getName());
+		report.addUserDefinedParameter(AGENTS_PARAM, Integer.toString(agents));
+		report.addUserDefinedParameter(RATE_PARAM, format(messages / seconds));
+		report.addUserDefinedParameter(HEAP_PARAM, format((double) heap.getUsed() / heapLimit));
+		if (busiestAgent != null) {
+			report.addUserDefinedParameter(BUSIEST_PARAM, busiestAgent);
+			report.addUserDefinedParameter(BUSIEST_RATE_PARAM, format(busiestMessages / seconds));
+		}
+		send(report);
+	}
+
+	/**
+	 * @return mesajele trimise si primite de un agent, sau -1 daca agentul nu mai
+	 *         este in container.
+	 */
+	private static long readMessageCount(MBeanServer server, ObjectName name) throws JMException {
+		AttributeList attributes;
+		try {
+			attributes = server.getAttributes(name, new String[] { "SentMessages", "ReceivedMessages" });
+		} catch (InstanceNotFoundException e) {
+			return -1;
+		}
+		long total = 0;
+		for (Attribute attribute : attributes.asList()) {
+			total += ((Number) attribute.getValue()).longValue();
+		}
+		return total;
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+}
@@ -0,0 +1,100 @@
+package backend;
+
+import java.util.Locale;
+
+/**
+ * Clasa ContainerLoad descrie incarcarea unui container, asa cum a fost
+ * raportata ultima data de {@link ContainerAgent}-ul lui: numarul agentilor de
+ * chat, mesajele trimise si primite pe secunda, memoria heap folosita si agentul
+ * cel mai ocupat. Managerul adauga agentii plasati in container dupa ultimul
+ * raport, pentru ca o creare in masa sa nu fie trimisa toata in acelasi
+ * container.
+ */
+public class ContainerLoad {
+
+	/**
+	 * Numarul de mesaje pe secunda care incarca un container cat un agent in
+	 * plus.
+	 */
+	public static final double RATE_PER_AGENT = 10;
+
+	private final String container;
+	private final int agents;
+	private final double messageRate;
+	private final double heapUsage;
+	private final String busiestAgent;
+	private final double busiestRate;
+	private int placedSinceReport;
+
+	/**
+	 * @param container    numele containerului.
+	 * @param agents       numarul agentilor de chat din container.
+	 * @param messageRate  mesajele trimise si primite pe secunda de agentii din
+	 *                     container.
+	 * @param heapUsage    fractiunea folosita din memoria heap, intre 0 si 1.
+	 * @param busiestAgent numele complet al agentului cu cele mai multe mesaje pe
+	 *                     secunda, sau null daca niciun agent nu are trafic.
+	 * @param busiestRate  mesajele pe secunda ale acestui agent.
+	 */
+	public ContainerLoad(String container, int agents, double messageRate, double heapUsage, String busiestAgent,
+			double busiestRate) {
+		this.container = container;
+		this.agents = agents;
+		this.messageRate = messageRate;
+		this.heapUsage = heapUsage;
+		this.busiestAgent = busiestAgent;
+		this.busiestRate = busiestRate;
+	}
+
+	public String getContainer() {
+		return container;
+	}
+
+	public int getAgents() {
+		return agents;
+	}
+
+	public double getMessageRate() {
+		return messageRate;
+	}
+
+	public double getHeapUsage() {
+		return heapUsage;
+	}
+
+	public String getBusiestAgent() {
+		return busiestAgent;
+	}
+
+	public double getBusiestRate() {
+		return busiestRate;
+	}
+
+	/**
+	 * @return numarul agentilor plasati in container dupa ultimul raport.
+	 */
+	public synchronized int getPlacedSinceReport() {
+		return placedSinceReport;
+	}
+
+	synchronized void placeAgent() {
+		placedSinceReport++;
+	}
+
+	/**
+	 * Calculeaza incarcarea containerului, in agenti: fiecare agent conteaza 1,
+	 * iar traficul conteaza cate un agent pentru fiecare {@value #RATE_PER_AGENT}
+	 * mesaje pe secunda.
+	 *
+	 * @return incarcarea containerului.
+	 */
+	public synchronized double getScore() {
+		return agents + placedSinceReport + messageRate / RATE_PER_AGENT;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%s: %d agents (+%d placed), %.1f msg/s, heap %.0f%%", container,
+				agents, getPlacedSinceReport(), messageRate, heapUsage * 100);
+	}
+}
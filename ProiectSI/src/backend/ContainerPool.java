@@ -0,0 +1,165 @@
+package backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clasa ContainerPool porneste containere periferice JADE ca masini virtuale
+ * separate pe aceeasi masina, conectate la containerul principal al
+ * managerului. Fiecare container are propriul heap, propriul planificator si
+ * propriul istoric: ruleaza in directorul containers/&lt;nume&gt;, deci scrie
+ * chat_history.log acolo; un agent de chat mutat intre containere isi aduce
+ * conversatiile in istoricul noului container (vezi {@link MovedHistory}). In
+ * fiecare container este pornit un {@link ContainerAgent}, care raporteaza
+ * managerului incarcarea containerului.
+ * <p>
+ * Masinile virtuale folosesc acelasi classpath si primesc proprietatile de
+ * sistem ale aplicatiei (history.*, inbound.*, outbound.*, delivery.*,
+ * inbox.*, transfer.*), deci agentii din toate containerele folosesc aceeasi
+ * configuratie. Sunt oprite de {@link #close()} sau la oprirea masinii
+ * virtuale a managerului.
+ */
+public class ContainerPool {
+
+	private static final String CONTAINERS_DIRECTORY = "containers";
+	private static final String[] FORWARDED_PROPERTIES = { "history.", "inbound.", "outbound.", "delivery.",
+			"inbox.", "transfer.", "java.awt.headless" };
+
+	private final String mainHost;
+	private final int mainPort;
+	private final String managerName;
+	private final List<Process> processes = new ArrayList<>();
+	private final List<String> containerNames = new ArrayList<>();
+	private final Thread shutdownHook = new Thread(this::close, "container-pool-shutdown");
+	private boolean hookInstalled;
+
+	/**
+	 * @param mainHost    adresa containerului principal.
+	 * @param mainPort    portul containerului principal.
+	 * @param managerName numele local al managerului care primeste rapoartele de
+	 *                    incarcare.
+	 */
+	public ContainerPool(String mainHost, int mainPort, String managerName) {
+		this.mainHost = mainHost;
+		this.mainPort = mainPort;
+		this.managerName = managerName;
+	}
+
+	/**
+	 * Porneste un container periferic. Containerul poate fi folosit dupa ce
+	 * agentul lui de control trimite primul raport de incarcare.
+	 *
+	 * @param containerName numele containerului.
+	 * @return procesul masinii virtuale a containerului.
+	 * @throws IOException daca procesul nu poate fi pornit.
+	 */
+	public synchronized Process start(String containerName) throws IOException {
+		File directory = new File(CONTAINERS_DIRECTORY, containerName);
+		directory.mkdirs();
+
+		List<String> command = new ArrayList<>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+			String key = String.valueOf(property.getKey());
+			for (String prefix : FORWARDED_PROPERTIES) {
+				if (key.startsWith(prefix)) {
+					command.add("-D" + key + "=" + property.getValue());
+				}
+			}
+		}
+		command.add("-cp");
+		command.add(absoluteClassPath());
+		command.add("jade.Boot");
+		command.add("-container");
+		command.add("-host");
+		command.add(mainHost);
+		command.add("-port");
+		command.add(Integer.toString(mainPort));
+		command.add("-container-name");
+		command.add(containerName);
+		// Fiecare container are nevoie de propriul port local.
+		command.add("-local-port");
+		command.add(Integer.toString(mainPort + processes.size() + 1));
+		command.add("-nomtp");
+		command.add("-agents");
+		command.add(controlAgentName(containerName) + ":" + ContainerAgent.class.getName() + "(" + managerName + ")");
+
+		Process process = new ProcessBuilder(command).directory(directory).redirectErrorStream(true)
+				.redirectOutput(new File(directory, "container.log")).start();
+		processes.add(process);
+		containerNames.add(containerName);
+		if (!hookInstalled) {
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+			hookInstalled = true;
+		}
+		System.out.println("Started container " + containerName + " in " + directory.getAbsolutePath() + ".");
+		return process;
+	}
+
+	/**
+	 * @return numele containerelor pornite.
+	 */
+	public synchronized List<String> getContainerNames() {
+		return new ArrayList<>(containerNames);
+	}
+
+	/**
+	 * Opreste masinile virtuale ale containerelor pornite.
+	 */
+	public void close() {
+		List<Process> running;
+		synchronized (this) {
+			running = new ArrayList<>(processes);
+			processes.clear();
+			if (hookInstalled && Thread.currentThread() != shutdownHook) {
+				try {
+					Runtime.getRuntime().removeShutdownHook(shutdownHook);
+				} catch (IllegalStateException e) {
+					// Masina virtuala se opreste deja.
+				}
+				hookInstalled = false;
+			}
+		}
+		for (Process process : running) {
+			process.destroy();
+		}
+		for (Process process : running) {
+			try {
+				if (!process.waitFor(5, TimeUnit.SECONDS)) {
+					process.destroyForcibly();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Obtine numele agentului de control al unui container.
+	 *
+	 * @param containerName numele containerului.
+	 * @return numele local al agentului.
+	 */
+	public static String controlAgentName(String containerName) {
+		return containerName + "-control";
+	}
+
+	/**
+	 * Containerele ruleaza in alt director, deci caile relative din classpath
+	 * sunt transformate in cai absolute.
+	 */
+	private static String absoluteClassPath() {
+		StringBuilder classPath = new StringBuilder();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			if (classPath.length() > 0) {
+				classPath.append(File.pathSeparatorChar);
+			}
+			classPath.append(new File(entry).getAbsolutePath());
+		}
+		return classPath.toString();
+	}
+}
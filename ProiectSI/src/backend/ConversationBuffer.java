@@ -0,0 +1,186 @@
+package backend;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Clasa ConversationBuffer pastreaza in memorie mesajele unei conversatii in
+ * tablouri paralele la care mesajele sunt doar adaugate: momentul trimiterii,
+ * expeditorul si continutul. Destinatarul nu este retinut: intr-o conversatie
+ * intre doi agenti este celalalt participant, iar intr-o camera de chat este
+ * camera insasi. Textul afisat in interfata nu este pastrat, ci construit abia
+ * la afisare. Scrierile trebuie facute de un singur fir la un moment dat (sub
+ * lock-ul conversatiei), iar citirile nu folosesc niciun lock: un cititor
+ * obtine o imagine a mesajelor existente la momentul citirii, care nu se mai
+ * schimba ulterior.
+ * <p>
+ * Bufferul isi estimeaza memoria ocupata si retine momentul ultimei folosiri,
+ * dupa care {@link ConversationCache} alege conversatiile eliminate din
+ * memorie.
+ */
+public class ConversationBuffer {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int OBJECT_BYTES = 96;
+	private static final int SLOT_BYTES = 16;
+	private static final int STRING_BYTES = 40;
+
+	private final int lowId;
+	private final int highId;
+	private volatile long[] timestamps;
+	private volatile int[] senders;
+	private volatile String[] contents;
+	private volatile int size;
+	private volatile long contentBytes;
+	private volatile long lastAccess;
+
+	/**
+	 * Construieste un buffer gol pentru o conversatie.
+	 *
+	 * @param conversationKey cheia conversatiei (vezi
+	 *                        {@link AgentDictionary#conversationKey}).
+	 */
+	public ConversationBuffer(long conversationKey) {
+		this(conversationKey, INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Construieste un buffer gol, cu o capacitate initiala data.
+	 *
+	 * @param conversationKey cheia conversatiei.
+	 * @param capacity        numarul de mesaje pentru care se rezerva loc.
+	 */
+	public ConversationBuffer(long conversationKey, int capacity) {
+		lowId = AgentDictionary.lowId(conversationKey);
+		highId = AgentDictionary.highId(conversationKey);
+		int initial = Math.max(capacity, 1);
+		timestamps = new long[initial];
+		senders = new int[initial];
+		contents = new String[initial];
+	}
+
+	/**
+	 * Adauga un mesaj la sfarsitul conversatiei, daca nu exista deja printre
+	 * ultimele mesaje (vezi {@link HistoryLog#addIfAbsent}). Mesajul este scris in
+	 * tablouri inainte ca noua dimensiune sa fie publicata, deci cititorii nu vad
+	 * niciodata o pozitie necompletata. Apelantul trebuie sa detina lock-ul
+	 * conversatiei.
+	 *
+	 * @param record mesajul de adaugat.
+	 * @return true daca mesajul a fost adaugat.
+	 */
+	public boolean appendIfAbsent(MessageRecord record) {
+		int sender = record.getSenderId();
+		long timestamp = record.getTimestamp();
+		String content = record.getContent();
+
+		long[] currentTimestamps = timestamps;
+		int[] currentSenders = senders;
+		String[] currentContents = contents;
+		int count = size;
+		for (int i = count - 1, checked = 0; i >= 0; i--, checked++) {
+			if (checked >= HistoryLog.DEDUP_LOOKBACK && currentTimestamps[i] < timestamp) {
+				break;
+			}
+			if (currentTimestamps[i] == timestamp && currentSenders[i] == sender
+					&& currentContents[i].equals(content)) {
+				return false;
+			}
+		}
+
+		if (count == currentTimestamps.length) {
+			currentTimestamps = Arrays.copyOf(currentTimestamps, count * 2);
+			currentSenders = Arrays.copyOf(currentSenders, count * 2);
+			currentContents = Arrays.copyOf(currentContents, count * 2);
+			currentTimestamps[count] = timestamp;
+			currentSenders[count] = sender;
+			currentContents[count] = content;
+			timestamps = currentTimestamps;
+			senders = currentSenders;
+			contents = currentContents;
+		} else {
+			currentTimestamps[count] = timestamp;
+			currentSenders[count] = sender;
+			currentContents[count] = content;
+		}
+		contentBytes += STRING_BYTES + 2L * content.length();
+		size = count + 1;
+		return true;
+	}
+
+	/**
+	 * Adauga textul conversatiei, cate o linie "expeditor: continut" pentru
+	 * fiecare mesaj, fara a construi siruri intermediare.
+	 *
+	 * @param out destinatia textului.
+	 * @return destinatia primita, pentru inlantuire.
+	 */
+	public StringBuilder render(StringBuilder out) {
+		// Dimensiunea este citita inaintea tablourilor: orice tablou publicat dupa
+		// ea contine cel putin atatea mesaje.
+		int count = size;
+		int[] currentSenders = senders;
+		String[] currentContents = contents;
+		for (int i = 0; i < count; i++) {
+			out.append(AgentDictionary.nameOf(currentSenders[i])).append(": ")
+					.append(BlobReference.display(currentContents[i])).append('\n');
+		}
+		return out;
+	}
+
+	/**
+	 * Obtine o imagine a mesajelor din conversatie. Imaginea nu copiaza
+	 * tablourile si nu se schimba daca ulterior sunt adaugate mesaje noi;
+	 * inregistrarile sunt construite abia cand sunt cerute.
+	 *
+	 * @return mesajele conversatiei, in ordinea in care au fost adaugate.
+	 */
+	public List<MessageRecord> snapshot() {
+		int count = size;
+		long[] currentTimestamps = timestamps;
+		int[] currentSenders = senders;
+		String[] currentContents = contents;
+		return new AbstractList<MessageRecord>() {
+			@Override
+			public MessageRecord get(int index) {
+				if (index < 0 || index >= count) {
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+				}
+				int sender = currentSenders[index];
+				return new MessageRecord(sender, sender == lowId ? highId : lowId, currentTimestamps[index],
+						currentContents[index]);
+			}
+
+			@Override
+			public int size() {
+				return count;
+			}
+		};
+	}
+
+	/**
+	 * Estimeaza memoria ocupata de buffer: tablourile, la capacitatea lor, si
+	 * textele mesajelor, cu doi octeti pe caracter.
+	 *
+	 * @return numarul estimat de octeti.
+	 */
+	public long estimatedBytes() {
+		return OBJECT_BYTES + (long) timestamps.length * SLOT_BYTES + contentBytes;
+	}
+
+	void touch(long tick) {
+		lastAccess = tick;
+	}
+
+	long getLastAccess() {
+		return lastAccess;
+	}
+
+	/**
+	 * @return numarul de mesaje din conversatie.
+	 */
+	public int size() {
+		return size;
+	}
+}
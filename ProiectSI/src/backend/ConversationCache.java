@@ -0,0 +1,184 @@
+package backend;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Clasa ConversationCache pastreaza in memorie conversatiile folosite recent de
+ * {@link MessageHistory}, in limita unui buget de memorie. Cand memoria
+ * estimata a conversatiilor (vezi {@link ConversationBuffer#estimatedBytes()})
+ * depaseste bugetul, sunt eliminate conversatiile nefolosite de cel mai mult
+ * timp, pana cand raman cel mult {@value #EVICTION_TARGET_PERCENT}% din buget;
+ * o conversatie eliminata este citita din nou din jurnal la urmatoarea cerere.
+ * Bugetul este dat in megaocteti de proprietatea de sistem history.cacheMB
+ * (implicit {@value #DEFAULT_BUDGET_MB}).
+ * <p>
+ * Cautarea unei conversatii nu foloseste niciun lock: ordinea folosirii este
+ * retinuta ca un numar de ordine scris in conversatie, nu intr-o lista mutata
+ * la fiecare acces, iar conversatiile de eliminat sunt alese abia cand bugetul
+ * este depasit.
+ */
+public class ConversationCache {
+
+	private static final long DEFAULT_BUDGET_MB = 64;
+	private static final int EVICTION_TARGET_PERCENT = 90;
+
+	private final LongObjectMap<ConversationBuffer> conversations = new LongObjectMap<>();
+	private final long budgetBytes;
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong evictedBytes = new AtomicLong();
+	private final Object evictionLock = new Object();
+
+	/**
+	 * Construieste un cache cu bugetul dat de proprietatea history.cacheMB.
+	 */
+	public ConversationCache() {
+		this(Long.getLong("history.cacheMB", DEFAULT_BUDGET_MB) * 1024 * 1024);
+	}
+
+	/**
+	 * Construieste un cache cu un buget dat.
+	 *
+	 * @param budgetBytes memoria estimata maxima a conversatiilor, in octeti.
+	 */
+	public ConversationCache(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+	}
+
+	/**
+	 * Cauta o conversatie in cache si o marcheaza ca folosita.
+	 *
+	 * @param conversationKey cheia conversatiei.
+	 * @return conversatia sau null daca nu este in memorie.
+	 */
+	public ConversationBuffer get(long conversationKey) {
+		ConversationBuffer conversation = conversations.get(conversationKey);
+		if (conversation != null) {
+			conversation.touch(clock.incrementAndGet());
+			hits.incrementAndGet();
+		}
+		return conversation;
+	}
+
+	/**
+	 * Adauga o conversatie citita din jurnal. Apelantul trebuie sa detina lock-ul
+	 * conversatiei.
+	 *
+	 * @param conversationKey cheia conversatiei.
+	 * @param conversation    conversatia citita.
+	 */
+	public void put(long conversationKey, ConversationBuffer conversation) {
+		conversation.touch(clock.incrementAndGet());
+		conversations.put(conversationKey, conversation);
+		bytes.addAndGet(conversation.estimatedBytes());
+		misses.incrementAndGet();
+	}
+
+	/**
+	 * Inregistreaza cresterea unei conversatii din cache, dupa adaugarea unor
+	 * mesaje. Apelantul trebuie sa detina lock-ul conversatiei.
+	 *
+	 * @param delta diferenta dintre memoria estimata dupa si inainte de adaugare.
+	 */
+	public void grew(long delta) {
+		if (delta != 0) {
+			bytes.addAndGet(delta);
+		}
+	}
+
+	/**
+	 * Elimina conversatiile nefolosite de cel mai mult timp, daca bugetul este
+	 * depasit. Fiecare conversatie este eliminata sub lock-ul ei, deci nu in
+	 * timp ce i se adauga mesaje; apelantul nu trebuie sa detina niciun lock de
+	 * conversatie.
+	 *
+	 * @param lockFor obtine lock-ul unei conversatii dupa cheie.
+	 */
+	public void evictIfNeeded(LongFunction<Object> lockFor) {
+		if (bytes.get() <= budgetBytes) {
+			return;
+		}
+		synchronized (evictionLock) {
+			if (bytes.get() <= budgetBytes) {
+				return;
+			}
+			long[] keys = conversations.keys();
+			long[] order = new long[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				ConversationBuffer conversation = conversations.get(keys[i]);
+				order[i] = conversation == null ? 0 : conversation.getLastAccess();
+			}
+			Integer[] indexes = new Integer[keys.length];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = i;
+			}
+			Arrays.sort(indexes, (a, b) -> Long.compare(order[a], order[b]));
+
+			long target = budgetBytes / 100 * EVICTION_TARGET_PERCENT;
+			for (int i = 0; i < indexes.length && bytes.get() > target; i++) {
+				long key = keys[indexes[i]];
+				synchronized (lockFor.apply(key)) {
+					ConversationBuffer conversation = conversations.get(key);
+					if (conversation != null && conversations.remove(key, conversation)) {
+						long size = conversation.estimatedBytes();
+						bytes.addAndGet(-size);
+						evictedBytes.addAndGet(size);
+						evictions.incrementAndGet();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return numarul de cereri gasite in cache.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return numarul de conversatii citite din jurnal, pentru ca nu erau in
+	 *         cache.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return numarul de conversatii eliminate din cache.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return memoria estimata a conversatiilor eliminate, in octeti.
+	 */
+	public long getEvictedBytes() {
+		return evictedBytes.get();
+	}
+
+	/**
+	 * @return numarul de conversatii din cache.
+	 */
+	public int getSize() {
+		return conversations.size();
+	}
+
+	/**
+	 * @return memoria estimata a conversatiilor din cache, in octeti.
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public long getBudgetBytes() {
+		return budgetBytes;
+	}
+}
@@ -0,0 +1,55 @@
+package backend;
+
+/**
+ * Clasa ConversationCacheMetrics este MBean-ul unui {@link ConversationCache}.
+ * Valorile sunt citite direct din contoarele cache-ului.
+ */
+public class ConversationCacheMetrics implements ConversationCacheMetricsMBean {
+
+	private final ConversationCache cache;
+
+	public ConversationCacheMetrics(ConversationCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public long getHits() {
+		return cache.getHits();
+	}
+
+	@Override
+	public long getMisses() {
+		return cache.getMisses();
+	}
+
+	@Override
+	public double getHitRatio() {
+		long requests = cache.getHits() + cache.getMisses();
+		return requests == 0 ? 0 : (double) cache.getHits() / requests;
+	}
+
+	@Override
+	public long getEvictions() {
+		return cache.getEvictions();
+	}
+
+	@Override
+	public long getEvictedBytes() {
+		return cache.getEvictedBytes();
+	}
+
+	@Override
+	public int getCachedConversations() {
+		return cache.getSize();
+	}
+
+	@Override
+	public long getCachedBytes() {
+		return cache.getBytes();
+	}
+
+	@Override
+	public long getBudgetBytes() {
+		return cache.getBudgetBytes();
+	}
+}
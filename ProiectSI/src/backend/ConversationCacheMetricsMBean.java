@@ -0,0 +1,25 @@
+package backend;
+
+/**
+ * Metricile cache-ului de conversatii al unui istoric, expuse prin JMX (vezi
+ * {@link Metrics}): cererile gasite si negasite in cache, conversatiile
+ * eliminate si memoria estimata ocupata, fata de buget.
+ */
+public interface ConversationCacheMetricsMBean {
+
+	long getHits();
+
+	long getMisses();
+
+	double getHitRatio();
+
+	long getEvictions();
+
+	long getEvictedBytes();
+
+	int getCachedConversations();
+
+	long getCachedBytes();
+
+	long getBudgetBytes();
+}
@@ -0,0 +1,295 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Clasa ConversationIndex retine, pentru o conversatie, pozitia in jurnal si
+ * momentul trimiterii fiecarui mesaj, in ordinea in care au fost scrise.
+ * Permite citirea mesajelor unei conversatii direct din jurnal, fara parcurgerea
+ * intregului fisier. Mesajele care asteapta inca sa fie scrise de
+ * {@link HistoryWriter} sunt pastrate separat, la coada conversatiei, pana cand
+ * li se cunoaste pozitia in jurnal.
+ * <p>
+ * Momentele nu cresc neaparat odata cu pozitiile: un lot este scris dupa
+ * mesajele lui, cu momentele lor anterioare, iar mesajele primite poarta
+ * momentul dat de ceasul expeditorului. Cat timp momentele sunt totusi
+ * crescatoare, cautarea dupa moment se face direct in index; la primul mesaj
+ * cu un moment mai mic decat al celui anterior este construita o permutare a
+ * pozitiilor ordonata dupa moment, actualizata apoi la fiecare adaugare.
+ */
+public class ConversationIndex {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] offsets;
+	private long[] timestamps;
+	private int size;
+	private int[] byTimestamp;
+	private final List<MessageRecord> pending = new ArrayList<>();
+
+	public ConversationIndex() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Construieste un index gol, cu o capacitate initiala data.
+	 *
+	 * @param capacity numarul de mesaje pentru care se rezerva loc.
+	 */
+	public ConversationIndex(int capacity) {
+		offsets = new long[Math.max(capacity, 1)];
+		timestamps = new long[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Adauga pozitia unui mesaj la sfarsitul indexului.
+	 *
+	 * @param offset    pozitia mesajului in jurnal.
+	 * @param timestamp momentul trimiterii mesajului.
+	 */
+	public void add(long offset, long timestamp) {
+		if (size == offsets.length) {
+			offsets = Arrays.copyOf(offsets, size * 2);
+			timestamps = Arrays.copyOf(timestamps, size * 2);
+		}
+		offsets[size] = offset;
+		timestamps[size] = timestamp;
+		if (byTimestamp == null && size > 0 && timestamp < timestamps[size - 1]) {
+			byTimestamp = new int[offsets.length];
+			for (int i = 0; i < size; i++) {
+				byTimestamp[i] = i;
+			}
+		}
+		if (byTimestamp != null) {
+			insertByTimestamp(size, timestamp);
+		}
+		size++;
+	}
+
+	/**
+	 * Adauga la sfarsitul indexului pozitiile din alt index, de exemplu cele
+	 * rescrise de compactarea jurnalului. Daca momentele raman crescatoare,
+	 * pozitiile sunt copiate dintr-o data.
+	 *
+	 * @param other indexul ale carui pozitii sunt adaugate.
+	 */
+	public void addAll(ConversationIndex other) {
+		if (byTimestamp != null || other.byTimestamp != null
+				|| (size > 0 && other.size > 0 && other.timestamps[0] < timestamps[size - 1])) {
+			for (int i = 0; i < other.size; i++) {
+				add(other.offsets[i], other.timestamps[i]);
+			}
+			return;
+		}
+		if (size + other.size > offsets.length) {
+			offsets = Arrays.copyOf(offsets, Math.max(size + other.size, size * 2));
+			timestamps = Arrays.copyOf(timestamps, offsets.length);
+		}
+		System.arraycopy(other.offsets, 0, offsets, size, other.size);
+		System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+		size += other.size;
+	}
+
+	/**
+	 * Insereaza o pozitie noua in permutarea ordonata dupa moment, dupa pozitiile
+	 * cu acelasi moment. Mesajele sosesc de obicei cu putin in urma celor
+	 * anterioare, deci deplasarea este scurta.
+	 */
+	private void insertByTimestamp(int position, long timestamp) {
+		if (byTimestamp.length < offsets.length) {
+			byTimestamp = Arrays.copyOf(byTimestamp, offsets.length);
+		}
+		int at = position;
+		while (at > 0 && timestamps[byTimestamp[at - 1]] > timestamp) {
+			at--;
+		}
+		System.arraycopy(byTimestamp, at, byTimestamp, at + 1, position - at);
+		byTimestamp[at] = position;
+	}
+
+	/**
+	 * Adauga la coada conversatiei un mesaj care nu a fost inca scris in jurnal.
+	 *
+	 * @param record mesajul care asteapta sa fie scris.
+	 */
+	public void addPending(MessageRecord record) {
+		pending.add(record);
+	}
+
+	/**
+	 * Muta un mesaj din coada conversatiei in index, dupa ce a fost scris in
+	 * jurnal.
+	 *
+	 * @param record mesajul scris.
+	 * @param offset pozitia la care a fost scris.
+	 */
+	public void markWritten(MessageRecord record, long offset) {
+		for (int i = 0; i < pending.size(); i++) {
+			if (pending.get(i) == record) {
+				pending.remove(i);
+				break;
+			}
+		}
+		add(offset, record.getTimestamp());
+	}
+
+	/**
+	 * @return numarul de mesaje care asteapta sa fie scrise.
+	 */
+	public int pendingSize() {
+		return pending.size();
+	}
+
+	/**
+	 * @param i pozitia mesajului in coada conversatiei.
+	 * @return mesajul care asteapta sa fie scris.
+	 */
+	public MessageRecord pendingAt(int i) {
+		return pending.get(i);
+	}
+
+	/**
+	 * Cauta, in ordinea momentelor, primul mesaj al carui moment este cel putin
+	 * egal cu cel dat. Rezultatul este un rang, transformat in pozitie de
+	 * {@link #positionByTimestamp(int)}.
+	 *
+	 * @param timestamp momentul cautat.
+	 * @return rangul primului mesaj cu moment mai mare sau egal, sau
+	 *         {@link #size()}.
+	 */
+	public int lowerBound(long timestamp) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestamps[positionByTimestamp(middle)] < timestamp) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param rank rangul mesajului in ordinea momentelor; mesajele cu acelasi
+	 *             moment sunt in ordinea scrierii.
+	 * @return pozitia mesajului in conversatie.
+	 */
+	public int positionByTimestamp(int rank) {
+		return byTimestamp == null ? rank : byTimestamp[rank];
+	}
+
+	/**
+	 * Obtine pozitiile mesajelor scrise intr-un interval de timp.
+	 *
+	 * @param from  inceputul intervalului, inclusiv.
+	 * @param to    sfarsitul intervalului, exclusiv.
+	 * @param limit numarul maxim de pozitii.
+	 * @return primele pozitii din interval, in ordinea scrierii.
+	 */
+	public int[] positionsBetween(long from, long to, int limit) {
+		int first = lowerBound(from);
+		int last = Math.max(lowerBound(to), first);
+		if (byTimestamp == null) {
+			int[] positions = new int[Math.min(last - first, Math.max(limit, 0))];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = first + i;
+			}
+			return positions;
+		}
+		int[] positions = Arrays.copyOfRange(byTimestamp, first, last);
+		Arrays.sort(positions);
+		return positions.length > limit ? Arrays.copyOf(positions, Math.max(limit, 0)) : positions;
+	}
+
+	/**
+	 * Cauta prima pozitie din index a carei pozitie in jurnal este cel putin egala
+	 * cu cea data. Mesajele sunt adaugate in ordinea scrierii, deci pozitiile in
+	 * jurnal sunt crescatoare.
+	 *
+	 * @param offset pozitia in jurnal cautata.
+	 * @return prima pozitie din index cu pozitie in jurnal mai mare sau egala,
+	 *         sau {@link #size()}.
+	 */
+	public int positionOf(long offset) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (offsets[middle] < offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Pastreaza doar primele mesaje scrise din index; mesajele care asteapta sa
+	 * fie scrise raman la coada conversatiei.
+	 *
+	 * @param newSize numarul de mesaje pastrate.
+	 */
+	public void truncate(int newSize) {
+		if (newSize >= size) {
+			return;
+		}
+		if (byTimestamp != null) {
+			int kept = 0;
+			for (int i = 0; i < size; i++) {
+				if (byTimestamp[i] < newSize) {
+					byTimestamp[kept++] = byTimestamp[i];
+				}
+			}
+		}
+		size = newSize;
+	}
+
+	/**
+	 * Elimina din index primele mesaje scrise, de exemplu cand portiunea de
+	 * jurnal care le continea a fost stearsa.
+	 *
+	 * @param count numarul de mesaje eliminate.
+	 */
+	public void dropFirst(int count) {
+		int dropped = Math.min(count, size);
+		System.arraycopy(offsets, dropped, offsets, 0, size - dropped);
+		System.arraycopy(timestamps, dropped, timestamps, 0, size - dropped);
+		if (byTimestamp != null) {
+			int kept = 0;
+			for (int i = 0; i < size; i++) {
+				if (byTimestamp[i] >= dropped) {
+					byTimestamp[kept++] = byTimestamp[i] - dropped;
+				}
+			}
+		}
+		size -= dropped;
+	}
+
+	/**
+	 * @return numarul de mesaje din index.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i pozitia mesajului in conversatie.
+	 * @return pozitia mesajului in jurnal.
+	 */
+	public long offsetAt(int i) {
+		return offsets[i];
+	}
+
+	/**
+	 * @param i pozitia mesajului in conversatie.
+	 * @return momentul trimiterii mesajului.
+	 */
+	public long timestampAt(int i) {
+		return timestamps[i];
+	}
+}
@@ -0,0 +1,41 @@
+package backend;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import jade.core.AID;
+
+/**
+ * Clasa HeadlessChatListener este afisarea unui agent de chat pornit fara
+ * interfata grafica, de exemplu pe un server sau cand intr-un container ruleaza
+ * mii de agenti. Mesajele nu sunt afisate, ci doar numarate; istoricul ramane
+ * disponibil prin metodele agentului.
+ */
+public class HeadlessChatListener implements ChatListener {
+
+	private final AtomicLong displayedMessages = new AtomicLong();
+
+	@Override
+	public void displayMessage(String message) {
+		displayedMessages.incrementAndGet();
+	}
+
+	@Override
+	public void agentListChanged() {
+	}
+
+	@Override
+	public void showConversation(AID recipient) {
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * @return numarul de apeluri {@link #displayMessage(String)}; mesajele primite
+	 *         intr-un lot sunt afisate printr-un singur apel.
+	 */
+	public long getDisplayedMessages() {
+		return displayedMessages.get();
+	}
+}
@@ -0,0 +1,1600 @@
+package backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import javax.management.ObjectName;
+
+/**
+ * Clasa HistoryLog gestioneaza jurnalul append-only in care sunt salvate
+ * mesajele. Fiecare inregistrare este precedata de lungimea ei si de o suma de
+ * control CRC32, astfel incat adaugarea unui mesaj inseamna o singura scriere
+ * mica la sfarsitul fisierului, iar o inregistrare scrisa partial este
+ * detectata si eliminata la citire. Periodic, jurnalul este compactat in
+ * fundal: mesajele sunt grupate pe conversatii, iar dublurile sunt eliminate.
+ * <p>
+ * Langa jurnal este pastrat un index (cheia conversatiei catre pozitiile
+ * mesajelor in fisier). La pornire este citit doar indexul, iar mesajele unei
+ * conversatii sunt citite dintr-o zona mapata in memorie abia cand sunt cerute.
+ * <p>
+ * Scrierile in fisier sunt serializate de un lock separat de cel al indexului,
+ * astfel incat cititorii asteapta doar actualizarea indexului, nu si scrierea
+ * pe disc.
+ * <p>
+ * Fiecare inregistrare scrisa este adaugata si in indexul de cautare
+ * ({@link SearchIndex}), salvat tot langa jurnal, odata cu indexul
+ * conversatiilor.
+ * <p>
+ * Jurnalul este impartit in segmente: mesajele noi sunt adaugate in fisierul
+ * activ, necomprimat, iar cand acesta depaseste
+ * {@value #DEFAULT_SEGMENT_MB} MB (proprietatea de sistem history.segmentMB)
+ * este compactat si mutat, comprimat, intr-un segment sigilat
+ * ({@link HistorySegment}). Pozitiile din index sunt pozitii logice, care nu se
+ * schimba la sigilare: fisierul activ incepe la sfarsitul ultimului segment.
+ * Segmentele cele mai vechi sunt sterse cand toate mesajele lor sunt mai vechi
+ * de history.retentionDays zile sau cand jurnalul ocupa pe disc mai mult de
+ * history.retentionMB megaocteti; implicit, nimic nu este sters.
+ */
+public class HistoryLog {
+
+	/**
+	 * Primeste inregistrarile citite din jurnal, impreuna cu pozitia lor in
+	 * fisier.
+	 */
+	public interface RecordVisitor {
+		void visit(long offset, MessageRecord record);
+	}
+
+	private static final int HEADER_SIZE = 8;
+	private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+	private static final long MAINTENANCE_PERIOD_SECONDS = 60;
+	private static final int COMPACTION_THRESHOLD = 10000;
+	private static final int INDEX_MAGIC = 0x43484958;
+	private static final int INDEX_VERSION = 3;
+	private static final int SEARCH_MAGIC = 0x43485358;
+	private static final int SEARCH_VERSION = 3;
+	private static final long DEFAULT_SEGMENT_MB = 16;
+	private static final String SEGMENT_SUFFIX = ".seg";
+	static final int RECENT_RECORDS = 65536;
+	static final int DEDUP_LOOKBACK = 256;
+
+	private static final Map<String, HistoryLog> OPEN_LOGS = new HashMap<>();
+	private static final ScheduledExecutorService COMPACTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "history-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final File file;
+	private final File indexFile;
+	private final File searchFile;
+	private final SearchIndex searchIndex = new SearchIndex();
+	private final LongObjectMap<ConversationIndex> index = new LongObjectMap<>();
+	private final ReentrantLock ioLock = new ReentrantLock();
+	private long indexedLength;
+	private final RecentRecords recentRecords = new RecentRecords(RECENT_RECORDS);
+	private FileChannel channel;
+	private FileChannel readChannel;
+	private MappedByteBuffer mapped;
+	private int appendedSinceCompaction;
+	private boolean indexDirty;
+	private HistoryWriter writer;
+	private final AtomicLong writtenBytes = new AtomicLong();
+	private final ScheduledFuture<?> maintenance;
+	private final Thread shutdownHook;
+	private final ObjectName metricsName;
+	private final long segmentBytes = Long.getLong("history.segmentMB", DEFAULT_SEGMENT_MB) * 1024 * 1024;
+	private final long retentionMillis = TimeUnit.DAYS.toMillis(Long.getLong("history.retentionDays", 0));
+	private final long retentionBytes = Long.getLong("history.retentionMB", 0) * 1024 * 1024;
+	private final List<HistorySegment> segments = new ArrayList<>();
+	private long activeBase;
+	private final AtomicBoolean rollScheduled = new AtomicBoolean();
+	private final Object maintenanceLock = new Object();
+
+	private HistoryLog(File file) throws IOException {
+		this.file = file;
+		this.indexFile = new File(file.getPath() + ".idx");
+		this.searchFile = new File(file.getPath() + ".search");
+		this.channel = openChannel();
+		this.readChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		loadIndex();
+
+		maintenance = COMPACTOR.scheduleWithFixedDelay(this::maintain, MAINTENANCE_PERIOD_SECONDS,
+				MAINTENANCE_PERIOD_SECONDS, TimeUnit.SECONDS);
+		shutdownHook = new Thread(this::close, "history-log-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+		metricsName = Metrics.register("History", file.getPath(), new HistoryMetrics(this));
+	}
+
+	/**
+	 * Obtine jurnalul asociat unui fisier. Toate instantele care folosesc acelasi
+	 * fisier impart acelasi jurnal, pentru ca scrierile si compactarea sa nu se
+	 * suprapuna. La prima deschidere este incarcat doar indexul.
+	 *
+	 * @param path calea fisierului jurnal.
+	 * @return jurnalul asociat fisierului.
+	 * @throws IOException daca fisierul nu poate fi deschis.
+	 */
+	public static synchronized HistoryLog forFile(String path) throws IOException {
+		File file = new File(path).getCanonicalFile();
+		HistoryLog log = OPEN_LOGS.get(file.getPath());
+		if (log == null) {
+			log = new HistoryLog(file);
+			OPEN_LOGS.put(file.getPath(), log);
+		}
+		return log;
+	}
+
+	/**
+	 * Adauga o inregistrare la sfarsitul jurnalului.
+	 *
+	 * @param record inregistrarea de adaugat.
+	 * @return pozitia logica a inregistrarii in jurnal.
+	 * @throws IOException daca scrierea esueaza.
+	 */
+	public long append(MessageRecord record) throws IOException {
+		ByteBuffer buffer = encode(record);
+		ioLock.lock();
+		try {
+			long start = channel.size();
+			long offset = activeBase + start;
+			try {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			} catch (IOException e) {
+				discardFrom(start);
+				throw e;
+			}
+			writtenBytes.addAndGet(buffer.limit());
+			synchronized (this) {
+				indexRecord(offset, record);
+				indexedLength = offset + buffer.limit();
+				appendedSinceCompaction++;
+			}
+			searchIndex.add(offset, record);
+			scheduleRollIfNeeded();
+			return offset;
+		} finally {
+			ioLock.unlock();
+		}
+	}
+
+	/**
+	 * Pune o inregistrare in coada writer-ului asincron. Inregistrarea devine
+	 * vizibila imediat la citire, la coada conversatiei ei, si primeste o pozitie
+	 * in index dupa ce este scrisa. Un mesaj care exista deja in conversatie
+	 * (inregistrat si de celalalt participant) nu este pus in coada.
+	 *
+	 * @param record inregistrarea de scris.
+	 * @return true daca inregistrarea a fost pusa in coada.
+	 * @throws IOException daca mesajele existente nu pot fi citite.
+	 */
+	public boolean enqueue(MessageRecord record) throws IOException {
+		synchronized (this) {
+			ConversationIndex conversationIndex = indexFor(record.getConversationKey());
+			if (contains(conversationIndex, record)) {
+				return false;
+			}
+			recentRecords.add(record);
+			conversationIndex.addPending(record);
+		}
+		// Punerea in coada poate astepta eliberarea unui loc, deci se face fara
+		// lock-ul jurnalului, pe care writer-ul il foloseste la scriere.
+		getWriter().enqueue(record);
+		return true;
+	}
+
+	/**
+	 * Pune un lot de inregistrari in coada writer-ului asincron, luand lock-ul
+	 * jurnalului o singura data pentru tot lotul. Inregistrarile care exista deja
+	 * in conversatiile lor nu sunt puse in coada (vezi
+	 * {@link #enqueue(MessageRecord)}).
+	 *
+	 * @param records inregistrarile de scris, in ordinea in care au fost primite.
+	 * @return numarul de inregistrari puse in coada.
+	 * @throws IOException daca mesajele existente nu pot fi citite.
+	 */
+	public int enqueue(List<MessageRecord> records) throws IOException {
+		List<MessageRecord> accepted = new ArrayList<>(records.size());
+		synchronized (this) {
+			for (MessageRecord record : records) {
+				ConversationIndex conversationIndex = indexFor(record.getConversationKey());
+				if (!contains(conversationIndex, record)) {
+					recentRecords.add(record);
+					conversationIndex.addPending(record);
+					accepted.add(record);
+				}
+			}
+		}
+		getWriter().enqueue(accepted);
+		return accepted.size();
+	}
+
+	/**
+	 * Adauga un lot de inregistrari la sfarsitul jurnalului, printr-o singura
+	 * operatie de scriere.
+	 *
+	 * @param records inregistrarile de adaugat.
+	 * @param force   daca inregistrarile trebuie sincronizate pe disc inainte de
+	 *                revenire.
+	 * @throws IOException daca scrierea esueaza; in acest caz nicio
+	 *                     inregistrare din lot nu ramane in jurnal, iar lotul
+	 *                     poate fi scris din nou.
+	 */
+	public void append(List<MessageRecord> records, boolean force) throws IOException {
+		ByteBuffer[] buffers = new ByteBuffer[records.size()];
+		long remaining = 0;
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = encode(records.get(i));
+			remaining += buffers[i].remaining();
+		}
+
+		long bytes = remaining;
+		ioLock.lock();
+		try {
+			long start = channel.size();
+			long offset = activeBase + start;
+			try {
+				while (remaining > 0) {
+					remaining -= channel.write(buffers);
+				}
+				if (force) {
+					channel.force(false);
+				}
+			} catch (IOException e) {
+				discardFrom(start);
+				throw e;
+			}
+			writtenBytes.addAndGet(bytes);
+
+			long[] offsets = new long[buffers.length];
+			synchronized (this) {
+				for (int i = 0; i < buffers.length; i++) {
+					MessageRecord record = records.get(i);
+					indexFor(record.getConversationKey()).markWritten(record, offset);
+					offsets[i] = offset;
+					offset += buffers[i].limit();
+				}
+				indexedLength = offset;
+				indexDirty = true;
+				appendedSinceCompaction += records.size();
+			}
+			// Indexul de cautare are lock-ul lui, deci cititorii jurnalului nu
+			// asteapta impartirea mesajelor in cuvinte.
+			searchIndex.add(records, offsets);
+			scheduleRollIfNeeded();
+		} finally {
+			ioLock.unlock();
+		}
+	}
+
+	/**
+	 * Sterge ce a ramas dintr-o scriere esuata, pentru ca o noua incercare sa
+	 * nu lase o inregistrare incompleta in mijlocul fisierului. Apelantul tine
+	 * ioLock.
+	 */
+	private void discardFrom(long size) {
+		try {
+			if (channel.size() > size) {
+				channel.truncate(size);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Obtine writer-ul asincron al jurnalului, creandu-l la prima cerere.
+	 *
+	 * @return writer-ul care scrie mesajele in acest jurnal.
+	 */
+	public synchronized HistoryWriter getWriter() {
+		if (writer == null) {
+			writer = new HistoryWriter(this);
+		}
+		return writer;
+	}
+
+	/**
+	 * Obtine writer-ul asincron al jurnalului, fara a-l crea.
+	 *
+	 * @return writer-ul jurnalului, sau null daca nu a fost inca creat.
+	 */
+	synchronized HistoryWriter getCurrentWriter() {
+		return writer;
+	}
+
+	/**
+	 * @return numarul de octeti adaugati in jurnal de la deschiderea lui, fara
+	 *         rescrierile facute de compactare.
+	 */
+	public long getWrittenBytes() {
+		return writtenBytes.get();
+	}
+
+	/**
+	 * Verifica daca jurnalul nu contine nicio inregistrare.
+	 *
+	 * @return true daca fisierul jurnal este gol si nu exista segmente.
+	 * @throws IOException daca dimensiunea fisierului nu poate fi citita.
+	 */
+	public synchronized boolean isEmpty() throws IOException {
+		return segments.isEmpty() && channel.size() == 0;
+	}
+
+	/**
+	 * @return numarul de segmente sigilate ale jurnalului.
+	 */
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * @return spatiul ocupat pe disc de segmentele sigilate si de fisierul activ.
+	 */
+	public synchronized long getDiskBytes() {
+		long bytes = file.length();
+		for (HistorySegment segment : segments) {
+			bytes += segment.getFileSize();
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return dimensiunea necomprimata a mesajelor pastrate in jurnal.
+	 */
+	public synchronized long getLogicalBytes() {
+		return activeBase + file.length() - getStartOffset();
+	}
+
+	/**
+	 * Citeste mesajele unei conversatii pe baza indexului, din zona mapata in
+	 * memorie a jurnalului. Mesajele duplicate sunt omise.
+	 *
+	 * @param conversationKey cheia conversatiei.
+	 * @return mesajele conversatiei, in ordinea in care au fost scrise.
+	 * @throws IOException daca citirea esueaza.
+	 */
+	public synchronized List<MessageRecord> readConversation(long conversationKey) throws IOException {
+		ConversationIndex conversationIndex = index.get(conversationKey);
+		if (conversationIndex == null) {
+			return new ArrayList<>();
+		}
+
+		List<MessageRecord> records = new ArrayList<>(conversationIndex.size() + conversationIndex.pendingSize());
+		for (int i = 0; i < conversationIndex.size(); i++) {
+			addIfAbsent(records, readRecord(conversationIndex.offsetAt(i)));
+		}
+		for (int i = 0; i < conversationIndex.pendingSize(); i++) {
+			addIfAbsent(records, conversationIndex.pendingAt(i));
+		}
+		return records;
+	}
+
+	/**
+	 * Obtine numarul de mesaje dintr-o conversatie, inclusiv cele care asteapta
+	 * sa fie scrise.
+	 *
+	 * @param conversationKey cheia conversatiei.
+	 * @return numarul de mesaje din conversatie.
+	 */
+	public synchronized int getConversationSize(long conversationKey) {
+		ConversationIndex conversationIndex = index.get(conversationKey);
+		return conversationIndex == null ? 0 : conversationIndex.size() + conversationIndex.pendingSize();
+	}
+
+	/**
+	 * Obtine cheile conversatiilor din jurnal, inclusiv ale celor care au doar
+	 * mesaje care asteapta sa fie scrise.
+	 *
+	 * @return cheile conversatiilor, in nicio ordine anume.
+	 */
+	public synchronized long[] getConversationKeys() {
+		return index.keys();
+	}
+
+	/**
+	 * Citeste mesajele dintre doua pozitii ale unei conversatii. Sunt citite doar
+	 * inregistrarile cerute, deci costul depinde de marimea intervalului, nu de
+	 * marimea conversatiei.
+	 *
+	 * @param conversationKey cheia conversatiei.
+	 * @param from            pozitia primului mesaj, inclusiv.
+	 * @param to              pozitia ultimului mesaj, exclusiv.
+	 * @return mesajele din interval, in ordinea in care au fost scrise.
+	 * @throws IOException daca citirea esueaza.
+	 */
+	public synchronized List<MessageRecord> readRange(long conversationKey, int from, int to) throws IOException {
+		ConversationIndex conversationIndex = index.get(conversationKey);
+		List<MessageRecord> records = new ArrayList<>(Math.max(to - from, 0));
+		if (conversationIndex == null) {
+			return records;
+		}
+
+		int written = conversationIndex.size();
+		int end = Math.min(to, written + conversationIndex.pendingSize());
+		for (int i = Math.max(from, 0); i < end; i++) {
+			records.add(i < written ? readRecord(conversationIndex.offsetAt(i))
+					: conversationIndex.pendingAt(i - written));
+		}
+		return records;
+	}
+
+	/**
+	 * Citeste mesajele unei conversatii trimise intr-un interval de timp.
+	 * Momentele nu cresc neaparat odata cu pozitiile in conversatie, deci
+	 * mesajele scrise sunt gasite prin permutarea ordonata dupa moment a
+	 * indexului, iar cele care asteapta sa fie scrise sunt verificate pe rand.
+	 *
+	 * @param conversationKey cheia conversatiei.
+	 * @param from            inceputul intervalului, inclusiv, in milisecunde.
+	 * @param to              sfarsitul intervalului, exclusiv, in milisecunde.
+	 * @param count           numarul maxim de mesaje.
+	 * @return pagina cu primele mesaje din interval, in ordinea in care au fost
+	 *         scrise; cursorii paginii sunt pozitiile primului si ultimului mesaj
+	 *         gasit.
+	 * @throws IOException daca citirea esueaza.
+	 */
+	public synchronized HistoryPage readBetween(long conversationKey, long from, long to, int count)
+			throws IOException {
+		ConversationIndex conversationIndex = index.get(conversationKey);
+		List<MessageRecord> records = new ArrayList<>();
+		if (conversationIndex == null) {
+			return new HistoryPage(records, 0, 0);
+		}
+
+		int written = conversationIndex.size();
+		int total = written + conversationIndex.pendingSize();
+		int[] positions = conversationIndex.positionsBetween(from, to, count);
+		int start = positions.length > 0 ? positions[0] : total;
+		int end = positions.length > 0 ? positions[positions.length - 1] + 1 : total;
+		for (int position : positions) {
+			records.add(readRecord(conversationIndex.offsetAt(position)));
+		}
+		for (int i = 0; i < conversationIndex.pendingSize() && records.size() < count; i++) {
+			MessageRecord record = conversationIndex.pendingAt(i);
+			if (record.getTimestamp() >= from && record.getTimestamp() < to) {
+				if (records.isEmpty()) {
+					start = written + i;
+				}
+				records.add(record);
+				end = written + i + 1;
+			}
+		}
+		return new HistoryPage(records, start, end, total);
+	}
+
+	/**
+	 * Cauta mesaje in tot jurnalul, de la cele mai noi la cele mai vechi. Mesajele
+	 * care asteapta in coada writer-ului sunt scrise inainte de cautare, deci
+	 * rezultatul contine toate mesajele adaugate pana la apel. Cuvintele si
+	 * filtrele sunt rezolvate in {@link SearchIndex}; pentru mesajele gasite este
+	 * citit textul din jurnal, de la pozitia retinuta in index, pe care sunt
+	 * verificate si expresiile. Pozitiile gasite sunt citite sub lock-ul
+	 * jurnalului, pentru ca o compactare sa nu le mute intre timp.
+	 *
+	 * @param query  cautarea.
+	 * @param filter conversatiile in care se cauta.
+	 * @return cel mult {@link SearchQuery#getLimit()} mesaje, de la cel mai nou.
+	 * @throws IOException daca mesajele gasite nu pot fi citite.
+	 */
+	public List<MessageRecord> search(SearchQuery query, SearchIndex.ConversationFilter filter) throws IOException {
+		HistoryWriter currentWriter = getCurrentWriter();
+		if (currentWriter != null) {
+			currentWriter.flush();
+		}
+
+		List<MessageRecord> results = new ArrayList<>();
+		Set<MessageRecord> found = new HashSet<>();
+		List<Long> candidates = new ArrayList<>();
+		int cursor = Integer.MAX_VALUE;
+		while (results.size() < query.getLimit() && cursor > 0) {
+			int wanted = query.getLimit() - results.size();
+			// Expresiile elimina o parte din candidati, deci sunt cerute mai multe.
+			int batch = query.getPhrases().isEmpty() ? wanted : Math.max(wanted, 64);
+			candidates.clear();
+			synchronized (this) {
+				cursor = searchIndex.collect(query, filter, cursor, batch, candidates);
+				for (long offset : candidates) {
+					MessageRecord record = readMatching(offset, query, found);
+					if (record != null && results.size() < query.getLimit()) {
+						found.add(record);
+						results.add(record);
+					}
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return indexul de cautare al jurnalului.
+	 */
+	public SearchIndex getSearchIndex() {
+		return searchIndex;
+	}
+
+	/**
+	 * Parcurge toate inregistrarile valide din jurnal, din segmente si din
+	 * fisierul activ, in ordinea in care au fost scrise. Daca la sfarsitul
+	 * fisierului activ exista o inregistrare incompleta sau corupta, fisierul
+	 * este trunchiat la ultima inregistrare valida.
+	 *
+	 * @param visitor primeste fiecare inregistrare citita, cu pozitia ei logica.
+	 * @throws IOException daca citirea esueaza.
+	 */
+	public void readAll(RecordVisitor visitor) throws IOException {
+		ioLock.lock();
+		try {
+			synchronized (this) {
+				truncateTo(scanLog(getStartOffset(), visitor) - activeBase);
+			}
+		} finally {
+			ioLock.unlock();
+		}
+	}
+
+	/**
+	 * Compacteaza fisierul activ al jurnalului: rescrie mesajele lui grupate pe
+	 * conversatii, in ordinea in care au fost scrise, fara dubluri. Noul fisier
+	 * inlocuieste atomic fisierul activ, iar indexul este actualizat pentru noile
+	 * pozitii. Segmentele sigilate au fost compactate inainte de sigilare.
+	 * Scrierile si citirile continua in timpul rescrierii; ele asteapta doar
+	 * inlocuirea fisierului.
+	 *
+	 * @throws IOException daca rescrierea esueaza.
+	 */
+	public void compact() throws IOException {
+		synchronized (maintenanceLock) {
+			rewrite();
+		}
+	}
+
+	/**
+	 * Sigileaza fisierul activ intr-un segment comprimat, daca a depasit
+	 * dimensiunea unui segment, apoi sterge segmentele vechi conform politicii
+	 * de retentie.
+	 *
+	 * @throws IOException daca sigilarea esueaza.
+	 */
+	public void roll() throws IOException {
+		synchronized (maintenanceLock) {
+			rollIfFull();
+			applyRetention();
+		}
+	}
+
+	/**
+	 * Scrie mesajele ramase in coada writer-ului, salveaza indexul si inchide
+	 * fisierele jurnalului. Dupa inchidere, {@link #forFile(String)} deschide din
+	 * nou fisierul, incarcand indexul salvat.
+	 */
+	public void close() {
+		synchronized (HistoryLog.class) {
+			OPEN_LOGS.remove(file.getPath(), this);
+		}
+		Metrics.unregister(metricsName);
+		maintenance.cancel(false);
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// Jurnalul este inchis chiar de hook, la oprirea masinii virtuale.
+		}
+
+		HistoryWriter currentWriter;
+		synchronized (this) {
+			currentWriter = writer;
+		}
+		// Writer-ul scrie prin metodele sincronizate ale jurnalului, deci este oprit
+		// inainte de a lua lock-ul jurnalului.
+		if (currentWriter != null) {
+			currentWriter.close();
+		}
+
+		ioLock.lock();
+		try {
+			synchronized (this) {
+				if (indexDirty) {
+					saveIndex();
+				}
+				channel.close();
+				readChannel.close();
+				for (HistorySegment segment : segments) {
+					segment.close();
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			ioLock.unlock();
+		}
+	}
+
+	/**
+	 * Adauga o inregistrare intr-o conversatie doar daca nu exista deja. Acelasi
+	 * mesaj este inregistrat atat de expeditor, cat si de destinatar, cu acelasi
+	 * moment al trimiterii, asa ca este suficienta cautarea printre ultimele
+	 * {@value #DEDUP_LOOKBACK} mesaje si printre cele cu un moment cel putin egal.
+	 *
+	 * @param conversation mesajele conversatiei, in ordinea in care au fost scrise.
+	 * @param record       inregistrarea de adaugat.
+	 * @return true daca inregistrarea a fost adaugata.
+	 */
+	static boolean addIfAbsent(List<MessageRecord> conversation, MessageRecord record) {
+		for (int i = conversation.size() - 1, checked = 0; i >= 0; i--, checked++) {
+			MessageRecord existing = conversation.get(i);
+			if (checked >= DEDUP_LOOKBACK && existing.getTimestamp() < record.getTimestamp()) {
+				break;
+			}
+			if (existing.equals(record)) {
+				return false;
+			}
+		}
+		conversation.add(record);
+		return true;
+	}
+
+	/**
+	 * Rescrie fisierul activ compactat intr-un fisier nou si actualizeaza
+	 * indexul: pozitiile din fisierul activ sunt inlocuite, atat in indexul
+	 * conversatiilor, cat si in cel de cautare, iar cele din segmente raman
+	 * neschimbate.
+	 * <p>
+	 * Fisierul activ este citit si rescris fara lock-ul de scriere si fara
+	 * lock-ul jurnalului, pana la lungimea lui de la inceputul compactarii:
+	 * partea aceasta nu se mai schimba, pentru ca mesajele noi sunt adaugate la
+	 * sfarsit. Sub lock-ul de scriere sunt copiate apoi inregistrarile adaugate
+	 * intre timp, iar sub lock-ul jurnalului sunt inlocuite doar fisierul si
+	 * pozitiile din index, astfel incat agentii care adauga mesaje nu asteapta
+	 * discul. Apelantul trebuie sa detina lock-ul de intretinere.
+	 *
+	 * @return momentul celui mai nou mesaj din fisierul activ.
+	 */
+	private long rewrite() throws IOException {
+		long base;
+		long length;
+		ioLock.lock();
+		try {
+			if (!channel.isOpen()) {
+				return Long.MIN_VALUE;
+			}
+			base = activeBase;
+			length = channel.size();
+		} finally {
+			ioLock.unlock();
+		}
+
+		Map<Long, List<MessageRecord>> conversations = new LinkedHashMap<>();
+		List<Long> scannedOffsets = new ArrayList<>();
+		List<MessageRecord> scannedRecords = new ArrayList<>();
+		long snapshotLength = length;
+		long validLength = Math.min(scan(file, 0, (offset, record) -> {
+			if (offset < snapshotLength) {
+				scannedOffsets.add(base + offset);
+				scannedRecords.add(record);
+				addIfAbsent(conversations.computeIfAbsent(record.getConversationKey(), key -> new ArrayList<>()),
+						record);
+			}
+		}), length);
+
+		LongObjectMap<ConversationIndex> compactedIndex = new LongObjectMap<>();
+		Map<MessageRecord, Long> compactedOffsets = new HashMap<>();
+		long newestTimestamp = Long.MIN_VALUE;
+		long compactedEnd = base;
+		File compacted = new File(file.getPath() + ".compact");
+		try (FileChannel out = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (Map.Entry<Long, List<MessageRecord>> entry : conversations.entrySet()) {
+				ConversationIndex conversationIndex = new ConversationIndex(entry.getValue().size());
+				for (MessageRecord record : entry.getValue()) {
+					ByteBuffer buffer = encode(record);
+					conversationIndex.add(compactedEnd, record.getTimestamp());
+					compactedOffsets.putIfAbsent(record, compactedEnd);
+					newestTimestamp = Math.max(newestTimestamp, record.getTimestamp());
+					compactedEnd += buffer.remaining();
+					while (buffer.hasRemaining()) {
+						out.write(buffer);
+					}
+				}
+				compactedIndex.put(entry.getKey(), conversationIndex);
+			}
+			out.force(true);
+		}
+
+		ioLock.lock();
+		try {
+			if (!channel.isOpen()) {
+				Files.deleteIfExists(compacted.toPath());
+				return Long.MIN_VALUE;
+			}
+			if (validLength < length) {
+				synchronized (this) {
+					truncateTo(validLength);
+				}
+				length = validLength;
+			}
+
+			// Inregistrarile adaugate in timpul rescrierii sunt copiate la sfarsitul
+			// fisierului compactat; pozitiile lor se deplaseaza cu aceeasi diferenta.
+			byte[] encodedIndex;
+			long tailStart = base + length;
+			long shift = compactedEnd - tailStart;
+			int scanned = scannedOffsets.size();
+			long tailLength = scan(file, length, (offset, record) -> {
+				scannedOffsets.add(base + offset);
+				scannedRecords.add(record);
+			}) - length;
+			for (int i = scanned; i < scannedRecords.size(); i++) {
+				newestTimestamp = Math.max(newestTimestamp, scannedRecords.get(i).getTimestamp());
+			}
+			try (FileChannel out = FileChannel.open(compacted.toPath(), StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND)) {
+				long position = length;
+				while (position < length + tailLength) {
+					position += readChannel.transferTo(position, length + tailLength - position, out);
+				}
+				out.force(true);
+			}
+
+			long[] oldOffsets = new long[scannedOffsets.size()];
+			long[] newOffsets = new long[oldOffsets.length];
+			for (int i = 0; i < oldOffsets.length; i++) {
+				oldOffsets[i] = scannedOffsets.get(i);
+				newOffsets[i] = oldOffsets[i] >= tailStart ? oldOffsets[i] + shift
+						: compactedOffsets.get(scannedRecords.get(i));
+			}
+
+			synchronized (this) {
+				replaceActiveFile(compacted);
+
+				// Mesajele din segmente sunt la inceputul fiecarei conversatii, urmate de
+				// cele compactate si de cele adaugate in timpul compactarii, iar cele
+				// care asteapta sa fie scrise raman la coada ei.
+				LongObjectMap<ConversationIndex> appendedIndex = new LongObjectMap<>();
+				index.forEach((key, conversationIndex) -> {
+					int appended = conversationIndex.positionOf(tailStart);
+					if (appended < conversationIndex.size()) {
+						ConversationIndex moved = new ConversationIndex(conversationIndex.size() - appended);
+						for (int i = appended; i < conversationIndex.size(); i++) {
+							moved.add(conversationIndex.offsetAt(i) + shift, conversationIndex.timestampAt(i));
+						}
+						appendedIndex.put(key, moved);
+					}
+					conversationIndex.truncate(conversationIndex.positionOf(base));
+				});
+				addAll(compactedIndex);
+				addAll(appendedIndex);
+				searchIndex.moveOffsets(base, oldOffsets, newOffsets);
+				indexedLength = base + channel.size();
+				appendedSinceCompaction = oldOffsets.length - scanned;
+				encodedIndex = encodeIndex();
+			}
+			writeIndex(encodedIndex, compactedEnd + tailLength);
+		} finally {
+			ioLock.unlock();
+		}
+		return newestTimestamp;
+	}
+
+	/**
+	 * Sigileaza fisierul activ, daca a depasit dimensiunea unui segment. Fisierul
+	 * este mai intai compactat, pentru ca mesajele unei conversatii sa fie
+	 * alaturate in segment si citite din cat mai putine blocuri. Comprimarea se
+	 * face fara lock-uri, pentru ca partea sigilata a fisierului nu se mai
+	 * schimba: scrierile continua la sfarsitul fisierului, iar compactarea este
+	 * exclusa de lock-ul de intretinere, pe care apelantul trebuie sa il
+	 * detina. La final, inregistrarile adaugate intre timp sunt copiate intr-un
+	 * fisier activ nou, sub lock-ul de scriere, iar lock-ul jurnalului este luat
+	 * doar pentru inlocuirea fisierului.
+	 */
+	private void rollIfFull() throws IOException {
+		rollScheduled.set(false);
+		ioLock.lock();
+		try {
+			if (!channel.isOpen() || channel.size() < segmentBytes) {
+				return;
+			}
+		} finally {
+			ioLock.unlock();
+		}
+
+		long newestTimestamp = rewrite();
+		long base;
+		long length;
+		ioLock.lock();
+		try {
+			if (!channel.isOpen()) {
+				return;
+			}
+			base = activeBase;
+			length = channel.size();
+		} finally {
+			ioLock.unlock();
+		}
+
+		HistorySegment segment = HistorySegment.write(segmentFile(base), file, length, base, newestTimestamp);
+
+		ioLock.lock();
+		try {
+			if (!channel.isOpen()) {
+				segment.delete();
+				return;
+			}
+			File tail = copyActiveSuffix(length);
+			synchronized (this) {
+				replaceActiveFile(tail);
+				segments.add(segment);
+				activeBase = segment.getEnd();
+				System.out.println("Sealed history segment " + segment.getFile().getName() + " (" + (length >> 10)
+						+ " KB, " + (segment.getFileSize() >> 10) + " KB compressed).");
+			}
+		} finally {
+			ioLock.unlock();
+		}
+	}
+
+	/**
+	 * Adauga la sfarsitul indexului fiecarei conversatii pozitiile din indexul
+	 * dat. Apelantul trebuie sa detina lock-ul jurnalului.
+	 */
+	private void addAll(LongObjectMap<ConversationIndex> positions) {
+		positions.forEach((key, added) -> indexFor(key).addAll(added));
+	}
+
+	/**
+	 * Sterge segmentele cele mai vechi, cat timp toate mesajele lor sunt mai
+	 * vechi decat perioada de retentie sau jurnalul ocupa pe disc mai mult decat
+	 * limita. Fisierul activ nu este sters niciodata. Pozitiile mesajelor sterse
+	 * sunt eliminate din index; indexul de cautare le pastreaza pana la
+	 * urmatoarea reconstruire, dar ele nu mai sunt gasite in jurnal si nu apar
+	 * in rezultate.
+	 */
+	private void applyRetention() throws IOException {
+		if (retentionMillis <= 0 && retentionBytes <= 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		ioLock.lock();
+		try {
+			synchronized (this) {
+				while (!segments.isEmpty()) {
+					HistorySegment oldest = segments.get(0);
+					boolean expired = retentionMillis > 0 && oldest.getNewestTimestamp() < now - retentionMillis;
+					boolean oversized = retentionBytes > 0 && getDiskBytes() > retentionBytes;
+					if (!expired && !oversized) {
+						break;
+					}
+					segments.remove(0);
+					dropBefore(oldest.getEnd());
+					oldest.delete();
+					System.out.println("Deleted history segment " + oldest.getFile().getName() + ".");
+				}
+			}
+		} finally {
+			ioLock.unlock();
+		}
+	}
+
+	/**
+	 * Elimina din index mesajele aflate inaintea unei pozitii logice, impreuna cu
+	 * conversatiile ramase goale. Apelantul trebuie sa detina lock-ul
+	 * jurnalului.
+	 */
+	private void dropBefore(long offset) {
+		index.forEach((key, conversationIndex) -> {
+			conversationIndex.dropFirst(conversationIndex.positionOf(offset));
+			if (conversationIndex.size() == 0 && conversationIndex.pendingSize() == 0) {
+				index.remove(key, conversationIndex);
+			}
+		});
+		indexDirty = true;
+	}
+
+	/**
+	 * Programeaza sigilarea fisierului activ pe firul de intretinere, o singura
+	 * data, cand acesta depaseste dimensiunea unui segment. Apelantul trebuie sa
+	 * detina lock-ul de scriere.
+	 */
+	private void scheduleRollIfNeeded() throws IOException {
+		if (channel.size() >= segmentBytes && rollScheduled.compareAndSet(false, true)) {
+			COMPACTOR.execute(() -> {
+				try {
+					roll();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			});
+		}
+	}
+
+	private File segmentFile(long base) {
+		return new File(file.getPath() + "." + String.format("%020d", base) + SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * @return pozitia logica a celui mai vechi mesaj pastrat.
+	 */
+	private long getStartOffset() {
+		return segments.isEmpty() ? activeBase : segments.get(0).getBase();
+	}
+
+	/**
+	 * Citeste mesajul gasit de indexul de cautare, de la pozitia lui in jurnal,
+	 * daca mai exista, contine expresiile cautate si nu a fost deja intors.
+	 * Copiile unui mesaj eliminate la compactare au in index pozitia copiei
+	 * pastrate, deci mesajul este intors o singura data. Apelantul trebuie sa
+	 * detina lock-ul jurnalului.
+	 */
+	private MessageRecord readMatching(long offset, SearchQuery query, Set<MessageRecord> found)
+			throws IOException {
+		if (offset < getStartOffset()) {
+			return null;
+		}
+		MessageRecord record = readRecord(offset);
+		return !found.contains(record) && query.matchesPhrases(record.getContent()) ? record : null;
+	}
+
+	/**
+	 * Verifica daca un mesaj exista deja intr-o conversatie. Mesajele puse in
+	 * coada recent sunt cautate intr-un set limitat, care nu depinde de ordinea
+	 * in care sosesc copiile, apoi printre mesajele conversatiei care asteapta
+	 * sa fie scrise, pentru cazul in care setul le-a pierdut; pentru mesajele
+	 * scrise mai demult sunt comparate ultimele pozitii din index si pozitiile
+	 * cu acelasi moment, gasite prin cautare binara in ordinea momentelor. Astfel este
+	 * recunoscuta si copia unui mesaj vechi, pe care istoricul nu o mai poate
+	 * verifica in memorie pentru ca conversatia lui nu este in cache.
+	 */
+	private boolean contains(ConversationIndex conversationIndex, MessageRecord record) throws IOException {
+		if (recentRecords.contains(record)) {
+			return true;
+		}
+		long timestamp = record.getTimestamp();
+		for (int i = conversationIndex.pendingSize() - 1; i >= 0; i--) {
+			MessageRecord pending = conversationIndex.pendingAt(i);
+			if (pending.getTimestamp() == timestamp && pending.equals(record)) {
+				return true;
+			}
+		}
+		int oldest = Math.max(conversationIndex.size() - DEDUP_LOOKBACK, 0);
+		for (int i = conversationIndex.size() - 1; i >= oldest; i--) {
+			if (conversationIndex.timestampAt(i) == timestamp
+					&& readRecord(conversationIndex.offsetAt(i)).equals(record)) {
+				return true;
+			}
+		}
+		for (int rank = conversationIndex.lowerBound(timestamp); rank < conversationIndex.size(); rank++) {
+			int i = conversationIndex.positionByTimestamp(rank);
+			if (conversationIndex.timestampAt(i) != timestamp) {
+				break;
+			}
+			if (i < oldest && readRecord(conversationIndex.offsetAt(i)).equals(record)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Ruleaza periodic in fundal: compacteaza fisierul activ daca s-au adaugat
+	 * destule inregistrari de la ultima compactare, altfel doar salveaza indexul
+	 * daca s-a modificat. Apoi sigileaza fisierul activ, daca este plin, si
+	 * aplica politica de retentie.
+	 */
+	private void maintain() {
+		synchronized (maintenanceLock) {
+			boolean compact;
+			ioLock.lock();
+			try {
+				byte[] encodedIndex = null;
+				long covered = 0;
+				synchronized (this) {
+					if (!channel.isOpen()) {
+						return;
+					}
+					compact = appendedSinceCompaction >= COMPACTION_THRESHOLD;
+					if (!compact && indexDirty) {
+						encodedIndex = encodeIndex();
+						covered = indexedLength;
+					}
+				}
+				if (encodedIndex != null) {
+					writeIndex(encodedIndex, covered);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			} finally {
+				ioLock.unlock();
+			}
+			try {
+				if (compact) {
+					rewrite();
+				}
+				rollIfFull();
+				applyRetention();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void indexRecord(long offset, MessageRecord record) {
+		indexFor(record.getConversationKey()).add(offset, record.getTimestamp());
+		indexDirty = true;
+	}
+
+	/**
+	 * Obtine indexul unei conversatii, creandu-l daca nu exista. Apelantul trebuie
+	 * sa detina lock-ul jurnalului.
+	 */
+	private ConversationIndex indexFor(long conversationKey) {
+		ConversationIndex conversationIndex = index.get(conversationKey);
+		if (conversationIndex == null) {
+			conversationIndex = new ConversationIndex();
+			index.put(conversationKey, conversationIndex);
+		}
+		return conversationIndex;
+	}
+
+	/**
+	 * Incarca indexul salvat si adauga in el inregistrarile scrise in jurnal dupa
+	 * ultima salvare. Daca indexul lipseste sau nu corespunde jurnalului, este
+	 * reconstruit din intregul jurnal. Indexul de cautare este salvat impreuna cu
+	 * indexul conversatiilor si este citit pe un alt fir, in paralel cu acesta;
+	 * daca lipseste sau a fost salvat pentru alta lungime a jurnalului, este
+	 * reconstruit separat. Segmentele sunt deschise inainte, citindu-le doar
+	 * antetul.
+	 */
+	private void loadIndex() throws IOException {
+		loadSegments();
+		FutureTask<Long> searchLoad = null;
+		if (searchFile.exists()) {
+			searchLoad = new FutureTask<>(this::readSearchFile);
+			new Thread(searchLoad, "history-search-loader").start();
+		}
+		long start = getStartOffset();
+		long covered = start;
+		if (indexFile.exists()) {
+			try {
+				covered = readIndexFile();
+			} catch (IOException e) {
+				System.out.println("Rebuilding unreadable index " + indexFile.getName() + ".");
+				index.clear();
+				covered = start;
+			}
+		}
+		long searchCovered = awaitSearchLoad(searchLoad);
+		if (covered > activeBase + channel.size()) {
+			index.clear();
+			covered = start;
+		}
+		if (covered < start) {
+			// Segmentele sterse dupa ultima salvare a indexului.
+			dropBefore(start);
+			covered = start;
+		}
+
+		if (searchCovered != covered) {
+			if (covered > start) {
+				System.out.println("Rebuilding search index " + searchFile.getName() + ".");
+			}
+			searchIndex.clear();
+			long searchEnd = covered;
+			scanLog(start, (offset, record) -> {
+				if (offset < searchEnd) {
+					searchIndex.add(offset, record);
+				}
+			});
+			indexDirty = true;
+		}
+
+		long validLength = scanLog(covered, (offset, record) -> {
+			indexRecord(offset, record);
+			searchIndex.add(offset, record);
+		});
+		truncateTo(validLength - activeBase);
+		indexedLength = validLength;
+	}
+
+	/**
+	 * Deschide segmentele sigilate ale jurnalului, in ordinea pozitiilor lor, si
+	 * stabileste pozitia logica de inceput a fisierului activ. Daca sigilarea
+	 * unui segment a fost intrerupta dupa scrierea lui, dar inainte de
+	 * inlocuirea fisierului activ, fisierul activ incepe inca cu octetii
+	 * segmentului; acestia sunt eliminati acum.
+	 */
+	private void loadSegments() throws IOException {
+		String prefix = file.getName() + ".";
+		File[] files = file.getAbsoluteFile().getParentFile()
+				.listFiles((directory, name) -> name.startsWith(prefix) && name.endsWith(SEGMENT_SUFFIX));
+		if (files != null) {
+			for (File segmentFile : files) {
+				try {
+					segments.add(HistorySegment.open(segmentFile));
+				} catch (IOException e) {
+					System.out.println("Ignoring unreadable history segment " + segmentFile.getName() + ".");
+				}
+			}
+		}
+		segments.sort((a, b) -> Long.compare(a.getBase(), b.getBase()));
+		activeBase = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).getEnd();
+
+		if (!segments.isEmpty()) {
+			HistorySegment last = segments.get(segments.size() - 1);
+			int compared = (int) Math.min(last.getLength(), HistorySegment.BLOCK_SIZE);
+			if (compared > 0 && channel.size() >= last.getLength()) {
+				byte[] sealed = new byte[compared];
+				last.read(last.getBase(), sealed, 0, compared);
+				ByteBuffer active = ByteBuffer.allocate(compared);
+				readFully(active, 0);
+				if (Arrays.equals(sealed, active.array())) {
+					System.out.println("Completing interrupted sealing of " + last.getFile().getName() + ".");
+					dropActivePrefix(last.getLength());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inlocuieste fisierul activ cu octetii lui de dupa o pozitie, copiati intr-un
+	 * fisier nou care inlocuieste apoi atomic fisierul activ. Apelantul trebuie
+	 * sa detina atat lock-ul de scriere, cat si lock-ul jurnalului.
+	 *
+	 * @param length numarul de octeti eliminati de la inceputul fisierului.
+	 */
+	private void dropActivePrefix(long length) throws IOException {
+		replaceActiveFile(copyActiveSuffix(length));
+	}
+
+	/**
+	 * Copiaza intr-un fisier nou octetii fisierului activ de dupa o pozitie.
+	 * Apelantul trebuie sa detina lock-ul de scriere, pentru ca fisierul activ sa
+	 * nu creasca in timpul copierii.
+	 *
+	 * @param length numarul de octeti omisi de la inceputul fisierului.
+	 * @return fisierul nou.
+	 */
+	private File copyActiveSuffix(long length) throws IOException {
+		File tail = new File(file.getPath() + ".tail");
+		try (FileChannel out = FileChannel.open(tail.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			long position = length;
+			long size = readChannel.size();
+			while (position < size) {
+				position += readChannel.transferTo(position, size - position, out);
+			}
+			out.force(true);
+		}
+		return tail;
+	}
+
+	/**
+	 * Inlocuieste atomic fisierul activ cu un fisier nou si redeschide canalele
+	 * jurnalului. Apelantul trebuie sa detina atat lock-ul de scriere, cat si
+	 * lock-ul jurnalului.
+	 */
+	private void replaceActiveFile(File replacement) throws IOException {
+		channel.close();
+		readChannel.close();
+		mapped = null;
+		Files.move(replacement.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		channel = openChannel();
+		readChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+	}
+
+	/**
+	 * Parcurge inregistrarile valide incepand de la o pozitie logica: intai cele
+	 * din segmente, decomprimate in ordine, apoi cele din fisierul activ.
+	 *
+	 * @return pozitia logica de sfarsit a portiunii valide a fisierului activ.
+	 */
+	private long scanLog(long from, RecordVisitor visitor) throws IOException {
+		for (HistorySegment segment : segments) {
+			if (segment.getEnd() > from) {
+				long position = Math.max(from, segment.getBase());
+				try (InputStream in = new BufferedInputStream(segment.openStream(position))) {
+					scan(in, position, visitor);
+				}
+			}
+		}
+		long base = activeBase;
+		return base + scan(file, Math.max(from - base, 0), (offset, record) -> visitor.visit(base + offset, record));
+	}
+
+	/**
+	 * Asteapta citirea indexului de cautare inceputa de {@link #loadIndex()}.
+	 * Firul de citire modifica indexul de cautare, deci asteptarea nu este
+	 * abandonata nici daca firul curent este intrerupt.
+	 *
+	 * @return lungimea jurnalului pentru care a fost salvat indexul de cautare,
+	 *         sau -1 daca nu exista ori nu a putut fi citit.
+	 */
+	private long awaitSearchLoad(FutureTask<Long> searchLoad) {
+		if (searchLoad == null) {
+			return -1;
+		}
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return searchLoad.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					searchIndex.clear();
+					return -1;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private long readIndexFile() throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+		try {
+			if (in.remaining() < 20 || in.getInt() != INDEX_MAGIC || in.getInt() != INDEX_VERSION) {
+				throw new IOException("Unknown index format");
+			}
+			long covered = in.getLong();
+			int conversationCount = in.getInt();
+			for (int c = 0; c < conversationCount; c++) {
+				// Identificatorii agentilor sunt atribuiti la fiecare pornire, deci indexul
+				// retine numele celor doi participanti, nu cheia numerica.
+				long key = AgentDictionary.conversationKey(AgentDictionary.idOf(BinaryCodec.readString(in)),
+						AgentDictionary.idOf(BinaryCodec.readString(in)));
+				int size = BinaryCodec.readVarInt(in);
+				ConversationIndex conversationIndex = new ConversationIndex(Math.min(size, in.remaining() / 2));
+				long offset = 0;
+				long timestamp = 0;
+				for (int i = 0; i < size; i++) {
+					offset += BinaryCodec.readVarLong(in);
+					timestamp += BinaryCodec.readSignedVarLong(in);
+					conversationIndex.add(offset, timestamp);
+				}
+				index.put(key, conversationIndex);
+			}
+			return covered;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Truncated index", e);
+		}
+	}
+
+	private long readSearchFile() throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(searchFile.toPath()));
+		if (in.remaining() < 16 || in.getInt() != SEARCH_MAGIC || in.getInt() != SEARCH_VERSION) {
+			throw new IOException("Unknown search index format");
+		}
+		long covered = in.getLong();
+		searchIndex.readFrom(in);
+		return covered;
+	}
+
+	/**
+	 * Salveaza indexul conversatiilor si indexul de cautare (vezi
+	 * {@link #encodeIndex()} si {@link #writeIndex(byte[], long)}). Apelantul trebuie
+	 * sa detina atat lock-ul de scriere, cat si lock-ul jurnalului.
+	 */
+	private void saveIndex() throws IOException {
+		writeIndex(encodeIndex(), indexedLength);
+	}
+
+	/**
+	 * Codifica indexul conversatiilor in memorie. Pentru fiecare conversatie sunt
+	 * scrise pozitiile si momentele mesajelor ca diferente fata de mesajul
+	 * anterior, pe un numar variabil de octeti. Apelantul trebuie sa detina
+	 * lock-ul jurnalului.
+	 *
+	 * @return indexul codificat, de scris cu {@link #writeIndex(byte[], long)}.
+	 */
+	private byte[] encodeIndex() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes))) {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(INDEX_VERSION);
+			out.writeLong(indexedLength);
+			out.writeInt(index.size());
+			for (long key : index.keys()) {
+				ConversationIndex conversationIndex = index.get(key);
+				BinaryCodec.writeString(out, AgentDictionary.nameOf(AgentDictionary.lowId(key)));
+				BinaryCodec.writeString(out, AgentDictionary.nameOf(AgentDictionary.highId(key)));
+				BinaryCodec.writeVarInt(out, conversationIndex.size());
+				long offset = 0;
+				long timestamp = 0;
+				for (int i = 0; i < conversationIndex.size(); i++) {
+					BinaryCodec.writeVarLong(out, conversationIndex.offsetAt(i) - offset);
+					BinaryCodec.writeSignedVarLong(out, conversationIndex.timestampAt(i) - timestamp);
+					offset = conversationIndex.offsetAt(i);
+					timestamp = conversationIndex.timestampAt(i);
+				}
+			}
+		}
+		indexDirty = false;
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Scrie indexul codificat intr-un fisier temporar, care inlocuieste apoi
+	 * atomic indexul existent, si salveaza la fel indexul de cautare. Apelantul
+	 * trebuie sa detina lock-ul de scriere, pentru ca indexul de cautare sa
+	 * corespunda aceleiasi lungimi a jurnalului, dar nu si lock-ul jurnalului:
+	 * cititorii si agentii care adauga mesaje nu asteapta scrierea pe disc.
+	 *
+	 * @param encodedIndex indexul codificat de {@link #encodeIndex()}.
+	 * @param covered      lungimea jurnalului acoperita de index.
+	 */
+	private void writeIndex(byte[] encodedIndex, long covered) throws IOException {
+		try {
+			File temporary = new File(indexFile.getPath() + ".tmp");
+			Files.write(temporary.toPath(), encodedIndex);
+			Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+
+			File searchTemporary = new File(searchFile.getPath() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(searchTemporary)))) {
+				out.writeInt(SEARCH_MAGIC);
+				out.writeInt(SEARCH_VERSION);
+				out.writeLong(covered);
+				searchIndex.writeTo(out);
+			}
+			Files.move(searchTemporary.toPath(), searchFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			synchronized (this) {
+				indexDirty = true;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Citeste inregistrarea de la o pozitie logica data. Inregistrarile din
+	 * fisierul activ sunt citite dintr-o zona mapata, daca fisierul incape in
+	 * ea, iar zona este remapata doar cand inregistrarea se termina dupa
+	 * sfarsitul ei; altfel se face o citire pozitionata. Zona acopera doar
+	 * inregistrarile indexate, nu si octetii pe care writer-ul ii scrie in
+	 * acelasi timp. Inregistrarile sigilate sunt citite din segmentul lor.
+	 * Apelantul trebuie sa detina lock-ul jurnalului.
+	 */
+	private MessageRecord readRecord(long offset) throws IOException {
+		if (offset < activeBase) {
+			return readSealedRecord(offset);
+		}
+		long position = offset - activeBase;
+		long indexedSize = indexedLength - activeBase;
+		ByteBuffer header;
+		if (indexedSize <= Integer.MAX_VALUE) {
+			header = mappedAt(position, HEADER_SIZE, indexedSize);
+		} else {
+			header = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(header, position);
+			header.flip();
+		}
+
+		int length = header.getInt();
+		int checksum = header.getInt();
+		if (length < 0 || length > MAX_RECORD_SIZE) {
+			throw new IOException("Invalid record at offset " + offset);
+		}
+		byte[] body = new byte[length];
+		if (indexedSize <= Integer.MAX_VALUE) {
+			mappedAt(position + HEADER_SIZE, length, indexedSize).get(body);
+		} else {
+			readFully(ByteBuffer.wrap(body), position + HEADER_SIZE);
+		}
+		return decodeChecked(body, checksum, offset);
+	}
+
+	/**
+	 * Obtine o vedere asupra zonei mapate a fisierului activ, pozitionata la
+	 * inceputul unei portiuni, remapand zona daca portiunea se termina dupa
+	 * sfarsitul ei.
+	 *
+	 * @param position    pozitia portiunii in fisierul activ.
+	 * @param length      lungimea portiunii.
+	 * @param indexedSize lungimea fisierului activ acoperita de index.
+	 */
+	private ByteBuffer mappedAt(long position, int length, long indexedSize) throws IOException {
+		if (position + length > indexedSize) {
+			throw new IOException("Record at offset " + (activeBase + position) + " extends past the indexed log");
+		}
+		if (mapped == null || mapped.capacity() < position + length) {
+			mapped = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexedSize);
+		}
+		ByteBuffer view = mapped.duplicate();
+		view.position((int) position);
+		return view;
+	}
+
+	private MessageRecord readSealedRecord(long offset) throws IOException {
+		HistorySegment segment = segmentFor(offset);
+		byte[] header = new byte[HEADER_SIZE];
+		segment.read(offset, header, 0, HEADER_SIZE);
+		ByteBuffer fields = ByteBuffer.wrap(header);
+		int length = fields.getInt();
+		int checksum = fields.getInt();
+		if (length < 0 || length > MAX_RECORD_SIZE) {
+			throw new IOException("Invalid record at offset " + offset);
+		}
+		byte[] body = new byte[length];
+		segment.read(offset + HEADER_SIZE, body, 0, length);
+		return decodeChecked(body, checksum, offset);
+	}
+
+	/**
+	 * Cauta binar segmentul care contine o pozitie logica.
+	 */
+	private HistorySegment segmentFor(long offset) throws IOException {
+		int low = 0;
+		int high = segments.size() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			HistorySegment segment = segments.get(middle);
+			if (offset < segment.getBase()) {
+				high = middle - 1;
+			} else if (offset >= segment.getEnd()) {
+				low = middle + 1;
+			} else {
+				return segment;
+			}
+		}
+		throw new IOException("No history segment contains offset " + offset);
+	}
+
+	private static MessageRecord decodeChecked(byte[] body, int checksum, long offset) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, body.length);
+		if ((int) crc.getValue() != checksum) {
+			throw new IOException("Checksum mismatch at offset " + offset);
+		}
+		return decode(body);
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (readChannel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	private void truncateTo(long validLength) throws IOException {
+		if (validLength < channel.size()) {
+			System.out.println("Truncating damaged tail of " + file.getName() + " at offset " + validLength + ".");
+			channel.truncate(validLength);
+			mapped = null;
+		}
+	}
+
+	private FileChannel openChannel() throws IOException {
+		return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	private static ByteBuffer encode(MessageRecord record) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + record.getContent().length());
+		DataOutputStream body = new DataOutputStream(bytes);
+		body.writeLong(record.getTimestamp());
+		body.writeUTF(record.getSender());
+		body.writeUTF(record.getReceiver());
+		byte[] content = record.getContent().getBytes(StandardCharsets.UTF_8);
+		body.writeInt(content.length);
+		body.write(content);
+
+		byte[] encoded = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(encoded, 0, encoded.length);
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + encoded.length);
+		buffer.putInt(encoded.length);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(encoded);
+		buffer.flip();
+		return buffer;
+	}
+
+	private static MessageRecord decode(byte[] body) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+			long timestamp = in.readLong();
+			String sender = in.readUTF();
+			String receiver = in.readUTF();
+			byte[] content = new byte[in.readInt()];
+			in.readFully(content);
+			return new MessageRecord(sender, receiver, timestamp, new String(content, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Citeste inregistrarile valide dintr-un fisier jurnal, incepand de la o
+	 * pozitie data.
+	 *
+	 * @return pozitia de sfarsit a portiunii valide a fisierului.
+	 */
+	private static long scan(File file, long from, RecordVisitor visitor) throws IOException {
+		try (FileInputStream stream = new FileInputStream(file)) {
+			stream.getChannel().position(from);
+			return scan(new BufferedInputStream(stream), from, visitor);
+		}
+	}
+
+	/**
+	 * Citeste inregistrarile valide dintr-un flux, pana la prima inregistrare
+	 * incompleta sau corupta.
+	 *
+	 * @param from pozitia primului octet din flux, adaugata pozitiilor primite de
+	 *             vizitator.
+	 * @return pozitia de dupa ultima inregistrare valida.
+	 */
+	private static long scan(InputStream stream, long from, RecordVisitor visitor) throws IOException {
+		long offset = from;
+		DataInputStream in = new DataInputStream(stream);
+		try {
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				if (length < 0 || length > MAX_RECORD_SIZE) {
+					break;
+				}
+				int checksum = in.readInt();
+				byte[] body = new byte[length];
+				in.readFully(body);
+
+				CRC32 crc = new CRC32();
+				crc.update(body, 0, length);
+				if ((int) crc.getValue() != checksum) {
+					break;
+				}
+				visitor.visit(offset, decode(body));
+				offset += HEADER_SIZE + length;
+			}
+		} catch (EOFException e) {
+			// inregistrare incompleta la sfarsitul fisierului
+		}
+		return offset;
+	}
+}
@@ -0,0 +1,97 @@
+package backend;
+
+/**
+ * Clasa HistoryMetrics este MBean-ul unui {@link HistoryLog}. Valorile sunt
+ * citite din contoarele jurnalului si ale writer-ului sau; un jurnal in care nu
+ * s-a scris inca nu are writer, iar valorile lui sunt 0.
+ */
+public class HistoryMetrics implements HistoryMetricsMBean {
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private final HistoryLog log;
+
+	public HistoryMetrics(HistoryLog log) {
+		this.log = log;
+	}
+
+	@Override
+	public long getFlushCount() {
+		HistoryWriter writer = log.getCurrentWriter();
+		return writer == null ? 0 : writer.getFlushCount();
+	}
+
+	@Override
+	public long getWrittenRecords() {
+		HistoryWriter writer = log.getCurrentWriter();
+		return writer == null ? 0 : writer.getWrittenCount();
+	}
+
+	@Override
+	public long getWrittenBytes() {
+		return log.getWrittenBytes();
+	}
+
+	@Override
+	public long getWriteErrors() {
+		HistoryWriter writer = log.getCurrentWriter();
+		return writer == null ? 0 : writer.getWriteErrorCount();
+	}
+
+	@Override
+	public int getUnwrittenRecords() {
+		HistoryWriter writer = log.getCurrentWriter();
+		return writer == null ? 0 : writer.getUnwrittenCount();
+	}
+
+	@Override
+	public long getLostRecords() {
+		HistoryWriter writer = log.getCurrentWriter();
+		return writer == null ? 0 : writer.getLostCount();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		HistoryWriter writer = log.getCurrentWriter();
+		return writer == null ? 0 : writer.getQueueDepth();
+	}
+
+	@Override
+	public double getTotalFlushMs() {
+		HistoryWriter writer = log.getCurrentWriter();
+		return writer == null ? 0 : writer.getTotalFlushLatencyNanos() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getAverageFlushMs() {
+		HistoryWriter writer = log.getCurrentWriter();
+		return writer == null ? 0 : writer.getAverageFlushLatencyNanos() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getMaxFlushMs() {
+		HistoryWriter writer = log.getCurrentWriter();
+		return writer == null ? 0 : writer.getMaxFlushLatencyNanos() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getLastFlushMs() {
+		HistoryWriter writer = log.getCurrentWriter();
+		return writer == null ? 0 : writer.getLastFlushLatencyNanos() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public int getSegmentCount() {
+		return log.getSegmentCount();
+	}
+
+	@Override
+	public long getDiskBytes() {
+		return log.getDiskBytes();
+	}
+
+	@Override
+	public long getLogicalBytes() {
+		return log.getLogicalBytes();
+	}
+}
@@ -0,0 +1,39 @@
+package backend;
+
+/**
+ * Metricile unui jurnal de istoric, expuse prin JMX (vezi {@link Metrics}):
+ * loturile scrise de writer-ul asincron, mesajele si octetii scrisi si
+ * duratele scrierilor, inclusiv sincronizarea pe disc, scrierile esuate si
+ * mesajele inca nescrise sau pierdute, precum si segmentele jurnalului si
+ * spatiul ocupat de ele pe disc.
+ */
+public interface HistoryMetricsMBean {
+
+	long getFlushCount();
+
+	long getWrittenRecords();
+
+	long getWrittenBytes();
+
+	long getWriteErrors();
+
+	int getUnwrittenRecords();
+
+	long getLostRecords();
+
+	int getQueueDepth();
+
+	double getTotalFlushMs();
+
+	double getAverageFlushMs();
+
+	double getMaxFlushMs();
+
+	double getLastFlushMs();
+
+	int getSegmentCount();
+
+	long getDiskBytes();
+
+	long getLogicalBytes();
+}
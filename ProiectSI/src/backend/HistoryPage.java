@@ -0,0 +1,85 @@
+package backend;
+
+import java.util.List;
+
+/**
+ * Clasa HistoryPage reprezinta o pagina din istoricul unei conversatii:
+ * mesajele dintr-un interval de pozitii si informatiile necesare pentru a cere
+ * pagina anterioara sau urmatoare. Pozitiile mesajelor sunt folosite ca
+ * cursori.
+ */
+public class HistoryPage {
+
+	private final List<MessageRecord> messages;
+	private final int start;
+	private final int end;
+	private final int total;
+
+	/**
+	 * Construieste o pagina de istoric.
+	 *
+	 * @param messages mesajele din pagina, in ordinea in care au fost scrise.
+	 * @param start    pozitia primului mesaj din pagina in conversatie.
+	 * @param total    numarul total de mesaje din conversatie.
+	 */
+	public HistoryPage(List<MessageRecord> messages, int start, int total) {
+		this(messages, start, start + messages.size(), total);
+	}
+
+	/**
+	 * Construieste o pagina de istoric ale carei mesaje nu sunt neaparat
+	 * alaturate in conversatie, de exemplu mesajele dintr-un interval de timp.
+	 *
+	 * @param messages mesajele din pagina, in ordinea in care au fost scrise.
+	 * @param start    pozitia primului mesaj din pagina in conversatie.
+	 * @param end      pozitia de dupa ultimul mesaj din pagina.
+	 * @param total    numarul total de mesaje din conversatie.
+	 */
+	public HistoryPage(List<MessageRecord> messages, int start, int end, int total) {
+		this.messages = messages;
+		this.start = start;
+		this.end = end;
+		this.total = total;
+	}
+
+	public List<MessageRecord> getMessages() {
+		return messages;
+	}
+
+	/**
+	 * @return pozitia primului mesaj din pagina; cursorul pentru pagina
+	 *         anterioara.
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * @return pozitia de dupa ultimul mesaj din pagina; cursorul pentru pagina
+	 *         urmatoare.
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return numarul total de mesaje din conversatie.
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return true daca exista mesaje inaintea acestei pagini.
+	 */
+	public boolean hasBefore() {
+		return start > 0;
+	}
+
+	/**
+	 * @return true daca exista mesaje dupa aceasta pagina.
+	 */
+	public boolean hasAfter() {
+		return getEnd() < total;
+	}
+}
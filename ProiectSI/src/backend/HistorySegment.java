@@ -0,0 +1,341 @@
+package backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Clasa HistorySegment reprezinta o portiune inchisa (sigilata) a jurnalului
+ * {@link HistoryLog}, salvata comprimat intr-un fisier separat. Portiunea este
+ * impartita in blocuri de {@value #BLOCK_SIZE} octeti, comprimate independent
+ * cu Deflate, iar la inceputul fisierului se afla dimensiunea blocurilor si
+ * pozitia fiecarui bloc comprimat. Astfel, o inregistrare este citita
+ * decomprimand doar blocul (sau blocurile) in care se afla, nu tot segmentul.
+ * <p>
+ * Pozitiile folosite de segment sunt pozitiile logice din jurnal: segmentul
+ * acopera intervalul [{@link #getBase()}, {@link #getEnd()}), deci indexul
+ * conversatiilor si cel de cautare nu se schimba cand o portiune a jurnalului
+ * este mutata intr-un segment.
+ */
+public class HistorySegment {
+
+	static final int BLOCK_SIZE = 16 * 1024;
+	private static final int MAGIC = 0x43485347;
+	private static final int VERSION = 1;
+	private static final int FIXED_HEADER_SIZE = 40;
+	private static final int INFLATE_STEP = 1024;
+
+	private final File file;
+	private final long base;
+	private final long length;
+	private final long newestTimestamp;
+	private final int blockSize;
+	private final long[] blockOffsets;
+	private final FileChannel channel;
+	private final Inflater inflater = new Inflater();
+	private int cachedBlock = -1;
+	private int blockLength;
+	private int inflatedLength;
+	private byte[] cachedData;
+	private ByteBuffer compressed = ByteBuffer.allocate(BLOCK_SIZE);
+
+	private HistorySegment(File file, long base, long length, long newestTimestamp, int blockSize,
+			long[] blockOffsets) throws IOException {
+		this.file = file;
+		this.base = base;
+		this.length = length;
+		this.newestTimestamp = newestTimestamp;
+		this.blockSize = blockSize;
+		this.blockOffsets = blockOffsets;
+		this.cachedData = new byte[blockSize];
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+	}
+
+	/**
+	 * Comprima inceputul unui fisier jurnal intr-un segment nou. Segmentul este
+	 * scris intr-un fisier temporar, sincronizat pe disc si apoi mutat atomic la
+	 * destinatie, deci un segment gasit la pornire este intotdeauna complet.
+	 *
+	 * @param target          fisierul segmentului.
+	 * @param source          fisierul jurnal din care sunt copiati octetii.
+	 * @param length          numarul de octeti copiati, de la inceputul
+	 *                        fisierului; trebuie sa fie sfarsitul unei
+	 *                        inregistrari.
+	 * @param base            pozitia logica a primului octet.
+	 * @param newestTimestamp momentul celui mai nou mesaj din segment.
+	 * @return segmentul scris, deschis pentru citire.
+	 * @throws IOException daca citirea sau scrierea esueaza.
+	 */
+	public static HistorySegment write(File target, File source, long length, long base, long newestTimestamp)
+			throws IOException {
+		int blockCount = (int) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+		long[] blockOffsets = new long[blockCount + 1];
+		File temporary = new File(target.getPath() + ".tmp");
+		Deflater deflater = new Deflater();
+		try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long position = headerSize(blockCount);
+			out.position(position);
+			ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+			byte[] compressed = new byte[BLOCK_SIZE + BLOCK_SIZE / 8 + 64];
+			for (int b = 0; b < blockCount; b++) {
+				block.clear();
+				block.limit((int) Math.min(BLOCK_SIZE, length - (long) b * BLOCK_SIZE));
+				while (block.hasRemaining()) {
+					if (in.read(block, (long) b * BLOCK_SIZE + block.position()) < 0) {
+						throw new IOException("Unexpected end of " + source.getName());
+					}
+				}
+				deflater.reset();
+				deflater.setInput(block.array(), 0, block.limit());
+				deflater.finish();
+				blockOffsets[b] = position;
+				while (!deflater.finished()) {
+					int size = deflater.deflate(compressed);
+					ByteBuffer chunk = ByteBuffer.wrap(compressed, 0, size);
+					while (chunk.hasRemaining()) {
+						position += out.write(chunk);
+					}
+				}
+			}
+			blockOffsets[blockCount] = position;
+
+			ByteBuffer header = ByteBuffer.allocate(headerSize(blockCount));
+			header.putInt(MAGIC).putInt(VERSION).putLong(base).putLong(length).putLong(newestTimestamp)
+					.putInt(BLOCK_SIZE).putInt(blockCount);
+			for (long offset : blockOffsets) {
+				header.putLong(offset);
+			}
+			header.flip();
+			while (header.hasRemaining()) {
+				out.write(header, header.position());
+			}
+			out.force(true);
+		} finally {
+			deflater.end();
+		}
+		Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		return new HistorySegment(target, base, length, newestTimestamp, BLOCK_SIZE, blockOffsets);
+	}
+
+	/**
+	 * Deschide un segment existent, citind doar antetul si pozitiile blocurilor.
+	 *
+	 * @param file fisierul segmentului.
+	 * @return segmentul deschis.
+	 * @throws IOException daca fisierul nu poate fi citit sau nu este un segment.
+	 */
+	public static HistorySegment open(File file) throws IOException {
+		try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE);
+			readFully(in, header, 0);
+			header.flip();
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Unknown segment format " + file.getName());
+			}
+			long base = header.getLong();
+			long length = header.getLong();
+			long newestTimestamp = header.getLong();
+			int blockSize = header.getInt();
+			int blockCount = header.getInt();
+			if (blockSize <= 0 || blockCount < 0 || blockCount != (length + blockSize - 1) / blockSize) {
+				throw new IOException("Invalid segment " + file.getName());
+			}
+			ByteBuffer table = ByteBuffer.allocate(8 * (blockCount + 1));
+			readFully(in, table, FIXED_HEADER_SIZE);
+			table.flip();
+			long[] blockOffsets = new long[blockCount + 1];
+			for (int b = 0; b <= blockCount; b++) {
+				blockOffsets[b] = table.getLong();
+			}
+			if (blockOffsets[blockCount] > in.size()) {
+				throw new IOException("Truncated segment " + file.getName());
+			}
+			return new HistorySegment(file, base, length, newestTimestamp, blockSize, blockOffsets);
+		}
+	}
+
+	/**
+	 * Copiaza octetii de la o pozitie logica, decomprimand blocurile necesare.
+	 * Ultimul bloc folosit este pastrat, pentru ca mesajele unei conversatii sunt
+	 * de obicei citite unul dupa altul, din acelasi bloc.
+	 *
+	 * @param offset pozitia logica a primului octet.
+	 * @param target tabloul in care sunt copiati octetii.
+	 * @param from   pozitia din tablou de la care se copiaza.
+	 * @param count  numarul de octeti.
+	 * @throws IOException daca octetii nu sunt in segment sau blocul este
+	 *                     corupt.
+	 */
+	public synchronized void read(long offset, byte[] target, int from, int count) throws IOException {
+		long position = offset - base;
+		if (position < 0 || position + count > length) {
+			throw new IOException("Offset " + offset + " is outside segment " + file.getName());
+		}
+		while (count > 0) {
+			int block = (int) (position / blockSize);
+			int inBlock = (int) (position % blockSize);
+			int copied = Math.min(count, blockSize - inBlock);
+			byte[] data = block(block, inBlock + copied);
+			System.arraycopy(data, inBlock, target, from, copied);
+			position += copied;
+			from += copied;
+			count -= copied;
+		}
+	}
+
+	/**
+	 * Deschide un flux care citeste octetii segmentului in ordine, de la o
+	 * pozitie logica pana la sfarsitul segmentului.
+	 *
+	 * @param offset pozitia logica de inceput.
+	 * @return fluxul octetilor decomprimati.
+	 */
+	public InputStream openStream(long offset) {
+		return new InputStream() {
+			private long position = offset;
+
+			@Override
+			public int read() throws IOException {
+				byte[] one = new byte[1];
+				return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] target, int from, int count) throws IOException {
+				long remaining = getEnd() - position;
+				if (remaining <= 0) {
+					return -1;
+				}
+				int size = (int) Math.min(count, Math.min(remaining, blockSize - (position - base) % blockSize));
+				HistorySegment.this.read(position, target, from, size);
+				position += size;
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * @return pozitia logica a primului octet din segment.
+	 */
+	public long getBase() {
+		return base;
+	}
+
+	/**
+	 * @return pozitia logica de dupa ultimul octet din segment.
+	 */
+	public long getEnd() {
+		return base + length;
+	}
+
+	/**
+	 * @return numarul de octeti necomprimati din segment.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return momentul celui mai nou mesaj din segment, in milisecunde.
+	 */
+	public long getNewestTimestamp() {
+		return newestTimestamp;
+	}
+
+	/**
+	 * @return dimensiunea fisierului segmentului pe disc.
+	 */
+	public long getFileSize() {
+		return file.length();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Inchide fisierul segmentului.
+	 */
+	public synchronized void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		inflater.end();
+		cachedBlock = -1;
+		cachedData = null;
+	}
+
+	/**
+	 * Inchide si sterge fisierul segmentului.
+	 *
+	 * @return true daca fisierul a fost sters.
+	 */
+	public boolean delete() {
+		close();
+		return file.delete();
+	}
+
+	/**
+	 * Obtine blocul dat, decomprimat cel putin pana la o pozitie. Un bloc este
+	 * decomprimat treptat, doar cat este nevoie: o citire la inceputul blocului
+	 * nu plateste decomprimarea lui intregi, iar citirile urmatoare din acelasi
+	 * bloc continua de unde s-a oprit decomprimarea.
+	 */
+	private byte[] block(int block, int end) throws IOException {
+		if (block != cachedBlock) {
+			cachedBlock = -1;
+			int compressedSize = (int) (blockOffsets[block + 1] - blockOffsets[block]);
+			if (compressed.capacity() < compressedSize) {
+				compressed = ByteBuffer.allocate(compressedSize);
+			}
+			compressed.clear();
+			compressed.limit(compressedSize);
+			readFully(channel, compressed, blockOffsets[block]);
+			inflater.reset();
+			inflater.setInput(compressed.array(), 0, compressedSize);
+			blockLength = (int) Math.min(blockSize, length - (long) block * blockSize);
+			inflatedLength = 0;
+			cachedBlock = block;
+		}
+		try {
+			while (inflatedLength < end) {
+				int wanted = Math.min(Math.max(end, inflatedLength + INFLATE_STEP), blockLength) - inflatedLength;
+				int inflated = inflater.inflate(cachedData, inflatedLength, wanted);
+				if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					cachedBlock = -1;
+					throw new IOException("Corrupt block " + block + " in " + file.getName());
+				}
+				inflatedLength += inflated;
+			}
+		} catch (DataFormatException e) {
+			cachedBlock = -1;
+			throw new IOException("Corrupt block " + block + " in " + file.getName(), e);
+		}
+		return cachedData;
+	}
+
+	private static int headerSize(int blockCount) {
+		return FIXED_HEADER_SIZE + 8 * (blockCount + 1);
+	}
+
+	private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (in.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of segment");
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package backend;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.ObjectName;
+
+import jade.core.AID;
+import jade.core.Agent;
+
+/**
+ * Clasa HistoryService ofera un singur istoric de mesaje pentru toti agentii de
+ * chat dintr-un container. Agentii se ataseaza la pornire si se detaseaza la
+ * oprire; indiferent cati agenti ruleaza, containerul pastreaza o singura copie
+ * a istoricului in memorie si un singur writer pentru jurnal. Metricile
+ * cache-ului de conversatii al istoricului sunt expuse prin JMX cat timp
+ * serviciul exista.
+ */
+public class HistoryService {
+
+	private static final Map<String, HistoryService> SERVICES = new HashMap<>();
+
+	private final String containerName;
+	private final MessageHistory history;
+	private final Set<String> attachedAgents = ConcurrentHashMap.newKeySet();
+	private final ObjectName cacheMetricsName;
+
+	private HistoryService(String containerName) {
+		this.containerName = containerName;
+		this.history = new MessageHistory();
+		history.loadHistoryFromFile();
+		cacheMetricsName = Metrics.register("HistoryCache", containerName,
+				new ConversationCacheMetrics(history.getCache()));
+	}
+
+	/**
+	 * Ataseaza un agent la serviciul de istoric al containerului in care
+	 * ruleaza. Serviciul este creat la atasarea primului agent.
+	 *
+	 * @param agent agentul care se ataseaza.
+	 * @return serviciul de istoric al containerului.
+	 */
+	public static synchronized HistoryService attach(Agent agent) {
+		String containerName = agent.here().getName();
+		HistoryService service = SERVICES.get(containerName);
+		if (service == null) {
+			service = new HistoryService(containerName);
+			SERVICES.put(containerName, service);
+			System.out.println("History service started for container " + containerName + ".");
+		}
+		service.attachedAgents.add(agent.getName());
+		return service;
+	}
+
+	/**
+	 * Detaseaza un agent de serviciul de istoric. Cand ultimul agent se
+	 * detaseaza, istoricul din memorie este eliberat; jurnalul ramane pe disc.
+	 *
+	 * @param agent agentul care se detaseaza.
+	 */
+	public void detach(Agent agent) {
+		synchronized (HistoryService.class) {
+			attachedAgents.remove(agent.getName());
+			if (attachedAgents.isEmpty()) {
+				SERVICES.remove(containerName);
+				Metrics.unregister(cacheMetricsName);
+			}
+		}
+	}
+
+	/**
+	 * Obtine istoricul comun al containerului.
+	 *
+	 * @return istoricul mesajelor.
+	 */
+	public MessageHistory getHistory() {
+		return history;
+	}
+
+	/**
+	 * Verifica daca un agent foloseste acest serviciu. Un mesaj trimis de un
+	 * astfel de agent a fost deja inregistrat la trimitere, deci destinatarul nu
+	 * trebuie sa il inregistreze din nou.
+	 *
+	 * @param agent agentul verificat.
+	 * @return true daca agentul este atasat la serviciu.
+	 */
+	public boolean isAttached(AID agent) {
+		return attachedAgents.contains(agent.getName());
+	}
+
+	/**
+	 * @return numarul de agenti atasati la serviciu.
+	 */
+	public int getAttachedCount() {
+		return attachedAgents.size();
+	}
+}
@@ -0,0 +1,344 @@
+package backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clasa HistoryWriter scrie mesajele in jurnal pe un fir de executie dedicat,
+ * astfel incat agentii nu asteapta dupa disc. Mesajele sunt puse intr-o coada
+ * limitata, iar firul de scriere le grupeaza in loturi: fiecare lot este scris
+ * printr-o singura operatie, urmata optional de o sincronizare pe disc (fsync).
+ * Cand coada este plina, cei care adauga mesaje asteapta pana se elibereaza loc.
+ * <p>
+ * Un lot care nu poate fi scris ramane la writer si este scris din nou dupa o
+ * pauza care se dubleaza la fiecare esec, pana la o limita configurabila.
+ * Cat timp scrierea esueaza, {@link #flush()} intoarce false, iar esecurile si
+ * mesajele nescrise apar in metrici. Doar la inchidere un lot care nu poate fi
+ * scris este abandonat, iar mesajele lui sunt numarate ca pierdute.
+ */
+public class HistoryWriter {
+
+	/**
+	 * Cat de des sunt sincronizate pe disc mesajele scrise.
+	 */
+	public enum DurabilityMode {
+		/** Fara fsync; sistemul de operare decide cand ajung datele pe disc. */
+		NONE,
+		/** Un fsync dupa fiecare lot scris. */
+		BATCH,
+		/** Fiecare mesaj este scris si sincronizat pe disc separat. */
+		PER_MESSAGE
+	}
+
+	private static final int DEFAULT_QUEUE_CAPACITY = Integer.getInteger("history.queueCapacity", 10000);
+	private static final int DEFAULT_BATCH_SIZE = Integer.getInteger("history.batchSize", 256);
+	private static final long DEFAULT_FLUSH_INTERVAL_MS = Long.getLong("history.flushIntervalMs", 50);
+	private static final DurabilityMode DEFAULT_DURABILITY = DurabilityMode
+			.valueOf(System.getProperty("history.durability", DurabilityMode.BATCH.name()));
+	private static final long RETRY_DELAY_MS = Long.getLong("history.retryDelayMs", 100);
+	private static final long MAX_RETRY_DELAY_MS = Long.getLong("history.maxRetryDelayMs", 5000);
+
+	private final HistoryLog log;
+	private final BlockingQueue<MessageRecord> queue;
+	private final int batchSize;
+	private final long flushIntervalMillis;
+	private final DurabilityMode durability;
+	private final Thread thread;
+
+	private volatile boolean running = true;
+	private long enqueued;
+	private long written;
+	private long lost;
+	private int unwritten;
+	private volatile long writeErrors;
+	private volatile long flushCount;
+	private volatile long lastFlushNanos;
+	private volatile long maxFlushNanos;
+	private volatile long totalFlushNanos;
+
+	/**
+	 * Construieste un writer cu configuratia implicita, care poate fi schimbata
+	 * prin proprietatile de sistem history.queueCapacity, history.batchSize,
+	 * history.flushIntervalMs si history.durability. Pauzele dintre incercarile
+	 * de scriere sunt date de history.retryDelayMs si history.maxRetryDelayMs.
+	 *
+	 * @param log jurnalul in care sunt scrise mesajele.
+	 */
+	public HistoryWriter(HistoryLog log) {
+		this(log, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_DURABILITY);
+	}
+
+	/**
+	 * Construieste un writer si porneste firul de scriere.
+	 *
+	 * @param log                 jurnalul in care sunt scrise mesajele.
+	 * @param queueCapacity       numarul maxim de mesaje care asteapta sa fie
+	 *                            scrise.
+	 * @param batchSize           numarul maxim de mesaje scrise intr-un lot.
+	 * @param flushIntervalMillis cat timp asteapta un lot sa se umple dupa
+	 *                            primul mesaj, in milisecunde.
+	 * @param durability          cat de des sunt sincronizate mesajele pe disc.
+	 */
+	public HistoryWriter(HistoryLog log, int queueCapacity, int batchSize, long flushIntervalMillis,
+			DurabilityMode durability) {
+		this.log = log;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.batchSize = batchSize;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.durability = durability;
+
+		thread = new Thread(this::run, "history-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Pune un mesaj in coada de scriere. Daca coada este plina, apelantul
+	 * asteapta pana cand firul de scriere elibereaza loc.
+	 *
+	 * @param record mesajul de scris.
+	 */
+	public void enqueue(MessageRecord record) {
+		synchronized (this) {
+			enqueued++;
+		}
+		try {
+			queue.put(record);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			synchronized (this) {
+				enqueued--;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Pune un lot de mesaje in coada de scriere, actualizand contorul o singura
+	 * data pentru tot lotul. Daca coada se umple, apelantul asteapta pana cand
+	 * firul de scriere elibereaza loc.
+	 *
+	 * @param records mesajele de scris.
+	 */
+	public void enqueue(List<MessageRecord> records) {
+		synchronized (this) {
+			enqueued += records.size();
+		}
+		for (int i = 0; i < records.size(); i++) {
+			try {
+				queue.put(records.get(i));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				synchronized (this) {
+					enqueued -= records.size() - i;
+					notifyAll();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Asteapta pana cand toate mesajele puse in coada pana acum au fost scrise.
+	 * Daca scrierea unui lot esueaza, metoda nu mai asteapta reincercarile si
+	 * intoarce false.
+	 *
+	 * @return true daca toate mesajele puse in coada inainte de apel au fost
+	 *         scrise.
+	 */
+	public synchronized boolean flush() {
+		long target = enqueued;
+		long lostBefore = lost;
+		while (written + lost < target && unwritten == 0 && thread.isAlive()) {
+			try {
+				wait(flushIntervalMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return written + lost >= target && lost == lostBefore;
+	}
+
+	/**
+	 * Scrie mesajele ramase in coada si opreste firul de scriere.
+	 */
+	public void close() {
+		running = false;
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return numarul de mesaje care asteapta sa fie scrise.
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * @return numarul de mesaje scrise pana acum.
+	 */
+	public synchronized long getWrittenCount() {
+		return written;
+	}
+
+	/**
+	 * @return numarul de mesaje abandonate la inchidere pentru ca nu au putut fi
+	 *         scrise.
+	 */
+	public synchronized long getLostCount() {
+		return lost;
+	}
+
+	/**
+	 * @return numarul de mesaje din lotul care asteapta o noua incercare de
+	 *         scriere, sau 0 daca ultima scriere a reusit.
+	 */
+	public synchronized int getUnwrittenCount() {
+		return unwritten;
+	}
+
+	/**
+	 * @return numarul de scrieri de loturi esuate pana acum.
+	 */
+	public long getWriteErrorCount() {
+		return writeErrors;
+	}
+
+	/**
+	 * @return numarul de loturi scrise pana acum.
+	 */
+	public long getFlushCount() {
+		return flushCount;
+	}
+
+	/**
+	 * @return durata scrierii ultimului lot, in nanosecunde.
+	 */
+	public long getLastFlushLatencyNanos() {
+		return lastFlushNanos;
+	}
+
+	/**
+	 * @return durata cea mai mare a scrierii unui lot, in nanosecunde.
+	 */
+	public long getMaxFlushLatencyNanos() {
+		return maxFlushNanos;
+	}
+
+	/**
+	 * @return durata totala a scrierii loturilor, in nanosecunde.
+	 */
+	public long getTotalFlushLatencyNanos() {
+		return totalFlushNanos;
+	}
+
+	/**
+	 * @return durata medie a scrierii unui lot, in nanosecunde.
+	 */
+	public long getAverageFlushLatencyNanos() {
+		long count = flushCount;
+		return count == 0 ? 0 : totalFlushNanos / count;
+	}
+
+	private void run() {
+		List<MessageRecord> batch = new ArrayList<>(batchSize);
+		long retryDelay = RETRY_DELAY_MS;
+		while (running || !queue.isEmpty() || !batch.isEmpty()) {
+			try {
+				if (batch.isEmpty()) {
+					MessageRecord first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+					if (first == null) {
+						continue;
+					}
+					batch.add(first);
+					if (durability != DurabilityMode.PER_MESSAGE) {
+						fillBatch(batch);
+					}
+				}
+				if (writeBatch(batch)) {
+					completed(batch.size(), 0);
+					batch.clear();
+					retryDelay = RETRY_DELAY_MS;
+				} else if (!running) {
+					System.out.println("Istoricul nu a putut scrie " + batch.size()
+							+ " mesaje inainte de inchidere; mesajele sunt pierdute.");
+					completed(0, batch.size());
+					batch.clear();
+				} else {
+					synchronized (this) {
+						unwritten = batch.size();
+						notifyAll();
+					}
+					Thread.sleep(retryDelay);
+					retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+				}
+			} catch (InterruptedException e) {
+				running = false;
+			}
+		}
+	}
+
+	/**
+	 * Numara mesajele unui lot terminat si trezeste firele care asteapta in
+	 * {@link #flush()}.
+	 */
+	private synchronized void completed(int writtenRecords, int lostRecords) {
+		written += writtenRecords;
+		lost += lostRecords;
+		unwritten = 0;
+		notifyAll();
+	}
+
+	/**
+	 * Completeaza lotul cu mesajele sosite pana la umplerea lui sau pana la
+	 * expirarea intervalului de scriere.
+	 */
+	private void fillBatch(List<MessageRecord> batch) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+		while (batch.size() < batchSize) {
+			queue.drainTo(batch, batchSize - batch.size());
+			long remaining = deadline - System.nanoTime();
+			if (batch.size() >= batchSize || remaining <= 0 || !running) {
+				return;
+			}
+			MessageRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+			if (next == null) {
+				return;
+			}
+			batch.add(next);
+		}
+	}
+
+	/**
+	 * Scrie un lot in jurnal. Doar loturile scrise sunt numarate in metricile
+	 * scrierilor; un esec este numarat separat.
+	 *
+	 * @return true daca lotul a fost scris.
+	 */
+	private boolean writeBatch(List<MessageRecord> batch) {
+		long start = System.nanoTime();
+		try {
+			log.append(batch, durability != DurabilityMode.NONE);
+		} catch (IOException e) {
+			writeErrors++;
+			e.printStackTrace();
+			return false;
+		}
+		long elapsed = System.nanoTime() - start;
+
+		lastFlushNanos = elapsed;
+		maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+		totalFlushNanos += elapsed;
+		flushCount++;
+		return true;
+	}
+}
@@ -0,0 +1,124 @@
+package backend;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Clasa LatencyHistogram numara valori nenegative (de exemplu latente, in
+ * milisecunde) in intervale a caror latime creste odata cu valoarea: valorile
+ * sub 16 au cate un interval, iar fiecare putere a lui 2 de deasupra este
+ * impartita in 16 intervale egale, deci o percentila este aproximata cu o eroare
+ * de cel mult 1/16. Inregistrarea nu aloca memorie si nu foloseste lock-uri,
+ * astfel incat poate fi facuta pe fiecare mesaj, de pe orice fir. Histograma
+ * este serializabila, deci se muta impreuna cu agentul care o foloseste.
+ */
+public class LatencyHistogram implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final LongAccumulator max = new LongAccumulator((LongBinaryOperator & Serializable) Math::max, 0);
+
+	/**
+	 * Inregistreaza o valoare. O valoare negativa (de exemplu din cauza
+	 * ceasurilor nesincronizate) este inregistrata ca 0.
+	 *
+	 * @param value valoarea inregistrata.
+	 */
+	public void record(long value) {
+		long clamped = Math.max(value, 0);
+		counts.incrementAndGet(indexOf(clamped));
+		count.incrementAndGet();
+		sum.addAndGet(clamped);
+		max.accumulate(clamped);
+	}
+
+	/**
+	 * Adauga la aceasta histograma valorile inregistrate de alta histograma.
+	 *
+	 * @param other histograma adaugata.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long bucketCount = other.counts.get(i);
+			if (bucketCount != 0) {
+				counts.addAndGet(i, bucketCount);
+			}
+		}
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+		max.accumulate(other.max.get());
+	}
+
+	/**
+	 * @return numarul de valori inregistrate.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return cea mai mare valoare inregistrata, sau 0 daca nu exista valori.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return media valorilor inregistrate, sau 0 daca nu exista valori.
+	 */
+	public double getMean() {
+		long total = count.get();
+		return total == 0 ? 0 : (double) sum.get() / total;
+	}
+
+	/**
+	 * Obtine valoarea sub care se afla un procent dat din valorile inregistrate.
+	 *
+	 * @param percentile procentul, intre 0 si 100.
+	 * @return limita superioara a intervalului care contine percentila, dar cel
+	 *         mult valoarea maxima; 0 daca nu exista valori.
+	 */
+	public long getPercentile(double percentile) {
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max((long) Math.ceil(total * percentile / 100.0), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -0,0 +1,219 @@
+package backend;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Clasa LongObjectMap este o tabela de dispersie cu chei primitive de tip long,
+ * folosita pentru conversatii, a caror cheie este un long. Cautarea nu
+ * impacheteaza cheia intr-un obiect si nu foloseste niciun lock. Adaugarile sunt
+ * serializate; la o adaugare valoarea este publicata inaintea cheii, deci un
+ * cititor care gaseste cheia vede si valoarea completa. Cand tabela se umple,
+ * este inlocuita cu una de doua ori mai mare. Cheia 0 nu este permisa.
+ * <p>
+ * O intrare eliminata isi pastreaza cheia, cu valoarea null, pentru ca
+ * cititorii care parcurg tabela fara lock sa nu piarda cheile aflate dupa ea;
+ * aceste pozitii sunt refolosite la o noua adaugare a aceleiasi chei si sunt
+ * eliberate cand tabela este reconstruita.
+ *
+ * @param <V> tipul valorilor.
+ */
+public class LongObjectMap<V> {
+
+	/**
+	 * Primeste intrarile tabelei la parcurgere.
+	 *
+	 * @param <V> tipul valorilor.
+	 */
+	public interface EntryVisitor<V> {
+		void visit(long key, V value);
+	}
+
+	private static final class Table<V> {
+		final AtomicLongArray keys;
+		final AtomicReferenceArray<V> values;
+
+		Table(int capacity) {
+			keys = new AtomicLongArray(capacity);
+			values = new AtomicReferenceArray<>(capacity);
+		}
+	}
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private volatile Table<V> table = new Table<>(INITIAL_CAPACITY);
+	private volatile int size;
+	private int used;
+
+	/**
+	 * Cauta valoarea asociata unei chei.
+	 *
+	 * @param key cheia cautata.
+	 * @return valoarea asociata sau null.
+	 */
+	public V get(long key) {
+		Table<V> current = table;
+		int mask = current.keys.length() - 1;
+		for (int slot = mix(key) & mask;; slot = (slot + 1) & mask) {
+			long existing = current.keys.get(slot);
+			if (existing == key) {
+				return current.values.get(slot);
+			}
+			if (existing == 0) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Asociaza o valoare unei chei, inlocuind valoarea existenta.
+	 *
+	 * @param key   cheia, diferita de 0.
+	 * @param value valoarea, diferita de null.
+	 */
+	public synchronized void put(long key, V value) {
+		if (key == 0) {
+			throw new IllegalArgumentException("Key 0 is reserved");
+		}
+		Table<V> current = table;
+		int slot = find(current, key);
+		if (current.keys.get(slot) == key) {
+			if (current.values.getAndSet(slot, value) == null) {
+				size++;
+			}
+			return;
+		}
+
+		if ((used + 1) * 2 > current.keys.length()) {
+			current = resize(current);
+			slot = find(current, key);
+		}
+		current.values.set(slot, value);
+		current.keys.set(slot, key);
+		used++;
+		size++;
+	}
+
+	/**
+	 * Elimina valoarea asociata unei chei, doar daca este cea data.
+	 *
+	 * @param key   cheia.
+	 * @param value valoarea asteptata.
+	 * @return true daca valoarea a fost eliminata.
+	 */
+	public synchronized boolean remove(long key, V value) {
+		Table<V> current = table;
+		int slot = find(current, key);
+		if (current.keys.get(slot) == key && current.values.compareAndSet(slot, value, null)) {
+			size--;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Asociaza o valoare unei chei doar daca cheia nu are deja o valoare.
+	 *
+	 * @param key   cheia, diferita de 0.
+	 * @param value valoarea, diferita de null.
+	 * @return valoarea existenta sau null daca a fost adaugata cea noua.
+	 */
+	public synchronized V putIfAbsent(long key, V value) {
+		V existing = get(key);
+		if (existing == null) {
+			put(key, value);
+		}
+		return existing;
+	}
+
+	/**
+	 * Elimina toate intrarile.
+	 */
+	public synchronized void clear() {
+		table = new Table<>(INITIAL_CAPACITY);
+		size = 0;
+		used = 0;
+	}
+
+	/**
+	 * @return numarul de intrari din tabela.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Parcurge intrarile tabelei.
+	 *
+	 * @param visitor primeste fiecare intrare.
+	 */
+	public void forEach(EntryVisitor<V> visitor) {
+		Table<V> current = table;
+		for (int i = 0; i < current.keys.length(); i++) {
+			long key = current.keys.get(i);
+			V value = current.values.get(i);
+			if (key != 0 && value != null) {
+				visitor.visit(key, value);
+			}
+		}
+	}
+
+	/**
+	 * Obtine cheile existente la momentul apelului.
+	 *
+	 * @return o copie a cheilor din tabela.
+	 */
+	public long[] keys() {
+		Table<V> current = table;
+		long[] keys = new long[current.keys.length()];
+		int count = 0;
+		for (int i = 0; i < current.keys.length(); i++) {
+			long key = current.keys.get(i);
+			if (key != 0 && current.values.get(i) != null) {
+				keys[count++] = key;
+			}
+		}
+		return Arrays.copyOf(keys, count);
+	}
+
+	/**
+	 * Reconstruieste tabela doar cu intrarile existente. Daca pozitiile ocupate
+	 * sunt in mare parte chei eliminate, tabela isi pastreaza dimensiunea; altfel
+	 * se dubleaza.
+	 */
+	private Table<V> resize(Table<V> current) {
+		int capacity = current.keys.length();
+		Table<V> next = new Table<>((size + 1) * 4 <= capacity ? capacity : capacity * 2);
+		for (int i = 0; i < current.keys.length(); i++) {
+			long key = current.keys.get(i);
+			V value = current.values.get(i);
+			if (key != 0 && value != null) {
+				int slot = find(next, key);
+				next.values.set(slot, value);
+				next.keys.set(slot, key);
+			}
+		}
+		used = size;
+		table = next;
+		return next;
+	}
+
+	/**
+	 * Gaseste pozitia cheii in tabela sau prima pozitie libera in care poate fi
+	 * adaugata.
+	 */
+	private static int find(Table<?> table, long key) {
+		int mask = table.keys.length() - 1;
+		int slot = mix(key) & mask;
+		while (table.keys.get(slot) != 0 && table.keys.get(slot) != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
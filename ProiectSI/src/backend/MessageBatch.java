@@ -0,0 +1,115 @@
+package backend;
+
+import jade.lang.acl.ACLMessage;
+
+/**
+ * Clasa MessageBatch descrie continutul unui mesaj ACL trimis de un agent de
+ * chat. Un mesaj ACL poate transporta un singur mesaj de chat (continutul ACL
+ * si momentul trimiterii in parametrul {@link ChatAgent#TIMESTAMP_PARAM}) sau un
+ * lot de mesaje trimise aceluiasi destinatar intr-un interval scurt. Un lot are
+ * parametrul {@value #BATCH_PARAM} egal cu numarul de mesaje, iar continutul
+ * este format din intrari "moment,lungime:text", una dupa alta.
+ */
+public final class MessageBatch {
+
+	/**
+	 * Parametrul ACL care contine numarul de mesaje dintr-un lot.
+	 */
+	public static final String BATCH_PARAM = "batch";
+
+	private final long[] timestamps;
+	private final String[] contents;
+
+	private MessageBatch(long[] timestamps, String[] contents) {
+		this.timestamps = timestamps;
+		this.contents = contents;
+	}
+
+	/**
+	 * Codifica un lot de mesaje in continutul unui mesaj ACL.
+	 *
+	 * @param timestamps momentele trimiterii mesajelor.
+	 * @param contents   textele mesajelor.
+	 * @param count      numarul de mesaje din lot.
+	 * @return continutul mesajului ACL.
+	 */
+	public static String encode(long[] timestamps, String[] contents, int count) {
+		int length = 0;
+		for (int i = 0; i < count; i++) {
+			length += contents[i].length() + 24;
+		}
+		StringBuilder out = new StringBuilder(length);
+		for (int i = 0; i < count; i++) {
+			out.append(timestamps[i]).append(',').append(contents[i].length()).append(':').append(contents[i]);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Citeste mesajele de chat dintr-un mesaj ACL primit. Pentru un mesaj
+	 * trimis fara moment (de un agent mai vechi), este folosit momentul curent.
+	 *
+	 * @param msg mesajul ACL primit.
+	 * @return mesajele de chat transportate.
+	 * @throws IllegalArgumentException daca lotul nu poate fi decodificat.
+	 */
+	public static MessageBatch decode(ACLMessage msg) {
+		String count = msg.getUserDefinedParameter(BATCH_PARAM);
+		if (count == null) {
+			return new MessageBatch(new long[] { readTimestamp(msg) }, new String[] { msg.getContent() });
+		}
+
+		String content = msg.getContent();
+		int size = Integer.parseInt(count);
+		long[] timestamps = new long[size];
+		String[] contents = new String[size];
+		int position = 0;
+		for (int i = 0; i < size; i++) {
+			int comma = content.indexOf(',', position);
+			int colon = content.indexOf(':', comma + 1);
+			if (comma < 0 || colon < 0) {
+				throw new IllegalArgumentException("Malformed batch entry " + i);
+			}
+			timestamps[i] = Long.parseLong(content.substring(position, comma));
+			int length = Integer.parseInt(content.substring(comma + 1, colon));
+			position = colon + 1 + length;
+			contents[i] = content.substring(colon + 1, position);
+		}
+		return new MessageBatch(timestamps, contents);
+	}
+
+	private static long readTimestamp(ACLMessage msg) {
+		String timestamp = msg.getUserDefinedParameter(ChatAgent.TIMESTAMP_PARAM);
+		if (timestamp != null) {
+			try {
+				return Long.parseLong(timestamp);
+			} catch (NumberFormatException e) {
+				e.printStackTrace();
+			}
+		}
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * @return numarul de mesaje din lot.
+	 */
+	public int size() {
+		return contents.length;
+	}
+
+	/**
+	 * @param index pozitia mesajului in lot.
+	 * @return momentul trimiterii mesajului, in milisecunde.
+	 */
+	public long getTimestamp(int index) {
+		return timestamps[index];
+	}
+
+	/**
+	 * @param index pozitia mesajului in lot.
+	 * @return textul mesajului.
+	 */
+	public String getContent(int index) {
+		return contents[index];
+	}
+}
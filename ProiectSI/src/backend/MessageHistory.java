@@ -1,128 +1,512 @@
 package backend;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.LongFunction;
 
 import jade.core.AID;
 
 /**
  * Clasa MessageHistory gestioneaza istoricul conversatiilor intre agenti.
  * Aceasta salveaza, incarca si permite accesul la mesajele schimbate intre
- * agenti.
+ * agenti. Mesajele sunt salvate intr-un jurnal append-only ({@link HistoryLog})
+ * de catre un writer asincron ({@link HistoryWriter}), astfel incat adaugarea
+ * unui mesaj nu blocheaza agentul in asteptarea discului. La pornire este
+ * incarcat doar indexul jurnalului; mesajele unei conversatii sunt citite abia
+ * la prima cerere.
+ * <p>
+ * Istoricul poate fi folosit simultan de firul agentului si de firul
+ * interfetei. Scrierile intr-o conversatie sunt serializate printr-un lock ales
+ * dupa cheia conversatiei (lock-uri pe benzi), iar citirile lucreaza pe o imagine
+ * a conversatiei ({@link ConversationBuffer}) si nu asteapta dupa scrieri.
+ * <p>
+ * Conversatiile citite sunt pastrate in memorie intr-un {@link ConversationCache}
+ * cu buget limitat, iar mesajele noi sunt adaugate si in conversatiile aflate
+ * deja in cache. Conversatiile nefolosite de mult timp sunt eliminate si citite
+ * din nou din jurnal la nevoie, deci memoria ocupata nu creste odata cu
+ * istoricul.
  */
 public class MessageHistory {
 
-	private Map<String, StringBuilder> conversations = new HashMap<>();
-	private static final String HISTORY_FILE = "chat_history.txt";
+	private static final int LOCK_STRIPES = 64;
+
+	private final ConversationCache cache;
+	private final LongFunction<Object> lockProvider = this::lockFor;
+	private final Object[] locks = new Object[LOCK_STRIPES];
+	private final RecentRecords recentRecords = new RecentRecords(HistoryLog.RECENT_RECORDS);
+	private final String historyFile;
+	private final BlobStore blobStore;
+	private volatile HistoryLog log;
+	private static final String HISTORY_FILE = "chat_history.log";
+	private static final String LEGACY_HISTORY_FILE = "chat_history.txt";
+
+	public MessageHistory() {
+		this(HISTORY_FILE);
+	}
+
+	/**
+	 * Construieste un istoric salvat intr-un jurnal dat.
+	 *
+	 * @param historyFile calea fisierului jurnal.
+	 */
+	public MessageHistory(String historyFile) {
+		this(historyFile, new ConversationCache());
+	}
+
+	/**
+	 * Construieste un istoric salvat intr-un jurnal dat, cu un cache de
+	 * conversatii dat.
+	 *
+	 * @param historyFile calea fisierului jurnal.
+	 * @param cache       cache-ul conversatiilor citite.
+	 */
+	public MessageHistory(String historyFile, ConversationCache cache) {
+		this.historyFile = historyFile;
+		this.cache = cache;
+		this.blobStore = new BlobStore(new File(historyFile + ".blobs"));
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
 
 	/**
-	 * Adauga un mesaj la istoricul conversatiei intre doi agenti.
-	 * 
+	 * Adauga un mesaj la istoricul conversatiei intre doi agenti, folosind
+	 * momentul curent ca moment al trimiterii.
+	 *
 	 * @param sender   agentul care trimite mesajul.
 	 * @param receiver agentul care primeste mesajul.
 	 * @param message  mesajul trimis.
 	 */
 	public void addMessage(AID sender, AID receiver, String message) {
-		String conversationKey = getConversationKey(sender, receiver);
-		StringBuilder conversation = conversations.getOrDefault(conversationKey, new StringBuilder());
-		conversation.append(sender.getLocalName()).append(": ").append(message).append("\n");
-		conversations.put(conversationKey, conversation);
+		addMessage(sender, receiver, message, System.currentTimeMillis());
+	}
+
+	/**
+	 * Adauga un mesaj la istoricul conversatiei intre doi agenti si il scrie in
+	 * jurnal. Un mesaj care exista deja in istoric (acelasi expeditor,
+	 * destinatar, moment si continut) nu este adaugat a doua oara.
+	 *
+	 * @param sender    agentul care trimite mesajul.
+	 * @param receiver  agentul care primeste mesajul.
+	 * @param message   mesajul trimis.
+	 * @param timestamp momentul trimiterii mesajului, in milisecunde.
+	 */
+	public void addMessage(AID sender, AID receiver, String message, long timestamp) {
+		MessageRecord record = new MessageRecord(AgentDictionary.idOf(sender), AgentDictionary.idOf(receiver),
+				timestamp, message);
+		addRecord(record);
+	}
+
+	/**
+	 * Adauga un mesaj trimis intr-o camera de chat. Mesajul este salvat o singura
+	 * data, in conversatia camerei, indiferent cati membri il primesc.
+	 *
+	 * @param sender    agentul care trimite mesajul.
+	 * @param room      numele camerei.
+	 * @param message   mesajul trimis.
+	 * @param timestamp momentul trimiterii mesajului, in milisecunde.
+	 */
+	public void addRoomMessage(AID sender, String room, String message, long timestamp) {
+		addRecord(new MessageRecord(AgentDictionary.idOf(sender), AgentDictionary.roomId(room), timestamp, message));
+	}
+
+	/**
+	 * Adauga un lot de mesaje, primite sau trimise. Mesajele sunt grupate pe
+	 * conversatii, pastrand ordinea din fiecare conversatie; fiecare conversatie
+	 * este blocata o singura data, iar mesajele ei noi sunt trimise jurnalului
+	 * impreuna. Mesajele care exista deja in istoric sunt ignorate. O conversatie
+	 * care nu este in cache nu este citita din jurnal pentru o scriere: mesajele
+	 * ei sunt trimise direct jurnalului, care recunoaste si el dublurile.
+	 *
+	 * @param records mesajele, in ordinea sosirii sau a trimiterii.
+	 */
+	public void addMessages(List<MessageRecord> records) {
+		Map<Long, List<MessageRecord>> byConversation = new LinkedHashMap<>();
+		for (MessageRecord record : records) {
+			byConversation.computeIfAbsent(record.getConversationKey(), key -> new ArrayList<>()).add(record);
+		}
+
+		for (Map.Entry<Long, List<MessageRecord>> entry : byConversation.entrySet()) {
+			long conversationKey = entry.getKey();
+			List<MessageRecord> accepted = new ArrayList<>(entry.getValue().size());
+			synchronized (lockFor(conversationKey)) {
+				ConversationBuffer conversation = cache.get(conversationKey);
+				long before = conversation == null ? 0 : conversation.estimatedBytes();
+				for (MessageRecord record : entry.getValue()) {
+					if (recentRecords.add(record) && (conversation == null || conversation.appendIfAbsent(record))) {
+						accepted.add(record);
+					}
+				}
+				if (conversation != null) {
+					cache.grew(conversation.estimatedBytes() - before);
+				}
+				if (!accepted.isEmpty()) {
+					try {
+						openLog().enqueue(accepted);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+		cache.evictIfNeeded(lockProvider);
+	}
 
-		saveHistoryToFile();
+	private void addRecord(MessageRecord record) {
+		long conversationKey = record.getConversationKey();
+		synchronized (lockFor(conversationKey)) {
+			ConversationBuffer conversation = cache.get(conversationKey);
+			if (conversation == null) {
+				if (recentRecords.add(record)) {
+					appendToFile(record);
+				}
+			} else {
+				long before = conversation.estimatedBytes();
+				if (recentRecords.add(record) && conversation.appendIfAbsent(record)) {
+					cache.grew(conversation.estimatedBytes() - before);
+					appendToFile(record);
+				}
+			}
+		}
+		cache.evictIfNeeded(lockProvider);
 	}
 
 	/**
 	 * Obtine istoricul conversatiei dintre doi agenti.
-	 * 
+	 *
 	 * @param sender   agentul care a trimis mesajele.
 	 * @param receiver agentul care a primit mesajele.
 	 * @return istoricul conversatiei dintre cei doi agenti.
 	 */
 	public String getConversationHistory(AID sender, AID receiver) {
-		String conversationKey = getConversationKey(sender, receiver);
-		return conversations.getOrDefault(conversationKey, new StringBuilder()).toString();
+		ConversationBuffer conversation = getConversation(getConversationKey(sender, receiver));
+		String history = conversation.render(new StringBuilder(conversation.size() * 32)).toString();
+		cache.evictIfNeeded(lockProvider);
+		return history;
+	}
+
+	/**
+	 * Obtine istoricul unei camere de chat.
+	 *
+	 * @param room numele camerei.
+	 * @return mesajele trimise in camera, cate unul pe linie.
+	 */
+	public String getRoomHistory(String room) {
+		int roomId = AgentDictionary.roomId(room);
+		ConversationBuffer conversation = getConversation(AgentDictionary.conversationKey(roomId, roomId));
+		String history = conversation.render(new StringBuilder(conversation.size() * 32)).toString();
+		cache.evictIfNeeded(lockProvider);
+		return history;
+	}
+
+	/**
+	 * Obtine ultimele mesaje din conversatia dintre doi agenti.
+	 *
+	 * @param sender   unul dintre agentii conversatiei.
+	 * @param receiver celalalt agent al conversatiei.
+	 * @param count    numarul maxim de mesaje.
+	 * @return pagina cu ultimele mesaje.
+	 */
+	public HistoryPage getLastMessages(AID sender, AID receiver, int count) {
+		long conversationKey = getConversationKey(sender, receiver);
+		int total = getLog().getConversationSize(conversationKey);
+		return readPage(conversationKey, total - count, total, total);
+	}
+
+	/**
+	 * Obtine mesajele aflate inaintea unui cursor in conversatia dintre doi
+	 * agenti.
+	 *
+	 * @param sender   unul dintre agentii conversatiei.
+	 * @param receiver celalalt agent al conversatiei.
+	 * @param cursor   pozitia de inceput a paginii curente
+	 *                 ({@link HistoryPage#getStart()}).
+	 * @param count    numarul maxim de mesaje.
+	 * @return pagina cu mesajele de dinaintea cursorului.
+	 */
+	public HistoryPage getMessagesBefore(AID sender, AID receiver, int cursor, int count) {
+		long conversationKey = getConversationKey(sender, receiver);
+		int total = getLog().getConversationSize(conversationKey);
+		int end = Math.min(cursor, total);
+		return readPage(conversationKey, end - count, end, total);
+	}
+
+	/**
+	 * Obtine mesajele aflate dupa un cursor in conversatia dintre doi agenti.
+	 *
+	 * @param sender   unul dintre agentii conversatiei.
+	 * @param receiver celalalt agent al conversatiei.
+	 * @param cursor   pozitia de sfarsit a paginii curente
+	 *                 ({@link HistoryPage#getEnd()}).
+	 * @param count    numarul maxim de mesaje.
+	 * @return pagina cu mesajele de dupa cursor.
+	 */
+	public HistoryPage getMessagesAfter(AID sender, AID receiver, int cursor, int count) {
+		long conversationKey = getConversationKey(sender, receiver);
+		int total = getLog().getConversationSize(conversationKey);
+		return readPage(conversationKey, cursor, cursor + count, total);
+	}
+
+	/**
+	 * Obtine mesajele trimise intr-un interval de timp in conversatia dintre doi
+	 * agenti. Mesajele sunt gasite prin cautare binara in index, in ordinea
+	 * momentelor, si intoarse in ordinea in care au fost scrise.
+	 *
+	 * @param sender   unul dintre agentii conversatiei.
+	 * @param receiver celalalt agent al conversatiei.
+	 * @param from     inceputul intervalului, inclusiv, in milisecunde.
+	 * @param to       sfarsitul intervalului, exclusiv, in milisecunde.
+	 * @param count    numarul maxim de mesaje.
+	 * @return pagina cu primele mesaje din interval.
+	 */
+	public HistoryPage getMessagesBetween(AID sender, AID receiver, long from, long to, int count) {
+		long conversationKey = getConversationKey(sender, receiver);
+		try {
+			return getLog().readBetween(conversationKey, from, to, count);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new HistoryPage(new ArrayList<>(), 0, 0);
+		}
 	}
 
 	/**
-	 * Salveaza istoricul conversatiilor intr-un fisier text. Fiecare conversatie
-	 * este salvata cu cheia corespunzatoare si continutul mesajelor.
+	 * Cauta mesaje in toate conversatiile istoricului (vezi
+	 * {@link HistoryLog#search(SearchQuery, SearchIndex.ConversationFilter)}).
+	 *
+	 * @param query  cautarea.
+	 * @param filter conversatiile in care se cauta.
+	 * @return mesajele gasite, de la cel mai nou.
 	 */
-	private void saveHistoryToFile() {
+	public List<MessageRecord> search(SearchQuery query, SearchIndex.ConversationFilter filter) {
 		try {
-			File file = new File(HISTORY_FILE);
-			if (!file.exists()) {
-				file.createNewFile();
+			return getLog().search(query, filter);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new ArrayList<>();
+		}
+	}
+
+	/**
+	 * Obtine toate mesajele unui agent: conversatiile lui cu alti agenti si
+	 * conversatiile camerelor date. Mesajele sunt citite direct din jurnal, fara
+	 * a fi puse in cache.
+	 *
+	 * @param agent agentul ale carui conversatii sunt citite.
+	 * @param rooms camerele ale caror conversatii sunt citite.
+	 * @return mesajele, grupate pe conversatii, in ordinea in care au fost
+	 *         scrise.
+	 */
+	public List<MessageRecord> getAgentMessages(AID agent, Collection<String> rooms) {
+		int agentId = AgentDictionary.idOf(agent);
+		List<MessageRecord> messages = new ArrayList<>();
+		try {
+			HistoryLog current = openLog();
+			for (long conversationKey : current.getConversationKeys()) {
+				if (AgentDictionary.lowId(conversationKey) == agentId
+						|| AgentDictionary.highId(conversationKey) == agentId) {
+					messages.addAll(current.readConversation(conversationKey));
+				}
+			}
+			for (String room : rooms) {
+				int roomId = AgentDictionary.roomId(room);
+				messages.addAll(current.readConversation(AgentDictionary.conversationKey(roomId, roomId)));
 			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return messages;
+	}
+
+	private HistoryPage readPage(long conversationKey, int from, int to, int total) {
+		int start = Math.max(from, 0);
+		int end = Math.min(to, total);
+		List<MessageRecord> messages = new ArrayList<>();
+		if (start < end) {
+			try {
+				messages = getLog().readRange(conversationKey, start, end);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return new HistoryPage(messages, start, total);
+	}
 
-			try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, false))) {
-				for (Map.Entry<String, StringBuilder> entry : conversations.entrySet()) {
-					writer.write(entry.getKey());
-					writer.write("\n");
-					writer.write(entry.getValue().toString());
-					writer.write("\n");
+	private HistoryLog getLog() {
+		try {
+			return openLog();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot open " + historyFile, e);
+		}
+	}
+
+	/**
+	 * Obtine jurnalul istoricului. Jurnalul este cautat o singura data, apoi
+	 * pastrat, deoarece cautarea lui normalizeaza calea fisierului.
+	 *
+	 * @return jurnalul in care este salvat istoricul.
+	 * @throws IOException daca jurnalul nu poate fi deschis.
+	 */
+	private HistoryLog openLog() throws IOException {
+		HistoryLog current = log;
+		if (current == null) {
+			current = HistoryLog.forFile(historyFile);
+			log = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Obtine mesajele unei conversatii. La primul acces, mesajele sunt citite din
+	 * jurnal pe baza indexului, sub lock-ul conversatiei; accesele ulterioare nu
+	 * folosesc niciun lock.
+	 *
+	 * @param conversationKey cheia conversatiei.
+	 * @return mesajele conversatiei.
+	 */
+	private ConversationBuffer getConversation(long conversationKey) {
+		ConversationBuffer conversation = cache.get(conversationKey);
+		if (conversation != null) {
+			return conversation;
+		}
+
+		synchronized (lockFor(conversationKey)) {
+			conversation = cache.get(conversationKey);
+			if (conversation == null) {
+				List<MessageRecord> records;
+				try {
+					records = openLog().readConversation(conversationKey);
+				} catch (IOException e) {
+					e.printStackTrace();
+					records = new ArrayList<>();
 				}
+				conversation = new ConversationBuffer(conversationKey, records.size());
+				for (MessageRecord record : records) {
+					conversation.appendIfAbsent(record);
+				}
+				cache.put(conversationKey, conversation);
 			}
+			return conversation;
+		}
+	}
+
+	/**
+	 * Obtine magazia textelor mesajelor mari, pastrata langa jurnal; istoricul
+	 * retine pentru ele doar o {@link BlobReference}.
+	 *
+	 * @return magazia textelor mari.
+	 */
+	public BlobStore getBlobStore() {
+		return blobStore;
+	}
+
+	/**
+	 * Obtine cache-ul conversatiilor pastrate in memorie, pentru metricile lui.
+	 *
+	 * @return cache-ul istoricului.
+	 */
+	public ConversationCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Alege lock-ul care protejeaza scrierile intr-o conversatie.
+	 *
+	 * @param conversationKey cheia conversatiei.
+	 * @return lock-ul benzii din care face parte conversatia.
+	 */
+	private Object lockFor(long conversationKey) {
+		return locks[(Long.hashCode(conversationKey) & Integer.MAX_VALUE) % LOCK_STRIPES];
+	}
+
+	/**
+	 * Trimite mesajul catre writer-ul asincron al jurnalului. Scrierea pe disc
+	 * are loc pe firul writer-ului, nu pe firul agentului.
+	 *
+	 * @param record mesajul de salvat.
+	 */
+	private void appendToFile(MessageRecord record) {
+		try {
+			openLog().enqueue(record);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
 	/**
-	 * Incarca istoricul conversatiilor din fisier. Fiecare conversatie este citita
-	 * si stocata in memoria aplicatiei.
+	 * Pregateste istoricul conversatiilor: deschide jurnalul si incarca indexul
+	 * acestuia, fara a citi mesajele. Daca jurnalul nu exista inca, dar exista un
+	 * istoric in vechiul format text, acesta este mai intai importat in jurnal.
 	 */
 	public void loadHistoryFromFile() {
 		try {
-			File file = new File(HISTORY_FILE);
-			if (!file.exists()) {
-				file.createNewFile();
+			HistoryLog current = openLog();
+			synchronized (current) {
+				if (current.isEmpty() && HISTORY_FILE.equals(historyFile)) {
+					importLegacyHistory(current);
+				}
 			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
-			try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-				String line;
-				StringBuilder conversation = new StringBuilder();
-				String currentKey = "";
-				while ((line = reader.readLine()) != null) {
-					if (line.isEmpty()) {
-						continue;
-					}
-					if (line.contains("-")) {
-						if (!conversation.toString().isEmpty()) {
-							conversations.put(currentKey, conversation);
-						}
-						currentKey = line;
-						conversation = new StringBuilder();
-					} else {
-						conversation.append(line).append("\n");
-					}
+	/**
+	 * Importa istoricul salvat in vechiul format text, in care fiecare conversatie
+	 * incepe cu o linie de forma "Agent1-Agent2", urmata de liniile "expeditor:
+	 * mesaj". Liniile de mesaj sunt recunoscute dupa separatorul ": ", deci un
+	 * mesaj care contine "-" nu mai este confundat cu o cheie de conversatie.
+	 * Dupa import, fisierul vechi este redenumit pentru a nu fi importat din nou.
+	 *
+	 * @param log jurnalul in care sunt importate mesajele.
+	 * @throws IOException daca citirea sau scrierea esueaza.
+	 */
+	private void importLegacyHistory(HistoryLog log) throws IOException {
+		File legacyFile = new File(LEGACY_HISTORY_FILE);
+		if (!legacyFile.exists()) {
+			return;
+		}
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(legacyFile))) {
+			String line;
+			String[] participants = null;
+			long order = 0;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
 				}
-				if (!conversation.toString().isEmpty()) {
-					conversations.put(currentKey, conversation);
+				int separator = line.indexOf(": ");
+				if (separator < 0) {
+					participants = line.split("-", 2);
+				} else if (participants != null && participants.length == 2) {
+					String sender = line.substring(0, separator);
+					String receiver = sender.equals(participants[0]) ? participants[1] : participants[0];
+					// Vechiul format nu are momentul trimiterii; ordinea liniilor il inlocuieste.
+					log.append(new MessageRecord(sender, receiver, ++order, line.substring(separator + 2)));
 				}
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
+
+		legacyFile.renameTo(new File(LEGACY_HISTORY_FILE + ".migrated"));
+		System.out.println("Imported " + LEGACY_HISTORY_FILE + " into " + historyFile + ".");
 	}
 
 	/**
 	 * Genereaza o cheie unica pentru conversatia dintre doi agenti. Cheia este
-	 * bazata pe numele local ale agentilor, iar ordinea numelui este importanta
-	 * pentru a asigura unicitatea.
-	 * 
+	 * calculata din identificatorii numerici ai agentilor (vezi
+	 * {@link AgentDictionary}), fara a construi siruri de caractere.
+	 *
 	 * @param sender   agentul care trimite mesajele.
 	 * @param receiver agentul care primeste mesajele.
 	 * @return cheia unica pentru conversatia dintre cei doi agenti.
 	 */
-	private String getConversationKey(AID sender, AID receiver) {
-		return sender.getLocalName().compareTo(receiver.getLocalName()) < 0
-				? sender.getLocalName() + "-" + receiver.getLocalName()
-				: receiver.getLocalName() + "-" + sender.getLocalName();
+	private long getConversationKey(AID sender, AID receiver) {
+		return AgentDictionary.conversationKey(AgentDictionary.idOf(sender), AgentDictionary.idOf(receiver));
 	}
 }
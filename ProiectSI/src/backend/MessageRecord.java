@@ -0,0 +1,111 @@
+package backend;
+
+/**
+ * Clasa MessageRecord reprezinta un singur mesaj din istoric: expeditorul,
+ * destinatarul, momentul trimiterii si continutul. Este unitatea de stocare a
+ * jurnalului {@link HistoryLog}. Agentii sunt retinuti prin identificatorii lor
+ * din {@link AgentDictionary}, nu prin nume.
+ */
+public final class MessageRecord {
+
+	private final int senderId;
+	private final int receiverId;
+	private final long timestamp;
+	private final String content;
+
+	/**
+	 * Construieste o inregistrare de mesaj.
+	 *
+	 * @param sender    numele local al agentului care a trimis mesajul.
+	 * @param receiver  numele local al agentului care a primit mesajul.
+	 * @param timestamp momentul trimiterii, in milisecunde.
+	 * @param content   continutul mesajului.
+	 */
+	public MessageRecord(String sender, String receiver, long timestamp, String content) {
+		this(AgentDictionary.idOf(sender), AgentDictionary.idOf(receiver), timestamp, content);
+	}
+
+	/**
+	 * Construieste o inregistrare de mesaj din identificatorii agentilor.
+	 *
+	 * @param senderId   identificatorul agentului care a trimis mesajul.
+	 * @param receiverId identificatorul agentului care a primit mesajul.
+	 * @param timestamp  momentul trimiterii, in milisecunde.
+	 * @param content    continutul mesajului.
+	 */
+	public MessageRecord(int senderId, int receiverId, long timestamp, String content) {
+		this.senderId = senderId;
+		this.receiverId = receiverId;
+		this.timestamp = timestamp;
+		this.content = content;
+	}
+
+	public String getSender() {
+		return AgentDictionary.nameOf(senderId);
+	}
+
+	public String getReceiver() {
+		return AgentDictionary.nameOf(receiverId);
+	}
+
+	public int getSenderId() {
+		return senderId;
+	}
+
+	public int getReceiverId() {
+		return receiverId;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public String getContent() {
+		return content;
+	}
+
+	/**
+	 * Obtine cheia conversatiei din care face parte mesajul. Un mesaj trimis
+	 * intr-o camera de chat face parte din conversatia camerei, nu din cea dintre
+	 * expeditor si camera.
+	 *
+	 * @return cheia conversatiei dintre expeditor si destinatar.
+	 */
+	public long getConversationKey() {
+		if (AgentDictionary.isRoom(receiverId)) {
+			return AgentDictionary.conversationKey(receiverId, receiverId);
+		}
+		return AgentDictionary.conversationKey(senderId, receiverId);
+	}
+
+	/**
+	 * Formateaza mesajul pentru afisare in interfata. Pentru un mesaj mare este
+	 * afisata doar referinta la text (vezi {@link BlobReference}).
+	 *
+	 * @return mesajul sub forma "expeditor: continut".
+	 */
+	public String toDisplayString() {
+		return getSender() + ": " + BlobReference.display(content);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof MessageRecord)) {
+			return false;
+		}
+		MessageRecord other = (MessageRecord) obj;
+		return timestamp == other.timestamp && senderId == other.senderId && receiverId == other.receiverId
+				&& content.equals(other.content);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = Long.hashCode(timestamp);
+		result = 31 * result + senderId;
+		result = 31 * result + receiverId;
+		return 31 * result + content.hashCode();
+	}
+}
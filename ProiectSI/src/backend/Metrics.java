@@ -0,0 +1,81 @@
+package backend;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Clasa Metrics inregistreaza metricile aplicatiei ca MBean-uri JMX in serverul
+ * de MBean-uri al masinii virtuale, astfel incat pot fi citite cu jconsole sau
+ * VisualVM. Toate MBean-urile sunt in domeniul {@value #DOMAIN}. Valorile sunt
+ * calculate doar cand sunt cerute, din contoarele pe care componentele le
+ * actualizeaza oricum, deci inregistrarea nu adauga cost la fiecare mesaj.
+ */
+public final class Metrics {
+
+	/**
+	 * Domeniul JMX al MBean-urilor aplicatiei.
+	 */
+	public static final String DOMAIN = "ProiectSI";
+
+	private Metrics() {
+	}
+
+	/**
+	 * Inregistreaza un MBean. Un MBean mai vechi cu acelasi nume este inlocuit,
+	 * de exemplu cel al unui agent repornit cu acelasi nume.
+	 *
+	 * @param type  tipul componentei (de exemplu "ChatAgent").
+	 * @param name  numele componentei; poate contine orice caractere.
+	 * @param mbean MBean-ul inregistrat.
+	 * @return numele sub care a fost inregistrat, sau null daca inregistrarea a
+	 *         esuat.
+	 */
+	public static ObjectName register(String type, String name, Object mbean) {
+		try {
+			ObjectName objectName = objectName(type, name);
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(mbean, objectName);
+			return objectName;
+		} catch (JMException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Elimina un MBean inregistrat cu {@link #register(String, String, Object)}.
+	 *
+	 * @param objectName numele MBean-ului; poate lipsi.
+	 */
+	public static void unregister(ObjectName objectName) {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Construieste numele JMX al unei componente.
+	 *
+	 * @param type tipul componentei.
+	 * @param name numele componentei, sau "*" pentru toate componentele tipului.
+	 * @return numele JMX.
+	 * @throws JMException daca numele nu este valid.
+	 */
+	public static ObjectName objectName(String type, String name) throws JMException {
+		return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ("*".equals(name) ? name : ObjectName.quote(name)));
+	}
+}
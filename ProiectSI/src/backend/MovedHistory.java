@@ -0,0 +1,131 @@
+package backend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jade.core.AID;
+
+/**
+ * Clasa MovedHistory poarta conversatiile unui agent de chat cand agentul este
+ * mutat in alt container. Fiecare container are propriul istoric (vezi
+ * {@link ContainerPool}), deci inainte de mutare conversatiile agentului sunt
+ * copiate din istoricul containerului vechi, impreuna cu textele mesajelor mari
+ * la care trimit, iar dupa mutare sunt adaugate in istoricul containerului nou.
+ * <p>
+ * Mesajele sunt retinute prin numele agentilor, nu prin identificatorii din
+ * {@link AgentDictionary}, care difera de la o masina virtuala la alta. Mesajele
+ * care exista deja in istoricul nou, de exemplu dupa o intoarcere in acelasi
+ * container, nu sunt adaugate a doua oara, iar textele mari sunt pastrate sub
+ * acelasi identificator, deci referintele din mesaje raman valabile. Istoricul
+ * containerului vechi nu este modificat.
+ */
+final class MovedHistory implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private static final int READ_STEP = 8192;
+
+	/**
+	 * Un mesaj din istoric, cu numele agentilor.
+	 */
+	private static final class Message implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final String sender;
+		final String receiver;
+		final long timestamp;
+		final String content;
+
+		Message(MessageRecord record) {
+			this.sender = record.getSender();
+			this.receiver = record.getReceiver();
+			this.timestamp = record.getTimestamp();
+			this.content = record.getContent();
+		}
+	}
+
+	private final ArrayList<Message> messages = new ArrayList<>();
+	private final LinkedHashMap<String, byte[]> blobs = new LinkedHashMap<>();
+
+	/**
+	 * Copiaza conversatiile unui agent dintr-un istoric: conversatiile cu alti
+	 * agenti, ale camerelor in care este membru si textele mesajelor mari din
+	 * ele. Un text mare care nu poate fi citit este omis; mesajul lui este
+	 * copiat oricum.
+	 *
+	 * @param history istoricul containerului din care pleaca agentul.
+	 * @param agent   agentul mutat.
+	 * @param rooms   camerele agentului.
+	 * @return conversatiile agentului.
+	 */
+	static MovedHistory export(MessageHistory history, AID agent, Collection<String> rooms) {
+		MovedHistory moved = new MovedHistory();
+		for (MessageRecord record : history.getAgentMessages(agent, rooms)) {
+			moved.messages.add(new Message(record));
+			BlobReference reference = BlobReference.parse(record.getContent());
+			if (reference != null && !moved.blobs.containsKey(reference.getId())) {
+				try (InputStream in = history.getBlobStore().open(reference.getId())) {
+					moved.blobs.put(reference.getId(), readAll(in));
+				} catch (IOException | IllegalArgumentException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return moved;
+	}
+
+	/**
+	 * Adauga conversatiile in istoricul containerului in care a ajuns agentul.
+	 * Textele mari sunt salvate inaintea mesajelor care trimit la ele.
+	 *
+	 * @param history istoricul containerului nou.
+	 */
+	void importInto(MessageHistory history) {
+		BlobStore blobStore = history.getBlobStore();
+		for (Map.Entry<String, byte[]> blob : blobs.entrySet()) {
+			if (blobStore.contains(blob.getKey())) {
+				continue;
+			}
+			try {
+				BlobStore.PendingBlob pending = blobStore.create();
+				try {
+					pending.write(blob.getValue(), 0, blob.getValue().length);
+					pending.commit(blob.getKey());
+				} finally {
+					pending.abort();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		List<MessageRecord> records = new ArrayList<>(messages.size());
+		for (Message message : messages) {
+			records.add(new MessageRecord(message.sender, message.receiver, message.timestamp, message.content));
+		}
+		history.addMessages(records);
+	}
+
+	/**
+	 * @return numarul de mesaje copiate.
+	 */
+	int size() {
+		return messages.size();
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[READ_STEP];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,320 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+
+/**
+ * Clasa OutboundPipeline trimite mesajele unui agent de chat de pe firul
+ * agentului, nu de pe firul care le cere (de obicei firul interfetei). Mesajele
+ * sunt puse intr-o coada limitata; un comportament al agentului le preia si, daca
+ * in intervalul de asteptare (linger) mai sosesc mesaje pentru acelasi
+ * destinatar, le trimite impreuna intr-un singur mesaj ACL (vezi
+ * {@link MessageBatch}). Mesajele preluate impreuna sunt salvate in istoric
+ * printr-un singur apel, chiar inainte de trimitere. Mesajele ACL sunt
+ * numerotate si confirmate de destinatari (vezi {@link ReliableDelivery}).
+ * <p>
+ * Cand coada este plina, sau cand prea multe mesaje asteapta confirmarea
+ * destinatarilor lor, un mesaj nou este refuzat, iar apelantul afla acest
+ * lucru din valoarea intoarsa, in loc ca mesajul sa fie pierdut fara urma.
+ */
+public class OutboundPipeline {
+
+	private static final int DEFAULT_QUEUE_CAPACITY = Integer.getInteger("outbound.queueCapacity", 1000);
+	private static final int DEFAULT_MAX_BATCH = Integer.getInteger("outbound.maxBatch", 64);
+	private static final long DEFAULT_LINGER_MS = Long.getLong("outbound.lingerMs", 5);
+	private static final long RATE_WINDOW_MS = 1000;
+
+	/**
+	 * Un mesaj care asteapta sa fie trimis, fie unui agent, fie unei camere.
+	 */
+	private static final class Outgoing {
+		final AID recipient;
+		final String room;
+		final List<AID> members;
+		final String content;
+		final long timestamp;
+
+		Outgoing(AID recipient, String room, List<AID> members, String content, long timestamp) {
+			this.recipient = recipient;
+			this.room = room;
+			this.members = members;
+			this.content = content;
+			this.timestamp = timestamp;
+		}
+
+		String destination() {
+			return room != null ? AgentDictionary.ROOM_PREFIX + room : recipient.getName();
+		}
+	}
+
+	private final Agent agent;
+	private final MessageHistory history;
+	private final ReliableDelivery delivery;
+	private final BlockingQueue<Outgoing> queue;
+	private final int queueCapacity;
+	private final int maxBatch;
+	private final long lingerMillis;
+	private final CyclicBehaviour sender;
+	private final AgentWakeup wakeup;
+
+	private long lingerDeadline;
+	private volatile long sentMessages;
+	private volatile long sentEnvelopes;
+	private final AtomicLong rejectedMessages = new AtomicLong();
+	private long rateWindowStart = System.currentTimeMillis();
+	private long rateWindowMessages;
+	private volatile double sendRate;
+	private volatile long lastSendTime;
+	private volatile boolean closed;
+
+	/**
+	 * Construieste o coada de trimitere cu configuratia implicita, care poate fi
+	 * schimbata prin proprietatile de sistem outbound.queueCapacity,
+	 * outbound.maxBatch si outbound.lingerMs.
+	 *
+	 * @param agent    agentul care trimite mesajele.
+	 * @param history  istoricul in care sunt salvate mesajele trimise.
+	 * @param delivery numerotarea si confirmarea mesajelor agentului.
+	 */
+	public OutboundPipeline(Agent agent, MessageHistory history, ReliableDelivery delivery) {
+		this(agent, history, delivery, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_BATCH, DEFAULT_LINGER_MS);
+	}
+
+	/**
+	 * Construieste o coada de trimitere si adauga agentului comportamentul care
+	 * o goleste. Trebuie apelat de pe firul agentului, de exemplu din setup().
+	 *
+	 * @param agent         agentul care trimite mesajele.
+	 * @param history       istoricul in care sunt salvate mesajele trimise.
+	 * @param delivery      numerotarea si confirmarea mesajelor agentului.
+	 * @param queueCapacity numarul maxim de mesaje care asteapta sa fie trimise
+	 *                      si, separat, sa se elibereze fereastra
+	 *                      destinatarului.
+	 * @param maxBatch      numarul maxim de mesaje dintr-un singur mesaj ACL.
+	 * @param lingerMillis  cat timp asteapta primul mesaj din coada alte mesaje,
+	 *                      in milisecunde; 0 trimite imediat.
+	 */
+	public OutboundPipeline(Agent agent, MessageHistory history, ReliableDelivery delivery, int queueCapacity,
+			int maxBatch, long lingerMillis) {
+		this.agent = agent;
+		this.history = history;
+		this.delivery = delivery;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.queueCapacity = queueCapacity;
+		this.maxBatch = Math.max(maxBatch, 1);
+		this.lingerMillis = lingerMillis;
+		this.wakeup = new AgentWakeup(agent);
+		this.sender = new CyclicBehaviour(agent) {
+			@Override
+			public void action() {
+				drain();
+			}
+		};
+		agent.addBehaviour(sender);
+	}
+
+	/**
+	 * Pune in coada un mesaj pentru un agent. Poate fi apelat de pe orice fir.
+	 *
+	 * @param recipient agentul destinatar.
+	 * @param content   continutul mesajului.
+	 * @param timestamp momentul trimiterii, in milisecunde.
+	 * @return true daca mesajul a fost acceptat, false daca coada este plina.
+	 */
+	public boolean offer(AID recipient, String content, long timestamp) {
+		return offer(new Outgoing(recipient, null, null, content, timestamp));
+	}
+
+	/**
+	 * Pune in coada un mesaj pentru o camera de chat. Poate fi apelat de pe orice
+	 * fir.
+	 *
+	 * @param room      numele camerei.
+	 * @param members   membrii camerei care primesc mesajul.
+	 * @param content   continutul mesajului.
+	 * @param timestamp momentul trimiterii, in milisecunde.
+	 * @return true daca mesajul a fost acceptat, false daca coada este plina.
+	 */
+	public boolean offerRoom(String room, List<AID> members, String content, long timestamp) {
+		return offer(new Outgoing(null, room, members, content, timestamp));
+	}
+
+	private boolean offer(Outgoing message) {
+		if (closed || delivery.getWaitingMessages() >= queueCapacity || !queue.offer(message)) {
+			rejectedMessages.incrementAndGet();
+			return false;
+		}
+		wakeup.request();
+		return true;
+	}
+
+	/**
+	 * Trimite imediat toate mesajele din coada, fara a mai astepta intervalul de
+	 * linger. Trebuie apelat de pe firul agentului, de exemplu din takeDown().
+	 */
+	public void flush() {
+		lingerDeadline = 0;
+		sendQueued();
+	}
+
+	/**
+	 * Trimite mesajele din coada si scoate comportamentul de trimitere din agent,
+	 * de exemplu inainte ca agentul sa fie mutat in alt container. Dupa
+	 * inchidere, mesajele noi sunt refuzate. Trebuie apelat de pe firul agentului.
+	 */
+	public void close() {
+		closed = true;
+		flush();
+		agent.removeBehaviour(sender);
+	}
+
+	/**
+	 * Preia mesajele din coada. Primul mesaj asteapta cel mult intervalul de
+	 * linger, sau pana cand coada contine un lot complet.
+	 */
+	private void drain() {
+		wakeup.clear();
+		int depth = queue.size();
+		if (depth == 0) {
+			lingerDeadline = 0;
+			sender.block();
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		if (lingerDeadline == 0) {
+			lingerDeadline = now + lingerMillis;
+		}
+		if (depth < maxBatch && now < lingerDeadline) {
+			sender.block(lingerDeadline - now);
+			return;
+		}
+		lingerDeadline = 0;
+		sendQueued();
+	}
+
+	private void sendQueued() {
+		List<Outgoing> drained = new ArrayList<>(queue.size());
+		queue.drainTo(drained);
+		if (drained.isEmpty()) {
+			return;
+		}
+
+		Map<String, List<Outgoing>> byDestination = new LinkedHashMap<>();
+		List<MessageRecord> records = new ArrayList<>(drained.size());
+		int senderId = AgentDictionary.idOf(agent.getAID());
+		for (Outgoing message : drained) {
+			byDestination.computeIfAbsent(message.destination(), key -> new ArrayList<>()).add(message);
+			int conversationId = message.room != null ? AgentDictionary.roomId(message.room)
+					: AgentDictionary.idOf(message.recipient);
+			records.add(new MessageRecord(senderId, conversationId, message.timestamp, message.content));
+		}
+		history.addMessages(records);
+		for (List<Outgoing> messages : byDestination.values()) {
+			for (int from = 0; from < messages.size(); from += maxBatch) {
+				send(messages.subList(from, Math.min(from + maxBatch, messages.size())));
+			}
+		}
+		updateRate(drained.size());
+	}
+
+	/**
+	 * Trimite un lot de mesaje pentru acelasi destinatar, deja salvate in
+	 * istoric, intr-un singur mesaj ACL.
+	 */
+	private void send(List<Outgoing> batch) {
+		Outgoing first = batch.get(0);
+		long[] timestamps = new long[batch.size()];
+		String[] contents = new String[batch.size()];
+		for (int i = 0; i < batch.size(); i++) {
+			Outgoing message = batch.get(i);
+			timestamps[i] = message.timestamp;
+			contents[i] = message.content;
+		}
+
+		ACLMessage msg;
+		if (first.room != null) {
+			msg = ChatAgent.createRoomMessage(first.room, first.members, first.content, first.timestamp);
+		} else {
+			msg = new ACLMessage(ACLMessage.INFORM);
+			msg.addReceiver(first.recipient);
+			msg.setContent(first.content);
+			msg.addUserDefinedParameter(ChatAgent.TIMESTAMP_PARAM, Long.toString(first.timestamp));
+		}
+		if (batch.size() > 1) {
+			msg.setContent(MessageBatch.encode(timestamps, contents, batch.size()));
+			msg.removeUserDefinedParameter(ChatAgent.TIMESTAMP_PARAM);
+			msg.addUserDefinedParameter(MessageBatch.BATCH_PARAM, Integer.toString(batch.size()));
+		}
+		if (msg.getAllReceiver().hasNext()) {
+			delivery.send(msg, batch.size());
+		}
+
+		sentMessages += batch.size();
+		sentEnvelopes++;
+	}
+
+	private void updateRate(int messages) {
+		long now = System.currentTimeMillis();
+		rateWindowMessages += messages;
+		lastSendTime = now;
+		if (now - rateWindowStart >= RATE_WINDOW_MS) {
+			sendRate = rateWindowMessages * 1000.0 / (now - rateWindowStart);
+			rateWindowStart = now;
+			rateWindowMessages = 0;
+		}
+	}
+
+	/**
+	 * @return numarul de mesaje care asteapta sa fie trimise.
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * @return numarul de mesaje de chat trimise.
+	 */
+	public long getSentMessages() {
+		return sentMessages;
+	}
+
+	/**
+	 * @return numarul de mesaje ACL trimise; fiecare poate contine un lot de
+	 *         mesaje de chat.
+	 */
+	public long getSentEnvelopes() {
+		return sentEnvelopes;
+	}
+
+	/**
+	 * @return numarul de mesaje refuzate pentru ca coada era plina sau prea
+	 *         multe mesaje asteptau confirmarea.
+	 */
+	public long getRejectedMessages() {
+		return rejectedMessages.get();
+	}
+
+	/**
+	 * Obtine rata de trimitere masurata pe ultimul interval de o secunda. Daca
+	 * agentul nu a mai trimis nimic de atunci, rata este 0.
+	 *
+	 * @return numarul de mesaje de chat trimise pe secunda.
+	 */
+	public double getSendRate() {
+		if (System.currentTimeMillis() - lastSendTime > 2 * RATE_WINDOW_MS) {
+			return 0;
+		}
+		return sendRate;
+	}
+}
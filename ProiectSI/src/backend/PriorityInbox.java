@@ -0,0 +1,348 @@
+package backend;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.MessageQueue;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.util.leap.Properties;
+
+/**
+ * Clasa PriorityInbox este coada de mesaje primite a unui agent de chat,
+ * folosita de JADE in locul cozii nelimitate implicite (vezi
+ * {@link ChatAgent#createMessageQueue()}). Coada are un numar maxim de mesaje,
+ * stabilit cu {@link Agent#setQueueSize(int)}, iar mesajele sunt impartite in
+ * trei clase de prioritate, preluate de agent in ordinea claselor si, in
+ * cadrul unei clase, in ordinea sosirii.
+ * <p>
+ * Clasa unui mesaj este data de parametrul {@value #PRIORITY_PARAM} ("high",
+ * "normal" sau "low"), daca exista, sau de performativa lui: mesajele INFORM
+ * (mesajele de chat) sunt normale, iar celelalte (confirmari, refuzuri,
+ * esecuri, cereri) sunt mesaje de control, cu prioritate mare, pentru ca de ele
+ * depinde progresul celorlalte. Mesajele AMS si ale DF (de exemplu
+ * notificarile abonamentului) au tot prioritate mare. Mesajele trimise intr-o
+ * camera de chat au prioritate mica (vezi
+ * {@link ChatAgent#createRoomMessage}).
+ * <p>
+ * Cand coada este plina, un mesaj este eliminat dupa politica aleasa cu
+ * proprietatea de sistem inbox.policy:
+ * <ul>
+ * <li>{@link Policy#DROP_OLDEST}: cel mai vechi mesaj din coada;</li>
+ * <li>{@link Policy#DROP_LOW_PRIORITY}: cel mai nou mesaj din clasa cu
+ * prioritatea cea mai mica, care poate fi chiar mesajul sosit;</li>
+ * <li>{@link Policy#REJECT}: acelasi mesaj ca la DROP_LOW_PRIORITY, dar
+ * expeditorul primeste un mesaj FAILURE cu parametrul
+ * {@value #OVERLOAD_PARAM}.</li>
+ * </ul>
+ * Mesajele de chat numerotate de {@link ReliableDelivery} nu sunt pierdute de
+ * tot: expeditorul le retrimite cand nu primeste confirmarea.
+ * <p>
+ * Metodele cozii sunt apelate de JADE sub monitorul cozii, deci nu sunt
+ * sincronizate aici. Mesajele FAILURE nu pot fi trimise sub acest monitor, de pe
+ * firul expeditorului, fara risc de blocaj intre doi agenti care se refuza
+ * reciproc; ele sunt trimise de pe firul agentului (vezi
+ * {@link #sendRejections()}).
+ */
+public class PriorityInbox implements MessageQueue {
+
+	/**
+	 * Parametrul ACL cu care expeditorul poate alege clasa de prioritate a unui
+	 * mesaj: "high", "normal" sau "low".
+	 */
+	public static final String PRIORITY_PARAM = "priority";
+
+	/**
+	 * Parametrul ACL care marcheaza un mesaj FAILURE trimis pentru un mesaj
+	 * refuzat din cauza cozii pline.
+	 */
+	public static final String OVERLOAD_PARAM = "inbox-full";
+
+	/**
+	 * Numarul maxim implicit de mesaje din coada unui agent de chat; poate fi
+	 * schimbat prin proprietatea de sistem inbox.maxSize (0 inseamna fara
+	 * limita).
+	 */
+	public static final int MAX_SIZE = Integer.getInteger("inbox.maxSize", 10000);
+
+	/**
+	 * Ce mesaj este eliminat cand coada este plina.
+	 */
+	public enum Policy {
+		/** Cel mai vechi mesaj din coada, indiferent de prioritate. */
+		DROP_OLDEST,
+		/** Cel mai nou mesaj cu prioritatea cea mai mica. */
+		DROP_LOW_PRIORITY,
+		/** Ca DROP_LOW_PRIORITY, cu un mesaj FAILURE catre expeditor. */
+		REJECT
+	}
+
+	private static final Policy DEFAULT_POLICY = Policy
+			.valueOf(System.getProperty("inbox.policy", Policy.DROP_LOW_PRIORITY.name()).toUpperCase(Locale.ROOT));
+	private static final String[] PRIORITY_NAMES = { "high", "normal", "low" };
+	private static final int HIGH = 0;
+	private static final int NORMAL = 1;
+	private static final int LOW = 2;
+	private static final int MAX_PENDING_REJECTIONS = 1000;
+
+	private final Agent agent;
+	private final Policy policy;
+	private final List<ArrayDeque<ACLMessage>> classes = Arrays.asList(new ArrayDeque<>(), new ArrayDeque<>(),
+			new ArrayDeque<>());
+	private final ConcurrentLinkedQueue<ACLMessage> rejections = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingRejections = new AtomicInteger();
+	private int maxSize;
+	private volatile int size;
+	private volatile int peakSize;
+	private volatile long droppedMessages;
+	private volatile long rejectedMessages;
+
+	/**
+	 * Construieste coada cu politica implicita, aleasa prin proprietatea de
+	 * sistem inbox.policy.
+	 *
+	 * @param agent agentul care primeste mesajele.
+	 */
+	public PriorityInbox(Agent agent) {
+		this(agent, DEFAULT_POLICY);
+	}
+
+	/**
+	 * @param agent  agentul care primeste mesajele.
+	 * @param policy ce mesaj este eliminat cand coada este plina.
+	 */
+	public PriorityInbox(Agent agent, Policy policy) {
+		this.agent = agent;
+		this.policy = policy;
+	}
+
+	/**
+	 * Obtine clasa de prioritate a unui mesaj.
+	 *
+	 * @param msg mesajul primit.
+	 * @return 0 pentru mesajele de control, 1 pentru cele normale, 2 pentru cele
+	 *         cu prioritate mica.
+	 */
+	private int priorityOf(ACLMessage msg) {
+		AID sender = msg.getSender();
+		if (sender != null && (sender.equals(agent.getAMS()) || sender.equals(agent.getDefaultDF()))) {
+			return HIGH;
+		}
+		String priority = msg.getUserDefinedParameter(PRIORITY_PARAM);
+		if (priority != null) {
+			for (int i = 0; i < PRIORITY_NAMES.length; i++) {
+				if (PRIORITY_NAMES[i].equalsIgnoreCase(priority)) {
+					return i;
+				}
+			}
+		}
+		return msg.getPerformative() == ACLMessage.INFORM ? NORMAL : HIGH;
+	}
+
+	@Override
+	public void addLast(ACLMessage msg) {
+		int priority = priorityOf(msg);
+		if (maxSize > 0 && size >= maxSize && !shed(msg, priority)) {
+			return;
+		}
+		classes.get(priority).addLast(msg);
+		updateSize(1);
+	}
+
+	/**
+	 * Pune inapoi in fata cozii un mesaj deja preluat; mesajul nu este numarat din
+	 * nou fata de limita.
+	 */
+	@Override
+	public void addFirst(ACLMessage msg) {
+		classes.get(priorityOf(msg)).addFirst(msg);
+		updateSize(1);
+	}
+
+	/**
+	 * Face loc in coada plina pentru un mesaj nou, dupa politica aleasa.
+	 *
+	 * @return true daca mesajul nou trebuie adaugat, false daca el a fost
+	 *         eliminat.
+	 */
+	private boolean shed(ACLMessage msg, int priority) {
+		ACLMessage victim;
+		if (policy == Policy.DROP_OLDEST) {
+			int oldest = -1;
+			for (int i = LOW; i >= HIGH; i--) {
+				ArrayDeque<ACLMessage> queue = classes.get(i);
+				if (!queue.isEmpty() && (oldest < 0 || queue.peekFirst().getPostTimeStamp() < classes.get(oldest)
+						.peekFirst().getPostTimeStamp())) {
+					oldest = i;
+				}
+			}
+			victim = classes.get(oldest).pollFirst();
+		} else {
+			int lowest = LOW;
+			while (classes.get(lowest).isEmpty()) {
+				lowest--;
+			}
+			if (lowest <= priority) {
+				victim = msg;
+			} else {
+				victim = classes.get(lowest).pollLast();
+			}
+		}
+		if (victim != msg) {
+			updateSize(-1);
+		}
+
+		// Un esec sau un mesaj al AMS nu primeste raspuns, ca refuzurile sa nu se
+		// trimita la nesfarsit intre doi agenti.
+		if (policy == Policy.REJECT && victim.getPerformative() != ACLMessage.FAILURE && victim.getSender() != null
+				&& !victim.getSender().equals(agent.getAMS())) {
+			rejectedMessages++;
+			if (pendingRejections.incrementAndGet() <= MAX_PENDING_REJECTIONS) {
+				rejections.add(victim);
+			} else {
+				pendingRejections.decrementAndGet();
+			}
+		} else {
+			droppedMessages++;
+		}
+		return victim != msg;
+	}
+
+	/**
+	 * Trimite expeditorilor mesajele FAILURE pentru mesajele refuzate de la
+	 * ultimul apel. Trebuie apelat de pe firul agentului. Daca agentul ramane
+	 * mult in urma, sunt pastrate cel mult {@value #MAX_PENDING_REJECTIONS}
+	 * refuzuri netrimise; pentru celelalte expeditorul nu mai este anuntat.
+	 */
+	public void sendRejections() {
+		ACLMessage rejected;
+		while ((rejected = rejections.poll()) != null) {
+			pendingRejections.decrementAndGet();
+			ACLMessage failure = rejected.createReply();
+			failure.setPerformative(ACLMessage.FAILURE);
+			// Parametrii mesajului refuzat ii permit expeditorului sa afle ce
+			// mesaj a fost refuzat, de exemplu bucata unui transfer.
+			failure.setAllUserDefinedParameters((Properties) rejected.getAllUserDefinedParameters().clone());
+			failure.addUserDefinedParameter(OVERLOAD_PARAM, "true");
+			failure.setContent("inbox full");
+			agent.send(failure);
+		}
+	}
+
+	/**
+	 * Verifica daca un mesaj primit anunta ca un mesaj trimis de agent a fost
+	 * refuzat de destinatarul lui.
+	 *
+	 * @param msg mesajul primit.
+	 * @return true daca mesajul este un astfel de refuz.
+	 */
+	public static boolean isRejection(ACLMessage msg) {
+		return msg.getPerformative() == ACLMessage.FAILURE && msg.getUserDefinedParameter(OVERLOAD_PARAM) != null;
+	}
+
+	private void updateSize(int delta) {
+		size += delta;
+		if (size > peakSize) {
+			peakSize = size;
+		}
+	}
+
+	@Override
+	public ACLMessage receive(MessageTemplate template) {
+		for (ArrayDeque<ACLMessage> queue : classes) {
+			for (Iterator<ACLMessage> it = queue.iterator(); it.hasNext();) {
+				ACLMessage msg = it.next();
+				if (template == null || template.match(msg)) {
+					it.remove();
+					updateSize(-1);
+					return msg;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public List<ACLMessage> receive(MessageTemplate template, int max) {
+		List<ACLMessage> messages = new ArrayList<>();
+		for (ArrayDeque<ACLMessage> queue : classes) {
+			for (Iterator<ACLMessage> it = queue.iterator(); it.hasNext() && messages.size() < max;) {
+				ACLMessage msg = it.next();
+				if (template == null || template.match(msg)) {
+					it.remove();
+					messages.add(msg);
+				}
+			}
+		}
+		updateSize(-messages.size());
+		return messages.isEmpty() ? null : messages;
+	}
+
+	@Override
+	public void copyTo(jade.util.leap.List list) {
+		for (ArrayDeque<ACLMessage> queue : classes) {
+			for (ACLMessage msg : queue) {
+				list.add(msg);
+			}
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public void setMaxSize(int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Invalid MsgQueue size");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return ce mesaj este eliminat cand coada este plina.
+	 */
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return cel mai mare numar de mesaje aflate simultan in coada.
+	 */
+	public int getPeakSize() {
+		return peakSize;
+	}
+
+	/**
+	 * @return numarul de mesaje eliminate fara a anunta expeditorul.
+	 */
+	public long getDroppedMessages() {
+		return droppedMessages;
+	}
+
+	/**
+	 * @return numarul de mesaje refuzate cu un mesaj FAILURE catre expeditor.
+	 */
+	public long getRejectedMessages() {
+		return rejectedMessages;
+	}
+}
@@ -0,0 +1,43 @@
+package backend;
+
+/**
+ * Interfata ProvisioningListener primeste progresul unei creari de agenti in
+ * masa, pornita cu
+ * {@link AgentManager#createAgents(String, int, int, String, ProvisioningListener)}.
+ * <p>
+ * Metodele sunt apelate de pe firele care creeaza agentii, deci o implementare
+ * care foloseste Swing trebuie sa treaca singura pe firul interfetei (EDT).
+ */
+public interface ProvisioningListener {
+
+	/**
+	 * Listener-ul care ignora progresul.
+	 */
+	ProvisioningListener NONE = new ProvisioningListener() {
+		@Override
+		public void agentProvisioned(String agentName, boolean started, int completed, int total) {
+		}
+
+		@Override
+		public void provisioningFinished(ProvisioningReport report) {
+		}
+	};
+
+	/**
+	 * Anunta ca un agent a fost pornit sau ca pornirea lui a esuat.
+	 *
+	 * @param agentName numele agentului.
+	 * @param started   true daca agentul a fost pornit.
+	 * @param completed numarul agentilor tratati pana acum, inclusiv acesta.
+	 * @param total     numarul agentilor ceruti.
+	 */
+	void agentProvisioned(String agentName, boolean started, int completed, int total);
+
+	/**
+	 * Anunta ca toti agentii au fost tratati si lista agentilor a fost
+	 * actualizata.
+	 *
+	 * @param report rezultatul crearii.
+	 */
+	void provisioningFinished(ProvisioningReport report);
+}
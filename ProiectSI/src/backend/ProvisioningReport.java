@@ -0,0 +1,87 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Clasa ProvisioningReport descrie rezultatul unei creari de agenti in masa:
+ * cati agenti au fost porniti, care au esuat, cat a durat totul si cat a durat
+ * pornirea fiecarui agent (crearea in container si pornirea firului sau), in
+ * microsecunde.
+ */
+public class ProvisioningReport {
+
+	private final int requested;
+	private final List<String> failed = new ArrayList<>();
+	private final LatencyHistogram startLatency = new LatencyHistogram();
+	private volatile long elapsedNanos;
+
+	ProvisioningReport(int requested) {
+		this.requested = requested;
+	}
+
+	void recordStarted(long startNanos) {
+		startLatency.record((System.nanoTime() - startNanos) / 1000);
+	}
+
+	synchronized void recordFailed(String agentName) {
+		failed.add(agentName);
+	}
+
+	void finish(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return numarul agentilor ceruti.
+	 */
+	public int getRequested() {
+		return requested;
+	}
+
+	/**
+	 * @return numarul agentilor porniti.
+	 */
+	public int getStarted() {
+		return (int) startLatency.getCount();
+	}
+
+	/**
+	 * @return numele agentilor care nu au putut fi porniti.
+	 */
+	public synchronized List<String> getFailed() {
+		return Collections.unmodifiableList(new ArrayList<>(failed));
+	}
+
+	/**
+	 * @return durata totala a crearii, in nanosecunde.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return numarul agentilor porniti pe secunda.
+	 */
+	public double getThroughput() {
+		return elapsedNanos == 0 ? 0 : getStarted() * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * @return duratele pornirii agentilor, in microsecunde.
+	 */
+	public LatencyHistogram getStartLatency() {
+		return startLatency;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT,
+				"Provisioned %d/%d agents in %.1f ms (%.1f agents/s), start latency p50 %.2f ms, p99 %.2f ms,"
+						+ " max %.2f ms, %d failed",
+				getStarted(), requested, elapsedNanos / 1e6, getThroughput(), startLatency.getPercentile(50) / 1000.0,
+				startLatency.getPercentile(99) / 1000.0, startLatency.getMax() / 1000.0, getFailed().size());
+	}
+}
@@ -0,0 +1,73 @@
+package backend;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Clasa RecentRecords retine ultimele mesaje inregistrate, pentru a recunoaste
+ * a doua copie a aceluiasi mesaj (cea a destinatarului, dupa cea a
+ * expeditorului) indiferent cate alte mesaje au sosit intre timp. Mesajele sunt
+ * pastrate intr-un tablou de dimensiune fixa, impartit in grupuri de cate
+ * {@value #WAYS} pozitii; hash-ul mesajului alege grupul, iar in cadrul grupului
+ * un mesaj nou il inlocuieste pe cel mai vechi. Adaugarea si cautarea nu aloca
+ * memorie.
+ */
+public class RecentRecords {
+
+	private static final int WAYS = 8;
+
+	private final AtomicReferenceArray<MessageRecord> records;
+	private final AtomicIntegerArray cursors;
+	private final int bucketMask;
+
+	/**
+	 * Construieste un set care retine aproximativ un numar dat de mesaje.
+	 *
+	 * @param capacity numarul de pozitii, rotunjit la o putere a lui 2.
+	 */
+	public RecentRecords(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, WAYS * 2) - 1) << 1;
+		records = new AtomicReferenceArray<>(size);
+		cursors = new AtomicIntegerArray(size / WAYS);
+		bucketMask = size / WAYS - 1;
+	}
+
+	/**
+	 * Adauga un mesaj in set.
+	 *
+	 * @param record mesajul inregistrat.
+	 * @return true daca mesajul nu era deja in set.
+	 */
+	public boolean add(MessageRecord record) {
+		int bucket = bucketOf(record);
+		if (contains(bucket, record)) {
+			return false;
+		}
+		int way = cursors.getAndIncrement(bucket) & (WAYS - 1);
+		records.set(bucket * WAYS + way, record);
+		return true;
+	}
+
+	/**
+	 * @param record mesajul cautat.
+	 * @return true daca mesajul a fost inregistrat recent.
+	 */
+	public boolean contains(MessageRecord record) {
+		return contains(bucketOf(record), record);
+	}
+
+	private boolean contains(int bucket, MessageRecord record) {
+		int first = bucket * WAYS;
+		for (int i = first; i < first + WAYS; i++) {
+			if (record.equals(records.get(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int bucketOf(MessageRecord record) {
+		int h = record.hashCode();
+		return (h ^ (h >>> 16)) & bucketMask;
+	}
+}
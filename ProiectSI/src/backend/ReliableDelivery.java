@@ -0,0 +1,519 @@
+package backend;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.TickerBehaviour;
+import jade.lang.acl.ACLMessage;
+
+/**
+ * Clasa ReliableDelivery confirma livrarea mesajelor de chat trimise de un
+ * agent, fara a astepta confirmarea fiecarui mesaj inainte de urmatorul.
+ * <p>
+ * Expeditorul numeroteaza mesajele ACL trimise fiecarui destinatar (un canal):
+ * parametrul {@value #SEQUENCE_PARAM} contine epoca canalului, numarul
+ * mesajului si numarul celui mai vechi mesaj neconfirmat al canalului, sub
+ * forma "epoca.numar.inceput", sau, pentru un mesaj cu mai multi destinatari,
+ * "nume=epoca.numar.inceput" pentru fiecare destinatar, separate prin spatii.
+ * Pe un canal pot fi cel mult {@value #DEFAULT_WINDOW} mesaje neconfirmate
+ * (fereastra); urmatoarele asteapta pana cand fereastra se elibereaza. Un mesaj
+ * neconfirmat in {@value #DEFAULT_TIMEOUT_MS} ms este retrimis, cu un interval
+ * care se dubleaza la fiecare incercare; dupa {@value #DEFAULT_MAX_ATTEMPTS}
+ * incercari canalul este abandonat, iar mesajele lui sunt numarate ca
+ * nelivrate.
+ * <p>
+ * Destinatarul livreaza mesajele fiecarui expeditor in ordinea numerelor:
+ * pastreaza mesajele sosite mai devreme pana cand sosesc cele lipsa si
+ * elimina duplicatele (mesajele retrimise care sosisera deja). Confirmarile sunt
+ * cumulative: un mesaj CONFIRM cu parametrul {@value #ACK_PARAM} "epoca.numar"
+ * confirma toate mesajele pana la acel numar, si este trimis o singura data
+ * pentru toate mesajele primite de la un expeditor la o activare a agentului.
+ * <p>
+ * Un canal fara mesaje neconfirmate este sters; urmatorul mesaj deschide un
+ * canal nou, cu o epoca mai mare, numerotat de la 1. Destinatarul care vede o
+ * epoca mai mare, sau care nu stie nimic despre expeditor (de exemplu, dupa
+ * repornire), asteapta mai intai mesajul "inceput": mesajele dinaintea lui au
+ * fost deja confirmate, iar cele de dupa lui sunt retrimise pana sosesc, chiar
+ * daca primul mesaj al canalului s-a pierdut. Mesajele unei epoci mai mici sunt
+ * ignorate. Starea unui expeditor de la care nu a mai sosit nimic timp de
+ * {@value #DEFAULT_INBOUND_IDLE_MS} ms, mai mult decat dureaza toate
+ * retrimiterile unui mesaj, este stearsa.
+ * <p>
+ * Starea este serializabila si se muta impreuna cu agentul, astfel incat
+ * mesajele neconfirmate sunt retrimise si din containerul nou. Toate metodele,
+ * in afara de contoare, trebuie apelate de pe firul agentului. Mesajele fara
+ * parametrul {@value #SEQUENCE_PARAM}, trimise de alti agenti, sunt livrate
+ * direct, ca inainte.
+ */
+public class ReliableDelivery implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Parametrul ACL care contine epoca si numarul de ordine al unui mesaj de
+	 * chat.
+	 */
+	public static final String SEQUENCE_PARAM = "seq";
+
+	/**
+	 * Parametrul ACL al unei confirmari cumulative: epoca si numarul ultimului
+	 * mesaj primit in ordine.
+	 */
+	public static final String ACK_PARAM = "ack";
+
+	private static final int DEFAULT_WINDOW = 32;
+	private static final long DEFAULT_TIMEOUT_MS = 2000;
+	private static final int DEFAULT_MAX_ATTEMPTS = 8;
+	private static final int WINDOW = Math.max(Integer.getInteger("delivery.window", DEFAULT_WINDOW), 1);
+	private static final long TIMEOUT_MS = Math.max(Long.getLong("delivery.timeoutMs", DEFAULT_TIMEOUT_MS), 10);
+	private static final long MAX_TIMEOUT_MS = 30000;
+	private static final int MAX_ATTEMPTS = Integer.getInteger("delivery.maxAttempts", DEFAULT_MAX_ATTEMPTS);
+	private static final int MAX_EARLY = 1024;
+	private static final long DEFAULT_INBOUND_IDLE_MS = 5 * 60 * 1000;
+	private static final long INBOUND_IDLE_MS = Long.getLong("delivery.inboundIdleMs", DEFAULT_INBOUND_IDLE_MS);
+
+	/**
+	 * Epocile canalelor cresc in timp, deci si dupa repornirea agentului sau
+	 * mutarea lui pe alta masina.
+	 */
+	private static final AtomicLong EPOCHS = new AtomicLong(System.currentTimeMillis() * 1000);
+
+	/**
+	 * Un mesaj ACL trimis unui destinatar si neconfirmat inca.
+	 */
+	private static final class Pending implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final long sequence;
+		final ACLMessage message;
+		final int messages;
+		long deadline;
+		int attempts;
+
+		Pending(long sequence, ACLMessage message, int messages) {
+			this.sequence = sequence;
+			this.message = message;
+			this.messages = messages;
+		}
+	}
+
+	/**
+	 * Mesajele trimise unui destinatar.
+	 */
+	private static final class Channel implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final AID recipient;
+		final long epoch = EPOCHS.incrementAndGet();
+		final ArrayDeque<Pending> inFlight = new ArrayDeque<>();
+		final ArrayDeque<Pending> waiting = new ArrayDeque<>();
+		long nextSequence = 1;
+
+		Channel(AID recipient) {
+			this.recipient = recipient;
+		}
+	}
+
+	/**
+	 * Mesajele primite de la un expeditor.
+	 */
+	private static final class Inbound implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final TreeMap<Long, ACLMessage> early = new TreeMap<>();
+		long epoch;
+		long expected;
+		long lastSeen;
+
+		Inbound(long epoch, long expected) {
+			this.epoch = epoch;
+			this.expected = expected;
+		}
+	}
+
+	private final Agent agent;
+	private final Map<AID, Channel> channels = new HashMap<>();
+	private final Map<AID, Inbound> inbound = new HashMap<>();
+	private final Set<AID> unacknowledged = new LinkedHashSet<>();
+	private TickerBehaviour retransmitter;
+	private long nextPrune;
+	private volatile int inFlightEnvelopes;
+	private volatile int waitingMessages;
+	private volatile long retransmissions;
+	private volatile long duplicates;
+	private volatile long undeliveredMessages;
+
+	/**
+	 * @param agent agentul care trimite si primeste mesajele.
+	 */
+	public ReliableDelivery(Agent agent) {
+		this.agent = agent;
+	}
+
+	/**
+	 * Numeroteaza si trimite un mesaj ACL tuturor destinatarilor lui. Pentru
+	 * destinatarii a caror fereastra este plina, mesajul asteapta si este trimis
+	 * separat, cand fereastra se elibereaza.
+	 *
+	 * @param msg      mesajul trimis; nu este modificat.
+	 * @param messages numarul de mesaje de chat din mesajul ACL.
+	 */
+	public void send(ACLMessage msg, int messages) {
+		List<Channel> ready = new ArrayList<>();
+		List<Pending> readyPending = new ArrayList<>();
+		Iterator<?> receivers = msg.getAllReceiver();
+		while (receivers.hasNext()) {
+			AID recipient = (AID) receivers.next();
+			Channel channel = channels.computeIfAbsent(recipient, Channel::new);
+			Pending pending = new Pending(channel.nextSequence++, msg, messages);
+			if (channel.inFlight.size() < WINDOW && channel.waiting.isEmpty()) {
+				channel.inFlight.add(pending);
+				ready.add(channel);
+				readyPending.add(pending);
+			} else {
+				channel.waiting.add(pending);
+				waitingMessages += messages;
+			}
+		}
+		if (ready.isEmpty()) {
+			return;
+		}
+
+		ACLMessage copy = (ACLMessage) msg.clone();
+		copy.clearAllReceiver();
+		StringBuilder sequence = new StringBuilder();
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < ready.size(); i++) {
+			Channel channel = ready.get(i);
+			Pending pending = readyPending.get(i);
+			copy.addReceiver(channel.recipient);
+			if (ready.size() > 1) {
+				if (sequence.length() > 0) {
+					sequence.append(' ');
+				}
+				sequence.append(channel.recipient.getName()).append('=');
+			}
+			sequence.append(channel.epoch).append('.').append(pending.sequence).append('.')
+					.append(channel.inFlight.peekFirst().sequence);
+			pending.attempts = 1;
+			pending.deadline = now + TIMEOUT_MS;
+		}
+		copy.addUserDefinedParameter(SEQUENCE_PARAM, sequence.toString());
+		agent.send(copy);
+		inFlightEnvelopes += ready.size();
+		startRetransmitter();
+	}
+
+	/**
+	 * Trimite din nou un mesaj unui singur destinatar. Mesajul este deja in
+	 * fereastra canalului.
+	 */
+	private void transmit(Channel channel, Pending pending, long now) {
+		ACLMessage copy = (ACLMessage) pending.message.clone();
+		copy.clearAllReceiver();
+		copy.addReceiver(channel.recipient);
+		copy.addUserDefinedParameter(SEQUENCE_PARAM,
+				channel.epoch + "." + pending.sequence + "." + channel.inFlight.peekFirst().sequence);
+		agent.send(copy);
+		pending.deadline = now + Math.min(TIMEOUT_MS << Math.min(pending.attempts, 16), MAX_TIMEOUT_MS);
+		pending.attempts++;
+	}
+
+	/**
+	 * Trateaza o confirmare primita de la un destinatar.
+	 *
+	 * @param msg mesajul ACL primit.
+	 * @return true daca mesajul era o confirmare; altfel nu este folosit.
+	 */
+	public boolean handle(ACLMessage msg) {
+		String value = msg.getUserDefinedParameter(ACK_PARAM);
+		if (value == null || msg.getPerformative() != ACLMessage.CONFIRM) {
+			return false;
+		}
+		Channel channel = channels.get(msg.getSender());
+		int dot = value.indexOf('.');
+		if (channel == null || dot < 0) {
+			return true;
+		}
+		try {
+			if (Long.parseLong(value.substring(0, dot)) == channel.epoch) {
+				acknowledge(channel, Long.parseLong(value.substring(dot + 1)));
+			}
+		} catch (NumberFormatException e) {
+			e.printStackTrace();
+		}
+		return true;
+	}
+
+	/**
+	 * Trateaza un mesaj FAILURE trimis de AMS cand un mesaj nu a putut fi
+	 * livrat, de exemplu pentru ca destinatarul s-a oprit. Canalul catre acel
+	 * destinatar este abandonat, pentru ca retrimiterile ar esua la fel.
+	 *
+	 * @param msg mesajul ACL primit.
+	 * @return true daca mesajul era o notificare de esec de la AMS; altfel nu
+	 *         este folosit.
+	 */
+	public boolean handleFailure(ACLMessage msg) {
+		if (msg.getPerformative() != ACLMessage.FAILURE || !agent.getAMS().equals(msg.getSender())) {
+			return false;
+		}
+		String recipient = findFailedRecipient(msg.getContent());
+		Channel channel = recipient == null ? null : channels.get(new AID(recipient, AID.ISGUID));
+		if (channel != null) {
+			abandon(channel);
+		}
+		return true;
+	}
+
+	/**
+	 * Gaseste numele destinatarului in continutul unei notificari de esec a
+	 * AMS, de forma "(... (MTS-error (agent-identifier :name nume ...) ...))".
+	 */
+	private static String findFailedRecipient(String content) {
+		int error = content == null ? -1 : content.indexOf("MTS-error");
+		int name = error < 0 ? -1 : content.indexOf(":name ", error);
+		if (name < 0) {
+			return null;
+		}
+		int start = name + ":name ".length();
+		int end = start;
+		while (end < content.length() && !Character.isWhitespace(content.charAt(end))
+				&& content.charAt(end) != ')') {
+			end++;
+		}
+		String recipient = content.substring(start, end);
+		if (recipient.length() > 1 && recipient.startsWith("\"") && recipient.endsWith("\"")) {
+			recipient = recipient.substring(1, recipient.length() - 1);
+		}
+		return recipient.isEmpty() ? null : recipient;
+	}
+
+	private void acknowledge(Channel channel, long sequence) {
+		while (!channel.inFlight.isEmpty() && channel.inFlight.peekFirst().sequence <= sequence) {
+			channel.inFlight.pollFirst();
+			inFlightEnvelopes--;
+		}
+		long now = System.currentTimeMillis();
+		while (!channel.waiting.isEmpty() && channel.inFlight.size() < WINDOW) {
+			Pending pending = channel.waiting.pollFirst();
+			waitingMessages -= pending.messages;
+			channel.inFlight.add(pending);
+			transmit(channel, pending, now);
+			inFlightEnvelopes++;
+		}
+		if (channel.inFlight.isEmpty()) {
+			channels.remove(channel.recipient);
+		}
+	}
+
+	/**
+	 * Primeste un mesaj ACL de chat si adauga la lista mesajele care pot fi
+	 * livrate, in ordine: mesajul insusi si mesajele sosite inaintea lui care il
+	 * asteptau. Un duplicat sau un mesaj sosit prea devreme nu adauga nimic.
+	 *
+	 * @param msg       mesajul ACL primit.
+	 * @param delivered lista la care sunt adaugate mesajele de livrat.
+	 */
+	public void accept(ACLMessage msg, List<ACLMessage> delivered) {
+		String value = findSequence(msg.getUserDefinedParameter(SEQUENCE_PARAM));
+		int dot = value == null ? -1 : value.indexOf('.');
+		int startDot = dot < 0 ? -1 : value.indexOf('.', dot + 1);
+		long epoch;
+		long sequence;
+		long start;
+		try {
+			epoch = dot < 0 ? 0 : Long.parseLong(value.substring(0, dot));
+			sequence = dot < 0 ? 0
+					: Long.parseLong(value.substring(dot + 1, startDot < 0 ? value.length() : startDot));
+			start = startDot < 0 ? 1 : Long.parseLong(value.substring(startDot + 1));
+		} catch (NumberFormatException e) {
+			dot = -1;
+			epoch = sequence = start = 0;
+		}
+		if (dot < 0) {
+			delivered.add(msg);
+			return;
+		}
+
+		AID sender = msg.getSender();
+		Inbound state = inbound.get(sender);
+		if (state == null) {
+			state = new Inbound(epoch, start);
+			inbound.put(sender, state);
+		} else if (epoch > state.epoch) {
+			state.epoch = epoch;
+			state.expected = start;
+			state.early.clear();
+		} else if (epoch < state.epoch) {
+			duplicates++;
+			return;
+		}
+		state.lastSeen = System.currentTimeMillis();
+		unacknowledged.add(sender);
+
+		if (sequence < state.expected || state.early.containsKey(sequence)) {
+			duplicates++;
+			return;
+		}
+		if (sequence > state.expected) {
+			// Un mesaj sosit mult prea devreme este retrimis mai tarziu.
+			if (state.early.size() < MAX_EARLY) {
+				state.early.put(sequence, msg);
+			}
+			return;
+		}
+		delivered.add(msg);
+		state.expected++;
+		ACLMessage next;
+		while ((next = state.early.remove(state.expected)) != null) {
+			delivered.add(next);
+			state.expected++;
+		}
+	}
+
+	/**
+	 * Gaseste in valoarea parametrului {@value #SEQUENCE_PARAM} partea care
+	 * priveste agentul curent.
+	 */
+	private String findSequence(String value) {
+		if (value == null || value.indexOf('=') < 0) {
+			return value;
+		}
+		String key = agent.getName() + '=';
+		int from = 0;
+		int index;
+		while ((index = value.indexOf(key, from)) >= 0) {
+			if (index == 0 || value.charAt(index - 1) == ' ') {
+				int start = index + key.length();
+				int end = value.indexOf(' ', start);
+				return value.substring(start, end < 0 ? value.length() : end);
+			}
+			from = index + 1;
+		}
+		return null;
+	}
+
+	/**
+	 * Trimite cate o confirmare cumulativa fiecarui expeditor de la care au fost
+	 * primite mesaje de la ultima confirmare, apoi sterge, din cand in cand,
+	 * starea expeditorilor inactivi.
+	 */
+	public void sendAcknowledgements() {
+		for (AID sender : unacknowledged) {
+			Inbound state = inbound.get(sender);
+			ACLMessage ack = new ACLMessage(ACLMessage.CONFIRM);
+			ack.addReceiver(sender);
+			ack.addUserDefinedParameter(ACK_PARAM, state.epoch + "." + (state.expected - 1));
+			agent.send(ack);
+		}
+		unacknowledged.clear();
+
+		long now = System.currentTimeMillis();
+		if (now >= nextPrune) {
+			nextPrune = now + INBOUND_IDLE_MS / 4;
+			inbound.values().removeIf(state -> now - state.lastSeen > INBOUND_IDLE_MS);
+		}
+	}
+
+	/**
+	 * Porneste, daca nu ruleaza deja, verificarea periodica a mesajelor
+	 * neconfirmate. Verificarea se opreste singura cand toate mesajele au fost
+	 * confirmate.
+	 */
+	private void startRetransmitter() {
+		if (retransmitter != null) {
+			return;
+		}
+		retransmitter = new TickerBehaviour(agent, Math.max(TIMEOUT_MS / 2, 10)) {
+			@Override
+			protected void onTick() {
+				long now = System.currentTimeMillis();
+				for (Channel channel : new ArrayList<>(channels.values())) {
+					for (Pending pending : channel.inFlight) {
+						if (pending.deadline > now) {
+							continue;
+						}
+						if (pending.attempts >= MAX_ATTEMPTS) {
+							abandon(channel);
+							break;
+						}
+						transmit(channel, pending, now);
+						retransmissions++;
+					}
+				}
+				if (channels.isEmpty()) {
+					stop();
+					retransmitter = null;
+				}
+			}
+		};
+		agent.addBehaviour(retransmitter);
+	}
+
+	private void abandon(Channel channel) {
+		int waiting = countMessages(channel.waiting);
+		int lost = countMessages(channel.inFlight) + waiting;
+		channels.remove(channel.recipient);
+		inFlightEnvelopes -= channel.inFlight.size();
+		waitingMessages -= waiting;
+		undeliveredMessages += lost;
+		System.out.println(agent.getLocalName() + ": " + lost + " messages to "
+				+ channel.recipient.getLocalName() + " were not acknowledged.");
+	}
+
+	private static int countMessages(ArrayDeque<Pending> queue) {
+		int count = 0;
+		for (Pending pending : queue) {
+			count += pending.messages;
+		}
+		return count;
+	}
+
+	/**
+	 * @return numarul de mesaje ACL trimise si neconfirmate inca.
+	 */
+	public int getInFlightEnvelopes() {
+		return inFlightEnvelopes;
+	}
+
+	/**
+	 * @return numarul de mesaje de chat care asteapta sa se elibereze fereastra
+	 *         destinatarului.
+	 */
+	public int getWaitingMessages() {
+		return waitingMessages;
+	}
+
+	/**
+	 * @return numarul de mesaje ACL retrimise dupa expirarea confirmarii.
+	 */
+	public long getRetransmissions() {
+		return retransmissions;
+	}
+
+	/**
+	 * @return numarul de mesaje ACL primite de mai multe ori si ignorate.
+	 */
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * @return numarul de mesaje de chat abandonate dupa prea multe incercari.
+	 */
+	public long getUndeliveredMessages() {
+		return undeliveredMessages;
+	}
+}
@@ -0,0 +1,374 @@
+package backend;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Clasa SearchIndex este indexul inversat folosit pentru cautarea in istoric:
+ * pentru fiecare cuvant retine lista ordonata a mesajelor (documentelor) care
+ * il contin. Documentele sunt numerotate in ordinea in care au fost scrise in
+ * jurnal, deci o cautare parcurge listele de la sfarsit si gaseste intai
+ * mesajele cele mai noi; o cautare cu mai multe cuvinte parcurge cea mai scurta
+ * lista si le cauta binar pe celelalte. Expeditorul fiecarui mesaj este indexat
+ * ca un cuvant special ("from:nume"), astfel incat filtrarea dupa expeditor
+ * foloseste tot o lista.
+ * <p>
+ * Indexul nu retine textul mesajelor, ci doar expeditorul, destinatarul,
+ * momentul trimiterii si pozitia logica a mesajului in jurnal, de la care
+ * mesajul propriu-zis este citit direct
+ * ({@link HistoryLog#search(SearchQuery, ConversationFilter)}). Indexul este
+ * actualizat de {@link HistoryLog} la fiecare scriere, iar pozitiile sunt
+ * actualizate la compactarea jurnalului; indexul este salvat langa jurnal,
+ * impreuna cu indexul conversatiilor.
+ */
+public class SearchIndex {
+
+	/**
+	 * Decide in ce conversatii se cauta, de exemplu doar in cele ale unui agent.
+	 */
+	public interface ConversationFilter {
+		boolean accept(int senderId, int receiverId);
+	}
+
+	/**
+	 * Filtrul care accepta toate conversatiile.
+	 */
+	public static final ConversationFilter ALL = (senderId, receiverId) -> true;
+
+	private static final String SENDER_PREFIX = "from:";
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Lista ordonata a documentelor care contin un cuvant.
+	 */
+	private static final class Postings {
+		int[] docs = new int[2];
+		int size;
+
+		void add(int doc) {
+			if (size > 0 && docs[size - 1] == doc) {
+				return;
+			}
+			if (size == docs.length) {
+				docs = Arrays.copyOf(docs, size * 2);
+			}
+			docs[size++] = doc;
+		}
+	}
+
+	private final Map<String, Postings> postings = new HashMap<>();
+	private int[] senders = new int[INITIAL_CAPACITY];
+	private int[] receivers = new int[INITIAL_CAPACITY];
+	private long[] timestamps = new long[INITIAL_CAPACITY];
+	private long[] offsets = new long[INITIAL_CAPACITY];
+	private int size;
+
+	/**
+	 * Imparte un text in cuvinte: secvente de litere si cifre, scrise cu litere
+	 * mici.
+	 *
+	 * @param text textul de impartit.
+	 * @return cuvintele, in ordinea in care apar in text.
+	 */
+	public static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<>();
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (letter && start < 0) {
+				start = i;
+			} else if (!letter && start >= 0) {
+				tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Adauga un mesaj in index, ca document nou.
+	 *
+	 * @param offset pozitia logica a mesajului in jurnal.
+	 * @param record mesajul scris in jurnal.
+	 */
+	public synchronized void add(long offset, MessageRecord record) {
+		if (size == senders.length) {
+			senders = Arrays.copyOf(senders, size * 2);
+			receivers = Arrays.copyOf(receivers, size * 2);
+			timestamps = Arrays.copyOf(timestamps, size * 2);
+			offsets = Arrays.copyOf(offsets, size * 2);
+		}
+		int doc = size++;
+		senders[doc] = record.getSenderId();
+		receivers[doc] = record.getReceiverId();
+		timestamps[doc] = record.getTimestamp();
+		offsets[doc] = offset;
+		postingsFor(SENDER_PREFIX + record.getSender()).add(doc);
+		for (String token : tokenize(record.getContent())) {
+			postingsFor(token).add(doc);
+		}
+	}
+
+	/**
+	 * Adauga un lot de mesaje in index, luand lock-ul indexului o singura data.
+	 *
+	 * @param records       mesajele scrise in jurnal, in ordinea scrierii.
+	 * @param recordOffsets pozitiile logice ale mesajelor in jurnal.
+	 */
+	public synchronized void add(List<MessageRecord> records, long[] recordOffsets) {
+		for (int i = 0; i < records.size(); i++) {
+			add(recordOffsets[i], records.get(i));
+		}
+	}
+
+	/**
+	 * Actualizeaza pozitiile mesajelor mutate de compactarea jurnalului. Copiile
+	 * unui mesaj eliminate la compactare primesc pozitia copiei pastrate, iar
+	 * mesajele care nu mai exista primesc pozitia -1.
+	 *
+	 * @param from         prima pozitie logica rescrisa.
+	 * @param oldPositions pozitiile vechi ale mesajelor rescrise, crescatoare.
+	 * @param newPositions pozitiile noi, in aceeasi ordine.
+	 */
+	synchronized void moveOffsets(long from, long[] oldPositions, long[] newPositions) {
+		for (int doc = 0; doc < size; doc++) {
+			if (offsets[doc] >= from) {
+				int i = Arrays.binarySearch(oldPositions, offsets[doc]);
+				offsets[doc] = i >= 0 ? newPositions[i] : -1;
+			}
+		}
+	}
+
+	/**
+	 * @return numarul de mesaje din index.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return numarul de cuvinte distincte din index, inclusiv expeditorii.
+	 */
+	public synchronized int getTermCount() {
+		return postings.size();
+	}
+
+	synchronized void clear() {
+		postings.clear();
+		size = 0;
+	}
+
+	/**
+	 * Cauta mesajele care se potrivesc cu o cautare, de la cele mai noi la cele
+	 * mai vechi, pornind de dinaintea unui cursor. Pentru fiecare mesaj gasit
+	 * este adaugata in rezultate pozitia lui logica in jurnal, de la care
+	 * mesajul poate fi citit. Expresiile nu sunt verificate aici, ci doar
+	 * cuvintele lor.
+	 *
+	 * @param query   cautarea.
+	 * @param filter  conversatiile in care se cauta.
+	 * @param before  cursorul: sunt cautate documentele dinaintea lui.
+	 * @param max     numarul maxim de rezultate adaugate.
+	 * @param results lista la care sunt adaugate pozitiile mesajelor gasite.
+	 * @return cursorul de la care continua cautarea, sau 0 daca nu mai exista
+	 *         documente de cercetat.
+	 */
+	public synchronized int collect(SearchQuery query, ConversationFilter filter, int before, int max,
+			List<Long> results) {
+		List<String> required = new ArrayList<>(query.getRequiredTerms());
+		if (query.getSender() != null) {
+			required.add(SENDER_PREFIX + query.getSender());
+		}
+		int end = Math.min(before, size);
+		if (required.isEmpty()) {
+			for (int doc = end - 1; doc >= 0; doc--) {
+				if (accept(doc, query, filter)) {
+					results.add(offsets[doc]);
+					if (--max == 0) {
+						return doc;
+					}
+				}
+			}
+			return 0;
+		}
+
+		Postings[] lists = new Postings[required.size()];
+		for (int i = 0; i < lists.length; i++) {
+			lists[i] = postings.get(required.get(i));
+			if (lists[i] == null) {
+				return 0;
+			}
+		}
+		Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+
+		// Documentele sunt parcurse descrescator, deci cautarea in celelalte liste
+		// se poate limita la portiunea de dinaintea documentului anterior.
+		int[] limits = new int[lists.length];
+		for (int i = 0; i < lists.length; i++) {
+			limits[i] = lists[i].size;
+		}
+		Postings shortest = lists[0];
+		int position = Arrays.binarySearch(shortest.docs, 0, shortest.size, end);
+		position = (position >= 0 ? position : -position - 1) - 1;
+		for (; position >= 0; position--) {
+			int doc = shortest.docs[position];
+			if (containsAll(lists, limits, doc) && accept(doc, query, filter)) {
+				results.add(offsets[doc]);
+				if (--max == 0) {
+					return doc;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Scrie indexul: numele expeditorilor si destinatarilor (identificatorii sunt
+	 * atribuiti la fiecare pornire), documentele, cu momentul si pozitia
+	 * fiecaruia ca diferente fata de documentul anterior, si listele de
+	 * documente, ca diferente intre documente consecutive.
+	 *
+	 * @param out fluxul in care este scris indexul.
+	 * @throws IOException daca scrierea esueaza.
+	 */
+	synchronized void writeTo(DataOutputStream out) throws IOException {
+		Map<Integer, Integer> names = new HashMap<>();
+		List<String> nameTable = new ArrayList<>();
+		int[] senderNames = new int[size];
+		int[] receiverNames = new int[size];
+		for (int doc = 0; doc < size; doc++) {
+			senderNames[doc] = nameIndex(senders[doc], names, nameTable);
+			receiverNames[doc] = nameIndex(receivers[doc], names, nameTable);
+		}
+
+		out.writeInt(nameTable.size());
+		for (String name : nameTable) {
+			BinaryCodec.writeString(out, name);
+		}
+		out.writeInt(size);
+		long previousTimestamp = 0;
+		long previousOffset = 0;
+		for (int doc = 0; doc < size; doc++) {
+			BinaryCodec.writeVarInt(out, senderNames[doc]);
+			BinaryCodec.writeVarInt(out, receiverNames[doc]);
+			BinaryCodec.writeSignedVarLong(out, timestamps[doc] - previousTimestamp);
+			BinaryCodec.writeSignedVarLong(out, offsets[doc] - previousOffset);
+			previousTimestamp = timestamps[doc];
+			previousOffset = offsets[doc];
+		}
+		out.writeInt(postings.size());
+		for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+			Postings list = entry.getValue();
+			BinaryCodec.writeString(out, entry.getKey());
+			BinaryCodec.writeVarInt(out, list.size);
+			int previous = 0;
+			for (int i = 0; i < list.size; i++) {
+				BinaryCodec.writeVarInt(out, list.docs[i] - previous);
+				previous = list.docs[i];
+			}
+		}
+	}
+
+	/**
+	 * Inlocuieste continutul indexului cu cel scris de
+	 * {@link #writeTo(DataOutputStream)}. Indexul este citit dintr-un buffer cu
+	 * tot fisierul, nu dintr-un flux, deoarece contine milioane de numere scurte.
+	 *
+	 * @param in continutul scris de {@link #writeTo(DataOutputStream)}.
+	 * @throws IOException daca indexul nu este valid.
+	 */
+	synchronized void readFrom(ByteBuffer in) throws IOException {
+		clear();
+		try {
+			read(in);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			clear();
+			throw new IOException("Truncated search index", e);
+		}
+	}
+
+	private void read(ByteBuffer in) throws IOException {
+		int[] ids = new int[in.getInt()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = AgentDictionary.idOf(BinaryCodec.readString(in));
+		}
+		int count = in.getInt();
+		senders = new int[Math.max(count, INITIAL_CAPACITY)];
+		receivers = new int[senders.length];
+		timestamps = new long[senders.length];
+		offsets = new long[senders.length];
+		long timestamp = 0;
+		long offset = 0;
+		for (int doc = 0; doc < count; doc++) {
+			senders[doc] = ids[BinaryCodec.readVarInt(in)];
+			receivers[doc] = ids[BinaryCodec.readVarInt(in)];
+			timestamp += BinaryCodec.readSignedVarLong(in);
+			offset += BinaryCodec.readSignedVarLong(in);
+			timestamps[doc] = timestamp;
+			offsets[doc] = offset;
+		}
+		int terms = in.getInt();
+		for (int t = 0; t < terms; t++) {
+			Postings list = new Postings();
+			String term = BinaryCodec.readString(in);
+			list.size = BinaryCodec.readVarInt(in);
+			list.docs = new int[Math.max(list.size, 1)];
+			int doc = 0;
+			for (int i = 0; i < list.size; i++) {
+				doc += BinaryCodec.readVarInt(in);
+				if (doc >= count) {
+					throw new IOException("Invalid search index entry for " + term);
+				}
+				list.docs[i] = doc;
+			}
+			postings.put(term, list);
+		}
+		size = count;
+	}
+
+	private Postings postingsFor(String term) {
+		Postings list = postings.get(term);
+		if (list == null) {
+			list = new Postings();
+			postings.put(term, list);
+		}
+		return list;
+	}
+
+	private static boolean containsAll(Postings[] lists, int[] limits, int doc) {
+		for (int i = 1; i < lists.length; i++) {
+			int position = Arrays.binarySearch(lists[i].docs, 0, limits[i], doc);
+			if (position < 0) {
+				limits[i] = -position - 1;
+				return false;
+			}
+			limits[i] = position;
+		}
+		return true;
+	}
+
+	private boolean accept(int doc, SearchQuery query, ConversationFilter filter) {
+		long timestamp = timestamps[doc];
+		return timestamp >= query.getSince() && timestamp < query.getUntil()
+				&& filter.accept(senders[doc], receivers[doc]);
+	}
+
+	private static int nameIndex(int id, Map<Integer, Integer> names, List<String> nameTable) {
+		Integer index = names.get(id);
+		if (index == null) {
+			index = nameTable.size();
+			names.put(id, index);
+			nameTable.add(AgentDictionary.nameOf(id));
+		}
+		return index;
+	}
+}
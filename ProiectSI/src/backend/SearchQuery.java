@@ -0,0 +1,218 @@
+package backend;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Clasa SearchQuery reprezinta o cautare in istoricul mesajelor: cuvinte care
+ * trebuie sa apara toate in mesaj, expresii (cuvinte consecutive), expeditorul
+ * si intervalul de timp in care a fost trimis mesajul. Textul cautarii este
+ * scris ca in caseta de cautare a ferestrei de chat:
+ * <ul>
+ * <li>cuvinte separate prin spatii, de exemplu <code>intalnire maine</code>;</li>
+ * <li>expresii intre ghilimele, de exemplu <code>"la ora 10"</code>;</li>
+ * <li><code>from:nume</code> pentru mesajele trimise de un agent;</li>
+ * <li><code>since:2024-05-01</code> si <code>until:2024-05-31</code> pentru
+ * mesajele trimise incepand cu, respectiv pana la sfarsitul unei zile.</li>
+ * </ul>
+ * Cuvintele sunt comparate fara a tine cont de litere mari sau mici (vezi
+ * {@link SearchIndex#tokenize(String)}).
+ */
+public final class SearchQuery {
+
+	/**
+	 * Numarul implicit de rezultate intoarse de o cautare.
+	 */
+	public static final int DEFAULT_LIMIT = 100;
+
+	private final List<String> terms = new ArrayList<>();
+	private final List<List<String>> phrases = new ArrayList<>();
+	private final List<String> requiredTerms = new ArrayList<>();
+	private String sender;
+	private long since = Long.MIN_VALUE;
+	private long until = Long.MAX_VALUE;
+	private final int limit;
+
+	/**
+	 * Construieste o cautare din textul scris de utilizator, cu numarul implicit
+	 * de rezultate.
+	 *
+	 * @param text textul cautarii.
+	 * @throws IllegalArgumentException daca o data din since: sau until: nu are
+	 *                                  forma an-luna-zi.
+	 */
+	public SearchQuery(String text) {
+		this(text, DEFAULT_LIMIT);
+	}
+
+	/**
+	 * Construieste o cautare din textul scris de utilizator.
+	 *
+	 * @param text  textul cautarii.
+	 * @param limit numarul maxim de rezultate.
+	 * @throws IllegalArgumentException daca o data din since: sau until: nu are
+	 *                                  forma an-luna-zi.
+	 */
+	public SearchQuery(String text, int limit) {
+		this.limit = limit;
+		parse(text);
+	}
+
+	/**
+	 * Construieste o cautare cu filtrele date explicit.
+	 *
+	 * @param text   cuvintele si expresiile cautate, ca in
+	 *               {@link #SearchQuery(String)}.
+	 * @param sender numele local al expeditorului, sau null pentru orice
+	 *               expeditor.
+	 * @param since  inceputul intervalului de timp, inclusiv, in milisecunde.
+	 * @param until  sfarsitul intervalului de timp, exclusiv, in milisecunde.
+	 * @param limit  numarul maxim de rezultate.
+	 */
+	public SearchQuery(String text, String sender, long since, long until, int limit) {
+		this(text, limit);
+		if (sender != null) {
+			this.sender = sender;
+		}
+		this.since = Math.max(this.since, since);
+		this.until = Math.min(this.until, until);
+	}
+
+	/**
+	 * @return cuvintele cautate, scrise cu litere mici.
+	 */
+	public List<String> getTerms() {
+		return Collections.unmodifiableList(terms);
+	}
+
+	/**
+	 * @return expresiile cautate, fiecare ca lista de cuvinte consecutive.
+	 */
+	public List<List<String>> getPhrases() {
+		return Collections.unmodifiableList(phrases);
+	}
+
+	/**
+	 * @return numele local al expeditorului cautat, sau null.
+	 */
+	public String getSender() {
+		return sender;
+	}
+
+	public long getSince() {
+		return since;
+	}
+
+	public long getUntil() {
+		return until;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return toate cuvintele care trebuie sa apara in mesaj: cuvintele cautate
+	 *         si cuvintele expresiilor.
+	 */
+	List<String> getRequiredTerms() {
+		return requiredTerms;
+	}
+
+	/**
+	 * Verifica daca un mesaj contine toate expresiile cautate. Indexul gaseste
+	 * doar mesajele care contin cuvintele expresiilor; ordinea lor este verificata
+	 * pe textul mesajului.
+	 *
+	 * @param content textul mesajului.
+	 * @return true daca fiecare expresie apare in mesaj.
+	 */
+	public boolean matchesPhrases(String content) {
+		if (phrases.isEmpty()) {
+			return true;
+		}
+		List<String> tokens = SearchIndex.tokenize(content);
+		for (List<String> phrase : phrases) {
+			if (Collections.indexOfSubList(tokens, phrase) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void parse(String text) {
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '"') {
+				int end = text.indexOf('"', i + 1);
+				if (end < 0) {
+					end = text.length();
+				}
+				addWords(text.substring(i + 1, end));
+				i = end + 1;
+			} else {
+				int end = i;
+				while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+					end++;
+				}
+				addWord(text.substring(i, end));
+				i = end;
+			}
+		}
+	}
+
+	private void addWord(String word) {
+		if (word.startsWith("from:") && word.length() > 5) {
+			sender = word.substring(5);
+		} else if (word.startsWith("since:")) {
+			since = parseDay(word.substring(6)).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		} else if (word.startsWith("until:")) {
+			until = parseDay(word.substring(6)).plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant()
+					.toEpochMilli();
+		} else {
+			addWords(word);
+		}
+	}
+
+	/**
+	 * Adauga cuvintele dintr-o bucata de text. Un text format din mai multe
+	 * cuvinte (o expresie intre ghilimele sau un cuvant ca "e-mail") este cautat
+	 * ca expresie.
+	 */
+	private void addWords(String text) {
+		List<String> tokens = SearchIndex.tokenize(text);
+		if (tokens.size() == 1) {
+			terms.add(tokens.get(0));
+		} else if (tokens.size() > 1) {
+			phrases.add(tokens);
+		}
+		requiredTerms.addAll(tokens);
+	}
+
+	private static LocalDate parseDay(String day) {
+		try {
+			return LocalDate.parse(day);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Expected a date like 2024-05-31, got " + day, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(String.join(" ", terms));
+		for (List<String> phrase : phrases) {
+			text.append(text.length() > 0 ? " " : "").append('"').append(String.join(" ", phrase)).append('"');
+		}
+		if (sender != null) {
+			text.append(" from:").append(sender);
+		}
+		return text.toString().trim();
+	}
+}
@@ -0,0 +1,134 @@
+package benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import backend.HistoryLog;
+import backend.HistoryPage;
+import backend.MessageHistory;
+import backend.MessageRecord;
+import jade.core.AID;
+
+/**
+ * Verifica cererile pe interval de timp ale {@link MessageHistory} cand
+ * momentele mesajelor nu cresc odata cu ordinea scrierii, ca la un destinatar
+ * care primeste mesaje datate de ceasul expeditorului sau ca la loturile scrise
+ * dupa mesajele lor. Mesajele sunt scrise cu momente amestecate, apoi
+ * rezultatul fiecarui interval ales la intamplare este comparat cu cel obtinut
+ * prin parcurgerea tuturor mesajelor: inainte de scrierea pe disc, dupa
+ * scriere, dupa redeschiderea jurnalului si dupa compactare. Este verificat si
+ * faptul ca o copie a unui mesaj mai vechi decat vecinii lui nu este salvata a
+ * doua oara.
+ * <p>
+ * Argumente optionale: numarul de mesaje si numarul de intervale verificate la
+ * fiecare pas. Programul se termina cu codul 1 daca gaseste o diferenta.
+ */
+public class HistoryRangeCheck {
+
+	private static final String PLATFORM = "@range";
+
+	public static void main(String[] args) throws Exception {
+		int messages = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		File logFile = File.createTempFile("history-range", ".log");
+		logFile.deleteOnExit();
+		new File(logFile.getPath() + ".idx").deleteOnExit();
+		new File(logFile.getPath() + ".search").deleteOnExit();
+
+		AID local = new AID("Local" + PLATFORM, AID.ISGUID);
+		AID remote = new AID("Remote" + PLATFORM, AID.ISGUID);
+		Random random = new Random(42);
+		List<MessageRecord> written = new ArrayList<>();
+		MessageHistory history = new MessageHistory(logFile.getPath());
+		history.loadHistoryFromFile();
+		long clock = 1_000_000L;
+		for (int i = 0; i < messages; i++) {
+			clock += random.nextInt(5);
+			// Mesajele primite sunt datate de un ceas care ramane in urma cu pana la
+			// doua secunde.
+			boolean incoming = random.nextBoolean();
+			long timestamp = incoming ? clock - random.nextInt(2000) : clock;
+			AID sender = incoming ? remote : local;
+			AID receiver = incoming ? local : remote;
+			String content = Integer.toString(i);
+			history.addMessage(sender, receiver, content, timestamp);
+			written.add(new MessageRecord(sender.getName(), receiver.getName(), timestamp, content));
+		}
+
+		String failure = check("pending", history, local, remote, written, random, queries, clock);
+		HistoryLog.forFile(logFile.getPath()).getWriter().flush();
+		if (failure == null) {
+			failure = check("written", history, local, remote, written, random, queries, clock);
+		}
+		if (failure == null) {
+			MessageRecord old = written.get(written.size() / 2);
+			AID sender = old.getSender().equals(local.getName()) ? local : remote;
+			history.addMessage(sender, sender == local ? remote : local, old.getContent(), old.getTimestamp());
+			HistoryLog.forFile(logFile.getPath()).getWriter().flush();
+			int total = history.getLastMessages(local, remote, 1).getTotal();
+			if (total != written.size()) {
+				failure = "A copy of message " + old.getContent() + " was stored again (" + total + " messages)";
+			}
+		}
+		if (failure == null) {
+			HistoryLog.forFile(logFile.getPath()).close();
+			history = new MessageHistory(logFile.getPath());
+			failure = check("reopened", history, local, remote, written, random, queries, clock);
+		}
+		if (failure == null) {
+			HistoryLog.forFile(logFile.getPath()).compact();
+			failure = check("compacted", history, local, remote, written, random, queries, clock);
+		}
+		HistoryLog.forFile(logFile.getPath()).close();
+
+		if (failure != null) {
+			System.out.println("FAILED: " + failure);
+			System.exit(1);
+		}
+		System.out.println("OK: " + messages + " messages, " + queries + " ranges per step.");
+		System.exit(0);
+	}
+
+	/**
+	 * Compara rezultatul unor intervale alese la intamplare cu mesajele din
+	 * interval, in ordinea scrierii.
+	 */
+	private static String check(String step, MessageHistory history, AID local, AID remote,
+			List<MessageRecord> written, Random random, int queries, long clock) {
+		for (int q = 0; q < queries; q++) {
+			long from = 1_000_000L - 2000 + (long) (random.nextDouble() * (clock - 1_000_000L + 2000));
+			long to = from + random.nextInt(3000);
+			int count = 1 + random.nextInt(200);
+
+			List<String> expected = new ArrayList<>();
+			int first = -1;
+			int last = -1;
+			for (int i = 0; i < written.size() && expected.size() < count; i++) {
+				long timestamp = written.get(i).getTimestamp();
+				if (timestamp >= from && timestamp < to) {
+					expected.add(written.get(i).getContent());
+					first = first < 0 ? i : first;
+					last = i;
+				}
+			}
+
+			HistoryPage page = history.getMessagesBetween(local, remote, from, to, count);
+			List<String> actual = new ArrayList<>();
+			for (MessageRecord record : page.getMessages()) {
+				actual.add(record.getContent());
+			}
+			if (!actual.equals(expected)) {
+				return step + ": range [" + from + ", " + to + ") returned " + actual + " instead of " + expected;
+			}
+			if (!expected.isEmpty() && (page.getStart() != first || page.getEnd() != last + 1)) {
+				return step + ": range [" + from + ", " + to + ") has cursors " + page.getStart() + ".."
+						+ page.getEnd() + " instead of " + first + ".." + (last + 1);
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,183 @@
+package benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import backend.HistoryLog;
+import backend.HistoryPage;
+import backend.MessageHistory;
+import backend.MessageRecord;
+import jade.core.AID;
+
+/**
+ * Test de stres pentru {@link MessageHistory}: mai multe fire scriu simultan in
+ * aceleasi conversatii (fiecare mesaj de doua ori, ca expeditorul si
+ * destinatarul), in timp ce alte fire citesc istoricul si pagini din el.
+ * Verifica faptul ca cititorii nu vad niciodata o conversatie incompleta sau in
+ * dezordine si ca, la final, fiecare mesaj apare exact o data, atat in memorie,
+ * cat si in jurnal.
+ * <p>
+ * Argumente optionale: numarul de fire de scriere, numarul de fire de citire,
+ * numarul de mesaje scrise de fiecare fir si numarul de conversatii. Programul
+ * se termina cu codul 1 daca gaseste o inconsistenta.
+ */
+public class HistoryStressCheck {
+
+	private static final String PLATFORM = "@stress";
+
+	public static void main(String[] args) throws Exception {
+		int writers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int messagesPerWriter = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+		int conversations = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+		File logFile = File.createTempFile("history-stress", ".log");
+		logFile.deleteOnExit();
+		new File(logFile.getPath() + ".idx").deleteOnExit();
+
+		MessageHistory history = new MessageHistory(logFile.getPath());
+		history.loadHistoryFromFile();
+
+		AID hub = new AID("Hub" + PLATFORM, AID.ISGUID);
+		AID[] agents = new AID[conversations];
+		for (int i = 0; i < conversations; i++) {
+			agents[i] = new AID("Agent" + i + PLATFORM, AID.ISGUID);
+		}
+
+		AtomicBoolean writing = new AtomicBoolean(true);
+		AtomicReference<String> failure = new AtomicReference<>();
+		AtomicLong reads = new AtomicLong();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+
+		for (int w = 0; w < writers; w++) {
+			int writer = w;
+			threads.add(new Thread(() -> {
+				await(start);
+				AID sender = agents[writer % conversations];
+				for (int i = 0; i < messagesPerWriter; i++) {
+					String content = writer + ":" + i;
+					long timestamp = 1_000_000L + i;
+					history.addMessage(sender, hub, content, timestamp);
+					history.addMessage(sender, hub, content, timestamp);
+				}
+			}, "stress-writer-" + w));
+		}
+
+		List<Thread> readerThreads = new ArrayList<>();
+		for (int r = 0; r < readers; r++) {
+			readerThreads.add(new Thread(() -> {
+				await(start);
+				int[] lastSeen = new int[conversations];
+				while (writing.get() && failure.get() == null) {
+					int c = ThreadLocalRandom.current().nextInt(conversations);
+					String error = checkSnapshot(history, agents[c], hub, lastSeen, c);
+					if (error == null) {
+						error = checkPage(history.getLastMessages(agents[c], hub, 50), writers);
+					}
+					if (error != null) {
+						failure.compareAndSet(null, error);
+					}
+					reads.incrementAndGet();
+				}
+			}, "stress-reader-" + r));
+		}
+
+		threads.forEach(Thread::start);
+		readerThreads.forEach(Thread::start);
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		writing.set(false);
+		for (Thread thread : readerThreads) {
+			thread.join();
+		}
+		long elapsedMillis = (System.nanoTime() - begin) / 1_000_000;
+
+		HistoryLog.forFile(logFile.getPath()).getWriter().flush();
+		MessageHistory reloaded = new MessageHistory(logFile.getPath());
+		for (int c = 0; c < conversations && failure.get() == null; c++) {
+			int writersOnConversation = (writers - c + conversations - 1) / conversations;
+			int expected = writersOnConversation * messagesPerWriter;
+			int inMemory = countLines(history.getConversationHistory(agents[c], hub));
+			int onDisk = countLines(reloaded.getConversationHistory(agents[c], hub));
+			if (inMemory != expected || onDisk != expected) {
+				failure.set("Conversation " + c + ": expected " + expected + " messages, found " + inMemory
+						+ " in memory and " + onDisk + " in the log");
+			}
+		}
+
+		System.out.println("Wrote " + (2L * writers * messagesPerWriter) + " messages (half of them duplicates) and ran "
+				+ reads.get() + " reads in " + elapsedMillis + " ms.");
+		if (failure.get() != null) {
+			System.out.println("FAILED: " + failure.get());
+			System.exit(1);
+		}
+		System.out.println("OK");
+		System.exit(0);
+	}
+
+	/**
+	 * Verifica o imagine a conversatiei: nu poate avea mai putine mesaje decat o
+	 * imagine citita anterior, iar fiecare linie trebuie sa fie completa.
+	 */
+	private static String checkSnapshot(MessageHistory history, AID agent, AID hub, int[] lastSeen, int c) {
+		String snapshot = history.getConversationHistory(agent, hub);
+		int lines = countLines(snapshot);
+		if (lines < lastSeen[c]) {
+			return "Conversation " + c + " shrank from " + lastSeen[c] + " to " + lines + " messages";
+		}
+		lastSeen[c] = lines;
+		if (!snapshot.isEmpty() && !snapshot.endsWith("\n")) {
+			return "Torn snapshot of conversation " + c;
+		}
+		return null;
+	}
+
+	/**
+	 * Verifica o pagina: mesajele fiecarui fir de scriere trebuie sa apara in
+	 * ordinea in care au fost scrise.
+	 */
+	private static String checkPage(HistoryPage page, int writers) {
+		int[] lastIndex = new int[writers];
+		Arrays.fill(lastIndex, -1);
+		for (MessageRecord record : page.getMessages()) {
+			String[] parts = record.getContent().split(":");
+			int writer = Integer.parseInt(parts[0]);
+			int index = Integer.parseInt(parts[1]);
+			if (index <= lastIndex[writer]) {
+				return "Out of order or duplicate message " + record.getContent();
+			}
+			lastIndex[writer] = index;
+		}
+		return null;
+	}
+
+	private static int countLines(String text) {
+		int lines = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n') {
+				lines++;
+			}
+		}
+		return lines;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
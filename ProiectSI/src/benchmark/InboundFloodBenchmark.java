@@ -0,0 +1,174 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import backend.ChatAgent;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.ContainerController;
+
+/**
+ * Masoara cat de repede proceseaza un {@link ChatAgent} un val de mesaje
+ * primite: un agent trimite rapid un numar mare de mesaje, iar benchmark-ul
+ * asteapta pana cand toate apar in istoricul destinatarului. Fiecare dimensiune
+ * a lotului de receptie (proprietatea inbound.maxBatch) este masurata intr-o
+ * masina virtuala separata, pentru ca rezultatele sa nu se influenteze; o
+ * dimensiune de 1 corespunde procesarii unui singur mesaj la fiecare activare.
+ * Coada de mesaje a destinatarului nu este limitata (inbox.maxSize=0), pentru
+ * ca valul sa ajunga intreg in istoric.
+ * <p>
+ * Argumente optionale: numarul de mesaje si dimensiunile lotului (de exemplu
+ * "50000 1 256"). Destinatarul ruleaza fara interfata grafica.
+ */
+public class InboundFloodBenchmark {
+
+	private static final String RESULT_PREFIX = "RESULT ";
+
+	/**
+	 * Trimite mesajele valului, cate unul in fiecare mesaj ACL.
+	 */
+	public static class FloodAgent extends Agent {
+		private static final long serialVersionUID = 1L;
+
+		static volatile long finishedNanos;
+
+		@Override
+		protected void setup() {
+			int messages = (Integer) getArguments()[0];
+			AID receiver = new AID("receiver", AID.ISLOCALNAME);
+			addBehaviour(new OneShotBehaviour(this) {
+				@Override
+				public void action() {
+					for (int i = 0; i < messages; i++) {
+						ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+						msg.addReceiver(receiver);
+						msg.setContent("flood " + i);
+						msg.addUserDefinedParameter(ChatAgent.TIMESTAMP_PARAM, Long.toString(i + 1));
+						send(msg);
+					}
+					finishedNanos = System.nanoTime();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Destinatarul valului: un agent de chat obisnuit, accesibil benchmark-ului.
+	 */
+	public static class ReceiverAgent extends ChatAgent {
+		private static final long serialVersionUID = 1L;
+
+		static volatile ReceiverAgent instance;
+
+		@Override
+		protected void setup() {
+			super.setup();
+			instance = this;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("--trial")) {
+			runTrial(Integer.parseInt(args[1]));
+			return;
+		}
+
+		int messages = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		List<String> batchSizes = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			batchSizes.add(args[i]);
+		}
+		if (batchSizes.isEmpty()) {
+			batchSizes.add("1");
+			batchSizes.add("256");
+		}
+
+		System.out.println("batch  messages  sent(ms)  stored(ms)  messages/s");
+		for (String batchSize : batchSizes) {
+			String[] fields = fork(batchSize, messages).split(" ");
+			long sentMillis = Long.parseLong(fields[0]);
+			long storedMillis = Long.parseLong(fields[1]);
+			System.out.printf("%5s  %8d  %8d  %10d  %10.0f%n", batchSize, messages, sentMillis, storedMillis,
+					messages * 1000.0 / storedMillis);
+		}
+	}
+
+	/**
+	 * Ruleaza o masuratoare intr-o masina virtuala noua, cu dimensiunea data a
+	 * lotului de receptie.
+	 *
+	 * @return rezultatul raportat de masuratoare.
+	 */
+	private static String fork(String batchSize, int messages) throws Exception {
+		File directory = new File(System.getProperty("java.io.tmpdir"), "inbound-flood-" + System.nanoTime());
+		directory.mkdirs();
+		ProcessBuilder builder = new ProcessBuilder(
+				new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath(),
+				"-Djava.awt.headless=true", "-Dinbound.maxBatch=" + batchSize, "-Dinbox.maxSize=0", "-cp",
+				System.getProperty("java.class.path"), InboundFloodBenchmark.class.getName(), "--trial",
+				Integer.toString(messages));
+		builder.directory(directory);
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+
+		String result = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(RESULT_PREFIX)) {
+					result = line.substring(RESULT_PREFIX.length());
+				}
+			}
+		}
+		process.waitFor();
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+		if (result == null) {
+			throw new IllegalStateException("Trial with batch size " + batchSize + " did not report a result");
+		}
+		return result;
+	}
+
+	/**
+	 * Masuratoarea propriu-zisa: porneste platforma, destinatarul si agentul
+	 * care trimite valul, apoi asteapta pana cand toate mesajele sunt in istoric.
+	 * Raporteaza cand a terminat expeditorul de trimis si cand au ajuns toate
+	 * mesajele in istoric, in milisecunde de la pornirea expeditorului.
+	 */
+	private static void runTrial(int messages) throws Exception {
+		Profile profile = new ProfileImpl();
+		profile.setParameter(Profile.GUI, "false");
+		profile.setParameter(Profile.NO_MTP, "true");
+		profile.setParameter(Profile.LOCAL_PORT, "11299");
+		ContainerController container = Runtime.instance().createMainContainer(profile);
+
+		container.createNewAgent("receiver", ReceiverAgent.class.getName(), null).start();
+		while (ReceiverAgent.instance == null) {
+			Thread.sleep(1);
+		}
+		ReceiverAgent receiver = ReceiverAgent.instance;
+		AID flooder = new AID("flooder", AID.ISLOCALNAME);
+
+		long start = System.nanoTime();
+		container.createNewAgent("flooder", FloodAgent.class.getName(), new Object[] { messages }).start();
+		while (receiver.getLastMessages(flooder, 0).getTotal() < messages) {
+			Thread.sleep(1);
+		}
+		long storedMillis = Math.max((System.nanoTime() - start) / 1000000, 1);
+		long sentMillis = (FloodAgent.finishedNanos - start) / 1000000;
+
+		System.out.println(RESULT_PREFIX + sentMillis + " " + storedMillis);
+		System.exit(0);
+	}
+}
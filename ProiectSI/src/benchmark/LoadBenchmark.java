@@ -0,0 +1,359 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import backend.AgentManager;
+import backend.ChatAgent;
+import backend.HistoryLog;
+import backend.HistoryWriter;
+import backend.LatencyHistogram;
+import backend.ProvisioningListener;
+import backend.ProvisioningReport;
+import jade.core.AID;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.wrapper.ContainerController;
+
+/**
+ * Benchmark de la un capat la altul pentru un container de agenti de chat.
+ * Porneste in acelasi proces un container principal JADE (fara retea), creeaza
+ * N agenti de chat fara interfata prin {@link AgentManager#createAgents}, apoi
+ * trimite mesaje intre ei dupa un model de trafic si masoara:
+ * <ul>
+ * <li>crearea agentilor: durata totala, agenti porniti pe secunda si
+ * latenta p99 a pornirii unui agent;</li>
+ * <li>debitul: mesaje livrate pe secunda;</li>
+ * <li>latenta de livrare (p50, p90, p99, p99.9, maxim), din momentul
+ * trimiterii transmis in mesaj pana la preluarea lui de catre destinatar, in
+ * milisecunde;</li>
+ * <li>presiunea asupra GC: colectari, durata lor si memoria alocata;</li>
+ * <li>costul scrierii istoricului: mesaje si octeti scrisi, loturi si durata
+ * lor.</li>
+ * </ul>
+ * Modelele de trafic sunt: pairwise (agentii vorbesc doi cate doi), all-to-all
+ * (fiecare agent trimite pe rand tuturor celorlalti) si hot-spot (o parte din
+ * mesaje merg la acelasi agent, restul la agenti alesi aleator).
+ * <p>
+ * Argumentele sunt de forma cheie=valoare: agents (100), pattern (pairwise),
+ * messages (1000, per agent), rate (0, mesaje pe secunda in total; 0 inseamna
+ * cat de repede se poate), hotspot (0.8, fractiunea mesajelor catre agentul
+ * fierbinte), drivers (4, fire care trimit), timeout (120, secunde), port
+ * (11399) si out (fisierul in care este scris rezultatul). Rezultatul este un
+ * obiect JSON, afisat pe o singura linie, singura care incepe cu '{' (agentii
+ * afiseaza si ei mesaje la pornire si la oprire). Istoricul este scris in
+ * chat_history.log din directorul curent, deci benchmark-ul trebuie rulat
+ * intr-un director gol.
+ */
+public class LoadBenchmark {
+
+	private static final String HISTORY_FILE = "chat_history.log";
+	private static final Map<String, ChatAgent> AGENTS = new ConcurrentHashMap<>();
+
+	/**
+	 * Managerul de agenti folosit de benchmark, accesibil din afara platformei.
+	 */
+	public static class BenchmarkManager extends AgentManager {
+		private static final long serialVersionUID = 1L;
+
+		static volatile BenchmarkManager instance;
+
+		@Override
+		protected void setup() {
+			super.setup();
+			instance = this;
+		}
+	}
+
+	/**
+	 * Agent de chat obisnuit, accesibil din afara platformei dupa nume.
+	 */
+	public static class LoadAgent extends ChatAgent {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void setup() {
+			super.setup();
+			AGENTS.put(getLocalName(), this);
+		}
+	}
+
+	/**
+	 * Modelul de trafic: destinatarul celui de-al k-lea mesaj al unui agent.
+	 */
+	private enum Pattern {
+		PAIRWISE, ALL_TO_ALL, HOT_SPOT;
+
+		int target(int sender, int message, int agents, double hotspot, SplittableRandom random) {
+			switch (this) {
+			case PAIRWISE:
+				int partner = sender ^ 1;
+				return partner < agents ? partner : 0;
+			case ALL_TO_ALL:
+				return (sender + 1 + message % (agents - 1)) % agents;
+			default:
+				if (sender != 0 && random.nextDouble() < hotspot) {
+					return 0;
+				}
+				int other = random.nextInt(agents - 1);
+				return other >= sender ? other + 1 : other;
+			}
+		}
+
+		static Pattern parse(String name) {
+			return valueOf(name.toUpperCase().replace('-', '_'));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Expected key=value, got " + arg);
+			}
+			options.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		int agentCount = Integer.parseInt(options.getOrDefault("agents", "100"));
+		Pattern pattern = Pattern.parse(options.getOrDefault("pattern", "pairwise"));
+		int messages = Integer.parseInt(options.getOrDefault("messages", "1000"));
+		double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+		double hotspot = Double.parseDouble(options.getOrDefault("hotspot", "0.8"));
+		int drivers = Math.min(Integer.parseInt(options.getOrDefault("drivers", "4")), agentCount);
+		long timeoutMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("timeout", "120")));
+		if (agentCount < 2) {
+			throw new IllegalArgumentException("At least two agents are needed");
+		}
+
+		File historyFile = new File(HISTORY_FILE);
+		if (historyFile.exists()) {
+			System.err.println(historyFile.getAbsolutePath()
+					+ " already exists; run the benchmark from an empty directory.");
+			System.exit(1);
+		}
+
+		Profile profile = new ProfileImpl();
+		profile.setParameter(Profile.GUI, "false");
+		profile.setParameter(Profile.NO_MTP, "true");
+		profile.setParameter(Profile.LOCAL_PORT, options.getOrDefault("port", "11399"));
+		ContainerController container = Runtime.instance().createMainContainer(profile);
+
+		container.createNewAgent("manager", BenchmarkManager.class.getName(), new Object[] { ChatAgent.HEADLESS_ARG })
+				.start();
+		while (BenchmarkManager.instance == null) {
+			Thread.sleep(1);
+		}
+
+		long provisionStart = System.nanoTime();
+		ProvisioningReport provisioning = BenchmarkManager.instance
+				.createAgents("load", 0, agentCount, LoadAgent.class.getName(), ProvisioningListener.NONE).get();
+		while (AGENTS.size() < agentCount) {
+			Thread.sleep(1);
+		}
+		long provisionNanos = System.nanoTime() - provisionStart;
+
+		ChatAgent[] agents = new ChatAgent[agentCount];
+		AID[] aids = new AID[agentCount];
+		for (int i = 0; i < agentCount; i++) {
+			agents[i] = AGENTS.get("load" + i);
+			aids[i] = agents[i].getAID();
+		}
+
+		HistoryWriter writer = HistoryLog.forFile(HISTORY_FILE).getWriter();
+		writer.flush();
+		long writtenBefore = writer.getWrittenCount();
+		long flushesBefore = writer.getFlushCount();
+		long flushNanosBefore = writer.getTotalFlushLatencyNanos();
+		long bytesBefore = historyFile.length();
+		long[] gcBefore = gcTotals();
+		long allocatedBefore = allocatedBytes();
+
+		long expected = (long) agentCount * messages;
+		AtomicLong rejected = new AtomicLong();
+		List<Thread> threads = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int d = 0; d < drivers; d++) {
+			int driver = d;
+			Thread thread = new Thread(() -> drive(driver, drivers, agents, aids, pattern, messages, rate, hotspot,
+					rejected), "load-driver-" + d);
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long sendNanos = System.nanoTime() - start;
+
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long delivered = delivered(agents);
+		while (delivered < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+			delivered = delivered(agents);
+		}
+		long elapsedNanos = System.nanoTime() - start;
+
+		long allocated = allocatedBytes() - allocatedBefore;
+		long[] gc = gcTotals();
+		writer.flush();
+		long written = writer.getWrittenCount() - writtenBefore;
+		long flushes = writer.getFlushCount() - flushesBefore;
+		long flushNanos = writer.getTotalFlushLatencyNanos() - flushNanosBefore;
+		long bytes = historyFile.length() - bytesBefore;
+
+		LatencyHistogram latency = new LatencyHistogram();
+		for (ChatAgent agent : agents) {
+			latency.add(agent.getReceiveLatency());
+		}
+
+		double seconds = elapsedNanos / 1e9;
+		StringBuilder json = new StringBuilder("{");
+		field(json, "pattern", pattern.name().toLowerCase().replace('_', '-'));
+		field(json, "agents", agentCount);
+		field(json, "messagesPerAgent", messages);
+		field(json, "targetRate", rate);
+		field(json, "drivers", drivers);
+		field(json, "provisionMs", provisionNanos / 1e6);
+		field(json, "provisionAgentsPerSec", provisioning.getThroughput());
+		field(json, "provisionStartP99Ms", provisioning.getStartLatency().getPercentile(99) / 1000.0);
+		field(json, "sent", expected);
+		field(json, "delivered", delivered);
+		field(json, "complete", delivered >= expected);
+		field(json, "sendQueueFullRetries", rejected.get());
+		field(json, "sendMs", sendNanos / 1e6);
+		field(json, "elapsedMs", elapsedNanos / 1e6);
+		field(json, "throughputPerSec", delivered / seconds);
+		json.append("\"latencyMs\":{");
+		field(json, "mean", latency.getMean());
+		field(json, "p50", latency.getPercentile(50));
+		field(json, "p90", latency.getPercentile(90));
+		field(json, "p99", latency.getPercentile(99));
+		field(json, "p999", latency.getPercentile(99.9));
+		field(json, "max", latency.getMax());
+		closeObject(json).append(',');
+		json.append("\"gc\":{");
+		field(json, "collections", gc[0] - gcBefore[0]);
+		field(json, "timeMs", gc[1] - gcBefore[1]);
+		field(json, "allocatedBytes", allocated);
+		field(json, "allocatedBytesPerMessage", delivered == 0 ? 0 : (double) allocated / delivered);
+		closeObject(json).append(',');
+		json.append("\"history\":{");
+		field(json, "records", written);
+		field(json, "bytes", bytes);
+		field(json, "flushes", flushes);
+		field(json, "flushMsTotal", flushNanos / 1e6);
+		field(json, "flushMsMean", flushes == 0 ? 0 : flushNanos / 1e6 / flushes);
+		field(json, "flushMsMax", writer.getMaxFlushLatencyNanos() / 1e6);
+		field(json, "flushMicrosPerRecord", written == 0 ? 0 : flushNanos / 1e3 / written);
+		closeObject(json).append('}');
+
+		String out = options.get("out");
+		if (out != null) {
+			try (Writer file = new FileWriter(out)) {
+				file.write(json.toString());
+				file.write(System.lineSeparator());
+			}
+		}
+		System.out.println(json);
+
+		container.getPlatformController().kill();
+		System.exit(0);
+	}
+
+	/**
+	 * Trimite mesajele agentilor de care raspunde un fir: agentii cu indicele
+	 * egal cu firul modulo numarul de fire. Cand coada de trimitere a unui agent
+	 * este plina, mesajul este reincercat dupa o pauza scurta.
+	 */
+	private static void drive(int driver, int drivers, ChatAgent[] agents, AID[] aids, Pattern pattern, int messages,
+			double rate, double hotspot, AtomicLong rejected) {
+		SplittableRandom random = new SplittableRandom(driver);
+		long intervalNanos = rate > 0 ? (long) (1e9 * drivers / rate) : 0;
+		long next = System.nanoTime();
+		for (int k = 0; k < messages; k++) {
+			String content = "message " + k;
+			for (int i = driver; i < agents.length; i += drivers) {
+				if (intervalNanos > 0) {
+					next += intervalNanos;
+					long wait = next - System.nanoTime();
+					if (wait > 0) {
+						LockSupport.parkNanos(wait);
+					}
+				}
+				AID target = aids[pattern.target(i, k, agents.length, hotspot, random)];
+				while (!agents[i].sendMessage(content, target)) {
+					rejected.incrementAndGet();
+					LockSupport.parkNanos(100000);
+				}
+			}
+		}
+	}
+
+	private static long delivered(ChatAgent[] agents) {
+		long total = 0;
+		for (ChatAgent agent : agents) {
+			total += agent.getReceiveLatency().getCount();
+		}
+		return total;
+	}
+
+	/**
+	 * @return numarul total de colectari si durata lor totala, in milisecunde.
+	 */
+	private static long[] gcTotals() {
+		long[] totals = new long[2];
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			totals[0] += Math.max(gc.getCollectionCount(), 0);
+			totals[1] += Math.max(gc.getCollectionTime(), 0);
+		}
+		return totals;
+	}
+
+	/**
+	 * @return memoria alocata pana acum de firele in viata, in octeti, sau -1
+	 *         daca masina virtuala nu o poate masura.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+		long total = 0;
+		for (long allocated : hotspot.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			total += Math.max(allocated, 0);
+		}
+		return total;
+	}
+
+	private static void field(StringBuilder json, String name, Object value) {
+		json.append('"').append(name).append("\":");
+		if (value instanceof String) {
+			json.append('"').append(value).append('"');
+		} else if (value instanceof Double) {
+			json.append(String.format(Locale.ROOT, "%.3f", (Double) value));
+		} else {
+			json.append(value);
+		}
+		json.append(',');
+	}
+
+	private static StringBuilder closeObject(StringBuilder json) {
+		json.setLength(json.length() - 1);
+		return json.append('}');
+	}
+}
@@ -0,0 +1,215 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import backend.AgentDictionary;
+import backend.HistoryLog;
+import backend.MessageHistory;
+import jade.core.AID;
+
+/**
+ * Microbenchmark-uri pentru operatiile din {@link MessageHistory} executate la
+ * fiecare mesaj, folosite ca referinta inainte si dupa orice schimbare a
+ * stocarii istoricului. Pentru fiecare combinatie de parametri (numarul de
+ * conversatii, mesajele dintr-o conversatie si lungimea unui mesaj) este
+ * construit un istoric nou, apoi sunt masurate, cu {@link MicroBenchmark}:
+ * <ul>
+ * <li>getConversationKey: cheia conversatiei dintre doi agenti (aceleasi
+ * apeluri {@link AgentDictionary} ca metoda privata din istoric);</li>
+ * <li>getConversationHistory: textul unei conversatii;</li>
+ * <li>addMessage.duplicate: un mesaj deja salvat, primit din nou (cazul
+ * destinatarului dintr-un alt container);</li>
+ * <li>loadHistoryFromFile: deschiderea jurnalului si incarcarea indexului;</li>
+ * <li>loadHistoryFromFile.readAll: deschiderea jurnalului si citirea tuturor
+ * conversatiilor;</li>
+ * <li>addMessage: un mesaj nou; conversatiile cresc pe parcursul masurarii.</li>
+ * </ul>
+ * Argumentele sunt de forma cheie=valoare: conversations (10,1000), messages
+ * (10,200), size (16,256), warmup (3), iterations (5), time (200, milisecunde
+ * pe iteratie) si out (fisier in care este scris cate un obiect JSON pe linie
+ * pentru fiecare rezultat). Daca proprietatea history.durability nu este data,
+ * jurnalul nu este sincronizat pe disc, pentru ca masuratorile sa nu depinda de
+ * disc; costul scrierii pe disc este masurat de {@link LoadBenchmark}.
+ */
+public class MessageHistoryBenchmark {
+
+	private static final String PLATFORM = "@bench";
+
+	/**
+	 * Un istoric populat pentru o combinatie de parametri.
+	 */
+	private static final class Fixture {
+		final int conversations;
+		final int messages;
+		final String content;
+		final String path;
+		final AID[] senders;
+		final AID[] receivers;
+		MessageHistory history;
+
+		Fixture(File directory, int conversations, int messages, int size) {
+			this.conversations = conversations;
+			this.messages = messages;
+			char[] text = new char[size];
+			Arrays.fill(text, 'x');
+			this.content = new String(text);
+			this.path = new File(directory, "history-" + conversations + "-" + messages + "-" + size + ".log")
+					.getPath();
+			this.senders = new AID[conversations];
+			this.receivers = new AID[conversations];
+			for (int i = 0; i < conversations; i++) {
+				senders[i] = new AID("S" + i + PLATFORM, AID.ISGUID);
+				receivers[i] = new AID("R" + i + PLATFORM, AID.ISGUID);
+			}
+		}
+
+		void populate() throws Exception {
+			history = new MessageHistory(path);
+			history.loadHistoryFromFile();
+			for (int m = 0; m < messages; m++) {
+				for (int c = 0; c < conversations; c++) {
+					history.addMessage(senders[c], receivers[c], content, timestamp(c, m));
+				}
+			}
+			HistoryLog.forFile(path).getWriter().flush();
+		}
+
+		long timestamp(int conversation, int message) {
+			return (long) message * conversations + conversation + 1;
+		}
+
+		String params(int size) {
+			return "conversations=" + conversations + ",messages=" + messages + ",size=" + size;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (System.getProperty("history.durability") == null) {
+			System.setProperty("history.durability", "NONE");
+		}
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Expected key=value, got " + arg);
+			}
+			options.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		int[] conversationCounts = parseList(options.getOrDefault("conversations", "10,1000"));
+		int[] messageCounts = parseList(options.getOrDefault("messages", "10,200"));
+		int[] sizes = parseList(options.getOrDefault("size", "16,256"));
+		MicroBenchmark bench = new MicroBenchmark(Integer.parseInt(options.getOrDefault("warmup", "3")),
+				Integer.parseInt(options.getOrDefault("iterations", "5")),
+				Long.parseLong(options.getOrDefault("time", "200")));
+
+		File directory = Files.createTempDirectory("history-bench").toFile();
+		List<MicroBenchmark.Result> results = new ArrayList<>();
+		System.out.println(MicroBenchmark.HEADER);
+		try {
+			for (int conversations : conversationCounts) {
+				for (int messages : messageCounts) {
+					for (int size : sizes) {
+						Fixture fixture = new Fixture(directory, conversations, messages, size);
+						fixture.populate();
+						for (MicroBenchmark.Result result : run(bench, fixture, fixture.params(size))) {
+							System.out.println(result);
+							results.add(result);
+						}
+						HistoryLog.forFile(fixture.path).close();
+						new File(fixture.path).delete();
+						new File(fixture.path + ".idx").delete();
+					}
+				}
+			}
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+
+		String out = options.get("out");
+		if (out != null) {
+			try (Writer file = new FileWriter(out)) {
+				for (MicroBenchmark.Result result : results) {
+					file.write(result.toJson());
+					file.write(System.lineSeparator());
+				}
+			}
+		}
+		System.exit(0);
+	}
+
+	private static List<MicroBenchmark.Result> run(MicroBenchmark bench, Fixture f, String params) throws Exception {
+		List<MicroBenchmark.Result> results = new ArrayList<>();
+		int conversations = f.conversations;
+
+		results.add(bench.measure("getConversationKey", params, i -> {
+			int c = (int) (i % conversations);
+			return AgentDictionary.conversationKey(AgentDictionary.idOf(f.senders[c]),
+					AgentDictionary.idOf(f.receivers[c]));
+		}));
+
+		results.add(bench.measure("getConversationHistory", params, i -> {
+			int c = (int) (i % conversations);
+			return f.history.getConversationHistory(f.senders[c], f.receivers[c]).length();
+		}));
+
+		results.add(bench.measure("addMessage.duplicate", params, i -> {
+			int c = (int) (i % conversations);
+			int m = (int) (i / conversations % f.messages);
+			f.history.addMessage(f.senders[c], f.receivers[c], f.content, f.timestamp(c, m));
+			return c;
+		}));
+
+		// Jurnalul este inchis, pentru ca fiecare incarcare sa il deschida din nou.
+		HistoryLog.forFile(f.path).close();
+		results.add(bench.measure("loadHistoryFromFile", params, i -> {
+			MessageHistory loaded = new MessageHistory(f.path);
+			loaded.loadHistoryFromFile();
+			HistoryLog log = HistoryLog.forFile(f.path);
+			long size = log.getConversationSize(AgentDictionary.conversationKey(
+					AgentDictionary.idOf(f.senders[0]), AgentDictionary.idOf(f.receivers[0])));
+			log.close();
+			return size;
+		}));
+
+		results.add(bench.measure("loadHistoryFromFile.readAll", params, i -> {
+			MessageHistory loaded = new MessageHistory(f.path);
+			loaded.loadHistoryFromFile();
+			long length = 0;
+			for (int c = 0; c < conversations; c++) {
+				length += loaded.getConversationHistory(f.senders[c], f.receivers[c]).length();
+			}
+			HistoryLog.forFile(f.path).close();
+			return length;
+		}));
+
+		f.history = new MessageHistory(f.path);
+		f.history.loadHistoryFromFile();
+		long first = f.timestamp(conversations - 1, f.messages - 1) + 1;
+		results.add(bench.measure("addMessage", params, i -> {
+			int c = (int) (i % conversations);
+			f.history.addMessage(f.senders[c], f.receivers[c], f.content, first + i);
+			return c;
+		}));
+		return results;
+	}
+
+	private static int[] parseList(String value) {
+		String[] parts = value.split(",");
+		int[] numbers = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			numbers[i] = Integer.parseInt(parts[i].trim());
+		}
+		return numbers;
+	}
+}
@@ -0,0 +1,170 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Clasa MicroBenchmark masoara cat dureaza si cata memorie aloca o operatie
+ * scurta, repetata de multe ori pe firul curent. Proiectul nu are un sistem de
+ * build care sa aduca JMH, asa ca aceasta clasa urmeaza aceeasi schema: cateva
+ * iteratii de incalzire (pentru compilarea JIT), urmate de iteratiile masurate,
+ * fiecare de durata fixa. Rezultatul fiecarei operatii este consumat, pentru ca
+ * JIT-ul sa nu poata elimina operatia.
+ * <p>
+ * Memoria alocata este citita din contorul de alocari al firului
+ * (com.sun.management.ThreadMXBean); pe o masina virtuala fara acest contor,
+ * valoarea raportata este -1.
+ */
+public final class MicroBenchmark {
+
+	/**
+	 * Operatia masurata. Primeste numarul apelului, pornind de la 0, si intoarce
+	 * o valoare derivata din rezultat (de exemplu lungimea unui sir), care este
+	 * consumata de benchmark. Valoarea este primitiva, pentru ca impachetarea ei
+	 * sa nu apara in memoria alocata.
+	 */
+	public interface Operation {
+		long run(long invocation) throws Exception;
+	}
+
+	/**
+	 * Rezultatul masurarii unei operatii.
+	 */
+	public static final class Result {
+		final String name;
+		final String params;
+		final long operations;
+		final double nanosPerOperation;
+		final double nanosPerOperationError;
+		final double bytesPerOperation;
+
+		Result(String name, String params, long operations, double nanosPerOperation, double nanosPerOperationError,
+				double bytesPerOperation) {
+			this.name = name;
+			this.params = params;
+			this.operations = operations;
+			this.nanosPerOperation = nanosPerOperation;
+			this.nanosPerOperationError = nanosPerOperationError;
+			this.bytesPerOperation = bytesPerOperation;
+		}
+
+		/**
+		 * @return rezultatul ca obiect JSON, pe o singura linie.
+		 */
+		public String toJson() {
+			return String.format(Locale.ROOT,
+					"{\"benchmark\":\"%s\",\"params\":\"%s\",\"operations\":%d,\"nsPerOp\":%.3f,"
+							+ "\"nsPerOpError\":%.3f,\"opsPerSec\":%.1f,\"bytesPerOp\":%.1f}",
+					name, params, operations, nanosPerOperation, nanosPerOperationError, 1e9 / nanosPerOperation,
+					bytesPerOperation);
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-28s %-36s %14.1f +- %-10.1f %12.1f", name, params, nanosPerOperation,
+					nanosPerOperationError, bytesPerOperation);
+		}
+	}
+
+	/**
+	 * Antetul tabelului afisat de {@link Result#toString()}.
+	 */
+	public static final String HEADER = String.format(Locale.ROOT, "%-28s %-36s %14s    %-10s %12s", "benchmark",
+			"params", "ns/op", "error", "B/op");
+
+	private static volatile long sink;
+
+	private final int warmupIterations;
+	private final int iterations;
+	private final long iterationNanos;
+
+	/**
+	 * @param warmupIterations numarul de iteratii de incalzire, nemasurate.
+	 * @param iterations       numarul de iteratii masurate.
+	 * @param iterationMillis  durata unei iteratii, in milisecunde.
+	 */
+	public MicroBenchmark(int warmupIterations, int iterations, long iterationMillis) {
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+		this.iterationNanos = iterationMillis * 1000000;
+	}
+
+	/**
+	 * Masoara o operatie.
+	 *
+	 * @param name      numele operatiei.
+	 * @param params    parametrii cu care a fost pregatita operatia.
+	 * @param operation operatia masurata.
+	 * @return timpul mediu si memoria alocata pe operatie.
+	 * @throws Exception daca operatia arunca o exceptie.
+	 */
+	public Result measure(String name, String params, Operation operation) throws Exception {
+		long invocation = 0;
+		int batch = 1;
+		for (int i = 0; i < warmupIterations; i++) {
+			long start = System.nanoTime();
+			long next = runIteration(operation, invocation, batch);
+			double nanos = (double) (System.nanoTime() - start) / (next - invocation);
+			// Ceasul este citit cam o data la 10 microsecunde, nu dupa fiecare apel.
+			batch = (int) Math.max(1, Math.min(1024, 10000 / Math.max(nanos, 1)));
+			invocation = next;
+		}
+
+		double[] nanosPerOperation = new double[iterations];
+		long operations = 0;
+		long allocated = 0;
+		for (int i = 0; i < iterations; i++) {
+			long allocatedBefore = allocatedBytes();
+			long start = System.nanoTime();
+			long next = runIteration(operation, invocation, batch);
+			long elapsed = System.nanoTime() - start;
+			long count = next - invocation;
+			allocated += allocatedBytes() - allocatedBefore;
+			nanosPerOperation[i] = (double) elapsed / count;
+			operations += count;
+			invocation = next;
+		}
+
+		double mean = 0;
+		for (double value : nanosPerOperation) {
+			mean += value;
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (double value : nanosPerOperation) {
+			variance += (value - mean) * (value - mean);
+		}
+		double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+		double bytes = allocatedBytes() < 0 ? -1 : (double) allocated / operations;
+		return new Result(name, params, operations, mean, error, bytes);
+	}
+
+	/**
+	 * Repeta operatia pana la expirarea duratei iteratiei. Ceasul este citit
+	 * dupa fiecare grup de apeluri, pentru ca la operatiile foarte scurte citirea
+	 * lui sa nu domine masuratoarea.
+	 *
+	 * @return numarul urmatorului apel.
+	 */
+	private long runIteration(Operation operation, long firstInvocation, int batch) throws Exception {
+		long deadline = System.nanoTime() + iterationNanos;
+		long invocation = firstInvocation;
+		long consumed = 0;
+		do {
+			for (int i = 0; i < batch; i++) {
+				consumed += operation.run(invocation++);
+			}
+		} while (System.nanoTime() < deadline);
+		sink += consumed;
+		return invocation;
+	}
+
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,193 @@
+package benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import backend.ChatAgent;
+import backend.HistoryLog;
+import backend.MessageHistory;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.AgentController;
+import jade.wrapper.ContainerController;
+
+/**
+ * Compara trimiterea unui mesaj catre o camera de chat (un singur mesaj ACL cu
+ * toti membrii ca destinatari si o singura inregistrare in istoric) cu
+ * trimiterea aceluiasi text catre fiecare membru in parte (N mesaje ACL si N
+ * inregistrari in istoric), pentru camere de 10, 100 si 1000 de membri.
+ * <p>
+ * Benchmark-ul porneste o platforma JADE in acelasi proces. Membrii sunt
+ * agenti care doar numara mesajele primite, iar expeditorul foloseste aceleasi
+ * apeluri ca {@link ChatAgent}. Pentru fiecare mod este masurat timpul pana
+ * cand toti membrii au primit toate mesajele.
+ * <p>
+ * Argumente optionale: numarul total de livrari pe masuratoare si dimensiunile
+ * camerelor (de exemplu "200000 10 100 1000").
+ */
+public class RoomFanOutBenchmark {
+
+	private static final AtomicLong DELIVERED = new AtomicLong();
+	private static int trials;
+
+	/**
+	 * Membru al camerei: numara mesajele primite.
+	 */
+	public static class MemberAgent extends Agent {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void setup() {
+			addBehaviour(new CyclicBehaviour(this) {
+				@Override
+				public void action() {
+					ACLMessage msg = receive();
+					if (msg != null) {
+						DELIVERED.incrementAndGet();
+					} else {
+						block();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Expeditorul: trimite mesajele unei masuratori, primite ca argument.
+	 */
+	public static class SenderAgent extends Agent {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void setup() {
+			Trial trial = (Trial) getArguments()[0];
+			addBehaviour(new OneShotBehaviour(this) {
+				@Override
+				public void action() {
+					trial.run(SenderAgent.this);
+				}
+			});
+		}
+	}
+
+	private static final class Trial {
+		final boolean room;
+		final List<AID> members;
+		final int messages;
+		final MessageHistory history;
+		final CountDownLatch started = new CountDownLatch(1);
+		long startNanos;
+
+		Trial(boolean room, List<AID> members, int messages, MessageHistory history) {
+			this.room = room;
+			this.members = members;
+			this.messages = messages;
+			this.history = history;
+		}
+
+		void run(Agent sender) {
+			startNanos = System.nanoTime();
+			started.countDown();
+			for (int i = 0; i < messages; i++) {
+				String content = "message " + i;
+				long timestamp = System.currentTimeMillis();
+				if (room) {
+					history.addRoomMessage(sender.getAID(), "bench", content, timestamp);
+					sender.send(ChatAgent.createRoomMessage("bench", members, content, timestamp));
+				} else {
+					for (AID member : members) {
+						history.addMessage(sender.getAID(), member, content, timestamp);
+						ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+						msg.addReceiver(member);
+						msg.setContent(content);
+						msg.addUserDefinedParameter(ChatAgent.TIMESTAMP_PARAM, Long.toString(timestamp));
+						sender.send(msg);
+					}
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int deliveries = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		List<Integer> sizes = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			sizes.add(Integer.parseInt(args[i]));
+		}
+		if (sizes.isEmpty()) {
+			Collections.addAll(sizes, 10, 100, 1000);
+		}
+
+		File logFile = File.createTempFile("room-fanout", ".log");
+		logFile.deleteOnExit();
+		new File(logFile.getPath() + ".idx").deleteOnExit();
+		MessageHistory history = new MessageHistory(logFile.getPath());
+
+		Profile profile = new ProfileImpl();
+		profile.setParameter(Profile.GUI, "false");
+		profile.setParameter(Profile.NO_MTP, "true");
+		profile.setParameter(Profile.LOCAL_PORT, "11199");
+		ContainerController container = Runtime.instance().createMainContainer(profile);
+
+		int maxSize = Collections.max(sizes);
+		List<AID> allMembers = new ArrayList<>();
+		for (int i = 0; i < maxSize; i++) {
+			String name = "member" + i;
+			container.createNewAgent(name, MemberAgent.class.getName(), null).start();
+			allMembers.add(new AID(name, AID.ISLOCALNAME));
+		}
+
+		// Incalzire, pentru ca prima masuratoare sa nu includa compilarea JIT.
+		runTrial(container, new Trial(true, allMembers.subList(0, Math.min(10, maxSize)), 1000, history));
+		runTrial(container, new Trial(false, allMembers.subList(0, Math.min(10, maxSize)), 1000, history));
+
+		System.out.println("members  mode            messages  deliveries  sends  history  time(ms)  deliveries/s");
+		for (int size : sizes) {
+			List<AID> members = allMembers.subList(0, size);
+			int messages = Math.max(deliveries / size, 1);
+			for (boolean room : new boolean[] { true, false }) {
+				long nanos = runTrial(container, new Trial(room, members, messages, history));
+				long total = (long) messages * size;
+				System.out.printf("%7d  %-14s  %8d  %10d  %5d  %7d  %8d  %12.0f%n", size,
+						room ? "room" : "point-to-point", messages, total, room ? messages : total,
+						room ? messages : total, TimeUnit.NANOSECONDS.toMillis(nanos),
+						total / (nanos / 1e9));
+			}
+		}
+
+		HistoryLog.forFile(logFile.getPath()).getWriter().flush();
+		container.getPlatformController().kill();
+		System.exit(0);
+	}
+
+	/**
+	 * Ruleaza o masuratoare si asteapta pana cand toti membrii au primit toate
+	 * mesajele.
+	 *
+	 * @return durata masuratorii, in nanosecunde.
+	 */
+	private static long runTrial(ContainerController container, Trial trial) throws Exception {
+		long expected = DELIVERED.get() + (long) trial.messages * trial.members.size();
+		AgentController sender = container.createNewAgent("sender" + trials++, SenderAgent.class.getName(),
+				new Object[] { trial });
+		sender.start();
+		trial.started.await();
+		while (DELIVERED.get() < expected) {
+			Thread.sleep(1);
+		}
+		long nanos = System.nanoTime() - trial.startNanos;
+		sender.kill();
+		return nanos;
+	}
+}
@@ -0,0 +1,155 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import backend.AgentDictionary;
+import backend.HistoryLog;
+import backend.MessageRecord;
+import backend.SearchIndex;
+import backend.SearchQuery;
+
+/**
+ * Benchmark pentru cautarea in istoric ({@link HistoryLog#search}). Construieste
+ * un jurnal cu multe mesaje generate (cuvinte dintr-un vocabular cu distributie
+ * Zipf, ca intr-un text real: cateva cuvinte foarte frecvente si multe rare),
+ * apoi masoara, cu {@link MicroBenchmark}, cautari tipice:
+ * <ul>
+ * <li>term.rare / term.common: un cuvant rar, respectiv cel mai frecvent;</li>
+ * <li>terms.and: doua cuvinte de frecventa medie, in acelasi mesaj;</li>
+ * <li>phrase: doua cuvinte consecutive;</li>
+ * <li>sender: un cuvant frecvent, in mesajele unui expeditor;</li>
+ * <li>time: un cuvant frecvent, intr-un interval de timp;</li>
+ * <li>agent: un cuvant, in conversatiile unui agent (ca
+ * {@link backend.ChatAgent#search(SearchQuery)}).</li>
+ * </ul>
+ * Sunt afisate si durata construirii jurnalului (scrierea si indexarea
+ * mesajelor) si durata redeschiderii lui, cu indexul de cautare citit de pe
+ * disc.
+ * <p>
+ * Argumentele sunt de forma cheie=valoare: messages (1000000), agents (1000),
+ * words (8, cuvinte pe mesaj), vocabulary (50000), limit (20, rezultate pe
+ * cautare), warmup (3), iterations (5), time (200, milisecunde pe iteratie) si
+ * out (fisier in care este scris cate un obiect JSON pe linie pentru fiecare
+ * rezultat).
+ */
+public class SearchBenchmark {
+
+	private static final int BATCH = 1000;
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Expected key=value, got " + arg);
+			}
+			options.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		int messages = Integer.parseInt(options.getOrDefault("messages", "1000000"));
+		int agents = Integer.parseInt(options.getOrDefault("agents", "1000"));
+		int words = Integer.parseInt(options.getOrDefault("words", "8"));
+		int vocabulary = Integer.parseInt(options.getOrDefault("vocabulary", "50000"));
+		int limit = Integer.parseInt(options.getOrDefault("limit", "20"));
+		MicroBenchmark bench = new MicroBenchmark(Integer.parseInt(options.getOrDefault("warmup", "3")),
+				Integer.parseInt(options.getOrDefault("iterations", "5")),
+				Long.parseLong(options.getOrDefault("time", "200")));
+
+		File directory = Files.createTempDirectory("search-bench").toFile();
+		String path = new File(directory, "history.log").getPath();
+		String params = "messages=" + messages + ",agents=" + agents + ",limit=" + limit;
+		List<MicroBenchmark.Result> results = new ArrayList<>();
+		try {
+			// Distributia Zipf: cuvantul de rang r apare proportional cu 1/r.
+			double[] cumulative = new double[vocabulary];
+			double sum = 0;
+			for (int r = 0; r < vocabulary; r++) {
+				sum += 1.0 / (r + 1);
+				cumulative[r] = sum;
+			}
+			int[] ids = new int[agents];
+			for (int a = 0; a < agents; a++) {
+				ids[a] = AgentDictionary.idOf("agent" + a);
+			}
+
+			SplittableRandom random = new SplittableRandom(42);
+			HistoryLog log = HistoryLog.forFile(path);
+			long start = System.nanoTime();
+			List<MessageRecord> batch = new ArrayList<>(BATCH);
+			StringBuilder content = new StringBuilder();
+			for (int m = 0; m < messages; m++) {
+				content.setLength(0);
+				for (int w = 0; w < words; w++) {
+					int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+					content.append(w > 0 ? " " : "").append('w').append(rank < 0 ? -rank - 1 : rank);
+				}
+				int sender = random.nextInt(agents);
+				int receiver = (sender + 1 + random.nextInt(agents - 1)) % agents;
+				batch.add(new MessageRecord(ids[sender], ids[receiver], m + 1, content.toString()));
+				if (batch.size() == BATCH || m == messages - 1) {
+					log.append(batch, false);
+					batch.clear();
+				}
+			}
+			double buildMs = (System.nanoTime() - start) / 1e6;
+			log.close();
+
+			start = System.nanoTime();
+			log = HistoryLog.forFile(path);
+			double openMs = (System.nanoTime() - start) / 1e6;
+			SearchIndex index = log.getSearchIndex();
+			System.out.println(String.format(Locale.ROOT,
+					"Indexed %d messages (%d terms) in %.0f ms; reopened with the saved index in %.0f ms; "
+							+ "log %d MB, search index %d MB",
+					index.size(), index.getTermCount(), buildMs, openMs, new File(path).length() >> 20,
+					new File(path + ".search").length() >> 20));
+
+			HistoryLog current = log;
+			long middle = messages / 2;
+			SearchQuery[] queries = { new SearchQuery("w" + (vocabulary - 1), limit), new SearchQuery("w0", limit),
+					new SearchQuery("w50 w60", limit), new SearchQuery("\"w1 w2\"", limit),
+					new SearchQuery("w3", "agent7", Long.MIN_VALUE, Long.MAX_VALUE, limit),
+					new SearchQuery("w3", null, middle, middle + messages / 100, limit), new SearchQuery("w3", limit) };
+			String[] names = { "term.rare", "term.common", "terms.and", "phrase", "sender", "time", "agent" };
+			int self = ids[7];
+			SearchIndex.ConversationFilter agentFilter = (senderId, receiverId) -> senderId == self
+					|| receiverId == self;
+
+			System.out.println(MicroBenchmark.HEADER);
+			for (int q = 0; q < queries.length; q++) {
+				SearchQuery query = queries[q];
+				SearchIndex.ConversationFilter filter = names[q].equals("agent") ? agentFilter : SearchIndex.ALL;
+				MicroBenchmark.Result result = bench.measure("search." + names[q], params,
+						i -> current.search(query, filter).size());
+				System.out.println(result + "   " + current.search(query, filter).size() + " results");
+				results.add(result);
+			}
+			log.close();
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+
+		String out = options.get("out");
+		if (out != null) {
+			try (Writer file = new FileWriter(out)) {
+				for (MicroBenchmark.Result result : results) {
+					file.write(result.toJson());
+					file.write(System.lineSeparator());
+				}
+			}
+		}
+		System.exit(0);
+	}
+}
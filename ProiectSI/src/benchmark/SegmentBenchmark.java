@@ -0,0 +1,160 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import backend.AgentDictionary;
+import backend.HistoryLog;
+import backend.MessageRecord;
+
+/**
+ * Benchmark pentru segmentele comprimate ale jurnalului ({@link HistoryLog}).
+ * Acelasi istoric generat (cuvinte cu distributie Zipf, fiecare agent vorbind
+ * cu cativa contacte) este scris o data intr-un jurnal cu un singur fisier,
+ * necomprimat, si o data intr-un jurnal impartit in segmente. Pentru fiecare
+ * sunt afisate spatiul ocupat pe disc si durata redeschiderii, apoi sunt
+ * masurate, cu {@link MicroBenchmark}:
+ * <ul>
+ * <li>conversation.read: citirea unei conversatii intregi, aleasa aleator;</li>
+ * <li>conversation.last: citirea ultimelor 50 de mesaje dintr-o
+ * conversatie;</li>
+ * <li>log.readAll: parcurgerea intregului jurnal, ca la reconstruirea
+ * indexului.</li>
+ * </ul>
+ * Argumentele sunt de forma cheie=valoare: messages (1000000), agents (1000),
+ * contacts (10, conversatii per agent), words (8, cuvinte pe mesaj),
+ * vocabulary (50000), segmentMB (16), warmup (3), iterations (5), time (200,
+ * milisecunde pe iteratie) si out (fisier in care este scris cate un obiect
+ * JSON pe linie pentru fiecare rezultat).
+ */
+public class SegmentBenchmark {
+
+	private static final int BATCH = 1000;
+	private static final int PAGE = 50;
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Expected key=value, got " + arg);
+			}
+			options.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		int messages = Integer.parseInt(options.getOrDefault("messages", "1000000"));
+		int agents = Integer.parseInt(options.getOrDefault("agents", "1000"));
+		int contacts = Integer.parseInt(options.getOrDefault("contacts", "10"));
+		int words = Integer.parseInt(options.getOrDefault("words", "8"));
+		int vocabulary = Integer.parseInt(options.getOrDefault("vocabulary", "50000"));
+		String segmentMB = options.getOrDefault("segmentMB", "16");
+		MicroBenchmark bench = new MicroBenchmark(Integer.parseInt(options.getOrDefault("warmup", "3")),
+				Integer.parseInt(options.getOrDefault("iterations", "5")),
+				Long.parseLong(options.getOrDefault("time", "200")));
+
+		double[] cumulative = new double[vocabulary];
+		double sum = 0;
+		for (int r = 0; r < vocabulary; r++) {
+			sum += 1.0 / (r + 1);
+			cumulative[r] = sum;
+		}
+		int[] ids = new int[agents];
+		for (int a = 0; a < agents; a++) {
+			ids[a] = AgentDictionary.idOf("agent" + a);
+		}
+
+		List<MicroBenchmark.Result> results = new ArrayList<>();
+		String[] modes = { "plain", "segmented" };
+		System.out.println(MicroBenchmark.HEADER);
+		for (String mode : modes) {
+			// Un segment mai mare decat tot jurnalul nu este niciodata sigilat.
+			System.setProperty("history.segmentMB", mode.equals("plain") ? String.valueOf(Integer.MAX_VALUE) : segmentMB);
+			File directory = Files.createTempDirectory("segment-bench").toFile();
+			String path = new File(directory, "history.log").getPath();
+			String params = "mode=" + mode + ",messages=" + messages + ",segmentMB=" + segmentMB;
+			try {
+				SplittableRandom random = new SplittableRandom(42);
+				Set<Long> keys = new LinkedHashSet<>();
+				HistoryLog log = HistoryLog.forFile(path);
+				long start = System.nanoTime();
+				List<MessageRecord> batch = new ArrayList<>(BATCH);
+				StringBuilder content = new StringBuilder();
+				for (int m = 0; m < messages; m++) {
+					content.setLength(0);
+					for (int w = 0; w < words; w++) {
+						int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+						content.append(w > 0 ? " " : "").append('w').append(rank < 0 ? -rank - 1 : rank);
+					}
+					int sender = random.nextInt(agents);
+					int receiver = (sender + 1 + random.nextInt(contacts)) % agents;
+					MessageRecord record = new MessageRecord(ids[sender], ids[receiver], m + 1, content.toString());
+					keys.add(record.getConversationKey());
+					batch.add(record);
+					if (batch.size() == BATCH || m == messages - 1) {
+						log.append(batch, false);
+						batch.clear();
+					}
+				}
+				log.roll();
+				double writeMs = (System.nanoTime() - start) / 1e6;
+				log.close();
+
+				start = System.nanoTime();
+				log = HistoryLog.forFile(path);
+				double openMs = (System.nanoTime() - start) / 1e6;
+				System.out.println(String.format(Locale.ROOT,
+						"%s: %d messages in %d conversations written in %.0f ms; %d segments, %.1f MB on disk "
+								+ "for %.1f MB of records; reopened in %.0f ms",
+						mode, messages, keys.size(), writeMs, log.getSegmentCount(), log.getDiskBytes() / 1048576.0,
+						log.getLogicalBytes() / 1048576.0, openMs));
+
+				HistoryLog current = log;
+				long[] conversations = keys.stream().mapToLong(Long::longValue).toArray();
+				results.add(print(bench.measure("conversation.read", params,
+						i -> current.readConversation(conversations[(int) (i * 7919 % conversations.length)]).size())));
+				results.add(print(bench.measure("conversation.last", params, i -> {
+					long key = conversations[(int) (i * 7919 % conversations.length)];
+					int size = current.getConversationSize(key);
+					return current.readRange(key, size - PAGE, size).size();
+				})));
+				results.add(print(bench.measure("log.readAll", params, i -> {
+					long[] count = new long[1];
+					current.readAll((offset, record) -> count[0]++);
+					return count[0];
+				})));
+				log.close();
+			} finally {
+				for (File file : directory.listFiles()) {
+					file.delete();
+				}
+				directory.delete();
+			}
+		}
+
+		String out = options.get("out");
+		if (out != null) {
+			try (Writer file = new FileWriter(out)) {
+				for (MicroBenchmark.Result result : results) {
+					file.write(result.toJson());
+					file.write(System.lineSeparator());
+				}
+			}
+		}
+		System.exit(0);
+	}
+
+	private static MicroBenchmark.Result print(MicroBenchmark.Result result) {
+		System.out.println(result);
+		return result;
+	}
+}
@@ -0,0 +1,299 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import backend.AgentDictionary;
+import backend.HistoryLog;
+import backend.MessageRecord;
+
+/**
+ * Benchmark pentru pornirea istoricului. Acelasi istoric generat (cuvinte cu
+ * distributie Zipf, fiecare agent vorbind cu cativa contacte) este scris o data
+ * in vechiul format text, cu o linie "Agent1-Agent2" la inceputul fiecarei
+ * conversatii, si o data in jurnalul binar ({@link HistoryLog}). Ultimele
+ * mesaje sunt adaugate in jurnal dupa salvarea indexurilor, ca dupa o oprire
+ * intre doua salvari periodice. Sunt masurate:
+ * <ul>
+ * <li>text.parse: citirea fisierului text linie cu linie, ca in vechea metoda
+ * MessageHistory.loadHistoryFromFile;</li>
+ * <li>log.rebuild: deschiderea jurnalului fara indexuri salvate, care sunt
+ * reconstruite din tot jurnalul;</li>
+ * <li>log.snapshot: deschiderea jurnalului cu indexurile salvate, la care sunt
+ * adaugate doar mesajele scrise dupa ele.</li>
+ * </ul>
+ * Fiecare pornire este masurata separat, fara inchiderea jurnalului, iar
+ * inaintea ei fisierele sunt aduse in aceeasi stare. Argumentele sunt de forma
+ * cheie=valoare: messages (1000000), tail (10000, mesaje scrise dupa salvarea
+ * indexurilor), agents (1000), contacts (10, conversatii per agent), words (8,
+ * cuvinte pe mesaj), vocabulary (50000), segmentMB (16), warmup (1),
+ * iterations (5) si out (fisier in care este scris cate un obiect JSON pe
+ * linie pentru fiecare rezultat).
+ */
+public class StartupBenchmark {
+
+	private static final int BATCH = 1000;
+
+	/**
+	 * O pornire masurata: doar {@link #run()} este cronometrata.
+	 */
+	private interface Startup {
+		void prepare() throws IOException;
+
+		void run() throws IOException;
+
+		void finish();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Expected key=value, got " + arg);
+			}
+			options.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		int messages = Integer.parseInt(options.getOrDefault("messages", "1000000"));
+		int tail = Integer.parseInt(options.getOrDefault("tail", "10000"));
+		int agents = Integer.parseInt(options.getOrDefault("agents", "1000"));
+		int contacts = Integer.parseInt(options.getOrDefault("contacts", "10"));
+		int words = Integer.parseInt(options.getOrDefault("words", "8"));
+		int vocabulary = Integer.parseInt(options.getOrDefault("vocabulary", "50000"));
+		int warmup = Integer.parseInt(options.getOrDefault("warmup", "1"));
+		int iterations = Integer.parseInt(options.getOrDefault("iterations", "5"));
+		if (tail < 0 || tail >= messages) {
+			throw new IllegalArgumentException("tail must be between 0 and messages - 1");
+		}
+		System.setProperty("history.segmentMB", options.getOrDefault("segmentMB", "16"));
+
+		double[] cumulative = new double[vocabulary];
+		double sum = 0;
+		for (int r = 0; r < vocabulary; r++) {
+			sum += 1.0 / (r + 1);
+			cumulative[r] = sum;
+		}
+		int[] ids = new int[agents];
+		for (int a = 0; a < agents; a++) {
+			ids[a] = AgentDictionary.idOf("agent" + a);
+		}
+
+		File directory = Files.createTempDirectory("startup-bench").toFile();
+		File textFile = new File(directory, "chat_history.txt");
+		String path = new File(directory, "history.log").getPath();
+		File indexFile = new File(path + ".idx");
+		File searchFile = new File(path + ".search");
+		File savedIndex = new File(directory, "saved.idx");
+		File savedSearch = new File(directory, "saved.search");
+		String params = "messages=" + messages + ",tail=" + tail;
+		try {
+			SplittableRandom random = new SplittableRandom(42);
+			Map<String, StringBuilder> text = new LinkedHashMap<>();
+			HistoryLog log = HistoryLog.forFile(path);
+			List<MessageRecord> batch = new ArrayList<>(BATCH);
+			StringBuilder content = new StringBuilder();
+			for (int m = 0; m < messages; m++) {
+				content.setLength(0);
+				for (int w = 0; w < words; w++) {
+					int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+					content.append(w > 0 ? " " : "").append('w').append(rank < 0 ? -rank - 1 : rank);
+				}
+				int sender = random.nextInt(agents);
+				int receiver = (sender + 1 + random.nextInt(contacts)) % agents;
+				MessageRecord record = new MessageRecord(ids[sender], ids[receiver], m + 1, content.toString());
+				String key = sender < receiver ? "agent" + sender + "-agent" + receiver
+						: "agent" + receiver + "-agent" + sender;
+				text.computeIfAbsent(key, k -> new StringBuilder()).append("agent").append(sender).append(": ")
+						.append(record.getContent()).append('\n');
+				batch.add(record);
+				if (batch.size() == BATCH || m == messages - 1 || m == messages - tail - 1) {
+					log.append(batch, false);
+					batch.clear();
+				}
+				if (m == messages - tail - 1) {
+					// Indexurile salvate acopera mesajele scrise pana aici.
+					log.roll();
+					log.close();
+					Files.copy(indexFile.toPath(), savedIndex.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					Files.copy(searchFile.toPath(), savedSearch.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					log = HistoryLog.forFile(path);
+				}
+			}
+			log.close();
+			try (Writer out = new BufferedWriter(new FileWriter(textFile))) {
+				for (Map.Entry<String, StringBuilder> entry : text.entrySet()) {
+					out.write(entry.getKey());
+					out.write('\n');
+					out.append(entry.getValue());
+				}
+			}
+			text = null;
+
+			long logBytes = 0;
+			for (File file : directory.listFiles()) {
+				if (file.getName().startsWith("history.log") && !file.getName().endsWith(".idx")
+						&& !file.getName().endsWith(".search")) {
+					logBytes += file.length();
+				}
+			}
+			System.out.println(String.format(Locale.ROOT,
+					"%d messages; text file %.1f MB, log %.1f MB, index %.1f MB, search index %.1f MB", messages,
+					textFile.length() / 1048576.0, logBytes / 1048576.0, savedIndex.length() / 1048576.0,
+					savedSearch.length() / 1048576.0));
+
+			List<MicroBenchmark.Result> results = new ArrayList<>();
+			System.out.println(MicroBenchmark.HEADER);
+			results.add(print(measure("text.parse", params, warmup, iterations, new Startup() {
+				@Override
+				public void prepare() {
+				}
+
+				@Override
+				public void run() throws IOException {
+					parseText(textFile);
+				}
+
+				@Override
+				public void finish() {
+				}
+			})));
+			results.add(print(measure("log.rebuild", params, warmup, iterations, new Startup() {
+				HistoryLog opened;
+
+				@Override
+				public void prepare() {
+					indexFile.delete();
+					searchFile.delete();
+				}
+
+				@Override
+				public void run() throws IOException {
+					opened = HistoryLog.forFile(path);
+				}
+
+				@Override
+				public void finish() {
+					// La inchidere jurnalul salveaza indexurile, deci inchiderea nu este masurata.
+					opened.close();
+				}
+			})));
+			results.add(print(measure("log.snapshot", params, warmup, iterations, new Startup() {
+				HistoryLog opened;
+
+				@Override
+				public void prepare() throws IOException {
+					Files.copy(savedIndex.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					Files.copy(savedSearch.toPath(), searchFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+
+				@Override
+				public void run() throws IOException {
+					opened = HistoryLog.forFile(path);
+				}
+
+				@Override
+				public void finish() {
+					opened.close();
+				}
+			})));
+
+			String out = options.get("out");
+			if (out != null) {
+				try (Writer file = new FileWriter(out)) {
+					for (MicroBenchmark.Result result : results) {
+						file.write(result.toJson());
+						file.write(System.lineSeparator());
+					}
+				}
+			}
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Masoara fiecare pornire separat: pregatirea fisierelor si inchiderea
+	 * jurnalului raman in afara masuratorii.
+	 */
+	private static MicroBenchmark.Result measure(String name, String params, int warmup, int iterations,
+			Startup startup) throws IOException {
+		double[] nanos = new double[iterations];
+		for (int i = 0; i < warmup + iterations; i++) {
+			startup.prepare();
+			long start = System.nanoTime();
+			startup.run();
+			long elapsed = System.nanoTime() - start;
+			startup.finish();
+			if (i >= warmup) {
+				nanos[i - warmup] = elapsed;
+			}
+		}
+		double mean = 0;
+		for (double value : nanos) {
+			mean += value;
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (double value : nanos) {
+			variance += (value - mean) * (value - mean);
+		}
+		double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+		return new MicroBenchmark.Result(name, params, iterations, mean, error, -1);
+	}
+
+	/**
+	 * Citirea istoricului text, asa cum o facea MessageHistory.loadHistoryFromFile
+	 * inainte de jurnalul binar: o linie care contine "-" incepe o conversatie,
+	 * celelalte linii sunt adaugate la conversatia curenta.
+	 */
+	private static Map<String, StringBuilder> parseText(File file) throws IOException {
+		Map<String, StringBuilder> conversations = new HashMap<>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			StringBuilder conversation = new StringBuilder();
+			String currentKey = "";
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				if (line.contains("-")) {
+					if (!conversation.toString().isEmpty()) {
+						conversations.put(currentKey, conversation);
+					}
+					currentKey = line;
+					conversation = new StringBuilder();
+				} else {
+					conversation.append(line).append("\n");
+				}
+			}
+			if (!conversation.toString().isEmpty()) {
+				conversations.put(currentKey, conversation);
+			}
+		}
+		return conversations;
+	}
+
+	private static MicroBenchmark.Result print(MicroBenchmark.Result result) {
+		System.out.println(result);
+		return result;
+	}
+}
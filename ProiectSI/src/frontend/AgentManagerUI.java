@@ -5,26 +5,38 @@ import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JButton;
 import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
 import backend.AgentManager;
+import backend.ProvisioningListener;
+import backend.ProvisioningReport;
 import jade.core.AID;
 
 /**
  * AgentManagerUI reprezinta interfata utilizatorului pentru gestionarea
  * agentilor. Aceasta permite utilizatorului sa creeze agenti, sa vizualizeze
- * agentii existenti si sa opreasca agentii si containerul JADE.
+ * agentii existenti si sa opreasca agentii si containerul JADE. Agentii sunt
+ * creati in fundal, cate unul sau mai multi deodata, iar lista lor este citita
+ * din DF tot in fundal, astfel incat fereastra nu se blocheaza. Pornit cu
+ * proprietatea de sistem ui.metrics=true, afiseaza si un rezumat al metricilor
+ * agentilor si istoricului (vezi {@link MetricsPanel}).
  */
 public class AgentManagerUI extends JFrame {
 
 	private AgentManager agentManager;
 	private JComboBox<AID> agentComboBox;
 	private JTextField textField;
+	private JSpinner countSpinner;
 	private JButton createAgentButton;
 	private JButton updateButton;
 	private JButton shutdownButton;
@@ -39,16 +51,17 @@ public class AgentManagerUI extends JFrame {
 		this.agentManager = agentManager;
 
 		setTitle("Agent Manager");
-		setSize(750, 150);
+		boolean showMetrics = Boolean.getBoolean("ui.metrics");
+		setSize(showMetrics ? 900 : 750, showMetrics ? 190 : 150);
 		setLocationRelativeTo(null);
 		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		setResizable(false);
 
-		getContentPane().setLayout(new GridLayout(3, 1));
+		getContentPane().setLayout(new GridLayout(showMetrics ? 4 : 3, 1));
 
 		JPanel topPanel = new JPanel(new BorderLayout());
 		agentComboBox = new JComboBox<>();
-		updateAgentList(agentManager.getAllAgents());
+		refreshAgentList();
 		topPanel.add(agentComboBox, BorderLayout.WEST);
 
 		updateButton = new JButton("Update");
@@ -58,8 +71,13 @@ public class AgentManagerUI extends JFrame {
 		textField = new JTextField();
 		middlePanel.add(textField, BorderLayout.CENTER);
 
+		JPanel createPanel = new JPanel(new BorderLayout());
+		countSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 10000, 1));
+		countSpinner.setToolTipText("Number of agents; several agents are named by adding a number to the name");
+		createPanel.add(countSpinner, BorderLayout.WEST);
 		createAgentButton = new JButton("Create Agent");
-		middlePanel.add(createAgentButton, BorderLayout.EAST);
+		createPanel.add(createAgentButton, BorderLayout.EAST);
+		middlePanel.add(createPanel, BorderLayout.EAST);
 
 		JPanel bottomPanel = new JPanel(new BorderLayout());
 		shutdownButton = new JButton("Shutdown");
@@ -68,12 +86,15 @@ public class AgentManagerUI extends JFrame {
 		getContentPane().add(topPanel);
 		getContentPane().add(middlePanel);
 		getContentPane().add(bottomPanel);
+		if (showMetrics) {
+			getContentPane().add(new MetricsPanel());
+		}
 
 		// Actiune pentru butonul de actualizare
 		updateButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				updateAgentList(agentManager.getAllAgents());
+				refreshAgentList();
 			}
 		});
 
@@ -81,12 +102,7 @@ public class AgentManagerUI extends JFrame {
 		textField.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				String agentName = textField.getText().trim();
-				if (!agentName.isEmpty()) {
-					agentManager.createAgent(agentName, "backend.ChatAgent");
-					updateAgentList(agentManager.getAllAgents());
-					textField.setText("");
-				}
+				createAgents();
 			}
 		});
 
@@ -94,12 +110,7 @@ public class AgentManagerUI extends JFrame {
 		createAgentButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				String agentName = textField.getText().trim();
-				if (!agentName.isEmpty()) {
-					agentManager.createAgent(agentName, "backend.ChatAgent");
-					updateAgentList(agentManager.getAllAgents());
-					textField.setText("");
-				}
+				createAgents();
 			}
 		});
 
@@ -112,6 +123,56 @@ public class AgentManagerUI extends JFrame {
 		});
 	}
 
+	/**
+	 * Creeaza agentii ceruti in fundal. Cat timp sunt creati, butonul de creare
+	 * afiseaza progresul si nu poate fi apasat din nou.
+	 */
+	private void createAgents() {
+		String namePattern = textField.getText().trim();
+		if (namePattern.isEmpty() || !createAgentButton.isEnabled()) {
+			return;
+		}
+		int count = (Integer) countSpinner.getValue();
+		textField.setText("");
+		createAgentButton.setEnabled(false);
+		agentManager.createAgents(namePattern, 1, count, "backend.ChatAgent", new ProvisioningListener() {
+			@Override
+			public void agentProvisioned(String agentName, boolean started, int completed, int total) {
+				SwingUtilities.invokeLater(() -> createAgentButton.setText("Creating " + completed + "/" + total));
+			}
+
+			@Override
+			public void provisioningFinished(ProvisioningReport report) {
+				SwingUtilities.invokeLater(() -> {
+					createAgentButton.setText("Create Agent");
+					createAgentButton.setEnabled(true);
+				});
+			}
+		});
+	}
+
+	/**
+	 * Actualizeaza lista de agenti cu agentii inregistrati in DF. Cautarea in DF
+	 * este facuta in fundal, iar lista este actualizata pe firul interfetei.
+	 */
+	public void refreshAgentList() {
+		new SwingWorker<List<AID>, Void>() {
+			@Override
+			protected List<AID> doInBackground() {
+				return agentManager.getAllAgents();
+			}
+
+			@Override
+			protected void done() {
+				try {
+					updateAgentList(get());
+				} catch (InterruptedException | ExecutionException e) {
+					e.printStackTrace();
+				}
+			}
+		}.execute();
+	}
+
 	/**
 	 * Actualizeaza lista de agenti afisata in combo box.
 	 * 
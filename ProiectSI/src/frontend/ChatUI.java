@@ -1,33 +1,67 @@
 package frontend;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
 import javax.swing.JFrame;
+import javax.swing.JList;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
+import backend.BlobReference;
 import backend.ChatAgent;
+import backend.HistoryPage;
+import backend.MessageRecord;
 import jade.core.AID;
 
 /**
  * Clasa ChatUI reprezinta interfata grafica a utilizatorului pentru agentul de
  * chat. Aceasta permite utilizatorului sa trimita si sa primeasca mesaje de la
  * alti agenti si sa vizualizeze istoricul conversatiilor.
+ * <p>
+ * Mesajele sunt afisate intr-o lista care deseneaza doar randurile vizibile. La
+ * selectarea unei conversatii este incarcata doar ultima pagina din istoric;
+ * paginile mai vechi sunt incarcate cand lista este derulata pana sus.
+ * <p>
+ * Caseta de cautare din partea de sus cauta in toate conversatiile agentului
+ * (vezi {@link ChatAgent#search(String)}); rezultatele inlocuiesc mesajele
+ * afisate pana la selectarea unui agent.
  */
 public class ChatUI extends JFrame {
 
-	private JTextArea textArea;
+	/**
+	 * Numarul de mesaje incarcate din istoric la o data.
+	 */
+	private static final int PAGE_SIZE = 200;
+
+	private MessageListModel messageModel;
+	private JList<String> messageList;
+	private JScrollPane messageScrollPane;
+	private AID shownAgent;
+	private int oldestLoaded;
+	private boolean loadingOlder;
 	private JTextField textField;
+	private JTextField searchField;
 	private JComboBox<AID> agentComboBox;
 	private JButton updateButton;
 	private ChatAgent agent;
@@ -49,12 +83,33 @@ public class ChatUI extends JFrame {
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		setResizable(false);
 
-		// Configurare textarea pentru afisarea mesajelor
-		textArea = new JTextArea();
-		textArea.setEditable(false);
-		textArea.setLineWrap(true);
-		textArea.setWrapStyleWord(true);
-		JScrollPane scrollPane = new JScrollPane(textArea);
+		// Configurare lista pentru afisarea mesajelor. Prototipul fixeaza inaltimea
+		// randurilor, astfel incat lista nu masoara fiecare mesaj; latimea urmeaza
+		// fereastra, iar textul complet al unui rand lung apare ca tooltip.
+		messageModel = new MessageListModel();
+		messageList = new JList<>(messageModel);
+		messageList.setPrototypeCellValue("X");
+		messageList.setCellRenderer(new DefaultListCellRenderer() {
+			@Override
+			public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+					boolean isSelected, boolean cellHasFocus) {
+				super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+				setToolTipText((String) value);
+				return this;
+			}
+		});
+		messageScrollPane = new JScrollPane(messageList);
+		messageModel.setFlushListener(this::scrollToLastMessage);
+
+		// Incarcarea paginii anterioare cand lista este derulata pana sus
+		messageScrollPane.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+			@Override
+			public void adjustmentValueChanged(AdjustmentEvent e) {
+				if (e.getValue() == 0) {
+					loadOlderMessages();
+				}
+			}
+		});
 
 		// Panelul superior, cu lista agentilor si butonul de actualizare
 		JPanel topPanel = new JPanel(new BorderLayout());
@@ -62,6 +117,12 @@ public class ChatUI extends JFrame {
 		updateAgentList(agent.getAllAgents());
 		topPanel.add(agentComboBox, BorderLayout.WEST);
 
+		searchField = new JTextField();
+		searchField.setToolTipText("Search all conversations: words, \"a phrase\", from:agent, since:2024-05-01, "
+				+ "until:2024-05-31");
+		searchField.addActionListener(e -> search(searchField.getText().trim()));
+		topPanel.add(searchField, BorderLayout.CENTER);
+
 		updateButton = new JButton("Update");
 		topPanel.add(updateButton, BorderLayout.EAST);
 
@@ -72,9 +133,7 @@ public class ChatUI extends JFrame {
 				if (e.getStateChange() == ItemEvent.SELECTED) {
 					AID selectedAgent = (AID) agentComboBox.getSelectedItem();
 					if (selectedAgent != null) {
-						textArea.setText("");
-						String history = agent.getConversationHistory(selectedAgent);
-						textArea.setText(history);
+						showConversation(selectedAgent);
 					}
 				}
 			}
@@ -89,8 +148,7 @@ public class ChatUI extends JFrame {
 
 				AID selectedAgent = (AID) agentComboBox.getSelectedItem();
 				if (selectedAgent != null) {
-					String history = agent.getConversationHistory(selectedAgent);
-					textArea.setText(history);
+					showConversation(selectedAgent);
 				}
 			}
 		});
@@ -109,8 +167,11 @@ public class ChatUI extends JFrame {
 				if (message != null && !message.isEmpty()) {
 					AID selectedAgent = (AID) agentComboBox.getSelectedItem();
 					if (selectedAgent != null && !selectedAgent.getLocalName().equals(agent.getLocalName())) {
-						agent.sendMessageFromUI(message, selectedAgent);
-						textField.setText("");
+						if (agent.sendMessageFromUI(message, selectedAgent)) {
+							textField.setText("");
+						} else {
+							displayMessage("Send queue is full, message not sent.");
+						}
 					}
 				}
 			}
@@ -129,8 +190,11 @@ public class ChatUI extends JFrame {
 				if (message != null && !message.isEmpty()) {
 					AID selectedAgent = (AID) agentComboBox.getSelectedItem();
 					if (selectedAgent != null && !selectedAgent.getLocalName().equals(agent.getLocalName())) {
-						agent.sendMessageFromUI(message, selectedAgent);
-						textField.setText("");
+						if (agent.sendMessageFromUI(message, selectedAgent)) {
+							textField.setText("");
+						} else {
+							displayMessage("Send queue is full, message not sent.");
+						}
 					}
 				}
 			}
@@ -139,17 +203,116 @@ public class ChatUI extends JFrame {
 		// Adaugarea componentelor in fereastra principala
 		getContentPane().setLayout(new BorderLayout());
 		getContentPane().add(topPanel, BorderLayout.NORTH);
-		getContentPane().add(scrollPane, BorderLayout.CENTER);
+		getContentPane().add(messageScrollPane, BorderLayout.CENTER);
 		getContentPane().add(bottomPanel, BorderLayout.SOUTH);
 	}
 
 	/**
-	 * Afiseaza un mesaj in fereastra de chat.
+	 * Afiseaza un mesaj in fereastra de chat. Mesajele primite in rafala sunt
+	 * adaugate in lista impreuna, la cel mult
+	 * {@link MessageListModel#FLUSH_INTERVAL_MS} milisecunde.
 	 * 
-	 * @param message mesajul de afisat in fereastra.
+	 * @param message mesajul de afisat in fereastra; fiecare linie devine un
+	 *                rand.
 	 */
 	public void displayMessage(String message) {
-		textArea.append(message + "\n");
+		messageModel.append(message);
+	}
+
+	/**
+	 * Afiseaza ultima pagina din conversatia cu un agent.
+	 * 
+	 * @param recipient agentul conversatiei.
+	 */
+	public void showConversation(AID recipient) {
+		HistoryPage page = agent.getLastMessages(recipient, PAGE_SIZE);
+		shownAgent = recipient;
+		oldestLoaded = page.getStart();
+		messageModel.setLines(toLines(page));
+		scrollToLastMessage();
+	}
+
+	/**
+	 * Cauta in conversatiile agentului si afiseaza rezultatele in locul
+	 * conversatiei curente. Cautarea se face in fundal, deoarece asteapta
+	 * scrierea mesajelor din coada istoricului.
+	 *
+	 * @param text textul cautarii.
+	 */
+	private void search(String text) {
+		if (text.isEmpty()) {
+			return;
+		}
+		new SwingWorker<List<MessageRecord>, Void>() {
+			@Override
+			protected List<MessageRecord> doInBackground() {
+				return agent.search(text);
+			}
+
+			@Override
+			protected void done() {
+				List<String> lines = new ArrayList<>();
+				try {
+					List<MessageRecord> results = get();
+					lines.add("Search \"" + text + "\": " + results.size() + " messages");
+					SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+					for (MessageRecord record : results) {
+						lines.add(format.format(new Date(record.getTimestamp())) + " " + record.getSender() + " -> "
+								+ record.getReceiver() + ": " + BlobReference.display(record.getContent()));
+					}
+				} catch (ExecutionException e) {
+					lines.add("Search failed: " + e.getCause().getMessage());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				shownAgent = null;
+				messageModel.setLines(lines);
+				SwingUtilities.invokeLater(() -> messageList.ensureIndexIsVisible(0));
+			}
+		}.execute();
+	}
+
+	/**
+	 * Adauga la inceputul listei pagina de mesaje de dinaintea celor afisate,
+	 * pastrand pe ecran mesajele care erau vizibile.
+	 */
+	private void loadOlderMessages() {
+		if (loadingOlder || shownAgent == null || oldestLoaded <= 0) {
+			return;
+		}
+		loadingOlder = true;
+		try {
+			HistoryPage page = agent.getMessagesBefore(shownAgent, oldestLoaded, PAGE_SIZE);
+			oldestLoaded = page.getStart();
+			List<String> older = toLines(page);
+			messageModel.prepend(older);
+			// Lista este reasezata imediat, ca bara de derulare sa cunoasca noua
+			// inaltime inainte de a fi mutata peste randurile adaugate.
+			messageList.invalidate();
+			messageScrollPane.validate();
+			JScrollBar scrollBar = messageScrollPane.getVerticalScrollBar();
+			scrollBar.setValue(scrollBar.getValue() + older.size() * messageList.getFixedCellHeight());
+		} finally {
+			loadingOlder = false;
+		}
+	}
+
+	private void scrollToLastMessage() {
+		SwingUtilities.invokeLater(() -> {
+			int last = messageModel.getSize() - 1;
+			if (last >= 0) {
+				messageList.ensureIndexIsVisible(last);
+			}
+		});
+	}
+
+	private static List<String> toLines(HistoryPage page) {
+		List<String> lines = new ArrayList<>(page.getMessages().size());
+		for (MessageRecord record : page.getMessages()) {
+			lines.add(record.toDisplayString());
+		}
+		return lines;
 	}
 
 	/**
@@ -169,18 +332,26 @@ public class ChatUI extends JFrame {
 
 		AID selectedAgent = (AID) agentComboBox.getSelectedItem();
 		if (selectedAgent != null) {
-			String history = agent.getConversationHistory(selectedAgent);
-			textArea.setText(history);
+			showConversation(selectedAgent);
 		}
 	}
 
+	/**
+	 * Actualizeaza lista de agenti cu agentii cunoscuti de agentul curent.
+	 */
+	public void refreshAgentList() {
+		updateAgentList(agent.getAllAgents());
+	}
+
 	/**
 	 * Actualizeaza istoricul conversatiei afisat in fereastra de chat.
 	 * 
 	 * @param history istoricul conversatiei care va fi afsat.
 	 */
 	public void updateConversationHistory(String history) {
-		textArea.setText(history);
+		shownAgent = null;
+		messageModel.setLines(history.isEmpty() ? new ArrayList<>() : Arrays.asList(history.split("\n")));
+		scrollToLastMessage();
 	}
 
 	/**
@@ -0,0 +1,127 @@
+package frontend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+import javax.swing.Timer;
+
+/**
+ * Clasa MessageListModel este modelul listei de mesaje din {@link ChatUI}. Spre
+ * deosebire de un document de text, lista afiseaza doar randurile vizibile, iar
+ * modelul anunta doar randurile adaugate, nu tot continutul.
+ * <p>
+ * Mesajele noi sunt adunate intr-o lista de asteptare si adaugate in model cel
+ * mult o data la {@link #FLUSH_INTERVAL_MS} milisecunde, astfel incat o rafala
+ * de mesaje produce o singura redesenare. Paginile mai vechi din istoric sunt
+ * adaugate la inceputul listei. Toate metodele trebuie apelate de pe firul
+ * interfetei (EDT).
+ */
+public class MessageListModel extends AbstractListModel<String> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Intervalul minim dintre doua actualizari ale listei, in milisecunde.
+	 */
+	public static final int FLUSH_INTERVAL_MS = 50;
+
+	private final List<String> lines = new ArrayList<>();
+	private final List<String> pending = new ArrayList<>();
+	private final Timer flushTimer;
+	private Runnable flushListener;
+
+	public MessageListModel() {
+		flushTimer = new Timer(FLUSH_INTERVAL_MS, e -> flush());
+		flushTimer.setRepeats(false);
+	}
+
+	/**
+	 * Seteaza actiunea executata dupa ce mesajele in asteptare au fost adaugate
+	 * in lista, de exemplu derularea la ultimul mesaj.
+	 *
+	 * @param flushListener actiunea executata dupa fiecare actualizare.
+	 */
+	public void setFlushListener(Runnable flushListener) {
+		this.flushListener = flushListener;
+	}
+
+	@Override
+	public int getSize() {
+		return lines.size();
+	}
+
+	@Override
+	public String getElementAt(int index) {
+		return lines.get(index);
+	}
+
+	/**
+	 * Adauga un mesaj la sfarsitul listei la urmatoarea actualizare. Un mesaj cu
+	 * mai multe linii ocupa cate un rand pentru fiecare linie.
+	 *
+	 * @param message mesajul de adaugat.
+	 */
+	public void append(String message) {
+		int start = 0;
+		int newline;
+		while ((newline = message.indexOf('\n', start)) >= 0) {
+			pending.add(message.substring(start, newline));
+			start = newline + 1;
+		}
+		pending.add(message.substring(start));
+		if (!flushTimer.isRunning()) {
+			flushTimer.start();
+		}
+	}
+
+	/**
+	 * Adauga imediat in lista mesajele aflate in asteptare.
+	 */
+	public void flush() {
+		flushTimer.stop();
+		if (pending.isEmpty()) {
+			return;
+		}
+		int first = lines.size();
+		lines.addAll(pending);
+		pending.clear();
+		fireIntervalAdded(this, first, lines.size() - 1);
+		if (flushListener != null) {
+			flushListener.run();
+		}
+	}
+
+	/**
+	 * Adauga la inceputul listei o pagina de mesaje mai vechi.
+	 *
+	 * @param older mesajele paginii, in ordinea in care au fost scrise.
+	 */
+	public void prepend(List<String> older) {
+		if (older.isEmpty()) {
+			return;
+		}
+		lines.addAll(0, older);
+		fireIntervalAdded(this, 0, older.size() - 1);
+	}
+
+	/**
+	 * Inlocuieste continutul listei; mesajele aflate in asteptare sunt
+	 * renuntate.
+	 *
+	 * @param newLines noile randuri ale listei.
+	 */
+	public void setLines(List<String> newLines) {
+		flushTimer.stop();
+		pending.clear();
+		int oldSize = lines.size();
+		lines.clear();
+		if (oldSize > 0) {
+			fireIntervalRemoved(this, 0, oldSize - 1);
+		}
+		lines.addAll(newLines);
+		if (!lines.isEmpty()) {
+			fireIntervalAdded(this, 0, lines.size() - 1);
+		}
+	}
+}
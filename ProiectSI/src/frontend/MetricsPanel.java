@@ -0,0 +1,132 @@
+package frontend;
+
+import java.awt.BorderLayout;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+import backend.Metrics;
+
+/**
+ * Clasa MetricsPanel afiseaza un rezumat al metricilor JMX din aceasta masina
+ * virtuala (vezi {@link Metrics}): numarul agentilor de chat, mesajele trimise
+ * si primite de toti agentii, mesajele care asteapta in cozile lor sau au fost
+ * eliminate din cozile pline, cea mai mare latenta de receptie p99, scrierile
+ * istoricului si cache-ul lui de conversatii. Rezumatul este recalculat o data
+ * pe secunda, doar cat timp panoul este afisat.
+ */
+public class MetricsPanel extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int REFRESH_INTERVAL_MS = 1000;
+	private static final String[] AGENT_ATTRIBUTES = { "SentMessages", "ReceivedMessages", "InboxQueueLength",
+			"OutboundQueueDepth", "ReceiveLatencyP99Ms", "DFFailures", "InboxDroppedMessages",
+			"InboxRejectedMessages" };
+	private static final String[] HISTORY_ATTRIBUTES = { "FlushCount", "WrittenBytes", "AverageFlushMs",
+			"WriteErrors", "UnwrittenRecords" };
+	private static final String[] CACHE_ATTRIBUTES = { "CachedBytes", "Hits", "Misses", "Evictions" };
+
+	private final JLabel summaryLabel = new JLabel();
+	private final Timer refreshTimer = new Timer(REFRESH_INTERVAL_MS, e -> refresh());
+
+	public MetricsPanel() {
+		super(new BorderLayout());
+		add(summaryLabel, BorderLayout.CENTER);
+		refresh();
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		refreshTimer.start();
+	}
+
+	@Override
+	public void removeNotify() {
+		refreshTimer.stop();
+		super.removeNotify();
+	}
+
+	/**
+	 * Citeste din nou metricile si actualizeaza rezumatul.
+	 */
+	public void refresh() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			long[] agentTotals = new long[AGENT_ATTRIBUTES.length];
+			int agents = 0;
+			long maxP99 = 0;
+			for (ObjectName name : server.queryNames(Metrics.objectName("ChatAgent", "*"), null)) {
+				long[] values = read(server, name, AGENT_ATTRIBUTES);
+				for (int i = 0; i < values.length; i++) {
+					agentTotals[i] += values[i];
+				}
+				maxP99 = Math.max(maxP99, values[4]);
+				agents++;
+			}
+			long flushes = 0;
+			long bytes = 0;
+			long averageFlushMs = 0;
+			long writeErrors = 0;
+			long unwritten = 0;
+			for (ObjectName name : server.queryNames(Metrics.objectName("History", "*"), null)) {
+				long[] values = read(server, name, HISTORY_ATTRIBUTES);
+				flushes += values[0];
+				bytes += values[1];
+				averageFlushMs = Math.max(averageFlushMs, values[2]);
+				writeErrors += values[3];
+				unwritten += values[4];
+			}
+			long[] cacheTotals = new long[CACHE_ATTRIBUTES.length];
+			for (ObjectName name : server.queryNames(Metrics.objectName("HistoryCache", "*"), null)) {
+				long[] values = read(server, name, CACHE_ATTRIBUTES);
+				for (int i = 0; i < values.length; i++) {
+					cacheTotals[i] += values[i];
+				}
+			}
+			long lookups = cacheTotals[1] + cacheTotals[2];
+			summaryLabel.setText(String.format(Locale.ROOT,
+					" Agents: %d | Sent: %d | Received: %d | Queued: %d in, %d out | Shed: %d | p99: %d ms | DF failures: %d"
+							+ " | History: %d flushes, %d KB, avg %d ms, %d errors, %d unwritten"
+							+ " | Cache: %d KB, %d%% hits, %d evicted",
+					agents, agentTotals[0], agentTotals[1], agentTotals[2], agentTotals[3],
+					agentTotals[6] + agentTotals[7], maxP99, agentTotals[5],
+					flushes, bytes / 1024, averageFlushMs, writeErrors, unwritten, cacheTotals[0] / 1024,
+					lookups == 0 ? 0 : cacheTotals[1] * 100 / lookups, cacheTotals[3]));
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Citeste atributele numerice ale unui MBean. Un MBean eliminat intre timp
+	 * (de exemplu al unui agent oprit) are toate valorile 0.
+	 */
+	private static long[] read(MBeanServer server, ObjectName name, String[] attributes) throws JMException {
+		long[] values = new long[attributes.length];
+		AttributeList list;
+		try {
+			list = server.getAttributes(name, attributes);
+		} catch (InstanceNotFoundException e) {
+			return values;
+		}
+		for (Attribute attribute : list.asList()) {
+			for (int i = 0; i < attributes.length; i++) {
+				if (attributes[i].equals(attribute.getName())) {
+					values[i] = ((Number) attribute.getValue()).longValue();
+				}
+			}
+		}
+		return values;
+	}
+}
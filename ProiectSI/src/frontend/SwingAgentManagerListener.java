@@ -0,0 +1,37 @@
+package frontend;
+
+import javax.swing.SwingUtilities;
+
+import backend.AgentManager;
+import backend.AgentManagerListener;
+
+/**
+ * Clasa SwingAgentManagerListener afiseaza un {@link AgentManager} intr-o
+ * fereastra {@link AgentManagerUI}, construita si actualizata pe firul
+ * interfetei (EDT).
+ */
+public class SwingAgentManagerListener implements AgentManagerListener {
+
+	private AgentManagerUI agentManagerUI;
+
+	/**
+	 * Deschide fereastra managerului de agenti.
+	 *
+	 * @param agentManager managerul afisat.
+	 */
+	public SwingAgentManagerListener(AgentManager agentManager) {
+		SwingUtilities.invokeLater(() -> {
+			agentManagerUI = new AgentManagerUI(agentManager);
+			agentManagerUI.setVisible(true);
+		});
+	}
+
+	@Override
+	public void agentListChanged() {
+		SwingUtilities.invokeLater(() -> {
+			if (agentManagerUI != null) {
+				agentManagerUI.refreshAgentList();
+			}
+		});
+	}
+}
@@ -0,0 +1,67 @@
+package frontend;
+
+import javax.swing.SwingUtilities;
+
+import backend.ChatAgent;
+import backend.ChatListener;
+import jade.core.AID;
+
+/**
+ * Clasa SwingChatListener afiseaza un agent de chat intr-o fereastra
+ * {@link ChatUI}. Fereastra este construita pe firul interfetei (EDT), iar
+ * apelurile agentului sunt trecute pe acelasi fir; cele sosite inainte ca
+ * fereastra sa existe sunt ignorate, pentru ca fereastra isi incarca singura
+ * lista de agenti si istoricul.
+ */
+public class SwingChatListener implements ChatListener {
+
+	private ChatUI chatUI;
+
+	/**
+	 * Deschide fereastra de chat a unui agent.
+	 *
+	 * @param agent agentul afisat.
+	 */
+	public SwingChatListener(ChatAgent agent) {
+		SwingUtilities.invokeLater(() -> {
+			chatUI = new ChatUI(agent.getLocalName(), agent);
+			chatUI.setVisible(true);
+		});
+	}
+
+	@Override
+	public void displayMessage(String message) {
+		SwingUtilities.invokeLater(() -> {
+			if (chatUI != null) {
+				chatUI.displayMessage(message);
+			}
+		});
+	}
+
+	@Override
+	public void agentListChanged() {
+		SwingUtilities.invokeLater(() -> {
+			if (chatUI != null) {
+				chatUI.refreshAgentList();
+			}
+		});
+	}
+
+	@Override
+	public void showConversation(AID recipient) {
+		SwingUtilities.invokeLater(() -> {
+			if (chatUI != null) {
+				chatUI.showConversation(recipient);
+			}
+		});
+	}
+
+	@Override
+	public void close() {
+		SwingUtilities.invokeLater(() -> {
+			if (chatUI != null) {
+				chatUI.dispose();
+			}
+		});
+	}
+}
@@ -0,0 +1,25 @@
+package frontend;
+
+import backend.AgentManager;
+import backend.AgentManagerListener;
+import backend.ChatAgent;
+import backend.ChatListener;
+
+/**
+ * Clasa SwingListenerFactory este interfata grafica Swing a agentilor: creeaza
+ * fereastra fiecarui agent de chat ({@link SwingChatListener}) si a
+ * managerului ({@link SwingAgentManagerListener}). Este interfata implicita a
+ * agentilor (vezi {@link ChatAgent#DEFAULT_USER_INTERFACE}).
+ */
+public class SwingListenerFactory implements ChatListener.Factory, AgentManagerListener.Factory {
+
+	@Override
+	public ChatListener create(ChatAgent agent) {
+		return new SwingChatListener(agent);
+	}
+
+	@Override
+	public AgentManagerListener create(AgentManager agentManager) {
+		return new SwingAgentManagerListener(agentManager);
+	}
+}